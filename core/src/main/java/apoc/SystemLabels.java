@@ -10,5 +10,7 @@ public enum SystemLabels implements Label {
     ApocUuid,
     ApocTriggerMeta,
     ApocTrigger,
-    DataVirtualizationCatalog
+    DataVirtualizationCatalog,
+    ApocDataflowWatch,
+    ApocPeriodicCheckpoint
 }
@@ -26,5 +26,16 @@ public enum SystemPropertyKeys  {
     // uuid handler
     label,
     addToSetLabel,
-    propertyName;
+    propertyName,
+
+    // dataflow watches
+    sources,
+    sinks,
+
+    // periodic checkpoints
+    action,
+    offset,
+    watermark,
+    batches,
+    done;
 }
@@ -0,0 +1,313 @@
+package apoc.algo;
+
+import apoc.path.CFGValidationHelper.NodeLabel;
+import apoc.path.CFGValidationHelper.RelTypes;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+
+// Strongly connected component condensation of the nextCFGBlock graph.
+// Loops in the CFG collapse into a single component, so reachability between two CFG blocks becomes a search on a
+// DAG whose components are numbered in reverse topological order (every edge goes from a higher to a lower id).
+// The condensation is rebuilt in the background once a newer transaction has been committed to the database.
+public class CFGCondensation {
+
+    private static final RelationshipType NEXT_CFG_BLOCK = RelationshipType.withName("nextCFGBlock");
+    private static final int UNVISITED = -1;
+
+    // one condensation per database
+    private static final GraphSummary<CFGCondensation> CONDENSATIONS = new GraphSummary<>(CFGCondensation::build);
+
+    private final LongIntHashMap blockIndex;    // CFG node id -> dense block index
+    private final int[] component;              // dense block index -> component id
+    private final int componentCount;
+    private final int[] dagOffsets;             // condensed DAG in compressed sparse row form
+    private final int[] dagTargets;
+
+    // per thread scratch space for the DAG search
+    private final ThreadLocal<SearchState> searchState;
+
+    private CFGCondensation(LongIntHashMap blockIndex, int[] component, int componentCount,
+                            int[] dagOffsets, int[] dagTargets) {
+        this.blockIndex = blockIndex;
+        this.component = component;
+        this.componentCount = componentCount;
+        this.dagOffsets = dagOffsets;
+        this.dagTargets = dagTargets;
+        this.searchState = ThreadLocal.withInitial(() -> new SearchState(componentCount));
+    }
+
+    // return the condensation of the committed graph, or null while it is rebuilt or if tx has uncommitted changes
+    //      (see GraphSummary); callers then search the CFG itself
+    public static CFGCondensation forDatabase(GraphDatabaseService db, Transaction tx) {
+        return CONDENSATIONS.get(db, tx);
+    }
+
+    // helper function: load the nextCFGBlock graph and condense it
+    private static CFGCondensation build(Transaction tx) {
+        LongIntHashMap blockIndex = new LongIntHashMap();
+        int[] sources = new int[1024];
+        int[] targets = new int[1024];
+        int edgeCount = 0;
+
+        try (ResourceIterator<Relationship> rels = tx.findRelationships(NEXT_CFG_BLOCK)) {
+            while (rels.hasNext()) {
+                Relationship rel = rels.next();
+                if (edgeCount == sources.length) {
+                    sources = Arrays.copyOf(sources, edgeCount * 2);
+                    targets = Arrays.copyOf(targets, edgeCount * 2);
+                }
+                sources[edgeCount] = blockIndex.getIfAbsentPut(rel.getStartNodeId(), blockIndex.size());
+                targets[edgeCount] = blockIndex.getIfAbsentPut(rel.getEndNodeId(), blockIndex.size());
+                edgeCount++;
+            }
+        }
+
+        int blockCount = blockIndex.size();
+        int[] offsets = new int[blockCount + 1];
+        int[] adjacency = toCSR(sources, targets, edgeCount, blockCount, offsets);
+
+        int[] component = new int[blockCount];
+        int componentCount = tarjan(offsets, adjacency, component);
+
+        // collapse edges between components, dropping self loops and duplicates
+        int[] dagSources = new int[edgeCount];
+        int[] dagTargets = new int[edgeCount];
+        int[] lastSeen = new int[componentCount];
+        Arrays.fill(lastSeen, UNVISITED);
+        int dagEdgeCount = 0;
+        for (int block = 0; block < blockCount; block++) {
+            int from = component[block];
+            for (int i = offsets[block]; i < offsets[block + 1]; i++) {
+                int to = component[adjacency[i]];
+                if (from == to) {continue;}
+                dagSources[dagEdgeCount] = from;
+                dagTargets[dagEdgeCount] = to;
+                dagEdgeCount++;
+            }
+        }
+        int[] dagOffsets = new int[componentCount + 1];
+        int[] dagAdjacency = toCSR(dagSources, dagTargets, dagEdgeCount, componentCount, dagOffsets);
+
+        // remove duplicate component edges in place
+        int write = 0;
+        int[] compactOffsets = new int[componentCount + 1];
+        for (int comp = 0; comp < componentCount; comp++) {
+            compactOffsets[comp] = write;
+            for (int i = dagOffsets[comp]; i < dagOffsets[comp + 1]; i++) {
+                int to = dagAdjacency[i];
+                if (lastSeen[to] != comp) {
+                    lastSeen[to] = comp;
+                    dagAdjacency[write++] = to;
+                }
+            }
+        }
+        compactOffsets[componentCount] = write;
+
+        return new CFGCondensation(blockIndex, component, componentCount, compactOffsets,
+                Arrays.copyOf(dagAdjacency, write));
+    }
+
+    // helper function: build a compressed sparse row adjacency list, filling offsets and returning the targets
+    static int[] toCSR(int[] sources, int[] targets, int edgeCount, int nodeCount, int[] offsets) {
+        for (int i = 0; i < edgeCount; i++) {
+            offsets[sources[i] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] position = Arrays.copyOf(offsets, nodeCount);
+        int[] adjacency = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            adjacency[position[sources[i]]++] = targets[i];
+        }
+        return adjacency;
+    }
+
+    // helper function: iterative Tarjan's algorithm, assigns a component id to every block and returns the number
+    //      of components; components are completed (and numbered) in reverse topological order
+    static int tarjan(int[] offsets, int[] adjacency, int[] component) {
+        int n = component.length;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] callStack = new int[n];
+        int[] edgePointer = new int[n];
+        Arrays.fill(index, UNVISITED);
+
+        int nextIndex = 0;
+        int stackSize = 0;
+        int componentCount = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != UNVISITED) {continue;}
+
+            int depth = 0;
+            callStack[depth] = root;
+            edgePointer[root] = offsets[root];
+            index[root] = low[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int v = callStack[depth];
+                if (edgePointer[v] < offsets[v + 1]) {
+                    int w = adjacency[edgePointer[v]++];
+                    if (index[w] == UNVISITED) {
+                        // descend into w
+                        index[w] = low[w] = nextIndex++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        edgePointer[w] = offsets[w];
+                        callStack[++depth] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                } else {
+                    // all successors of v are done
+                    if (low[v] == index[v]) {
+                        int w;
+                        do {
+                            w = stack[--stackSize];
+                            onStack[w] = false;
+                            component[w] = componentCount;
+                        } while (w != v);
+                        componentCount++;
+                    }
+                    depth--;
+                    if (depth >= 0) {
+                        int parent = callStack[depth];
+                        low[parent] = Math.min(low[parent], low[v]);
+                    }
+                }
+            }
+        }
+
+        return componentCount;
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    // return the component of a CFG node, or -1 if the node has no nextCFGBlock relationships
+    public int componentOf(long nodeId) {
+        int block = blockIndex.getIfAbsent(nodeId, UNVISITED);
+        return (block == UNVISITED) ? UNVISITED : component[block];
+    }
+
+    // check whether there is a (possibly empty) directed nextCFGBlock path from start to end
+    public boolean reachable(long startId, long endId) {
+        if (startId == endId) {
+            return true;
+        }
+        int from = componentOf(startId);
+        int to = componentOf(endId);
+        if ((from == UNVISITED) || (to == UNVISITED)) {
+            return false;
+        }
+        return reachableComponent(from, to);
+    }
+
+    // check whether any of the given CFG nodes lies on a path from start to end, excluding start and end themselves
+    public boolean anyBetween(long startId, long endId, long[] nodeIds) {
+        for (long nodeId : nodeIds) {
+            if ((nodeId != startId) && (nodeId != endId) && reachable(startId, nodeId) && reachable(nodeId, endId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // helper function: DFS on the condensed DAG; since edges always point to lower ids, components with an id
+    //      below the target can never lead to it and are skipped
+    private boolean reachableComponent(int from, int to) {
+        if (from == to) {
+            return true;
+        }
+        if (from < to) {
+            return false;
+        }
+
+        SearchState state = searchState.get();
+        int stamp = state.nextStamp();
+        int[] visited = state.visited;
+        int[] frontier = state.frontier;
+        int size = 0;
+        frontier[size++] = from;
+        visited[from] = stamp;
+
+        while (size > 0) {
+            int comp = frontier[--size];
+            for (int i = dagOffsets[comp]; i < dagOffsets[comp + 1]; i++) {
+                int next = dagTargets[i];
+                if (next == to) {
+                    return true;
+                }
+                if ((next > to) && (visited[next] != stamp)) {
+                    visited[next] = stamp;
+                    frontier[size++] = next;
+                }
+            }
+        }
+        return false;
+    }
+
+    // helper function: CFG nodes at which the value flowing along dataflowRel is overwritten, following the same
+    //      filter conditions as CFGShortestPath; returns an empty array if no filtering applies
+    public static long[] overwritingBlocks(Relationship dataflowRel) {
+        Node srcNode = dataflowRel.getStartNode();
+        boolean filterVar = (srcNode.hasLabel(NodeLabel.cVariable)) || (srcNode.hasLabel(NodeLabel.cReturn));
+        filterVar = (!dataflowRel.isType(RelTypes.pubVar)) && filterVar;
+        return overwritingBlocks(srcNode, filterVar);
+    }
+
+    // helper function: CFG nodes written by srcNode, or an empty array if filterVar is false
+    public static long[] overwritingBlocks(Node srcNode, boolean filterVar) {
+        if (!filterVar) {
+            return new long[0];
+        }
+
+        long[] blocks = new long[4];
+        int size = 0;
+        for (Relationship cfgConnection : srcNode.getRelationships(Direction.OUTGOING)) {
+            String cfgType = cfgConnection.getType().name();
+            // exclude vi and vif because they don't change dataflow values
+            if (cfgType.endsWith("Destination") && !cfgType.equals("vifDestination") &&
+                    !cfgType.equals("viDestination")) {
+                if (size == blocks.length) {
+                    blocks = Arrays.copyOf(blocks, size * 2);
+                }
+                blocks[size++] = cfgConnection.getEndNodeId();
+            }
+        }
+        return Arrays.copyOf(blocks, size);
+    }
+
+    private static class SearchState {
+        private final int[] visited;
+        private final int[] frontier;
+        private int stamp = 0;
+
+        SearchState(int componentCount) {
+            this.visited = new int[componentCount];
+            this.frontier = new int[componentCount];
+        }
+
+        int nextStamp() {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+    }
+}
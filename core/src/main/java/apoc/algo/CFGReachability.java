@@ -0,0 +1,135 @@
+package apoc.algo;
+
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.Arrays;
+
+// Reusable reachability engine for filtered nextCFGBlock searches.
+// Answers the same question as CFGShortestPath.findSinglePath(...) != null: is there a directed nextCFGBlock path from
+// start to end whose intermediate blocks are not overwriting blocks of the dataflow source. The search is a plain
+// breadth first search over primitive arrays; the visited map and frontier arrays are reset rather than reallocated,
+// and one engine is kept per thread so that the many small checks done during a path search allocate nothing.
+// The engine is not reentrant: a search must finish before the next one is started on the same thread.
+public class CFGReachability {
+
+    private static final RelationshipType NEXT_CFG_BLOCK = RelationshipType.withName("nextCFGBlock");
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // one engine per thread
+    private static final ThreadLocal<CFGReachability> ENGINES = ThreadLocal.withInitial(CFGReachability::new);
+
+    private final LongIntHashMap discovered = new LongIntHashMap();     // CFG node id -> position in frontier
+    private Node[] frontier = new Node[INITIAL_CAPACITY];                // BFS queue, in discovery order
+    private long[] frontierIds = new long[INITIAL_CAPACITY];
+    private int[] predecessor = new int[INITIAL_CAPACITY];               // position -> position of the predecessor
+    private int size = 0;
+    private int found = NONE;                                            // position of end after a successful search
+
+    private CFGReachability() {}
+
+    // return the engine of the current thread
+    public static CFGReachability forThread() {
+        return ENGINES.get();
+    }
+
+    // check whether the value flowing along dataflowRel can reach end from start without being overwritten
+    public boolean reachable(Node start, Node end, Relationship dataflowRel) {
+        return search(start, end, CFGCondensation.overwritingBlocks(dataflowRel));
+    }
+
+    // check whether the value of srcNode can reach end from start without being overwritten (if filterVar is set)
+    public boolean reachable(Node start, Node end, Node srcNode, boolean filterVar) {
+        return search(start, end, CFGCondensation.overwritingBlocks(srcNode, filterVar));
+    }
+
+    // check whether end can be reached from start without passing through any of the blocked CFG nodes
+    //      start and end themselves are never blocked
+    public boolean search(Node start, Node end, long[] blocked) {
+        reset();
+        if (start.equals(end)) {
+            found = discover(start, NONE);
+            return true;
+        }
+
+        long[] sortedBlocked = blocked;
+        if (blocked.length > 1) {
+            sortedBlocked = blocked.clone();
+            Arrays.sort(sortedBlocked);
+        }
+
+        long endId = end.getId();
+        discover(start, NONE);
+        try {
+            for (int head = 0; head < size; head++) {
+                Node node = frontier[head];
+                for (Relationship rel : node.getRelationships(Direction.OUTGOING, NEXT_CFG_BLOCK)) {
+                    long nextId = rel.getEndNodeId();
+                    if (discovered.containsKey(nextId)) {continue;}
+                    if (nextId == endId) {
+                        found = discover(rel.getEndNode(), head);
+                        return true;
+                    }
+                    if (isBlocked(sortedBlocked, nextId)) {continue;}
+                    discover(rel.getEndNode(), head);
+                }
+            }
+            return false;
+        } finally {
+            // keep ids and predecessors for path(), but do not hold on to the nodes of the transaction
+            Arrays.fill(frontier, 0, size, null);
+        }
+    }
+
+    // node ids of the path found by the last successful search, from start to end, or null if it failed
+    public long[] path() {
+        if (found == NONE) {
+            return null;
+        }
+        int length = 0;
+        for (int i = found; i != NONE; i = predecessor[i]) {
+            length++;
+        }
+        long[] nodeIds = new long[length];
+        for (int i = found; i != NONE; i = predecessor[i]) {
+            nodeIds[--length] = frontierIds[i];
+        }
+        return nodeIds;
+    }
+
+    // helper function: add a node to the frontier and return its position
+    private int discover(Node node, int from) {
+        if (size == frontier.length) {
+            frontier = Arrays.copyOf(frontier, size * 2);
+            frontierIds = Arrays.copyOf(frontierIds, size * 2);
+            predecessor = Arrays.copyOf(predecessor, size * 2);
+        }
+        frontier[size] = node;
+        frontierIds[size] = node.getId();
+        predecessor[size] = from;
+        discovered.put(node.getId(), size);
+        return size++;
+    }
+
+    // helper function: clear the state of the previous search, keeping the allocated capacity
+    private void reset() {
+        discovered.clear();
+        size = 0;
+        found = NONE;
+    }
+
+    // helper function: the blocked set is usually tiny, so a binary search on the sorted ids is enough
+    private static boolean isBlocked(long[] sortedBlocked, long nodeId) {
+        if (sortedBlocked.length == 0) {
+            return false;
+        }
+        if (sortedBlocked.length == 1) {
+            return sortedBlocked[0] == nodeId;
+        }
+        return Arrays.binarySearch(sortedBlocked, nodeId) >= 0;
+    }
+}
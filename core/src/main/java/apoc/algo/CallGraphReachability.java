@@ -0,0 +1,218 @@
+package apoc.algo;
+
+import apoc.path.CFGValidationHelper.RelTypes;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+
+// Coarse reachability between the functions of the dataflow graph, used to reject impossible flows before a search.
+// A function is a set of nodes connected by varWrite relationships (in either direction). The functions are linked
+// by parWrite, retWrite, pubVar and pubTarget relationships, and this call graph is condensed into its strongly
+// connected components, numbered in reverse topological order as in CFGCondensation. Every component keeps the
+// bitset of the components it reaches.
+// Any dataflow path following varWrite, parWrite and retWrite relationships is a walk in this graph, so an
+// unreachable component means there is no path, while a reachable one still needs a search.
+// The summary is shared and rebuilt like the other graph summaries (see GraphSummary); while it is out of date, or
+// for a transaction with uncommitted changes, every flow may exist and the search decides.
+public class CallGraphReachability {
+
+    private static final RelationshipType[] INTER_FUNCTION = {RelTypes.parWrite, RelTypes.retWrite, RelTypes.pubVar,
+            RelTypes.pubTarget};
+    private static final int UNVISITED = -1;
+
+    // one summary per database
+    private static final GraphSummary<CallGraphReachability> SUMMARIES =
+            new GraphSummary<>(CallGraphReachability::build);
+
+    private final LongIntHashMap nodeIndex;     // node id -> dense node index
+    private final int[] component;              // dense node index -> component id
+    private final int functionCount;
+    private final RoaringBitmap[] reach;        // component id -> components reachable from it, itself included
+
+    private CallGraphReachability(LongIntHashMap nodeIndex, int[] component, int functionCount,
+                                  RoaringBitmap[] reach) {
+        this.nodeIndex = nodeIndex;
+        this.component = component;
+        this.functionCount = functionCount;
+        this.reach = reach;
+    }
+
+    // return the summary of the committed graph, or null while it is rebuilt or if tx has uncommitted changes
+    //      (see GraphSummary)
+    public static CallGraphReachability forDatabase(GraphDatabaseService db, Transaction tx) {
+        return SUMMARIES.get(db, tx);
+    }
+
+    // check whether a dataflow path from start to end may exist; false means there is certainly none
+    //      without an up to date summary every path may exist, and the search decides
+    public static boolean mayReach(GraphDatabaseService db, Transaction tx, Node start, Node end) {
+        CallGraphReachability summary = forDatabase(db, tx);
+        return (summary == null) || summary.mayReach(start, end);
+    }
+
+    // helper function: group nodes into functions, then condense the call graph between them
+    private static CallGraphReachability build(Transaction tx) {
+        LongIntHashMap nodeIndex = new LongIntHashMap();
+        UnionFind functions = new UnionFind();
+
+        try (ResourceIterator<Relationship> rels = tx.findRelationships(RelTypes.varWrite)) {
+            while (rels.hasNext()) {
+                Relationship rel = rels.next();
+                functions.union(index(nodeIndex, functions, rel.getStartNodeId()),
+                        index(nodeIndex, functions, rel.getEndNodeId()));
+            }
+        }
+
+        int[] sources = new int[1024];
+        int[] targets = new int[1024];
+        int edgeCount = 0;
+        for (RelationshipType type : INTER_FUNCTION) {
+            try (ResourceIterator<Relationship> rels = tx.findRelationships(type)) {
+                while (rels.hasNext()) {
+                    Relationship rel = rels.next();
+                    if (edgeCount == sources.length) {
+                        sources = Arrays.copyOf(sources, edgeCount * 2);
+                        targets = Arrays.copyOf(targets, edgeCount * 2);
+                    }
+                    sources[edgeCount] = index(nodeIndex, functions, rel.getStartNodeId());
+                    targets[edgeCount] = index(nodeIndex, functions, rel.getEndNodeId());
+                    edgeCount++;
+                }
+            }
+        }
+
+        // dense function ids
+        int nodeCount = nodeIndex.size();
+        int[] function = new int[nodeCount];
+        int[] functionOfRoot = new int[nodeCount];
+        Arrays.fill(functionOfRoot, UNVISITED);
+        int functionCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            int root = functions.find(node);
+            if (functionOfRoot[root] == UNVISITED) {
+                functionOfRoot[root] = functionCount++;
+            }
+            function[node] = functionOfRoot[root];
+        }
+
+        // call graph between functions, condensed into components
+        for (int i = 0; i < edgeCount; i++) {
+            sources[i] = function[sources[i]];
+            targets[i] = function[targets[i]];
+        }
+        int[] offsets = new int[functionCount + 1];
+        int[] adjacency = CFGCondensation.toCSR(sources, targets, edgeCount, functionCount, offsets);
+        int[] functionComponent = new int[functionCount];
+        int componentCount = CFGCondensation.tarjan(offsets, adjacency, functionComponent);
+
+        // components are numbered in reverse topological order, so the successors of a component are complete
+        //      before the component itself
+        RoaringBitmap[] successors = new RoaringBitmap[componentCount];
+        for (int comp = 0; comp < componentCount; comp++) {
+            successors[comp] = new RoaringBitmap();
+        }
+        for (int fn = 0; fn < functionCount; fn++) {
+            for (int i = offsets[fn]; i < offsets[fn + 1]; i++) {
+                int from = functionComponent[fn];
+                int to = functionComponent[adjacency[i]];
+                if (from != to) {
+                    successors[from].add(to);
+                }
+            }
+        }
+        RoaringBitmap[] reach = new RoaringBitmap[componentCount];
+        for (int comp = 0; comp < componentCount; comp++) {
+            RoaringBitmap reachable = RoaringBitmap.bitmapOf(comp);
+            for (int next : successors[comp]) {
+                reachable.or(reach[next]);
+            }
+            reachable.runOptimize();
+            reach[comp] = reachable;
+        }
+
+        int[] component = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            component[node] = functionComponent[function[node]];
+        }
+        return new CallGraphReachability(nodeIndex, component, functionCount, reach);
+    }
+
+    private static int index(LongIntHashMap nodeIndex, UnionFind functions, long nodeId) {
+        int index = nodeIndex.getIfAbsent(nodeId, UNVISITED);
+        if (index == UNVISITED) {
+            index = nodeIndex.size();
+            nodeIndex.put(nodeId, index);
+            functions.add();
+        }
+        return index;
+    }
+
+    public int getFunctionCount() {
+        return functionCount;
+    }
+
+    public int getComponentCount() {
+        return reach.length;
+    }
+
+    // check whether a dataflow path from start to end may exist; false means there is certainly none
+    //      a node without dataflow relationships can only reach itself
+    public boolean mayReach(Node start, Node end) {
+        if (start.getId() == end.getId()) {
+            return true;
+        }
+        int from = nodeIndex.getIfAbsent(start.getId(), UNVISITED);
+        int to = nodeIndex.getIfAbsent(end.getId(), UNVISITED);
+        if ((from == UNVISITED) || (to == UNVISITED)) {
+            return false;
+        }
+        return reach[component[from]].contains(component[to]);
+    }
+
+    // union-find over dense node indexes, with path halving and union by size
+    private static class UnionFind {
+        private int[] parent = new int[1024];
+        private int[] size = new int[1024];
+        private int count = 0;
+
+        void add() {
+            if (count == parent.length) {
+                parent = Arrays.copyOf(parent, count * 2);
+                size = Arrays.copyOf(size, count * 2);
+            }
+            parent[count] = count;
+            size[count] = 1;
+            count++;
+        }
+
+        int find(int node) {
+            while (parent[node] != node) {
+                parent[node] = parent[parent[node]];
+                node = parent[node];
+            }
+            return node;
+        }
+
+        void union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return;
+            }
+            if (size[rootA] < size[rootB]) {
+                int swap = rootA;
+                rootA = rootB;
+                rootB = swap;
+            }
+            parent[rootB] = rootA;
+            size[rootA] += size[rootB];
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package apoc.algo;
+
+import java.util.Arrays;
+
+// Binary min-heap of items ordered by a double cost, for best-first searches.
+// Costs and insertion numbers are kept in primitive arrays next to the items, so that sifting compares primitives
+// and no entry object is allocated per item. Items of equal cost come out in insertion order, which keeps the order
+// of a search deterministic.
+public class CostHeap<T> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private double[] costs = new double[INITIAL_CAPACITY];
+    private long[] order = new long[INITIAL_CAPACITY];
+    private Object[] items = new Object[INITIAL_CAPACITY];
+    private int size = 0;
+    private long counter = 0;
+
+    public void add(T item, double cost) {
+        if (size == items.length) {
+            costs = Arrays.copyOf(costs, size * 2);
+            order = Arrays.copyOf(order, size * 2);
+            items = Arrays.copyOf(items, size * 2);
+        }
+        int i = size++;
+        // sift up
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(cost, counter, costs[parent], order[parent])) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        costs[i] = cost;
+        order[i] = counter++;
+        items[i] = item;
+    }
+
+    // cost of the item poll() returns next
+    public double peekCost() {
+        return costs[0];
+    }
+
+    // remove and return the item with the lowest cost, or null if the heap is empty
+    public T poll() {
+        if (size == 0) {
+            return null;
+        }
+        T first = (T) items[0];
+        size--;
+        double cost = costs[size];
+        long rank = order[size];
+        Object item = items[size];
+        items[size] = null;
+
+        // sift down the last item from the root
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if ((right < size) && less(costs[right], order[right], costs[child], order[child])) {
+                child = right;
+            }
+            if (!less(costs[child], order[child], cost, rank)) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        if (size > 0) {
+            costs[i] = cost;
+            order[i] = rank;
+            items[i] = item;
+        }
+        return first;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static boolean less(double cost, long rank, double otherCost, long otherRank) {
+        return (cost < otherCost) || ((cost == otherCost) && (rank < otherRank));
+    }
+
+    private void move(int from, int to) {
+        costs[to] = costs[from];
+        order[to] = order[from];
+        items[to] = items[from];
+    }
+}
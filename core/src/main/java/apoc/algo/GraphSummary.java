@@ -0,0 +1,92 @@
+package apoc.algo;
+
+import apoc.dataflow.DataflowCache;
+import apoc.util.Util;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.database.NamedDatabaseId;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Summary of the committed graph of a database, shared by all queries against it (e.g. CFGCondensation).
+// A summary is only used while no newer transaction has been committed, and never by a transaction with uncommitted
+// changes, which may see a different graph. Once it is out of date, it is rebuilt in its own read transaction on a
+// background thread, with at most one build per database at a time, so that neither commits nor queries wait for it.
+// Until the new summary is ready, get returns null and callers answer from the graph instead, while getLatest returns
+// the previous summary to callers that can work with one that is behind the latest commits.
+public class GraphSummary<T> {
+
+    private final Function<Transaction, T> builder;
+    private final Map<String, Built<T>> summaries = new ConcurrentHashMap<>();     // database name -> summary
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+
+    public GraphSummary(Function<Transaction, T> builder) {
+        this.builder = builder;
+    }
+
+    // return the summary of the committed graph, or null if it is out of date or tx has uncommitted changes
+    public T get(GraphDatabaseService db, Transaction tx) {
+        Built<T> summary = latest(db, tx);
+        return ((summary != null) && (summary.txId == DataflowCache.lastCommittedTxId(db))) ? summary.value : null;
+    }
+
+    // return the last summary built for the database, even if newer transactions have been committed since, or null
+    //      if none has been built yet or tx has uncommitted changes
+    public T getLatest(GraphDatabaseService db, Transaction tx) {
+        Built<T> summary = latest(db, tx);
+        return (summary != null) ? summary.value : null;
+    }
+
+    // helper function: the last summary built for the database, starting a rebuild if it is out of date
+    private Built<T> latest(GraphDatabaseService db, Transaction tx) {
+        if (DataflowCache.hasChanges(tx)) {
+            return null;
+        }
+        Built<T> summary = summaries.get(db.databaseName());
+        if ((summary != null) && (!summary.databaseId.equals(databaseId(db)))) {
+            summary = null;
+        }
+        if (((summary == null) || (summary.txId != DataflowCache.lastCommittedTxId(db))) &&
+                building.add(db.databaseName())) {
+            Util.newDaemonThread(() -> build(db)).start();
+        }
+        return summary;
+    }
+
+    // helper function: build the summary in a transaction of its own
+    private void build(GraphDatabaseService db) {
+        try {
+            // read before the transaction starts, so that the summary has seen at least this transaction
+            long txId = DataflowCache.lastCommittedTxId(db);
+            try (Transaction tx = db.beginTx()) {
+                summaries.put(db.databaseName(), new Built<>(databaseId(db), txId, builder.apply(tx)));
+            }
+        } catch (RuntimeException e) {
+            // e.g. the database is shutting down, the next query tries again
+        } finally {
+            building.remove(db.databaseName());
+        }
+    }
+
+    // helper function: the id of the database, which differs between databases created under the same name; a
+    //      procedure is given a GraphDatabaseService of its own, so the instance does not identify the database
+    private static NamedDatabaseId databaseId(GraphDatabaseService db) {
+        return ((GraphDatabaseAPI) db).databaseId();
+    }
+
+    private static class Built<T> {
+        private final NamedDatabaseId databaseId;
+        private final long txId;
+        private final T value;
+
+        Built(NamedDatabaseId databaseId, long txId, T value) {
+            this.databaseId = databaseId;
+            this.txId = txId;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package apoc.algo;
+
+import apoc.dataflow.DataflowCache;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Reaching definitions over the intra-procedural CFG of each function.
+// A function is a set of CFG blocks connected by nextCFGBlock relationships that are not cfgInvoke or cfgReturn
+// edges. A definition is a *Destination relationship (except the influence ones, which do not change values) from
+// a variable node to the CFG block where the variable is written. The classic gen/kill equations are solved with
+// a worklist, keeping every set as a RoaringBitmap of definition indexes. A parameter, i.e. a variable of the function
+// written by a parWrite relationship, is also defined at every entry block of the function: a block entered by a
+// cfgInvoke edge, or without predecessors in the function.
+// Functions are analysed on first use, in a transaction of their own, and cached until a newer transaction has been
+// committed to the database. A query whose transaction has uncommitted changes gets an analysis of its own instead.
+public class ReachingDefinitions {
+
+    private static final RelationshipType NEXT_CFG_BLOCK = RelationshipType.withName("nextCFGBlock");
+    private static final RelationshipType PAR_WRITE = RelationshipType.withName("parWrite");
+
+    // one analysis per database
+    private static final Map<String, ReachingDefinitions> ANALYSES = new ConcurrentHashMap<>();
+
+    private final GraphDatabaseService db;
+    private final long txId;
+    private final Transaction tx;   // transaction with uncommitted changes the analysis is bound to, or null
+    private final Map<Long, FunctionDefinitions> functions = new ConcurrentHashMap<>();   // block id -> function
+
+    private ReachingDefinitions(GraphDatabaseService db, long txId, Transaction tx) {
+        this.db = db;
+        this.txId = txId;
+        this.tx = tx;
+    }
+
+    // return the analysis of the committed graph, dropping cached functions if the graph changed since, or an
+    //      analysis of the graph seen by tx if it has uncommitted changes
+    public static ReachingDefinitions forDatabase(GraphDatabaseService db, Transaction tx) {
+        if (DataflowCache.hasChanges(tx)) {
+            return new ReachingDefinitions(db, -1, tx);
+        }
+        long currentTxId = DataflowCache.lastCommittedTxId(db);
+        return ANALYSES.compute(db.databaseName(), (name, analysis) ->
+                ((analysis != null) && (analysis.db == db) && (analysis.txId == currentTxId)) ? analysis :
+                        new ReachingDefinitions(db, currentTxId, null));
+    }
+
+    // return the reaching definitions of the function that contains block
+    public FunctionDefinitions forBlock(Node block) {
+        FunctionDefinitions function = functions.get(block.getId());
+        if (function != null) {
+            return function;
+        }
+        if (tx != null) {
+            function = new FunctionDefinitions(block);
+        } else {
+            // shared functions only see committed data
+            try (Transaction readTx = db.beginTx()) {
+                function = new FunctionDefinitions(readTx.getNodeById(block.getId()));
+            } catch (NotFoundException e) {
+                // deleted by a transaction committed since, which the next query analyses again
+                return new FunctionDefinitions(block);
+            }
+        }
+        for (long blockId : function.blocks) {
+            functions.putIfAbsent(blockId, function);
+        }
+        return function;
+    }
+
+    // check whether the value of variable at block may come from a definition in the same function, either reaching
+    //      the block or made in it; variables without any definition in the function (e.g. globals) are always
+    //      accepted
+    public boolean isDefinedAt(Node variable, Node block) {
+        FunctionDefinitions function = forBlock(block);
+        return !function.definesVariable(variable.getId()) || function.reaches(variable.getId(), block.getId());
+    }
+
+    // helper function: cfgInvoke and cfgReturn edges leave the function
+    private static boolean isInterprocedural(Relationship rel) {
+        return "1".equals(rel.getProperty("cfgInvoke", null)) || "1".equals(rel.getProperty("cfgReturn", null));
+    }
+
+    // helper function: cfgInvoke edges enter the function
+    private static boolean isInvoke(Relationship rel) {
+        return "1".equals(rel.getProperty("cfgInvoke", null));
+    }
+
+    // helper function: *Source and *Destination relationships link a variable to the blocks of its function
+    private static boolean isVariableBlock(Relationship rel) {
+        String type = rel.getType().name();
+        return type.endsWith("Source") || type.endsWith("Destination");
+    }
+
+    // helper function: *Destination relationships write the variable, apart from the influence ones
+    private static boolean isDefinition(Relationship rel) {
+        String type = rel.getType().name();
+        return type.endsWith("Destination") && !type.startsWith("vi") && !type.startsWith("varInf");
+    }
+
+    // worklist solver for in[b] = entry[b] U (U out[p]), out[b] = gen[b] U (in[b] - kill[b]), with blocks numbered
+    //      from 0 and predecessors and successors given by block index
+    public static RoaringBitmap[] solve(int[][] predecessors, int[][] successors, RoaringBitmap[] entry,
+                                        RoaringBitmap[] gen, RoaringBitmap[] kill) {
+        int blockCount = gen.length;
+        RoaringBitmap[] in = new RoaringBitmap[blockCount];
+        RoaringBitmap[] out = new RoaringBitmap[blockCount];
+        int[] worklist = new int[blockCount];
+        boolean[] queued = new boolean[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            in[i] = new RoaringBitmap();
+            out[i] = gen[i].clone();
+            worklist[i] = i;
+            queued[i] = true;
+        }
+
+        // circular queue, every block is queued at most once at a time
+        int head = 0;
+        int size = blockCount;
+        while (size > 0) {
+            int block = worklist[head];
+            head = (head + 1) % blockCount;
+            size--;
+            queued[block] = false;
+
+            RoaringBitmap blockIn = entry[block].clone();
+            for (int predecessor : predecessors[block]) {
+                blockIn.or(out[predecessor]);
+            }
+            in[block] = blockIn;
+
+            RoaringBitmap blockOut = RoaringBitmap.andNot(blockIn, kill[block]);
+            blockOut.or(gen[block]);
+            if (!blockOut.equals(out[block])) {
+                out[block] = blockOut;
+                for (int successor : successors[block]) {
+                    if (!queued[successor]) {
+                        queued[successor] = true;
+                        worklist[(head + size) % blockCount] = successor;
+                        size++;
+                    }
+                }
+            }
+        }
+
+        return in;
+    }
+
+    public static class FunctionDefinitions {
+        private final long[] blocks;                // block index -> block id
+        private final LongIntHashMap blockIndex;    // block id -> block index
+        private final long[] defVariables;          // definition index -> variable id
+        private final long[] defBlocks;             // definition index -> block id
+        private final LongObjectHashMap<RoaringBitmap> variableDefs = new LongObjectHashMap<>();
+        private final RoaringBitmap[] gen;          // block index -> definitions made in the block
+        private final RoaringBitmap[] in;           // block index -> definitions reaching the block entry
+
+        FunctionDefinitions(Node entry) {
+            // collect the blocks of the function (undirected, intra-procedural edges only)
+            blockIndex = new LongIntHashMap();
+            Node[] nodes = new Node[16];
+            int blockCount = 0;
+            blockIndex.put(entry.getId(), blockCount);
+            nodes[blockCount++] = entry;
+            for (int i = 0; i < blockCount; i++) {
+                for (Relationship rel : nodes[i].getRelationships(Direction.BOTH, NEXT_CFG_BLOCK)) {
+                    if (isInterprocedural(rel)) {continue;}
+                    Node other = rel.getOtherNode(nodes[i]);
+                    if (!blockIndex.containsKey(other.getId())) {
+                        if (blockCount == nodes.length) {
+                            nodes = Arrays.copyOf(nodes, blockCount * 2);
+                        }
+                        blockIndex.put(other.getId(), blockCount);
+                        nodes[blockCount++] = other;
+                    }
+                }
+            }
+            blocks = new long[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                blocks[i] = nodes[i].getId();
+            }
+
+            // successors and predecessors of every block
+            int[][] successors = new int[blockCount][];
+            int[] predecessorCount = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                int[] next = new int[4];
+                int size = 0;
+                for (Relationship rel : nodes[i].getRelationships(Direction.OUTGOING, NEXT_CFG_BLOCK)) {
+                    if (isInterprocedural(rel)) {continue;}
+                    if (size == next.length) {
+                        next = Arrays.copyOf(next, size * 2);
+                    }
+                    int target = blockIndex.get(rel.getEndNodeId());
+                    next[size++] = target;
+                    predecessorCount[target]++;
+                }
+                successors[i] = Arrays.copyOf(next, size);
+            }
+            int[][] predecessors = new int[blockCount][];
+            for (int i = 0; i < blockCount; i++) {
+                predecessors[i] = new int[predecessorCount[i]];
+                predecessorCount[i] = 0;
+            }
+            for (int i = 0; i < blockCount; i++) {
+                for (int target : successors[i]) {
+                    predecessors[target][predecessorCount[target]++] = i;
+                }
+            }
+
+            // definitions and gen sets, and the parameters of the function
+            long[] variables = new long[16];
+            long[] defSites = new long[16];
+            int defCount = 0;
+            gen = new RoaringBitmap[blockCount];
+            LongHashSet checked = new LongHashSet();
+            LongArrayList parameters = new LongArrayList();
+            for (int i = 0; i < blockCount; i++) {
+                gen[i] = new RoaringBitmap();
+                for (Relationship rel : nodes[i].getRelationships(Direction.INCOMING)) {
+                    if (isVariableBlock(rel) && checked.add(rel.getStartNodeId()) &&
+                            rel.getStartNode().hasRelationship(Direction.INCOMING, PAR_WRITE)) {
+                        parameters.add(rel.getStartNodeId());
+                    }
+                    if (!isDefinition(rel)) {continue;}
+                    if (defCount == variables.length) {
+                        variables = Arrays.copyOf(variables, defCount * 2);
+                        defSites = Arrays.copyOf(defSites, defCount * 2);
+                    }
+                    long variable = rel.getStartNodeId();
+                    variables[defCount] = variable;
+                    defSites[defCount] = blocks[i];
+                    gen[i].add(defCount);
+                    variableDefs.getIfAbsentPut(variable, RoaringBitmap::new).add(defCount);
+                    defCount++;
+                }
+            }
+
+            // parameters are defined on entry to the function, unless the entry block defines them itself
+            RoaringBitmap[] entryDefs = new RoaringBitmap[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                entryDefs[i] = new RoaringBitmap();
+                if (!isEntry(nodes[i], predecessors[i])) {continue;}
+                for (int p = 0; p < parameters.size(); p++) {
+                    long variable = parameters.get(p);
+                    RoaringBitmap defs = variableDefs.get(variable);
+                    if ((defs != null) && RoaringBitmap.intersects(defs, gen[i])) {continue;}
+                    if (defCount == variables.length) {
+                        variables = Arrays.copyOf(variables, defCount * 2);
+                        defSites = Arrays.copyOf(defSites, defCount * 2);
+                    }
+                    variables[defCount] = variable;
+                    defSites[defCount] = blocks[i];
+                    entryDefs[i].add(defCount);
+                    variableDefs.getIfAbsentPut(variable, RoaringBitmap::new).add(defCount);
+                    defCount++;
+                }
+            }
+            defVariables = Arrays.copyOf(variables, defCount);
+            defBlocks = Arrays.copyOf(defSites, defCount);
+
+            // kill: every other definition of a variable defined in the block
+            RoaringBitmap[] kill = new RoaringBitmap[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                kill[i] = new RoaringBitmap();
+                for (int def : gen[i]) {
+                    kill[i].or(variableDefs.get(defVariables[def]));
+                }
+                kill[i].andNot(gen[i]);
+            }
+
+            in = solve(predecessors, successors, entryDefs, gen, kill);
+        }
+
+        // helper function: a block is an entry of the function if it is called or has no predecessor in it
+        private static boolean isEntry(Node block, int[] predecessors) {
+            if (predecessors.length == 0) {
+                return true;
+            }
+            for (Relationship rel : block.getRelationships(Direction.INCOMING, NEXT_CFG_BLOCK)) {
+                if (isInvoke(rel)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public long[] getBlocks() {
+            return blocks;
+        }
+
+        public long getDefinitionVariable(int def) {
+            return defVariables[def];
+        }
+
+        public long getDefinitionBlock(int def) {
+            return defBlocks[def];
+        }
+
+        public boolean definesVariable(long variableId) {
+            return variableDefs.containsKey(variableId);
+        }
+
+        // definitions reaching the entry of a block, or null if the block is not part of this function
+        public RoaringBitmap getReachingDefinitions(long blockId) {
+            int i = blockIndex.getIfAbsent(blockId, -1);
+            return (i < 0) ? null : in[i];
+        }
+
+        // check whether a definition of the variable reaches the entry of a block or is made in the block
+        public boolean reaches(long variableId, long blockId) {
+            int i = blockIndex.getIfAbsent(blockId, -1);
+            RoaringBitmap defs = variableDefs.get(variableId);
+            return (i >= 0) && (defs != null) &&
+                    (RoaringBitmap.intersects(in[i], defs) || RoaringBitmap.intersects(gen[i], defs));
+        }
+    }
+}
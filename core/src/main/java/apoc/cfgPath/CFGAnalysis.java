@@ -0,0 +1,48 @@
+package apoc.cfgPath;
+
+import apoc.algo.ReachingDefinitions;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class CFGAnalysis {
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Context
+    public Transaction tx;
+
+    public static class DefinitionResult {
+        public final Node variable;
+        public final Node definition;
+
+        public DefinitionResult(Node variable, Node definition) {
+            this.variable = variable;
+            this.definition = definition;
+        }
+    }
+
+    @Procedure
+    @Description("apoc.cfgPath.reachingDefs(cfgNode) - returns every variable definition (variable and defining CFG block) that reaches the entry of a CFG block")
+    public Stream<DefinitionResult> reachingDefs(@Name("cfgNode") Node cfgNode) {
+        ReachingDefinitions.FunctionDefinitions function = ReachingDefinitions.forDatabase(db, tx).forBlock(cfgNode);
+        RoaringBitmap reaching = function.getReachingDefinitions(cfgNode.getId());
+
+        List<DefinitionResult> results = new ArrayList<>(reaching.getCardinality());
+        for (int def : reaching) {
+            results.add(new DefinitionResult(tx.getNodeById(function.getDefinitionVariable(def)),
+                    tx.getNodeById(function.getDefinitionBlock(def))));
+        }
+        return results.stream();
+    }
+}
@@ -0,0 +1,64 @@
+package apoc.cfgPath;
+
+import org.neo4j.graphdb.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+// Interned sets of CFG nodes: equal sets get the same id, so that search states can be compared by id.
+// Each set is keyed on its sorted node ids with a cached hash.
+public class CFGNodeSets {
+
+    private final HashMap<Key, Integer> ids = new HashMap<>();
+    private final ArrayList<HashSet<Node>> sets = new ArrayList<>();
+
+    // return the id of the set, registering it if it has not been seen before
+    public int intern(HashSet<Node> nodes) {
+        long[] nodeIds = new long[nodes.size()];
+        int i = 0;
+        for (Node node : nodes) {
+            nodeIds[i++] = node.getId();
+        }
+        Arrays.sort(nodeIds);
+
+        Key key = new Key(nodeIds);
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = sets.size();
+            ids.put(key, id);
+            sets.add(nodes);
+        }
+        return id;
+    }
+
+    // the first registered set with this id
+    public HashSet<Node> get(int id) {
+        return sets.get(id);
+    }
+
+    public int size() {
+        return sets.size();
+    }
+
+    private static class Key {
+        private final long[] nodeIds;
+        private final int hash;
+
+        Key(long[] nodeIds) {
+            this.nodeIds = nodeIds;
+            this.hash = Arrays.hashCode(nodeIds);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Key && ((Key) o).hash == hash && Arrays.equals(((Key) o).nodeIds, nodeIds));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,23 +1,29 @@
 package apoc.cfgPath;
 
+import apoc.algo.CFGCondensation;
+import apoc.algo.CFGReachability;
+import apoc.algo.ReachingDefinitions;
 import apoc.path.CFGPath;
 import apoc.path.RelationshipTypeAndDirections;
 import org.neo4j.graphalgo.BasicEvaluationContext;
-import org.neo4j.graphalgo.GraphAlgoFactory;
-import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphalgo.EvaluationContext;
 import org.neo4j.graphdb.*;
 import org.neo4j.internal.helpers.collection.Pair;
-import org.neo4j.procedure.Context;
 
 import java.util.*;
 
 public class CFGValidationHelper {
 
-    @Context
-    public static GraphDatabaseService db;
+    private final GraphDatabaseService db;
+    private final Transaction tx;
+    private final EvaluationContext context;
 
-    @Context
-    public static Transaction tx;
+    // a helper is bound to the transaction of a single query or worker, and must not be shared between threads
+    public CFGValidationHelper(GraphDatabaseService db, Transaction tx) {
+        this.db = db;
+        this.tx = tx;
+        this.context = new BasicEvaluationContext(tx, db);
+    }
 
     public enum NodeLabel implements Label {
         cVariable, cReturn
@@ -28,14 +34,10 @@ public class CFGValidationHelper {
     }
 
     // helper function: return start and end CFG nodes along with the connections
-    //Here, for each given connection, if it be of type retWrite or varWrite, we add our modification
-    //to make sure that line numbers are distinct
-    //To ensure correct, sequential assignment in a linear fashion,
-    // we can keep track of the highest node so far encountered
-    // and discard any assignments that are not STRICTLY GREATER (and thus L(N) > L(N - 1), necessarily)
-    //so all nodes less than or equal can be discarded.
+    //      source CFG nodes that no definition of the source variable reaches are discarded
+    //      (see ReachingDefinitions)
     // return: a hashset of CFG nodes
-    public static HashSet<List<Node>> getConnectionNodesAll(Relationship edge,
+    public HashSet<List<Node>> getConnectionNodesAll(Relationship edge,
                                                             HashMap<String,
                                                                     CFGSetting> cfgConfig) {
 
@@ -59,34 +61,15 @@ public class CFGValidationHelper {
         Iterable<Relationship> srcEdges = edge.getStartNode().getRelationships(Direction.OUTGOING, sourceType);
         Iterable<Relationship> dstEdges = edge.getEndNode().getRelationships(Direction.OUTGOING, destinationType);
 
-        //mapping for latest assignment of a given variable
-        //we have assumed, rather naively, that exceptional conditions such as conditionals,
-        //nested blocks, loops, and switch statements have been dealt with otherwise, if not,
-        //this is a TODO for later. Race conditions from concurrency, as well as complications
-        //arising from variable scope (globals, or pointers) could be unresolved also.
-        HashMap<String, Integer> latestAssignmentLine = new HashMap<>();
-
         // create srcEdges Hashset
+        //      a source CFG node is only kept if a definition of the source variable reaches it; this follows
+        //      branches and loops of the function, and assumes that variables defined in a function are local to it
         HashSet<List<Node>> relatedNodes = new HashSet<>();
-        // OLD CODE; kept for archival purposes
-        // for (Relationship srcEdge : srcEdges) {
-        //     Node endSrcNode = srcEdge.getEndNode();
-        //     relatedNodes.add(List.of(endSrcNode, endSrcNode));
-        // }
-
+        ReachingDefinitions reachingDefinitions = ReachingDefinitions.forDatabase(db, tx);
+        Node srcVariable = edge.getStartNode();
         for (Relationship srcEdge : srcEdges) {
             Node endSrcNode = srcEdge.getEndNode();
-            String varType = (String) endSrcNode.getProperty(":TYPE");
-
-            if ("varWriteSource".equals(varType) || "retWriteDestination".equals(varType)) {
-                int lineNumber = (int) srcEdge.getProperty("LINE_NUMBER");
-
-                if (!latestAssignmentLine.containsKey(varType) || latestAssignmentLine.get(varType) < lineNumber) {
-                    latestAssignmentLine.put(varType, lineNumber);
-                    relatedNodes.add(List.of(endSrcNode, endSrcNode));
-                }
-            }
-            else {
+            if (reachingDefinitions.isDefinedAt(srcVariable, endSrcNode)) {
                 relatedNodes.add(List.of(endSrcNode, endSrcNode));
             }
         }
@@ -113,16 +96,18 @@ public class CFGValidationHelper {
 
         // check for shortest path
         if (length < 0) {
-            PathFinder<Path> algo = GraphAlgoFactory.shortestPath(
-                    new BasicEvaluationContext(tx, db),
-                    buildPathExpander("nextCFGBlock>"), (int) Integer.MAX_VALUE
-            );
+            // condensed CFG, or a search of the CFG while it is rebuilt
+            CFGCondensation condensation = CFGCondensation.forDatabase(db, tx);
+            CFGReachability reachability = CFGReachability.forThread();
+            long[] unblocked = new long[0];
 
             HashSet<List<Node>> tempSets = new HashSet<>();
             for (List<Node> relatedNode : relatedNodes) {
                 for (Relationship dstEdge : dstEdges) {
-                    Path path = algo.findSinglePath(relatedNode.get(1), dstEdge.getEndNode());
-                    if (path != null) {
+                    boolean reachable = (condensation != null) ?
+                            condensation.reachable(relatedNode.get(1).getId(), dstEdge.getEndNodeId()) :
+                            reachability.search(relatedNode.get(1), dstEdge.getEndNode(), unblocked);
+                    if (reachable) {
                         tempSets.add(List.of(relatedNode.get(0), dstEdge.getEndNode()));
                     }
                 }
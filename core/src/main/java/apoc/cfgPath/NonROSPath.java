@@ -1,8 +1,9 @@
 package apoc.cfgPath;
 
-import apoc.algo.CFGShortestPath;
+import apoc.algo.CFGCondensation;
+import apoc.algo.CFGReachability;
+import apoc.path.DataflowTraversal;
 import apoc.util.Util;
-import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphdb.*;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Description;
@@ -19,6 +20,12 @@ public class NonROSPath {
     @Context
     public Transaction tx;
 
+    // helper function: CFG helper bound to the transaction of this query
+    //      (procedure classes cannot hold state, so a helper is created for each use)
+    private CFGValidationHelper cfgHelper() {
+        return new CFGValidationHelper(db, tx);
+    }
+
     @UserFunction
     @Description("apoc.cfgPath.nonRosFindPaths(start, [settings])")
     public List<Path> nonRosFindPaths(@Name("start") Object start, @Name("config") Map<String,Object> config) {
@@ -146,118 +153,11 @@ public class NonROSPath {
 
         }
 
-        BasicCandidatePath foundCandidatePath = null;
-        ArrayList<ArrayList<Relationship>> retCovered = new ArrayList<>();
-        HashSet<Relationship> visitedEdge = new HashSet<>();
-
-        int pathLen = -1;
-        boolean foundPath = false;
-
         // process each candidate path and verify that it is valid before proceeding the search
-        while (!queuePath.isEmpty()) {
-            curPath = queuePath.remove();
-
-            // If we already found something, check if we want to proceed by checking return edge
-            // combinations
-            if ((allShortestPath) && (foundCandidatePath != null)) {
-                visitedEdges.addAll(visitedEdge);
-                if ((!curPath.compareRetNodes(foundCandidatePath))) {
-                    continue;
-                } else {
-                    if (retCovered.contains(curPath.retRel)) {
-                        continue;
-                    }
-                }
-            }
-
-            int curLen = curPath.getPathSize();
-            if (retCovered.isEmpty() && allShortestPath && foundPath && curLen > pathLen) {
-                // if path has been found and current path is longer than found path, can break
-                break;
-            }
-
-            if (allShortestPath && curLen > pathLen) {
-                // add all relationships found at previous path length to visitedRels
-                visitedEdges.addAll(visitedEdge);
-                visitedEdge = new HashSet<Relationship>();
-            }
-            pathLen = curLen;
-
-            // Make sure it passes the CFG test before proceeding to look further
-            if ((!cfgCheck) || getCFGPath(curPath, cfgConfig, backward)) {
-
-                // Only add to visitedEdges if we are looking for shortest path
-                if (allShortestPath) {visitedEdge.add(curPath.getLastEdge()); }
-
-                // Add to return path only if the following conditions are met:
-                //      - Matches last edge type of relationship
-                //      - If has end node/end edge, also needs to match that
-                Node compNode = backward ? curPath.getLastEdge().getStartNode() : curPath.getLastEdge().getEndNode();
-                if ((extension.isEndIndex(curPath.getPathIndex())) &&
-                        ((end == null) || (compNode.equals(end)))) {
-                    // need to also pass CFG test if there is an end edge
-                    if (endEdge != null) {
-                        BasicCandidatePath tempPath = new BasicCandidatePath(curPath, endEdge,
-                                curPath.pathIndex, backward);
-                        if ((!cfgCheck) || getCFGPath(tempPath, cfgConfig, backward)) {
-                            returnPaths.add(tempPath);
-                            if (allShortestPath) {
-                                foundCandidatePath = curPath;
-                                retCovered.addAll(tempPath.getRetComp());
-                                foundPath = true;
-                                continue;
-                            }
-                        }
-                        // otherwise we can just add to return path list
-                    } else {
-                        returnPaths.add(curPath);
-                        if (allShortestPath) {
-                            foundCandidatePath = curPath;
-                            retCovered.addAll(curPath.getRetComp());
-                            foundPath = true;
-                            continue;
-                        }
-                    }
-                }
-
-                // Attempt to get next possible edge
-                int index = extension.nextIndex(curPath.getLastEdge().getType(), curPath.getPathIndex());
-                if (index <= extension.lastIndex) {
-                    curType = extension.constructTypes(index);
-                    int i = 0;
-                    for (ArrayList<RelationshipType> curT : curType) {
-                        Node curNode = backward ? curPath.getLastEdge().getStartNode() :
-                                curPath.getLastEdge().getEndNode();
-                        Direction dir = backward ? Direction.INCOMING : Direction.OUTGOING;
-                        nextRels = curNode.getRelationships(dir,
-                                curT.toArray(RelationshipType[]::new));
-                        for (Relationship nextRel : nextRels) {
-                            Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
-                            if ((acceptedNodes != null) &&
-                                    (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
-                                continue;
-                            }
-
-                            // add to candidate path if only the following conditions are met
-                            //      - if all shortestPath: visited edge does not contain nextRel
-                            //      - if look for all path, then current path does not contain nextRel
-                            boolean addPath = ((allShortestPath) && (!visitedEdges.contains(nextRel))) ||
-                                    ((!allShortestPath) && (!curPath.getPath().contains(nextRel)));
-
-                            if (addPath) {
-                                BasicCandidatePath newCandidatePath = new BasicCandidatePath(curPath, nextRel,
-                                        index+i, backward);
-                                queuePath.add(newCandidatePath);
-                            }
-                        }
-                        i += 1;
-                    }
-
-                }
-
-            }
-
-        }
+        PatternStrategy strategy = new PatternStrategy(extension, acceptedNodes, backward, !allShortestPath, end,
+                endEdge, (cfgCheck) ? path -> getCFGPath(path, cfgConfig, backward) : null);
+        new DataflowTraversal<>(strategy, (allShortestPath) ? DataflowTraversal.Mode.COVERED :
+                DataflowTraversal.Mode.ALL, true, null).run(queuePath, visitedEdges, returnPaths);
 
         // Convert array to relationships to actual paths before returning
         ArrayList<Path> paths = new ArrayList<>();
@@ -274,7 +174,7 @@ public class NonROSPath {
 
     // helper function: adding destination CFG nodes to first edge in path
     private void updateFirstCFGNodes(BasicCandidatePath path, HashMap<String, CFGSetting> config, boolean backward) {
-        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(path.getLastEdge(), config);
+        HashSet<List<Node>> endCFGs = cfgHelper().getConnectionNodesAll(path.getLastEdge(), config);
         HashSet<Node> endNodes = new HashSet<>();
         for (List<Node> endCFG : endCFGs) {
             endNodes.add(backward ? endCFG.get(0) : endCFG.get(1));
@@ -328,14 +228,16 @@ public class NonROSPath {
         Relationship lastEdge = path.getLastEdge();
         HashSet<Node> prevCFGs = path.getValidCFGs(); // nodes of subpath
 
-        // create CFG shortest path object
-        CFGShortestPath shortestPath = new CFGShortestPath(
-                new BasicEvaluationContext(tx, db),
-                (int) Integer.MAX_VALUE,
-                CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
+        // pooled reachability engine of this thread
+        CFGReachability reachability = CFGReachability.forThread();
+
+        // condensed CFG, loops are collapsed so that reachability is a search on a DAG
+        //      (null while it is rebuilt, every pair is then searched on the CFG)
+        CFGCondensation condensation = CFGCondensation.forDatabase(db, tx);
+        long[] overwritingBlocks = CFGCondensation.overwritingBlocks(condEdge);
 
         // get the corresponding CFG node for last edge in path
-        HashSet<List<Node>> curCFGs = CFGValidationHelper.getConnectionNodesAll(lastEdge, config); // nodes of new edge
+        HashSet<List<Node>> curCFGs = cfgHelper().getConnectionNodesAll(lastEdge, config); // nodes of new edge
         HashSet<Node> acceptedNewCFG = new HashSet<>();
 
         // attempt to find a directed path between CFG nodes from path up to second last edge to last edge
@@ -344,8 +246,15 @@ public class NonROSPath {
                 // Node curNode = prevCFG.get(0);
                 Node startCFG = (backward) ? curCFG.get(1) : prevCFG;
                 Node dstNode = (backward) ? prevCFG : curCFG.get(0);
-                Path cfgPath = shortestPath.findSinglePath(startCFG, dstNode, condEdge);
-                if (cfgPath != null) { // if found, then we add to accepted CFG nodes
+                // unreachable in the condensed CFG means unreachable with filtering as well; the filtered search on
+                //      the original CFG is only needed if an overwriting block lies between the two nodes
+                if ((condensation != null) && !condensation.reachable(startCFG.getId(), dstNode.getId())) {
+                    continue;
+                }
+                boolean cfgPath = ((condensation != null) &&
+                        !condensation.anyBetween(startCFG.getId(), dstNode.getId(), overwritingBlocks)) ||
+                        reachability.reachable(startCFG, dstNode, condEdge);
+                if (cfgPath) { // if found, then we add to accepted CFG nodes
                     acceptedNewCFG.add(backward ? curCFG.get(0) : curCFG.get(1));
                 }
             }
@@ -0,0 +1,122 @@
+package apoc.cfgPath;
+
+import apoc.path.DataflowTraversal;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Traversal strategy over BasicCandidatePath following a relationship sequence (RelExtension), shared by the
+// rosFindPaths and nonRosFindPaths searches.
+public class PatternStrategy implements DataflowTraversal.Strategy<BasicCandidatePath> {
+
+    private final RelExtension extension;
+    private final HashSet<Label> acceptedNodes;
+    private final boolean backward;
+    private final boolean simplePaths;
+    private final Node end;
+    private final Relationship endEdge;
+    private final Predicate<BasicCandidatePath> validator;
+
+    // acceptedNodes: labels a path may go through, or null for any
+    // simplePaths: whether a relationship may only appear once in a path (when all paths are searched)
+    // end, endEdge: where a path has to end, null for any node matching the end of the relationship sequence
+    // validator: CFG check of a candidate path, or null if no check is performed
+    public PatternStrategy(RelExtension extension, HashSet<Label> acceptedNodes, boolean backward,
+                           boolean simplePaths, Node end, Relationship endEdge,
+                           Predicate<BasicCandidatePath> validator) {
+        this.extension = extension;
+        this.acceptedNodes = acceptedNodes;
+        this.backward = backward;
+        this.simplePaths = simplePaths;
+        this.end = end;
+        this.endEdge = endEdge;
+        this.validator = validator;
+    }
+
+    @Override
+    public boolean isValid(BasicCandidatePath path) {
+        return (validator == null) || validator.test(path);
+    }
+
+    // Add to return path only if the following conditions are met:
+    //      - Matches last edge type of relationship
+    //      - If has end node/end edge, also needs to match that
+    @Override
+    public BasicCandidatePath complete(BasicCandidatePath path) {
+        Node compNode = backward ? path.getLastEdge().getStartNode() : path.getLastEdge().getEndNode();
+        if ((!extension.isEndIndex(path.getPathIndex())) || ((end != null) && (!compNode.equals(end)))) {
+            return null;
+        }
+
+        // need to also pass CFG test if there is an end edge
+        if (endEdge != null) {
+            BasicCandidatePath tempPath = new BasicCandidatePath(path, endEdge, path.pathIndex, backward);
+            return isValid(tempPath) ? tempPath : null;
+        }
+        return path;
+    }
+
+    @Override
+    public void expand(BasicCandidatePath path, Predicate<Relationship> admissible,
+                       Consumer<BasicCandidatePath> queue) {
+        // Attempt to get next possible edge
+        int index = extension.nextIndex(path.getLastEdge().getType(), path.getPathIndex());
+        if (index > extension.lastIndex) {
+            return;
+        }
+
+        ArrayList<ArrayList<RelationshipType>> curType = extension.constructTypes(index);
+        int i = 0;
+        for (ArrayList<RelationshipType> curT : curType) {
+            Node curNode = backward ? path.getLastEdge().getStartNode() : path.getLastEdge().getEndNode();
+            Direction dir = backward ? Direction.INCOMING : Direction.OUTGOING;
+            Iterable<Relationship> nextRels = curNode.getRelationships(dir, curT.toArray(RelationshipType[]::new));
+            for (Relationship nextRel : nextRels) {
+                Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
+                if ((acceptedNodes != null) &&
+                        (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
+                    continue;
+                }
+
+                // when looking for all paths, the current path must not contain nextRel already
+                if (admissible.test(nextRel) && ((!simplePaths) || (!path.getPath().contains(nextRel)))) {
+                    queue.accept(new BasicCandidatePath(path, nextRel, index + i, backward));
+                }
+            }
+            i += 1;
+        }
+    }
+
+    @Override
+    public Relationship getLastRel(BasicCandidatePath path) {
+        return path.getLastEdge();
+    }
+
+    @Override
+    public int getPathSize(BasicCandidatePath path) {
+        return path.getPathSize();
+    }
+
+    @Override
+    public boolean compareRetNodes(BasicCandidatePath path, BasicCandidatePath found) {
+        return path.compareRetNodes(found);
+    }
+
+    @Override
+    public List<ArrayList<Relationship>> getRetComp(BasicCandidatePath path) {
+        return path.getRetComp();
+    }
+
+    @Override
+    public List<Relationship> getRetRel(BasicCandidatePath path) {
+        return path.getRetRel();
+    }
+}
@@ -1,8 +1,16 @@
 package apoc.cfgPath;
 
-import apoc.algo.CFGShortestPath;
+import apoc.algo.CFGCondensation;
+import apoc.algo.CFGReachability;
+import apoc.dataflow.CostModel;
+import apoc.dataflow.DataflowCache;
+import apoc.dataflow.PathOutput;
+import apoc.dataflow.SearchBudget;
+import apoc.dataflow.SearchDirection;
+import apoc.path.DataflowTraversal;
+import apoc.result.BoundedPathsResult;
 import apoc.util.Util;
-import org.neo4j.graphalgo.BasicEvaluationContext;
+import org.neo4j.graphalgo.impl.util.PathImpl;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.Path;
@@ -10,9 +18,12 @@ import org.neo4j.graphdb.Transaction;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.TerminationGuard;
 import org.neo4j.procedure.UserFunction;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 public class ROSPath {
 
@@ -22,9 +33,31 @@ public class ROSPath {
     @Context
     public Transaction tx;
 
+    @Context
+    public TerminationGuard guard;
+
+    // helper function: CFG helper bound to the transaction of this query
+    //      (procedure classes cannot hold state, so a helper is created for each use)
+    private CFGValidationHelper cfgHelper() {
+        return new CFGValidationHelper(db, tx);
+    }
+
     @UserFunction
     @Description("apoc.cfgPath.rosFindPaths(start, [settings])")
     public List<Path> rosFindPaths(@Name("start") Object start, @Name("config") Map<String,Object> config) {
+        return rosFindPaths(start, config, new SearchBudget(config, guard));
+    }
+
+    @Procedure
+    @Description("apoc.cfgPath.rosFindPathsBounded(start, [settings]) - same as rosFindPaths, also reports whether the search was truncated by its limits")
+    public Stream<BoundedPathsResult> rosFindPathsBounded(@Name("start") Object start,
+                                                          @Name("config") Map<String,Object> config) {
+        SearchBudget budget = new SearchBudget(config, guard);
+        List<Path> paths = rosFindPaths(start, config, budget);
+        return Stream.of(PathOutput.result(paths, config, budget));
+    }
+
+    public List<Path> rosFindPaths(Object start, Map<String,Object> config, SearchBudget budget) {
         // configuration graph variables
         Node startNode = null;
         Relationship startEdge = null;
@@ -48,15 +81,26 @@ public class ROSPath {
         //    - relSeq: relationship pattern in return path (default: null)
         //    - repeat: whether or not above relSequence repeats (default: false)
         //    - backward: find path with a backward search (default: false)
+        //    - direction: "forward", "backward" or "auto" to pick the cheaper search from the degrees at both ends,
+        //          see SearchDirection (default: as set by backward)
         //    - shortest: whether or not we return shortest path or all paths (default: false)
         //    - filter: accepted nodes in our shortest path (default: null)
         //    - config: describes how the source and destination CFG blocks relate to each other
         //          for a particular type of relation
         //    - isStartEdgeValid: is first edge consider a valid path (default: false)
+        //    - cache: whether or not to reuse results of previous identical queries (default: false)
+        //    - maxDepth, maxResults, timeoutMs, maxExpansions: search limits, see SearchBudget (default: unlimited)
+        //    - order, weights, lineWeight, cfgWeight, limit: best-first search in order of cost, see CostModel
+        //          (default: breadth first)
         boolean cfgCheck = Util.toBoolean(config.getOrDefault("cfg", true));
         String relSequence = (String) config.getOrDefault("relSeq", null);
         boolean repeat = Util.toBoolean(config.getOrDefault("repeat", false));
-        boolean backward = Util.toBoolean(config.getOrDefault("backward", false));
+        String direction = SearchDirection.parse(config,
+                Util.toBoolean(config.getOrDefault("backward", false)));
+        boolean backward = direction.equals(SearchDirection.BACKWARD);
+        if (direction.equals(SearchDirection.AUTO)) {
+            backward = chooseBackward(startNode, startEdge, endNode, endEdge, relSequence, repeat, budget);
+        }
         boolean allShortestPath = Util.toBoolean(config.getOrDefault("shortest", false));
         List<Map<String, Object>> cfgConfigurationList =
                 (List<Map<String,Object>>) config.getOrDefault("config", null);
@@ -64,16 +108,38 @@ public class ROSPath {
         RelExtension extension = new RelExtension(relSequence, repeat, backward);
         HashSet<Label> acceptedNodes = filterNodes((String) config.getOrDefault("filter", null));
         boolean isStartEdgeValid = Util.toBoolean(config.getOrDefault("isStartEdgeValid", false));
+        boolean useCache = Util.toBoolean(config.getOrDefault("cache", false)) && !DataflowCache.hasChanges(tx);
+        CostModel cost = CostModel.from(config);
+
+        // reuse the result of an identical query if the graph did not change since
+        DataflowCache cache = null;
+        DataflowCache.Key cacheKey = null;
+        long txId = -1;
+        if (useCache) {
+            cache = DataflowCache.forDatabase(db);
+            cacheKey = DataflowCache.key("apoc.cfgPath.rosFindPaths", List.of(start), config);
+            txId = DataflowCache.lastCommittedTxId(db);
+            List<Path> cached = cache.get(cacheKey, tx, txId);
+            if (cached != null) {
+                return cached;
+            }
+        }
 
+        List<Path> paths;
         if (backward) {
-            return findPath(endNode, startNode, endEdge, startEdge, cfgConfig, extension, allShortestPath, cfgCheck,
-                    acceptedNodes, backward, isStartEdgeValid);
+            paths = findPath(endNode, startNode, endEdge, startEdge, cfgConfig, extension, allShortestPath, cfgCheck,
+                    acceptedNodes, backward, isStartEdgeValid, budget, cost);
         } else {
-            return findPath(startNode, endNode, startEdge, endEdge, cfgConfig, extension, allShortestPath, cfgCheck,
-                    acceptedNodes, backward, isStartEdgeValid);
+            paths = findPath(startNode, endNode, startEdge, endEdge, cfgConfig, extension, allShortestPath, cfgCheck,
+                    acceptedNodes, backward, isStartEdgeValid, budget, cost);
         }
 
+        // truncated results depend on the limits and timing of this particular run, so they are not cached
+        if (useCache && (paths != null) && (!budget.isTruncated())) {
+            cache.put(cacheKey, paths, txId);
+        }
 
+        return paths;
 
     }
 
@@ -81,7 +147,8 @@ public class ROSPath {
     public List<Path> findPath(Node startNode, Node endNode, Relationship startEdge, Relationship endEdge,
                                HashMap<String, CFGSetting> cfgConfig, RelExtension extension,
                                boolean allShortestPath, boolean cfgCheck, HashSet<Label> acceptedNodes,
-                               boolean backward, boolean isStartEdgeValid) {
+                               boolean backward, boolean isStartEdgeValid, SearchBudget budget,
+                               CostModel cost) {
 
         // variables
         List<BasicCandidatePath> returnPaths = new ArrayList<>();
@@ -149,135 +216,281 @@ public class ROSPath {
 
         }
 
-        BasicCandidatePath foundCandidatePath = null;
-        ArrayList<ArrayList<Relationship>> retCovered = new ArrayList<>();
-        HashSet<Relationship> visitedEdge = new HashSet<>();
+        // cheapest paths first, whether all or only the shortest paths were asked for
+        if (cost != null) {
+            PatternStrategy strategy = new PatternStrategy(extension, acceptedNodes, backward, true, end, endEdge,
+                    (cfgCheck) ? path -> getCFGPath(path, cfgConfig, backward) : null);
+            new DataflowTraversal<>(strategy, cost, budget).run(queuePath, visitedEdges, returnPaths);
+            return buildPaths(returnPaths, backward);
+        }
 
-        int pathLen = -1;
-        boolean foundPath = false;
+        // when looking for all paths, candidates that share their future are only expanded once
+        if (!allShortestPath) {
+            return findAllPaths(queuePath, returnPaths, end, endEdge, cfgConfig, extension, cfgCheck, acceptedNodes,
+                    backward, budget);
+        }
 
         // process each candidate path and verify that it is valid before proceeding the search
-        while (!queuePath.isEmpty()) {
-            curPath = queuePath.remove();
-
-            // If we already found something, check if we want to proceed by checking return edge
-            // combinations
-            if ((allShortestPath) && (foundCandidatePath != null)) {
-                visitedEdges.addAll(visitedEdge);
-                if ((!curPath.compareRetNodes(foundCandidatePath))) {
-                    continue;
-                } else {
-                    if (retCovered.contains(curPath.retRel)) {
-                        continue;
-                    }
-                }
+        PatternStrategy strategy = new PatternStrategy(extension, acceptedNodes, backward, false, end, endEdge,
+                (cfgCheck) ? path -> getCFGPath(path, cfgConfig, backward) : null);
+        new DataflowTraversal<>(strategy, DataflowTraversal.Mode.COVERED, true, budget)
+                .run(queuePath, visitedEdges, returnPaths);
+
+        return buildPaths(returnPaths, backward);
+    }
+
+    // helper function: whether a backward search is expected to be cheaper than a forward one, recorded in the
+    //      profile of the search; only a search with an end edge can run backward, because the first step of a
+    //      backward search from an end node follows the outgoing relationships of that node (as with backward:true)
+    //      and would not find the paths of the forward search
+    private boolean chooseBackward(Node startNode, Relationship startEdge, Node endNode, Relationship endEdge,
+                                   String relSequence, boolean repeat, SearchBudget budget) {
+        RelExtension forward = new RelExtension(relSequence, repeat, false);
+        RelExtension backward = new RelExtension(relSequence, repeat, true);
+
+        // the first step follows the outgoing relationships of a start node, or continues from a start edge
+        SearchDirection.Side forwardSide = new SearchDirection.Side(
+                (startNode != null) ? startNode : startEdge.getEndNode(), Direction.OUTGOING,
+                firstTypes(forward), Direction.OUTGOING, allTypes(forward));
+        SearchDirection.Side backwardSide = new SearchDirection.Side(
+                (endEdge != null) ? endEdge.getStartNode() : null, Direction.INCOMING,
+                firstTypes(backward), Direction.INCOMING, allTypes(backward));
+
+        SearchDirection choice = SearchDirection.choose(forwardSide, backwardSide);
+        choice.record(budget);
+        return choice.isBackward();
+    }
+
+    private static List<RelationshipType> firstTypes(RelExtension extension) {
+        List<RelationshipType> types = new ArrayList<>();
+        for (ArrayList<RelationshipType> curT : extension.constructTypes(0)) {
+            types.addAll(curT);
+        }
+        return types;
+    }
+
+    private static List<RelationshipType> allTypes(RelExtension extension) {
+        LinkedHashSet<RelationshipType> types = new LinkedHashSet<>();
+        for (RelExtension.RelationSequence sequence : extension.relSequence) {
+            types.addAll(sequence.relationType);
+        }
+        return new ArrayList<>(types);
+    }
+
+    // helper function: convert candidate paths to actual paths before returning
+    private List<Path> buildPaths(List<BasicCandidatePath> returnPaths, boolean backward) {
+        ArrayList<Path> paths = new ArrayList<>();
+        for (BasicCandidatePath path : returnPaths) {
+            if (backward) {
+                paths.add(path.reversebuildPath());
+            } else {
+                paths.add(path.buildPath());
             }
+        }
+
+        return paths;
+    }
+
+    // state of the all-path search: two candidate paths with the same key pass the same CFG checks and can be
+    //      extended by the same relationships, so they only differ in the relationships already used
+    private static class StateKey {
+        private final long condRelId;   // relationship whose CFG nodes are checked, if it is not the last one
+        private final long relId;
+        private final int pathIndex;
+        private final int cfgSetId;     // interned CFG nodes validated up to the previous relationship
+        private final int hash;
+
+        StateKey(long condRelId, long relId, int pathIndex, int cfgSetId) {
+            this.condRelId = condRelId;
+            this.relId = relId;
+            this.pathIndex = pathIndex;
+            this.cfgSetId = cfgSetId;
+            this.hash = Objects.hash(condRelId, relId, pathIndex, cfgSetId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {return true;}
+            if (!(o instanceof StateKey)) {return false;}
+            StateKey other = (StateKey) o;
+            return (relId == other.relId) && (pathIndex == other.pathIndex) && (cfgSetId == other.cfgSetId) &&
+                    (condRelId == other.condRelId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class SearchState {
+        private final Relationship rel;
+        private final ArrayList<SearchState> next = new ArrayList<>();
+        private boolean valid = false;      // passes the CFG check
+        private boolean accepted = false;   // a path ending in this state is returned
 
-            int curLen = curPath.getPathSize();
-            if (retCovered.isEmpty() && allShortestPath && foundPath && curLen > pathLen) {
-                // if path has been found and current path is longer than found path, can break
+        SearchState(Relationship rel) {
+            this.rel = rel;
+        }
+    }
+
+    // helper function: find all paths (shortest: false)
+    //      candidate paths are first merged into search states, each of which is expanded once; the paths are then
+    //      enumerated from the state graph, keeping relationships unique within a path
+    private List<Path> findAllPaths(Queue<BasicCandidatePath> queuePath, List<BasicCandidatePath> startPaths,
+                                    Node end, Relationship endEdge, HashMap<String, CFGSetting> cfgConfig,
+                                    RelExtension extension, boolean cfgCheck, HashSet<Label> acceptedNodes,
+                                    boolean backward, SearchBudget budget) {
+
+        CFGNodeSets cfgSets = new CFGNodeSets();
+        HashMap<StateKey, SearchState> states = new HashMap<>();
+        ArrayList<SearchState> roots = new ArrayList<>();
+        Queue<SearchState> queueState = new LinkedList<>();
+        HashMap<SearchState, BasicCandidatePath> representatives = new HashMap<>();
+
+        for (BasicCandidatePath firstPath : queuePath) {
+            StateKey key = new StateKey(-1, firstPath.getLastEdge().getId(), firstPath.getPathIndex(),
+                    cfgSets.intern(firstPath.getValidCFGs()));
+            SearchState state = states.get(key);
+            if (state == null) {
+                state = new SearchState(firstPath.getLastEdge());
+                states.put(key, state);
+                representatives.put(state, firstPath);
+                queueState.add(state);
+            }
+            roots.add(state);
+        }
+
+        // expand every search state once
+        while (!queueState.isEmpty()) {
+            // stop once a limit is hit or the query has been terminated
+            if (!budget.next(0)) {
                 break;
             }
+            SearchState state = queueState.remove();
+            BasicCandidatePath curPath = representatives.remove(state);
 
-            if (allShortestPath && curLen > pathLen) {
-                // add all relationships found at previous path length to visitedRels
-                visitedEdges.addAll(visitedEdge);
-                visitedEdge = new HashSet<Relationship>();
+            if (cfgCheck && !getCFGPath(curPath, cfgConfig, backward)) {
+                continue;
             }
-            pathLen = curLen;
-
-            // Make sure it passes the CFG test before proceeding to look further
-            if ((!cfgCheck) || getCFGPath(curPath, cfgConfig, backward)) {
-
-                // Only add to visitedEdges if we are looking for shortest path
-                if (allShortestPath) {visitedEdge.add(curPath.getLastEdge()); }
-
-                // Add to return path only if the following conditions are met:
-                //      - Matches last edge type of relationship
-                //      - If has end node/end edge, also needs to match that
-                Node compNode = backward ? curPath.getLastEdge().getStartNode() : curPath.getLastEdge().getEndNode();
-                if ((extension.isEndIndex(curPath.getPathIndex())) &&
-                        ((end == null) || (compNode.equals(end)))) {
-                    // need to also pass CFG test if there is an end edge
-                    if (endEdge != null) {
-                        BasicCandidatePath tempPath = new BasicCandidatePath(curPath, endEdge,
-                                curPath.pathIndex, backward);
-                        if ((!cfgCheck) || getCFGPath(tempPath, cfgConfig, backward)) {
-                            returnPaths.add(tempPath);
-                            if (allShortestPath) {
-                                foundCandidatePath = curPath;
-                                retCovered.addAll(tempPath.getRetComp());
-                                foundPath = true;
-                                continue;
-                            }
-                        }
-                    // otherwise we can just add to return path list
-                    } else {
-                        returnPaths.add(curPath);
-                        if (allShortestPath) {
-                            foundCandidatePath = curPath;
-                            retCovered.addAll(curPath.getRetComp());
-                            foundPath = true;
-                            continue;
-                        }
-                    }
+            state.valid = true;
+
+            Node compNode = backward ? curPath.getLastEdge().getStartNode() : curPath.getLastEdge().getEndNode();
+            if ((extension.isEndIndex(curPath.getPathIndex())) && ((end == null) || (compNode.equals(end)))) {
+                // need to also pass CFG test if there is an end edge
+                if (endEdge != null) {
+                    BasicCandidatePath tempPath = new BasicCandidatePath(curPath, endEdge,
+                            curPath.pathIndex, backward);
+                    state.accepted = (!cfgCheck) || getCFGPath(tempPath, cfgConfig, backward);
+                } else {
+                    state.accepted = true;
                 }
+            }
 
-                // Attempt to get next possible edge
-                int index = extension.nextIndex(curPath.getLastEdge().getType(), curPath.getPathIndex());
-                if (index <= extension.lastIndex) {
-                    curType = extension.constructTypes(index);
-                    int i = 0;
-                    for (ArrayList<RelationshipType> curT : curType) {
-                        Node curNode = backward ? curPath.getLastEdge().getStartNode() :
-                                curPath.getLastEdge().getEndNode();
-                        Direction dir = backward ? Direction.INCOMING : Direction.OUTGOING;
-                        nextRels = curNode.getRelationships(dir,
-                                curT.toArray(RelationshipType[]::new));
-                        for (Relationship nextRel : nextRels) {
-                            Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
-                            if ((acceptedNodes != null) &&
-                                    (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
-                                continue;
-                            }
-
-                            // add to candidate path if only the following conditions are met
-                            //      - if all shortestPath: visited edge does not contain nextRel
-                            //      - if look for all path, then current path does not contain nextRel
-                            boolean addPath = ((allShortestPath) && (!visitedEdges.contains(nextRel))) ||
-                                    ((!allShortestPath) && (!curPath.getPath().contains(nextRel)));
-
-                            if (addPath) {
-                                BasicCandidatePath newCandidatePath = new BasicCandidatePath(curPath, nextRel,
-                                        index+i, backward);
-                                queuePath.add(newCandidatePath);
-                            }
-                        }
-                        i += 1;
+            int index = extension.nextIndex(curPath.getLastEdge().getType(), curPath.getPathIndex());
+            if (index > extension.lastIndex) {
+                continue;
+            }
+            int cfgSetId = cfgSets.intern(curPath.getValidCFGs());
+            long condRelId = backward ? curPath.getLastEdge().getId() : -2;
+            ArrayList<ArrayList<RelationshipType>> curType = extension.constructTypes(index);
+            int i = 0;
+            for (ArrayList<RelationshipType> curT : curType) {
+                Node curNode = backward ? curPath.getLastEdge().getStartNode() : curPath.getLastEdge().getEndNode();
+                Direction dir = backward ? Direction.INCOMING : Direction.OUTGOING;
+                for (Relationship nextRel : curNode.getRelationships(dir, curT.toArray(RelationshipType[]::new))) {
+                    Node nextNode = (backward) ? nextRel.getStartNode() : nextRel.getEndNode();
+                    if ((acceptedNodes != null) &&
+                            (!acceptedNodes.contains(nextNode.getLabels().iterator().next()))) {
+                        continue;
                     }
 
+                    StateKey key = new StateKey(condRelId, nextRel.getId(), index + i, cfgSetId);
+                    SearchState nextState = states.get(key);
+                    if (nextState == null) {
+                        nextState = new SearchState(nextRel);
+                        states.put(key, nextState);
+                        representatives.put(nextState,
+                                new BasicCandidatePath(curPath, nextRel, index + i, backward));
+                        queueState.add(nextState);
+                    }
+                    state.next.add(nextState);
                 }
-
+                i += 1;
             }
-
         }
 
-        // Convert array to relationships to actual paths before returning
+        // enumerate the paths of the state graph
         ArrayList<Path> paths = new ArrayList<>();
-        for (BasicCandidatePath path : returnPaths) {
-            if (backward) {
-                paths.add(path.reversebuildPath());
-            } else {
-                paths.add(path.buildPath());
+        for (BasicCandidatePath startPath : startPaths) {
+            paths.add(backward ? startPath.reversebuildPath() : startPath.buildPath());
+        }
+        ArrayList<Relationship> curRels = new ArrayList<>();
+        HashSet<Relationship> usedRels = new HashSet<>();
+        for (SearchState root : roots) {
+            if (!enumeratePaths(root, curRels, usedRels, endEdge, backward, budget, paths)) {
+                break;
             }
         }
 
+        // same order as the breadth first search
+        paths.sort(Comparator.comparingInt(Path::length));
         return paths;
     }
 
+    // helper function: depth first enumeration of the paths starting at state
+    //      returns false once the search has to stop
+    private boolean enumeratePaths(SearchState state, ArrayList<Relationship> curRels, HashSet<Relationship> usedRels,
+                                   Relationship endEdge, boolean backward, SearchBudget budget, List<Path> paths) {
+        if (!state.valid) {
+            return true;
+        }
+        if (!budget.next(paths.size())) {
+            return false;
+        }
+
+        curRels.add(state.rel);
+        usedRels.add(state.rel);
+        boolean proceed = true;
+
+        if (state.accepted) {
+            paths.add(buildPath(curRels, endEdge, backward));
+        }
+
+        if (budget.canExtend(curRels.size())) {
+            for (SearchState nextState : state.next) {
+                if (!usedRels.contains(nextState.rel) &&
+                        !enumeratePaths(nextState, curRels, usedRels, endEdge, backward, budget, paths)) {
+                    proceed = false;
+                    break;
+                }
+            }
+        }
+
+        usedRels.remove(state.rel);
+        curRels.remove(curRels.size() - 1);
+        return proceed;
+    }
+
+    // helper function: build a path from the relationships in search order
+    private Path buildPath(List<Relationship> rels, Relationship endEdge, boolean backward) {
+        ArrayList<Relationship> pathRels = new ArrayList<>(rels);
+        if (endEdge != null) {
+            pathRels.add(endEdge);
+        }
+        if (backward) {
+            Collections.reverse(pathRels);
+        }
+        PathImpl.Builder builder = new PathImpl.Builder(pathRels.get(0).getStartNode());
+        for (Relationship rel : pathRels) {
+            builder = builder.push(rel);
+        }
+        return builder.build();
+    }
+
     // helper function: adding destination CFG nodes to first edge in path
     private void updateFirstCFGNodes(BasicCandidatePath path, HashMap<String, CFGSetting> config, boolean backward) {
-        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(path.getLastEdge(), config);
+        HashSet<List<Node>> endCFGs = cfgHelper().getConnectionNodesAll(path.getLastEdge(), config);
         HashSet<Node> endNodes = new HashSet<>();
         for (List<Node> endCFG : endCFGs) {
             endNodes.add(backward ? endCFG.get(0) : endCFG.get(1));
@@ -286,7 +499,7 @@ public class ROSPath {
     }
 
     // helper function: parse how the source and destination CFG nodes relate to each other
-    private HashMap<String, CFGSetting> parseCFGConfiguration(List<Map<String, Object>> cfgConfigList) {
+    public static HashMap<String, CFGSetting> parseCFGConfiguration(List<Map<String, Object>> cfgConfigList) {
         HashMap<String, CFGSetting> cfgConfig = new HashMap<>();
 
         if (cfgConfigList == null) {
@@ -331,14 +544,16 @@ public class ROSPath {
         Relationship lastEdge = path.getLastEdge();
         HashSet<Node> prevCFGs = path.getValidCFGs(); // nodes of subpath
 
-        // create CFG shortest path object
-        CFGShortestPath shortestPath = new CFGShortestPath(
-                new BasicEvaluationContext(tx, db),
-                (int) Integer.MAX_VALUE,
-                CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
+        // pooled reachability engine of this thread
+        CFGReachability reachability = CFGReachability.forThread();
+
+        // condensed CFG, loops are collapsed so that reachability is a search on a DAG
+        //      (null while it is rebuilt, every pair is then searched on the CFG)
+        CFGCondensation condensation = CFGCondensation.forDatabase(db, tx);
+        long[] overwritingBlocks = CFGCondensation.overwritingBlocks(condEdge);
 
         // get the corresponding CFG node for last edge in path
-        HashSet<List<Node>> curCFGs = CFGValidationHelper.getConnectionNodesAll(lastEdge, config); // nodes of new edge
+        HashSet<List<Node>> curCFGs = cfgHelper().getConnectionNodesAll(lastEdge, config); // nodes of new edge
         HashSet<Node> acceptedNewCFG = new HashSet<>();
 
         // attempt to find a directed path between CFG nodes from path up to second last edge to last edge
@@ -347,8 +562,15 @@ public class ROSPath {
                 // Node curNode = prevCFG.get(0);
                 Node startCFG = (backward) ? curCFG.get(1) : prevCFG;
                 Node dstNode = (backward) ? prevCFG : curCFG.get(0);
-                Path cfgPath = shortestPath.findSinglePath(startCFG, dstNode, condEdge);
-                if (cfgPath != null) { // if found, then we add to accepted CFG nodes
+                // unreachable in the condensed CFG means unreachable with filtering as well; the filtered search on
+                //      the original CFG is only needed if an overwriting block lies between the two nodes
+                if ((condensation != null) && !condensation.reachable(startCFG.getId(), dstNode.getId())) {
+                    continue;
+                }
+                boolean cfgPath = ((condensation != null) &&
+                        !condensation.anyBetween(startCFG.getId(), dstNode.getId(), overwritingBlocks)) ||
+                        reachability.reachable(startCFG, dstNode, condEdge);
+                if (cfgPath) { // if found, then we add to accepted CFG nodes
                     acceptedNewCFG.add(backward ? curCFG.get(0) : curCFG.get(1));
                 }
             }
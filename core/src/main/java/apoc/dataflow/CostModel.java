@@ -0,0 +1,119 @@
+package apoc.dataflow;
+
+import apoc.algo.CFGReachability;
+import apoc.util.Util;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Cost of a dataflow path for the best-first searches, read from the query configuration:
+//    - order: "cost" for a best-first search, "bfs" for the breadth first search by hop count (default: "bfs")
+//    - weights: cost of a relationship by type, e.g. {parWrite: 5, retWrite: 5} (default: 1 for every type)
+//    - lineWeight: cost per line between the LINE_NUMBER values of the two ends of a relationship (default: 0)
+//    - cfgWeight: cost per nextCFGBlock relationship from the destination CFG block of a relationship to the source
+//          CFG block of the next one, on the shortest CFG path (default: 0)
+//    - limit: number of paths after which the search stops (default: unlimited)
+// The cost of a path is the sum of the costs of its steps. Costs cannot be negative, so paths are completed in
+// increasing order of cost.
+public class CostModel {
+
+    public static final String ORDER_COST = "cost";
+    public static final String ORDER_BFS = "bfs";
+
+    private static final String LINE_NUMBER = "LINE_NUMBER";
+
+    private final Map<String, Double> weights = new HashMap<>();
+    private final double lineWeight;
+    private final double cfgWeight;
+    private final long limit;
+
+    private CostModel(Map<String, Object> config) {
+        Map<String, Object> weightConfig = (Map<String, Object>) config.getOrDefault("weights", Map.of());
+        for (Map.Entry<String, Object> weight : weightConfig.entrySet()) {
+            weights.put(weight.getKey(), nonNegative(weight.getKey(), weight.getValue()));
+        }
+        this.lineWeight = nonNegative("lineWeight", config.getOrDefault("lineWeight", 0));
+        this.cfgWeight = nonNegative("cfgWeight", config.getOrDefault("cfgWeight", 0));
+        Long limitValue = Util.toLong(config.get("limit"));
+        this.limit = ((limitValue == null) || (limitValue < 0)) ? SearchBudget.UNLIMITED : limitValue;
+    }
+
+    // the cost model of the configuration, or null if the search is breadth first
+    public static CostModel from(Map<String, Object> config) {
+        if (config == null) {
+            return null;
+        }
+        String order = config.getOrDefault("order", ORDER_BFS).toString();
+        if (order.equals(ORDER_BFS)) {
+            return null;
+        }
+        if (!order.equals(ORDER_COST)) {
+            throw new IllegalArgumentException("Unknown order " + order + ", expected " + ORDER_BFS + " or " +
+                    ORDER_COST);
+        }
+        return new CostModel(config);
+    }
+
+    private static double nonNegative(String name, Object value) {
+        double cost = ((Number) value).doubleValue();
+        if (cost < 0) {
+            throw new IllegalArgumentException("Cost " + name + " must not be negative");
+        }
+        return cost;
+    }
+
+    // number of paths after which the search stops, or SearchBudget.UNLIMITED
+    public long getLimit() {
+        return limit;
+    }
+
+    // how often a relationship may end an expanded path: once per requested path, so that the best limit paths
+    //      are not cut off by a cheaper path through the same relationship
+    public int getExpansionsPerRelationship() {
+        return (limit == SearchBudget.UNLIMITED) ? 1 : (int) Math.min(limit, Integer.MAX_VALUE);
+    }
+
+    // cost of extending a path ending with prev (null for the first relationship) by next
+    public double step(Relationship prev, Relationship next) {
+        double cost = weights.getOrDefault(next.getType().name(), 1.0d);
+        if (lineWeight > 0) {
+            Long startLine = lineNumber(next.getStartNode());
+            Long endLine = lineNumber(next.getEndNode());
+            if ((startLine != null) && (endLine != null)) {
+                cost += lineWeight * Math.abs(endLine - startLine);
+            }
+        }
+        if ((cfgWeight > 0) && (prev != null)) {
+            cost += cfgWeight * cfgDistance(prev, next);
+        }
+        return cost;
+    }
+
+    private static Long lineNumber(Node node) {
+        return Util.toLong(node.getProperty(LINE_NUMBER, null));
+    }
+
+    // helper function: fewest nextCFGBlock relationships from a destination block of prev to a source block of next,
+    //      0 if there is no such CFG path (the CFG check decides whether the path is valid)
+    private static int cfgDistance(Relationship prev, Relationship next) {
+        RelationshipType destination = RelationshipType.withName(prev.getType().name() + "Destination");
+        RelationshipType source = RelationshipType.withName(next.getType().name() + "Source");
+        CFGReachability reachability = CFGReachability.forThread();
+        long[] noBlocks = new long[0];
+
+        int distance = -1;
+        for (Relationship dstCFG : prev.getEndNode().getRelationships(Direction.OUTGOING, destination)) {
+            for (Relationship srcCFG : next.getStartNode().getRelationships(Direction.OUTGOING, source)) {
+                if (reachability.search(dstCFG.getEndNode(), srcCFG.getEndNode(), noBlocks)) {
+                    int length = reachability.path().length - 1;
+                    distance = (distance < 0) ? length : Math.min(distance, length);
+                }
+            }
+        }
+        return Math.max(distance, 0);
+    }
+}
@@ -0,0 +1,87 @@
+package apoc.dataflow;
+
+import apoc.Pools;
+import apoc.result.DataflowFlowResult;
+import apoc.util.Util;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.TerminationGuard;
+import org.neo4j.procedure.UserFunction;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class DataflowAnalysis {
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Context
+    public Transaction tx;
+
+    @Context
+    public Pools pool;
+
+    @Context
+    public TerminationGuard guard;
+
+    @Procedure
+    @Description("apoc.dataflow.analyzeAll({sources, sinks, sourceLabel, sinkLabel, partitionBy:'function', influence:false}) - finds every flow between the declared sources and sinks using per-partition summaries computed in parallel")
+    public Stream<DataflowFlowResult> analyzeAll(@Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        // Accepted parameters:
+        //    - sources, sinks: lists of nodes
+        //    - sourceLabel, sinkLabel: labels of additional source and sink nodes
+        //    - partitionBy: 'function' (default) or 'compName'
+        //    - influence: whether varInfFunc and varInfluence relationships carry flows (default: false)
+        long[] sources = getNodeIds(config, "sources", "sourceLabel");
+        long[] sinks = getNodeIds(config, "sinks", "sinkLabel");
+        if ((sources.length == 0) || (sinks.length == 0)) {
+            return Stream.empty();
+        }
+
+        PartitionedDataflow.PartitionBy partitionBy = PartitionedDataflow.PartitionBy.valueOf(
+                config.getOrDefault("partitionBy", PartitionedDataflow.PartitionBy.function.name()).toString());
+        boolean influence = Util.toBoolean(config.getOrDefault("influence", false));
+
+        PartitionedDataflow dataflow = PartitionedDataflow.load(tx, partitionBy, influence);
+        List<long[]> flows = dataflow.analyze(sources, sinks, pool.getDefaultExecutorService(), guard);
+
+        return flows.stream().map(flow -> new DataflowFlowResult(tx.getNodeById(flow[0]), tx.getNodeById(flow[1]),
+                flow[2]));
+    }
+
+    @UserFunction
+    @Description("apoc.dataflow.hydrate(ids) - rebuilds a path from the relationship ids returned with output:'ids'")
+    public Path hydrate(@Name("ids") List<Long> ids) {
+        if ((ids == null) || ids.isEmpty()) {
+            return null;
+        }
+        return DataflowCache.toPath(ids.stream().mapToLong(Long::longValue).toArray(), tx);
+    }
+
+    // helper function: ids of the nodes listed under listKey and of the nodes carrying the label under labelKey
+    private long[] getNodeIds(Map<String, Object> config, String listKey, String labelKey) {
+        List<Node> nodes = (List<Node>) config.getOrDefault(listKey, List.of());
+        long[] ids = nodes.stream().mapToLong(Node::getId).toArray();
+
+        Object label = config.get(labelKey);
+        if (label != null) {
+            try (ResourceIterator<Node> labelled = tx.findNodes(Label.label(label.toString()))) {
+                long[] labelledIds = labelled.stream().mapToLong(Node::getId).toArray();
+                ids = Arrays.copyOf(ids, ids.length + labelledIds.length);
+                System.arraycopy(labelledIds, 0, ids, ids.length - labelledIds.length, labelledIds.length);
+            }
+        }
+        return Arrays.stream(ids).distinct().toArray();
+    }
+}
@@ -0,0 +1,256 @@
+package apoc.dataflow;
+
+import apoc.ApocConfig;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.Entity;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.storageengine.api.TransactionIdStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cross-query cache for dataflow path results.
+// Results are stored as relationship-id arrays keyed by the query endpoints plus a normalised version of the
+// configuration, and are dropped once a newer transaction has been committed to the database. Queries running in a
+// transaction with uncommitted changes bypass the cache.
+public class DataflowCache {
+
+    public static final String APOC_DATAFLOW_CACHE_SIZE = "apoc.dataflow.cache.size";
+    public static final String APOC_DATAFLOW_CACHE_TTL = "apoc.dataflow.cache.ttl";
+
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000L;
+
+    // one cache per database
+    private static final Map<String, DataflowCache> CACHES = new ConcurrentHashMap<>();
+
+    private final LinkedHashMap<Key, Entry> entries;
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public DataflowCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        // access ordered, so that the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > DataflowCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static DataflowCache forDatabase(GraphDatabaseService db) {
+        return CACHES.computeIfAbsent(db.databaseName(), name -> {
+            ApocConfig config = ApocConfig.apocConfig();
+            int size = (config == null) ? DEFAULT_MAX_ENTRIES :
+                    config.getInt(APOC_DATAFLOW_CACHE_SIZE, DEFAULT_MAX_ENTRIES);
+            long ttl = (config == null) ? DEFAULT_TTL_MILLIS :
+                    config.getInt(APOC_DATAFLOW_CACHE_TTL, (int) (DEFAULT_TTL_MILLIS / 1000)) * 1000L;
+            return new DataflowCache(size, ttl);
+        });
+    }
+
+    // helper function: id of the last committed transaction, used to detect changes to the graph
+    public static long lastCommittedTxId(GraphDatabaseService db) {
+        return ((GraphDatabaseAPI) db).getDependencyResolver()
+                .resolveDependency(TransactionIdStore.class)
+                .getLastCommittedTransactionId();
+    }
+
+    // helper function: whether tx has uncommitted changes, in which case it sees a graph that no other query sees and
+    //      must neither read nor fill the shared caches
+    public static boolean hasChanges(Transaction tx) {
+        return (tx instanceof InternalTransaction) &&
+                ((InternalTransaction) tx).kernelTransaction().dataRead().transactionStateHasChanges();
+    }
+
+    // helper function: create a key from the query name, its endpoints and configuration
+    public static Key key(String query, List<Object> endpoints, Map<String, Object> config) {
+        StringBuilder builder = new StringBuilder(query);
+        for (Object endpoint : endpoints) {
+            builder.append('|').append(normalise(endpoint));
+        }
+        builder.append('|').append(normalise(config));
+        return new Key(builder.toString());
+    }
+
+    // helper function: turn a configuration value into a canonical string
+    //      - graph entities are replaced with their ids
+    //      - maps are sorted by key, and the cache flags themselves are ignored
+    private static String normalise(Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof Relationship) {
+            return "r" + ((Relationship) value).getId();
+        } else if (value instanceof Entity) {
+            return "n" + ((Entity) value).getId();
+        } else if (value instanceof Map) {
+            TreeMap<String, String> sorted = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                String name = String.valueOf(entry.getKey());
+                if (name.equals("cache")) {continue;}
+                sorted.put(name, normalise(entry.getValue()));
+            }
+            return sorted.toString();
+        } else if (value instanceof Collection) {
+            List<String> items = new ArrayList<>();
+            for (Object item : (Collection<?>) value) {
+                items.add(normalise(item));
+            }
+            return items.toString();
+        } else {
+            return value.getClass().getSimpleName() + ":" + value;
+        }
+    }
+
+    // return the cached paths for key, or null if there is no valid entry
+    public List<Path> get(Key key, Transaction tx, long currentTxId) {
+        long[][] relIds = getIds(key, currentTxId);
+        return (relIds == null) ? null : toPaths(relIds, tx);
+    }
+
+    // return the cached relationship ids for key, or null if there is no valid entry
+    public long[][] getIds(Key key, long currentTxId) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if ((entry != null) && ((entry.txId < currentTxId) ||
+                    (System.currentTimeMillis() - entry.createdAt > ttlMillis))) {
+                entries.remove(key);
+                invalidations.incrementAndGet();
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.relIds;
+    }
+
+    public void put(Key key, List<Path> paths, long txId) {
+        long[][] relIds = new long[paths.size()][];
+        for (int i = 0; i < relIds.length; i++) {
+            // zero length paths cannot be rebuilt from relationship ids, so they are not cached
+            if (paths.get(i).length() == 0) {return;}
+            relIds[i] = toIds(paths.get(i));
+        }
+        putIds(key, relIds, txId);
+    }
+
+    public void putIds(Key key, long[][] relIds, long txId) {
+        synchronized (entries) {
+            entries.put(key, new Entry(relIds, txId, System.currentTimeMillis()));
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", (long) size);
+        stats.put("maxSize", (long) maxEntries);
+        stats.put("ttl", ttlMillis);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", (total == 0) ? 0.0d : ((double) hitCount) / total);
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    // helper function: compact representation of a path
+    public static long[] toIds(Path path) {
+        long[] ids = new long[path.length()];
+        int i = 0;
+        for (Relationship rel : path.relationships()) {
+            ids[i++] = rel.getId();
+        }
+        return ids;
+    }
+
+    // helper function: rebuild paths from their relationship ids
+    public static List<Path> toPaths(long[][] relIds, Transaction tx) {
+        List<Path> paths = new ArrayList<>(relIds.length);
+        for (long[] ids : relIds) {
+            paths.add(toPath(ids, tx));
+        }
+        return paths;
+    }
+
+    public static Path toPath(long[] ids, Transaction tx) {
+        Relationship first = tx.getRelationshipById(ids[0]);
+        PathImpl.Builder builder = new PathImpl.Builder(first.getStartNode());
+        builder = builder.push(first);
+        for (int i = 1; i < ids.length; i++) {
+            builder = builder.push(tx.getRelationshipById(ids[i]));
+        }
+        return builder.build();
+    }
+
+    public static class Key {
+        private final String value;
+        private final int hash;
+
+        Key(String value) {
+            this.value = value;
+            this.hash = value.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Key && ((Key) o).hash == hash && ((Key) o).value.equals(value));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Entry {
+        private final long[][] relIds;
+        private final long txId;
+        private final long createdAt;
+
+        Entry(long[][] relIds, long txId, long createdAt) {
+            this.relIds = relIds;
+            this.txId = txId;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package apoc.dataflow;
+
+import apoc.result.MapResult;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Procedure;
+
+import java.util.stream.Stream;
+
+public class DataflowCacheProcedures {
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Procedure
+    @Description("apoc.dataflow.cacheStats() - returns size and hit-rate metrics of the dataflow result cache")
+    public Stream<MapResult> cacheStats() {
+        return Stream.of(new MapResult(DataflowCache.forDatabase(db).stats()));
+    }
+
+    @Procedure
+    @Description("apoc.dataflow.cacheClear() - removes all entries from the dataflow result cache")
+    public Stream<MapResult> cacheClear() {
+        DataflowCache cache = DataflowCache.forDatabase(db);
+        cache.clear();
+        return Stream.of(new MapResult(cache.stats()));
+    }
+
+}
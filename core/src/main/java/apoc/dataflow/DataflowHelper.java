@@ -4,22 +4,31 @@ import apoc.path.CFGValidationHelper;
 import apoc.path.CandidatePath;
 import apoc.path.RelationshipTypeAndDirections;
 import org.neo4j.graphalgo.BasicEvaluationContext;
+import org.neo4j.graphalgo.EvaluationContext;
 import org.neo4j.graphalgo.GraphAlgoFactory;
 import org.neo4j.graphalgo.PathFinder;
 import org.neo4j.graphdb.*;
 import org.neo4j.internal.helpers.collection.Pair;
-import org.neo4j.procedure.Context;
 
 import java.util.HashMap;
 import java.util.List;
 
 public class DataflowHelper {
 
-    @Context
-    public static GraphDatabaseService db;
+    private final GraphDatabaseService db;
+    private final Transaction tx;
+    private final EvaluationContext context;
 
-    @Context
-    public static Transaction tx;
+    // a helper is bound to the transaction of a single query or worker, and must not be shared between threads
+    public DataflowHelper(GraphDatabaseService db, Transaction tx) {
+        this.db = db;
+        this.tx = tx;
+        this.context = new BasicEvaluationContext(tx, db);
+    }
+
+    public EvaluationContext getContext() {
+        return context;
+    }
 
     public enum RelTypes implements RelationshipType
     {
@@ -44,7 +53,7 @@ public class DataflowHelper {
 
     // helper function: return start and end CFG nodes along with the connections
     // return: a hashset of CFG nodes
-    public static HashMap<List<Node>, Relationship> getConnectionNodes(Relationship r) {
+    public HashMap<List<Node>, Relationship> getConnectionNodes(Relationship r) {
 
         if (r == null) {
             return null;
@@ -115,7 +124,7 @@ public class DataflowHelper {
 
                 }  else if (r.isType(CFGValidationHelper.RelTypes.varInfFunc) || r.isType(CFGValidationHelper.RelTypes.varInfluence)) {
                     PathFinder<Path> algo = GraphAlgoFactory.shortestPath(
-                            new BasicEvaluationContext(tx, db),
+                            context,
                             buildPathExpander("nextCFGBlock>"), (int) Integer.MAX_VALUE
                     );
                     Path vifCFG = algo.findSinglePath(srcCFG.getEndNode(), dstCFG.getEndNode());
@@ -0,0 +1,197 @@
+package apoc.dataflow;
+
+import apoc.algo.CFGReachability;
+import apoc.path.CFGValidationHelper;
+import apoc.result.SliceResult;
+import apoc.util.Util;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.TerminationGuard;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Program slices: every node with a dataflow path to (backward) or from (forward) a target, following varWrite,
+// parWrite and retWrite relationships. The slice is a closure computed with a worklist and a visited bitset, so every
+// node (or relationship, with the CFG check) is expanded once instead of enumerating paths.
+// With the CFG check, the states are relationships: a relationship extends another one if a destination CFG block of
+// the first reaches a source CFG block of the second without the value being overwritten. Only consecutive pairs are
+// checked, so the slice may contain nodes that no fully valid path reaches.
+public class DataflowSlice {
+
+    public static final String OUTPUT_IDS = "ids";
+    public static final String OUTPUT_BITMAP = "bitmap";
+
+    @Context
+    public Transaction tx;
+
+    @Context
+    public TerminationGuard guard;
+
+    @Procedure
+    @Description("apoc.dataflow.slice(target, {direction:'backward', cfgCheck:false, maxDepth:-1, timeoutMs:-1, maxExpansions:-1, output:'ids'}) - node ids of the backward (or forward) slice of a node or relationship, as a list or a serialized Roaring64NavigableMap")
+    public Stream<SliceResult> slice(@Name("target") Object target,
+                                     @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        String direction = SearchDirection.parse(config, true);
+        if (direction.equals(SearchDirection.AUTO)) {
+            throw new IllegalArgumentException("A slice has to be either " + SearchDirection.BACKWARD + " or " +
+                    SearchDirection.FORWARD);
+        }
+        boolean backward = direction.equals(SearchDirection.BACKWARD);
+        boolean cfgCheck = Util.toBoolean(config.getOrDefault("cfgCheck", false));
+        String output = config.getOrDefault("output", OUTPUT_IDS).toString();
+        if ((!output.equals(OUTPUT_IDS)) && (!output.equals(OUTPUT_BITMAP))) {
+            throw new IllegalArgumentException("Unknown output " + output + ", expected " + OUTPUT_IDS + " or " +
+                    OUTPUT_BITMAP);
+        }
+
+        // a relationship target is sliced from the end where its value flows on
+        Node node;
+        if (target instanceof Node) {
+            node = (Node) target;
+        } else if (target instanceof Relationship) {
+            node = backward ? ((Relationship) target).getStartNode() : ((Relationship) target).getEndNode();
+        } else {
+            throw new IllegalArgumentException("The target of a slice must be a node or a relationship");
+        }
+
+        SearchBudget budget = new SearchBudget(config, guard);
+        Roaring64NavigableMap slice = (cfgCheck) ? relationshipSlice(node, backward, budget) :
+                nodeSlice(node, backward, budget);
+
+        if (output.equals(OUTPUT_BITMAP)) {
+            return Stream.of(new SliceResult(null, serialize(slice), slice.getLongCardinality(),
+                    budget.isTruncated()));
+        }
+        List<Long> ids = new ArrayList<>((int) slice.getLongCardinality());
+        LongIterator iterator = slice.getLongIterator();
+        while (iterator.hasNext()) {
+            ids.add(iterator.next());
+        }
+        return Stream.of(new SliceResult(ids, null, ids.size(), budget.isTruncated()));
+    }
+
+    // helper function: closure over nodes, without the CFG check
+    private Roaring64NavigableMap nodeSlice(Node target, boolean backward, SearchBudget budget) {
+        Roaring64NavigableMap visited = Roaring64NavigableMap.bitmapOf(target.getId());
+        ArrayDeque<Node> frontier = new ArrayDeque<>();
+        frontier.add(target);
+
+        // level by level, so that maxDepth bounds the number of relationships from the target
+        for (int depth = 0; !frontier.isEmpty(); depth++) {
+            ArrayDeque<Node> next = new ArrayDeque<>();
+            while (!frontier.isEmpty()) {
+                if (!budget.next(0)) {
+                    return visited;
+                }
+                Node node = frontier.poll();
+                for (Relationship rel : dataflowRels(node, backward)) {
+                    Node other = rel.getOtherNode(node);
+                    if (!visited.contains(other.getId())) {
+                        if (!budget.canExtend(depth)) {
+                            break;
+                        }
+                        visited.addLong(other.getId());
+                        next.add(other);
+                    }
+                }
+            }
+            frontier = next;
+        }
+        return visited;
+    }
+
+    // helper function: closure over relationships, each pair of consecutive relationships passing the CFG check
+    private Roaring64NavigableMap relationshipSlice(Node target, boolean backward, SearchBudget budget) {
+        Roaring64NavigableMap nodes = Roaring64NavigableMap.bitmapOf(target.getId());
+        Roaring64NavigableMap visited = new Roaring64NavigableMap();
+        CFGReachability reachability = CFGReachability.forThread();
+
+        // the relationships at the target start the slice without a check
+        ArrayDeque<Relationship> frontier = new ArrayDeque<>();
+        for (Relationship rel : dataflowRels(target, backward)) {
+            if (!budget.canExtend(0)) {
+                break;
+            }
+            visited.addLong(rel.getId());
+            nodes.addLong(rel.getOtherNode(target).getId());
+            frontier.add(rel);
+        }
+
+        for (int depth = 1; !frontier.isEmpty(); depth++) {
+            ArrayDeque<Relationship> next = new ArrayDeque<>();
+            while (!frontier.isEmpty()) {
+                if (!budget.next(0)) {
+                    return nodes;
+                }
+                Relationship rel = frontier.poll();
+                Node node = backward ? rel.getStartNode() : rel.getEndNode();
+                for (Relationship otherRel : dataflowRels(node, backward)) {
+                    if (visited.contains(otherRel.getId())) {
+                        continue;
+                    }
+                    // the CFG check always runs in the direction of the dataflow
+                    boolean valid = backward ? cfgConnected(otherRel, rel, reachability) :
+                            cfgConnected(rel, otherRel, reachability);
+                    if (!valid) {
+                        continue;
+                    }
+                    if (!budget.canExtend(depth)) {
+                        break;
+                    }
+                    visited.addLong(otherRel.getId());
+                    nodes.addLong(otherRel.getOtherNode(node).getId());
+                    next.add(otherRel);
+                }
+            }
+            frontier = next;
+        }
+        return nodes;
+    }
+
+    private static Iterable<Relationship> dataflowRels(Node node, boolean backward) {
+        return backward ? CFGValidationHelper.getPrevRels(node, false) : CFGValidationHelper.getNextRels(node, false);
+    }
+
+    // helper function: whether the value of prev can flow on along next, i.e. a destination CFG block of prev reaches a
+    //      source CFG block of next without the value being overwritten
+    private static boolean cfgConnected(Relationship prev, Relationship next, CFGReachability reachability) {
+        RelationshipType destination = RelationshipType.withName(prev.getType().name() + "Destination");
+        RelationshipType source = RelationshipType.withName(next.getType().name() + "Source");
+        for (Relationship dstCFG : prev.getEndNode().getRelationships(Direction.OUTGOING, destination)) {
+            for (Relationship srcCFG : next.getStartNode().getRelationships(Direction.OUTGOING, source)) {
+                if (reachability.reachable(dstCFG.getEndNode(), srcCFG.getEndNode(), next)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static byte[] serialize(Roaring64NavigableMap bitmap) {
+        bitmap.runOptimize();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            bitmap.serialize(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,88 @@
+package apoc.dataflow;
+
+import apoc.result.DataflowWatchResult;
+import apoc.result.MapResult;
+import apoc.util.Util;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class DataflowWatch {
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Context
+    public Transaction tx;
+
+    @Context
+    public DataflowWatchHandler watchHandler;
+
+    @Procedure(mode = Mode.WRITE)
+    @Description("apoc.dataflow.watch(name, sources, sinks, {cfgCheck:false, history:10000}) - registers a standing dataflow query between the sources and sinks, maintained incrementally after every commit")
+    public Stream<MapResult> watch(@Name("name") String name, @Name("sources") List<Node> sources,
+                                   @Name("sinks") List<Node> sinks,
+                                   @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        return Stream.of(info(watchHandler.add(name, sources, sinks, config)));
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    @Description("apoc.dataflow.unwatch(name) - removes a standing dataflow query")
+    public Stream<MapResult> unwatch(@Name("name") String name) {
+        DataflowWatchHandler.Watch removed = watchHandler.remove(name);
+        return (removed == null) ? Stream.empty() : Stream.of(info(removed));
+    }
+
+    @Procedure
+    @Description("apoc.dataflow.watched(name, {since}) - returns the current flows of a standing dataflow query, or with since the flows added and removed by transactions committed after that transaction id")
+    public Stream<DataflowWatchResult> watched(@Name("name") String name,
+                                               @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        // Accepted parameters:
+        //    - since: transaction id, only the changes committed after it are returned
+        DataflowWatchHandler.Watch watch = watchHandler.get(name);
+
+        if (!config.containsKey("since")) {
+            return watch.getFlows().entrySet().stream().map(flow -> new DataflowWatchResult(
+                    getNode(flow.getKey().source), getNode(flow.getKey().sink),
+                    DataflowWatchHandler.toPath(flow.getKey(), flow.getValue(), tx),
+                    DataflowWatchHandler.PRESENT, watch.getTxId()));
+        }
+
+        long since = Util.toLong(config.get("since"));
+        return watch.getChanges(since).stream().map(change -> new DataflowWatchResult(
+                getNode(change.key.source), getNode(change.key.sink),
+                DataflowWatchHandler.toPath(change.key, change.relIds, tx), change.change, change.txId));
+    }
+
+    // helper function: summary of a watch
+    private MapResult info(DataflowWatchHandler.Watch watch) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("name", watch.name);
+        info.put("sources", (long) watch.getSourceCount());
+        info.put("sinks", (long) watch.getSinkCount());
+        info.put("flows", (long) watch.getFlows().size());
+        info.put("cfgCheck", watch.cfgCheck);
+        info.put("txId", watch.getTxId());
+        return new MapResult(info);
+    }
+
+    // helper function: node with the id, or null if it was deleted
+    private Node getNode(long id) {
+        try {
+            return tx.getNodeById(id);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package apoc.dataflow;
+
+import apoc.ApocConfig;
+import apoc.Pools;
+import apoc.SystemLabels;
+import apoc.SystemPropertyKeys;
+import apoc.path.CFGValidationHelper;
+import apoc.path.DataflowPath;
+import apoc.util.Util;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListener;
+import org.neo4j.internal.helpers.collection.Pair;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+// Standing dataflow queries, maintained incrementally from transaction deltas.
+// A watch keeps one witness path (as relationship ids) for every source/sink pair connected by dataflow. After each
+// commit only the pairs the change can affect are searched again:
+//    - a flow whose witness lost a relationship
+//    - a missing flow whose source reaches the start of a new dataflow relationship and whose sink is reached from
+//      its end
+// With cfgCheck, a change to the CFG (nextCFGBlock, *Source and *Destination relationships) or to a dataflow
+// relationship may open or close any flow, so every pair is searched again.
+// Watches are stored in the system database; flows are kept in memory and computed again on first use after a restart.
+public class DataflowWatchHandler extends LifecycleAdapter implements TransactionEventListener<Void> {
+
+    public static final String ADDED = "added";
+    public static final String REMOVED = "removed";
+    public static final String PRESENT = "present";
+
+    private static final int DEFAULT_HISTORY = 10000;
+
+    private final ConcurrentHashMap<String, Watch> watches = new ConcurrentHashMap<>();
+    private final GraphDatabaseService db;
+    private final DatabaseManagementService databaseManagementService;
+    private final ApocConfig apocConfig;
+    private final Log log;
+    private final Pools pools;
+
+    private final AtomicBoolean registeredWithKernel = new AtomicBoolean(false);
+
+    public DataflowWatchHandler(GraphDatabaseService db, DatabaseManagementService databaseManagementService,
+                                ApocConfig apocConfig, Log log, Pools pools) {
+        this.db = db;
+        this.databaseManagementService = databaseManagementService;
+        this.apocConfig = apocConfig;
+        this.log = log;
+        this.pools = pools;
+    }
+
+    // register (or replace) a watch and compute its flows from the committed graph
+    //      changes of the calling transaction are applied as a delta once it commits
+    public Watch add(String name, List<Node> sources, List<Node> sinks, Map<String, Object> config) {
+        Watch watch = new Watch(name, toIds(sources), toIds(sinks), config);
+
+        withSystemDb(systemTx -> {
+            Node node = Util.mergeNode(systemTx, SystemLabels.ApocDataflowWatch, null,
+                    Pair.of(SystemPropertyKeys.database.name(), db.databaseName()),
+                    Pair.of(SystemPropertyKeys.name.name(), name));
+            node.setProperty(SystemPropertyKeys.sources.name(), watch.sources);
+            node.setProperty(SystemPropertyKeys.sinks.name(), watch.sinks);
+            node.setProperty(SystemPropertyKeys.params.name(), Util.toJson(config));
+            return null;
+        });
+
+        // listen to commits before the flows are computed, so that none is missed; the ones already included are
+        //      skipped once the lock is released
+        synchronized (watch) {
+            watches.put(name, watch);
+            reconcileKernelRegistration();
+            initialize(watch);
+        }
+        return watch;
+    }
+
+    public Watch remove(String name) {
+        Watch previous = watches.remove(name);
+        withSystemDb(systemTx -> {
+            systemTx.findNodes(SystemLabels.ApocDataflowWatch,
+                            SystemPropertyKeys.database.name(), db.databaseName(),
+                            SystemPropertyKeys.name.name(), name)
+                    .forEachRemaining(Node::delete);
+            return null;
+        });
+        reconcileKernelRegistration();
+        return previous;
+    }
+
+    // return the watch, with its flows computed if this has not been done since the last restart
+    public Watch get(String name) {
+        Watch watch = watches.get(name);
+        if (watch == null) {
+            throw new IllegalArgumentException("No dataflow watch named " + name);
+        }
+        synchronized (watch) {
+            if (!watch.initialized) {
+                initialize(watch);
+            }
+        }
+        return watch;
+    }
+
+    private synchronized void reconcileKernelRegistration() {
+        if (watches.size() > 0) {
+            if (registeredWithKernel.compareAndSet(false, true)) {
+                databaseManagementService.registerTransactionEventListener(db.databaseName(), this);
+            }
+        } else {
+            if (registeredWithKernel.compareAndSet(true, false)) {
+                databaseManagementService.unregisterTransactionEventListener(db.databaseName(), this);
+            }
+        }
+    }
+
+    @Override
+    public Void beforeCommit(TransactionData txData, Transaction transaction, GraphDatabaseService databaseService) {
+        return null;
+    }
+
+    @Override
+    public void afterCommit(TransactionData txData, Void state, GraphDatabaseService databaseService) {
+        Delta delta = Delta.from(txData, db);
+        if (!delta.isRelevant()) {
+            return;
+        }
+        // the searches run outside of the committing transaction
+        Util.inTxFuture(pools.getDefaultExecutorService(), db, tx -> {
+            for (Watch watch : watches.values()) {
+                try {
+                    synchronized (watch) {
+                        if (watch.initialized) {
+                            apply(watch, delta, tx);
+                        }
+                    }
+                } catch (Exception e) {
+                    log.warn("Error updating dataflow watch " + watch.name, e);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void afterRollback(TransactionData txData, Void state, GraphDatabaseService databaseService) {
+    }
+
+    @Override
+    public void start() {
+        withSystemDb(systemTx -> {
+            systemTx.findNodes(SystemLabels.ApocDataflowWatch,
+                    SystemPropertyKeys.database.name(), db.databaseName()).forEachRemaining(node -> {
+                String name = (String) node.getProperty(SystemPropertyKeys.name.name());
+                watches.put(name, new Watch(name,
+                        (long[]) node.getProperty(SystemPropertyKeys.sources.name()),
+                        (long[]) node.getProperty(SystemPropertyKeys.sinks.name()),
+                        Util.fromJson((String) node.getProperty(SystemPropertyKeys.params.name()), Map.class)));
+            });
+            return null;
+        });
+        reconcileKernelRegistration();
+    }
+
+    @Override
+    public void stop() {
+        if (registeredWithKernel.compareAndSet(true, false)) {
+            databaseManagementService.unregisterTransactionEventListener(db.databaseName(), this);
+        }
+    }
+
+    // helper function: search every source/sink pair in a transaction of its own, which sees the graph committed up
+    //      to at least the transaction id read before it starts
+    private void initialize(Watch watch) {
+        long txId = DataflowCache.lastCommittedTxId(db);
+        try (Transaction tx = db.beginTx()) {
+            evaluateAll(watch, tx, txId);
+        }
+    }
+
+    // helper function: search every source/sink pair
+    private void evaluateAll(Watch watch, Transaction tx, long txId) {
+        watch.flows.clear();
+        watch.changes.clear();
+        for (long source : watch.sources) {
+            for (long sink : watch.sinks) {
+                update(watch, new FlowKey(source, sink), tx, txId);
+            }
+        }
+        watch.initialized = true;
+        watch.initTxId = txId;
+        watch.txId = txId;
+    }
+
+    // helper function: search again the pairs affected by a committed change
+    private void apply(Watch watch, Delta delta, Transaction tx) {
+        // changes committed before the flows were computed are already included
+        if (delta.txId <= watch.initTxId) {
+            return;
+        }
+
+        // flows whose source or sink was deleted are gone
+        if (!delta.deletedNodes.isEmpty()) {
+            for (FlowKey key : new ArrayList<>(watch.flows.keySet())) {
+                if (delta.deletedNodes.contains(key.source) || delta.deletedNodes.contains(key.sink)) {
+                    watch.record(key, REMOVED, watch.flows.remove(key), delta.txId);
+                }
+            }
+            watch.sources = Arrays.stream(watch.sources).filter(id -> !delta.deletedNodes.contains(id)).toArray();
+            watch.sinks = Arrays.stream(watch.sinks).filter(id -> !delta.deletedNodes.contains(id)).toArray();
+        }
+
+        boolean anyPair = watch.cfgCheck && (delta.cfgChanged || delta.dataflowChanged);
+        ArrayList<FlowKey> affected = new ArrayList<>();
+
+        // existing flows: only the ones that lost a relationship of their witness
+        for (Map.Entry<FlowKey, long[]> flow : watch.flows.entrySet()) {
+            if (anyPair || Arrays.stream(flow.getValue()).anyMatch(delta.deletedRels::contains)) {
+                affected.add(flow.getKey());
+            }
+        }
+
+        // missing flows: only between the sources and sinks connected to a new dataflow relationship
+        if (anyPair || !delta.createdStarts.isEmpty()) {
+            LongHashSet sources = anyPair ? null : closure(delta.createdStarts, tx, true);
+            LongHashSet sinks = anyPair ? null : closure(delta.createdEnds, tx, false);
+            for (long source : watch.sources) {
+                if ((sources != null) && !sources.contains(source)) {continue;}
+                for (long sink : watch.sinks) {
+                    if ((sinks != null) && !sinks.contains(sink)) {continue;}
+                    FlowKey key = new FlowKey(source, sink);
+                    if (!watch.flows.containsKey(key)) {
+                        affected.add(key);
+                    }
+                }
+            }
+        }
+
+        for (FlowKey key : affected) {
+            update(watch, key, tx, delta.txId);
+        }
+        watch.txId = Math.max(watch.txId, delta.txId);
+    }
+
+    // helper function: search a pair and record whether its flow appeared or disappeared
+    private void update(Watch watch, FlowKey key, Transaction tx, long txId) {
+        long[] previous = watch.flows.get(key);
+        long[] current = search(watch, key, tx);
+        if (current != null) {
+            watch.flows.put(key, current);
+            if (previous == null) {
+                watch.record(key, ADDED, current, txId);
+            }
+        } else if (previous != null) {
+            watch.flows.remove(key);
+            watch.record(key, REMOVED, previous, txId);
+        }
+    }
+
+    // helper function: witness of the flow from source to sink, or null if there is none
+    //      (e.g. a source created by a transaction that has not committed yet)
+    private long[] search(Watch watch, FlowKey key, Transaction tx) {
+        DataflowPath dataflowPath = new DataflowPath();
+        dataflowPath.db = db;
+        dataflowPath.tx = tx;
+        Path path;
+        try {
+            path = dataflowPath.dataflowPath(tx.getNodeById(key.source), tx.getNodeById(key.sink),
+                    null, null, watch.cfgCheck);
+        } catch (NotFoundException e) {
+            return null;
+        }
+        return (path == null) ? null : DataflowCache.toIds(path);
+    }
+
+    // helper function: nodes reaching (backward) or reached from (forward) the given nodes through dataflow
+    private static LongHashSet closure(LongHashSet from, Transaction tx, boolean backward) {
+        LongHashSet visited = new LongHashSet();
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        from.forEach(id -> {
+            visited.add(id);
+            queue.add(tx.getNodeById(id));
+        });
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            Iterable<Relationship> rels = backward ? CFGValidationHelper.getPrevRels(node, false) :
+                    CFGValidationHelper.getNextRels(node, false);
+            for (Relationship rel : rels) {
+                Node next = backward ? rel.getStartNode() : rel.getEndNode();
+                if (visited.add(next.getId())) {
+                    queue.add(next);
+                }
+            }
+        }
+        return visited;
+    }
+
+    // helper function: rebuild a witness path, or null if it no longer exists
+    public static Path toPath(FlowKey key, long[] relIds, Transaction tx) {
+        if (relIds == null) {
+            return null;
+        }
+        try {
+            if (relIds.length == 0) {
+                return new PathImpl.Builder(tx.getNodeById(key.source)).build();
+            }
+            return DataflowCache.toPath(relIds, tx);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private static long[] toIds(List<Node> nodes) {
+        return (nodes == null) ? new long[0] : nodes.stream().mapToLong(Node::getId).distinct().toArray();
+    }
+
+    private <T> T withSystemDb(Function<Transaction, T> action) {
+        try (Transaction tx = apocConfig.getSystemDb().beginTx()) {
+            T result = action.apply(tx);
+            tx.commit();
+            return result;
+        }
+    }
+
+    public static class Watch {
+        public final String name;
+        public final boolean cfgCheck;
+        private final int history;
+
+        private long[] sources;
+        private long[] sinks;
+        private boolean initialized = false;
+        private long initTxId = -1;
+        private long txId = -1;
+
+        private final LinkedHashMap<FlowKey, long[]> flows = new LinkedHashMap<>();
+        private final ArrayDeque<Change> changes = new ArrayDeque<>();
+
+        Watch(String name, long[] sources, long[] sinks, Map<String, Object> config) {
+            // Accepted parameters:
+            //    - cfgCheck: whether the flows are validated against the CFG (default: false)
+            //    - history: number of changes kept for apoc.dataflow.watched (default: 10000)
+            this.name = name;
+            this.sources = sources;
+            this.sinks = sinks;
+            this.cfgCheck = Util.toBoolean(config.getOrDefault("cfgCheck", false));
+            this.history = Util.toLong(config.getOrDefault("history", DEFAULT_HISTORY)).intValue();
+        }
+
+        public long getTxId() {
+            return txId;
+        }
+
+        public int getSourceCount() {
+            return sources.length;
+        }
+
+        public int getSinkCount() {
+            return sinks.length;
+        }
+
+        // current flows, keyed by source/sink pair
+        public synchronized Map<FlowKey, long[]> getFlows() {
+            return new LinkedHashMap<>(flows);
+        }
+
+        // changes committed after txId, oldest first
+        public synchronized List<Change> getChanges(long sinceTxId) {
+            ArrayList<Change> result = new ArrayList<>();
+            for (Change change : changes) {
+                if (change.txId > sinceTxId) {
+                    result.add(change);
+                }
+            }
+            return result;
+        }
+
+        private void record(FlowKey key, String change, long[] relIds, long txId) {
+            changes.add(new Change(key, change, relIds, txId));
+            while (changes.size() > history) {
+                changes.poll();
+            }
+        }
+    }
+
+    public static class FlowKey {
+        public final long source;
+        public final long sink;
+
+        FlowKey(long source, long sink) {
+            this.source = source;
+            this.sink = sink;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof FlowKey && ((FlowKey) o).source == source && ((FlowKey) o).sink == sink);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source, sink);
+        }
+    }
+
+    public static class Change {
+        public final FlowKey key;
+        public final String change;
+        public final long[] relIds;
+        public final long txId;
+
+        Change(FlowKey key, String change, long[] relIds, long txId) {
+            this.key = key;
+            this.change = change;
+            this.relIds = relIds;
+            this.txId = txId;
+        }
+    }
+
+    // relationship and node changes of a committed transaction that matter to dataflow watches
+    private static class Delta {
+        private long txId;
+        private final LongHashSet deletedRels = new LongHashSet();
+        private final LongHashSet deletedNodes = new LongHashSet();
+        private final LongHashSet createdStarts = new LongHashSet();
+        private final LongHashSet createdEnds = new LongHashSet();
+        private boolean dataflowChanged = false;
+        private boolean cfgChanged = false;
+
+        static Delta from(TransactionData txData, GraphDatabaseService db) {
+            Delta delta = new Delta();
+            try {
+                delta.txId = txData.getTransactionId();
+            } catch (Exception ignored) {
+                delta.txId = DataflowCache.lastCommittedTxId(db);
+            }
+            for (Relationship rel : txData.createdRelationships()) {
+                if (delta.classify(rel.getType().name())) {
+                    delta.createdStarts.add(rel.getStartNodeId());
+                    delta.createdEnds.add(rel.getEndNodeId());
+                }
+            }
+            for (Relationship rel : txData.deletedRelationships()) {
+                delta.deletedRels.add(rel.getId());
+                delta.classify(rel.getType().name());
+            }
+            for (Node node : txData.deletedNodes()) {
+                delta.deletedNodes.add(node.getId());
+            }
+            return delta;
+        }
+
+        // helper function: note the kind of a changed relationship, returns whether it carries dataflow
+        private boolean classify(String type) {
+            if (type.equals(CFGValidationHelper.RelTypes.varWrite.name()) ||
+                    type.equals(CFGValidationHelper.RelTypes.parWrite.name()) ||
+                    type.equals(CFGValidationHelper.RelTypes.retWrite.name())) {
+                dataflowChanged = true;
+                return true;
+            }
+            if (type.equals(CFGValidationHelper.RelTypes.nextCFGBlock.name()) ||
+                    type.endsWith("Source") || type.endsWith("Destination")) {
+                cfgChanged = true;
+            }
+            return false;
+        }
+
+        boolean isRelevant() {
+            return dataflowChanged || cfgChanged || !deletedNodes.isEmpty();
+        }
+    }
+}
@@ -49,6 +49,16 @@ public class EdgeInfo {
         return this.prevEdge;
     }
 
+    // whether the relationship is on the chain of edges ending with this one
+    public boolean contains(Relationship rel) {
+        for (EdgeInfo edge = this; edge != null; edge = edge.getPrevEdge()) {
+            if (edge.getCurRel().equals(rel)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public ArrayList<Long> getRetWrites() {
         return this.retWrites;
     }
@@ -0,0 +1,380 @@
+package apoc.dataflow;
+
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.procedure.TerminationGuard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Whole program dataflow analysis, partitioned by function or by ROS component.
+// The dataflow graph is loaded once into primitive arrays, so that the two phases never touch the transaction:
+//    1. summaries: for every partition (in parallel, one task per partition), the exits reachable from each entry
+//       using only relationships inside the partition
+//    2. stitching: a breadth first search over the summaries and the relationships between partitions, counting
+//       how many partition boundaries a flow crosses
+// An entry is a declared source or the end of a relationship coming from another partition; an exit is a declared
+// sink or the start of a relationship leading to another partition. Boundaries are the parWrite, retWrite, pubVar
+// and pubTarget relationships between partitions.
+public class PartitionedDataflow {
+
+    public enum PartitionBy {
+        function, compName
+    }
+
+    private static final DataflowHelper.RelTypes[] FLOW_TYPES = {DataflowHelper.RelTypes.varWrite,
+            DataflowHelper.RelTypes.parWrite, DataflowHelper.RelTypes.retWrite, DataflowHelper.RelTypes.pubVar,
+            DataflowHelper.RelTypes.pubTarget};
+    private static final DataflowHelper.RelTypes[] INFLUENCE_TYPES = {DataflowHelper.RelTypes.varInfFunc,
+            DataflowHelper.RelTypes.varInfluence};
+
+    private final LongIntHashMap nodeIndex = new LongIntHashMap();    // node id -> dense node index
+    private long[] nodeIds = new long[1024];                          // dense node index -> node id
+    private int nodeCount = 0;
+
+    private int[] edgeSources = new int[1024];
+    private int[] edgeTargets = new int[1024];
+    private boolean[] edgeIntra = new boolean[1024];   // whether the type stays inside a function
+    private int edgeCount = 0;
+
+    private int[] partition;                           // dense node index -> partition id
+    private int partitionCount;
+
+    // boundary and intra-partition relationships in compressed sparse row form
+    private int[] intraOffsets;
+    private int[] intraTargets;
+    private int[] boundaryOffsets;
+    private int[] boundaryTargets;
+
+    // partition members, contiguous per partition
+    private int[] memberOffsets;
+    private int[] members;
+    private int[] localIndex;                          // dense node index -> position inside its partition
+
+    private PartitionedDataflow() {}
+
+    // load the dataflow graph of the transaction and partition it
+    //      influence: whether varInfFunc and varInfluence relationships carry flows as well
+    public static PartitionedDataflow load(Transaction tx, PartitionBy partitionBy, boolean influence) {
+        PartitionedDataflow dataflow = new PartitionedDataflow();
+        for (DataflowHelper.RelTypes type : FLOW_TYPES) {
+            dataflow.loadRelationships(tx, type);
+        }
+        if (influence) {
+            for (DataflowHelper.RelTypes type : INFLUENCE_TYPES) {
+                dataflow.loadRelationships(tx, type);
+            }
+        }
+
+        if (partitionBy == PartitionBy.compName) {
+            dataflow.partitionByComponent(tx);
+        } else {
+            dataflow.partitionByFunction();
+        }
+        dataflow.buildAdjacency();
+        return dataflow;
+    }
+
+    // helper function: append all relationships of one type
+    private void loadRelationships(Transaction tx, DataflowHelper.RelTypes type) {
+        boolean intra = (type != DataflowHelper.RelTypes.parWrite) && (type != DataflowHelper.RelTypes.retWrite) &&
+                (type != DataflowHelper.RelTypes.pubVar) && (type != DataflowHelper.RelTypes.pubTarget);
+        try (ResourceIterator<Relationship> rels = tx.findRelationships(type)) {
+            while (rels.hasNext()) {
+                Relationship rel = rels.next();
+                if (edgeCount == edgeSources.length) {
+                    edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+                    edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+                    edgeIntra = Arrays.copyOf(edgeIntra, edgeCount * 2);
+                }
+                edgeSources[edgeCount] = indexOf(rel.getStartNodeId());
+                edgeTargets[edgeCount] = indexOf(rel.getEndNodeId());
+                edgeIntra[edgeCount] = intra;
+                edgeCount++;
+            }
+        }
+    }
+
+    // helper function: dense index of a node, registering it if needed
+    private int indexOf(long nodeId) {
+        int index = nodeIndex.getIfAbsent(nodeId, -1);
+        if (index < 0) {
+            if (nodeCount == nodeIds.length) {
+                nodeIds = Arrays.copyOf(nodeIds, nodeCount * 2);
+            }
+            index = nodeCount;
+            nodeIds[nodeCount++] = nodeId;
+            nodeIndex.put(nodeId, index);
+        }
+        return index;
+    }
+
+    // helper function: a function is a weakly connected component of the relationships that stay inside a function
+    //      (varWrite and the influence relationships), found with union-find
+    private void partitionByFunction() {
+        int[] parent = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            parent[i] = i;
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            if (!edgeIntra[e]) {continue;}
+            int a = find(parent, edgeSources[e]);
+            int b = find(parent, edgeTargets[e]);
+            if (a != b) {
+                parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+
+        partition = new int[nodeCount];
+        int[] rootPartition = new int[nodeCount];
+        Arrays.fill(rootPartition, -1);
+        partitionCount = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            int root = find(parent, i);
+            if (rootPartition[root] < 0) {
+                rootPartition[root] = partitionCount++;
+            }
+            partition[i] = rootPartition[root];
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // helper function: a component is the set of nodes sharing a compName value; nodes without one (e.g. topics)
+    //      form a partition of their own
+    private void partitionByComponent(Transaction tx) {
+        ObjectIntHashMap<Object> components = new ObjectIntHashMap<>();
+        partition = new int[nodeCount];
+        partitionCount = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            Object compName = tx.getNodeById(nodeIds[i]).getProperty("compName", null);
+            if (compName == null) {
+                partition[i] = partitionCount++;
+            } else {
+                int id = components.getIfAbsent(compName, -1);
+                if (id < 0) {
+                    id = partitionCount++;
+                    components.put(compName, id);
+                }
+                partition[i] = id;
+            }
+        }
+    }
+
+    // helper function: split relationships into intra-partition and boundary adjacency, and group the members of
+    //      each partition
+    private void buildAdjacency() {
+        intraOffsets = new int[nodeCount + 1];
+        boundaryOffsets = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            if (isBoundary(e)) {
+                boundaryOffsets[edgeSources[e] + 1]++;
+            } else {
+                intraOffsets[edgeSources[e] + 1]++;
+            }
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            intraOffsets[i + 1] += intraOffsets[i];
+            boundaryOffsets[i + 1] += boundaryOffsets[i];
+        }
+        intraTargets = new int[intraOffsets[nodeCount]];
+        boundaryTargets = new int[boundaryOffsets[nodeCount]];
+        int[] intraPosition = Arrays.copyOf(intraOffsets, nodeCount);
+        int[] boundaryPosition = Arrays.copyOf(boundaryOffsets, nodeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            if (isBoundary(e)) {
+                boundaryTargets[boundaryPosition[edgeSources[e]]++] = edgeTargets[e];
+            } else {
+                intraTargets[intraPosition[edgeSources[e]]++] = edgeTargets[e];
+            }
+        }
+
+        memberOffsets = new int[partitionCount + 1];
+        for (int i = 0; i < nodeCount; i++) {
+            memberOffsets[partition[i] + 1]++;
+        }
+        for (int p = 0; p < partitionCount; p++) {
+            memberOffsets[p + 1] += memberOffsets[p];
+        }
+        members = new int[nodeCount];
+        localIndex = new int[nodeCount];
+        int[] position = Arrays.copyOf(memberOffsets, partitionCount);
+        for (int i = 0; i < nodeCount; i++) {
+            int p = partition[i];
+            localIndex[i] = position[p] - memberOffsets[p];
+            members[position[p]++] = i;
+        }
+
+        // the edge list is not needed anymore
+        edgeSources = edgeTargets = null;
+        edgeIntra = null;
+    }
+
+    private boolean isBoundary(int e) {
+        return partition[edgeSources[e]] != partition[edgeTargets[e]];
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    // find the flows between the given source and sink nodes
+    // return: a list of [source id, sink id, number of partition boundaries crossed], using the fewest crossings
+    public List<long[]> analyze(long[] sourceIds, long[] sinkIds, ExecutorService executor, TerminationGuard guard) {
+        boolean[] isSource = toFlags(sourceIds);
+        boolean[] isSink = toFlags(sinkIds);
+
+        // entries and exits of every partition
+        boolean[] isEntry = isSource.clone();
+        boolean[] isExit = isSink.clone();
+        for (int i = 0; i < nodeCount; i++) {
+            if (boundaryOffsets[i + 1] > boundaryOffsets[i]) {
+                isExit[i] = true;
+            }
+            for (int j = boundaryOffsets[i]; j < boundaryOffsets[i + 1]; j++) {
+                isEntry[boundaryTargets[j]] = true;
+            }
+        }
+
+        // phase 1: summaries of every partition with at least one entry, in parallel
+        List<Future<List<int[]>>> futures = new ArrayList<>();
+        for (int p = 0; p < partitionCount; p++) {
+            final int current = p;
+            for (int m = memberOffsets[p]; m < memberOffsets[p + 1]; m++) {
+                if (isEntry[members[m]]) {
+                    futures.add(executor.submit(() -> summarize(current, isEntry, isExit)));
+                    break;
+                }
+            }
+        }
+
+        int[][] summaries = new int[nodeCount][];     // entry -> exits reachable inside its partition
+        for (Future<List<int[]>> future : futures) {
+            guard.check();
+            try {
+                for (int[] summary : future.get()) {
+                    summaries[summary[0]] = Arrays.copyOfRange(summary, 1, summary.length);
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interruption error executing in parallel: ", e);
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Execution error executing in parallel: ", e);
+            }
+        }
+
+        // phase 2: stitch the summaries together at the partition boundaries
+        List<long[]> flows = new ArrayList<>();
+        int[] seen = new int[nodeCount];      // stamp of the source search that reached the entry
+        int[] sinkSeen = new int[nodeCount];
+        int[] layer = new int[nodeCount];
+        int[] nextLayer = new int[nodeCount];
+        int stamp = 0;
+        for (long sourceId : sourceIds) {
+            int source = nodeIndex.getIfAbsent(sourceId, -1);
+            if (source < 0) {continue;}
+            guard.check();
+            stamp++;
+
+            // breadth first search by number of crossings: all entries of a layer are reached with the same number
+            //      of boundary relationships
+            int layerSize = 0;
+            layer[layerSize++] = source;
+            seen[source] = stamp;
+            for (int crossings = 0; layerSize > 0; crossings++) {
+                int nextSize = 0;
+                for (int l = 0; l < layerSize; l++) {
+                    for (int exit : summaries[layer[l]]) {
+                        if (isSink[exit] && (sinkSeen[exit] != stamp)) {
+                            sinkSeen[exit] = stamp;
+                            flows.add(new long[] {sourceId, nodeIds[exit], crossings});
+                        }
+                        for (int j = boundaryOffsets[exit]; j < boundaryOffsets[exit + 1]; j++) {
+                            int entry = boundaryTargets[j];
+                            if (seen[entry] != stamp) {
+                                seen[entry] = stamp;
+                                nextLayer[nextSize++] = entry;
+                            }
+                        }
+                    }
+                }
+                int[] swap = layer;
+                layer = nextLayer;
+                nextLayer = swap;
+                layerSize = nextSize;
+            }
+        }
+
+        return flows;
+    }
+
+    // helper function: dense flags of the given node ids; nodes outside the dataflow graph are ignored
+    private boolean[] toFlags(long[] ids) {
+        boolean[] flags = new boolean[nodeCount];
+        for (long id : ids) {
+            int index = nodeIndex.getIfAbsent(id, -1);
+            if (index >= 0) {
+                flags[index] = true;
+            }
+        }
+        return flags;
+    }
+
+    // helper function: for every entry of the partition, [entry, exits reachable inside the partition...]
+    //      only reads the loaded arrays, so partitions can be summarised concurrently
+    private List<int[]> summarize(int p, boolean[] isEntry, boolean[] isExit) {
+        int size = memberOffsets[p + 1] - memberOffsets[p];
+        int[] seen = new int[size];
+        int[] queue = new int[size];
+        int[] exits = new int[size + 1];
+        List<int[]> summaries = new ArrayList<>();
+
+        int stamp = 0;
+        for (int m = memberOffsets[p]; m < memberOffsets[p + 1]; m++) {
+            int entry = members[m];
+            if (!isEntry[entry]) {continue;}
+            stamp++;
+
+            int exitCount = 0;
+            exits[exitCount++] = entry;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = entry;
+            seen[localIndex[entry]] = stamp;
+            while (head < tail) {
+                int node = queue[head++];
+                if (isExit[node]) {
+                    exits[exitCount++] = node;
+                }
+                for (int j = intraOffsets[node]; j < intraOffsets[node + 1]; j++) {
+                    int next = intraTargets[j];
+                    if (seen[localIndex[next]] != stamp) {
+                        seen[localIndex[next]] = stamp;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            summaries.add(Arrays.copyOf(exits, exitCount));
+        }
+        return summaries;
+    }
+}
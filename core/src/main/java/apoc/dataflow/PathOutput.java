@@ -0,0 +1,54 @@
+package apoc.dataflow;
+
+import apoc.result.BoundedPathsResult;
+import org.neo4j.graphdb.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Output encoding of dataflow paths, read from the 'output' key of the query configuration:
+//    - 'paths' (default): every path is returned as a graph path
+//    - 'ids': every path is returned as its list of relationship ids, which apoc.dataflow.hydrate turns back into
+//      a path; nodes and properties are only sent for the paths the client actually inspects
+public class PathOutput {
+
+    public static final String PATHS = "paths";
+    public static final String IDS = "ids";
+
+    // helper function: whether the configuration asks for relationship ids
+    public static boolean isIds(Map<String, Object> config) {
+        Object output = (config == null) ? null : config.get("output");
+        if ((output == null) || PATHS.equals(output)) {
+            return false;
+        }
+        if (IDS.equals(output)) {
+            return true;
+        }
+        throw new IllegalArgumentException("Unknown output '" + output + "', expected '" + PATHS + "' or '" + IDS + "'");
+    }
+
+    // a search that returns null, e.g. without a start, returns null ids as well
+    public static List<List<Long>> toIds(List<Path> paths) {
+        if (paths == null) {
+            return null;
+        }
+        List<List<Long>> ids = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            List<Long> relIds = new ArrayList<>(path.length());
+            for (long relId : DataflowCache.toIds(path)) {
+                relIds.add(relId);
+            }
+            ids.add(relIds);
+        }
+        return ids;
+    }
+
+    // helper function: result of a bounded search in the requested encoding
+    public static BoundedPathsResult result(List<Path> paths, Map<String, Object> config, SearchBudget budget) {
+        if (isIds(config)) {
+            return new BoundedPathsResult(null, toIds(paths), budget.isTruncated(), budget.profile());
+        }
+        return new BoundedPathsResult(paths, null, budget.isTruncated(), budget.profile());
+    }
+}
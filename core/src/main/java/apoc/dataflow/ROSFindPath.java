@@ -1,7 +1,13 @@
 package apoc.dataflow;
 
 import apoc.Pools;
+import apoc.algo.CallGraphReachability;
 import apoc.path.CFGValidationHelper;
+import apoc.path.DataflowTraversal;
+import apoc.result.BoundedPathsResult;
+import apoc.result.PathResult;
+import apoc.result.RosTopicResult;
+import apoc.util.Util;
 import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphalgo.impl.path.ShortestPath;
 import org.neo4j.graphalgo.impl.util.PathImpl;
@@ -10,6 +16,9 @@ import org.neo4j.procedure.*;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public class ROSFindPath {
 
@@ -22,6 +31,15 @@ public class ROSFindPath {
     @Context
     public Pools pool;
 
+    @Context
+    public TerminationGuard guard;
+
+    // helper function: CFG helper bound to the transaction of this query
+    //      (procedure classes cannot hold state, so a helper is created for each use)
+    private DataflowHelper dataflowHelper() {
+        return new DataflowHelper(db, tx);
+    }
+
 
     private DataflowHelper.DataflowType getCategory(Node startNode, Node endNode, Relationship startEdge,
                                                     Relationship endEdge) {
@@ -38,7 +56,9 @@ public class ROSFindPath {
         }
     }
 
-    class DataflowCallable implements Callable<List<Path>> {
+    // search between a start and an end edge; as a task of rosDataflow, it runs in a transaction of its own, as the
+    //      transaction of the query must not be used by other threads, and returns the relationship ids of the paths
+    class DataflowCallable implements Callable<long[][]> {
 
         private Relationship startEdge = null;
         private Relationship endEdge = null;
@@ -81,10 +101,27 @@ public class ROSFindPath {
         }
 
         @Override
-        public List<Path> call() throws Exception {
-            //terminationGuard.check();
-            return rosAllShortestMulti(this.startNode, this.endNode, this.startEdge, this.endEdge,
-                    this.pubVar, this.pubTarget, this.category, this.cfgCheck);
+        public long[][] call() throws Exception {
+            try (Transaction workerTx = db.beginTx()) {
+                List<Path> paths = search(workerTx);
+                long[][] relIds = new long[paths.size()][];
+                for (int i = 0; i < relIds.length; i++) {
+                    relIds[i] = DataflowCache.toIds(paths.get(i));
+                }
+                return relIds;
+            }
+        }
+
+        // run the search with the entities and helper bound to searchTx
+        public List<Path> search(Transaction searchTx) {
+            return rosAllShortestMulti(rebind(searchTx, this.startNode), rebind(searchTx, this.endNode),
+                    rebind(searchTx, this.startEdge), rebind(searchTx, this.endEdge),
+                    rebind(searchTx, this.pubVar), rebind(searchTx, this.pubTarget), this.category, this.cfgCheck,
+                    new DataflowHelper(db, searchTx));
+        }
+
+        private <T extends Entity> T rebind(Transaction searchTx, T entity) {
+            return (entity == null) ? null : Util.rebind(searchTx, entity);
         }
     }
 
@@ -97,83 +134,211 @@ public class ROSFindPath {
 
 
         ArrayList<Path> returnedPath = new ArrayList<>();
-        List<Callable<List<Path>>> findPaths = new ArrayList<>();
-        Queue<Future<List<Path>>> list = new LinkedList<>();
 
-        int threads = (int) numThreads;
-        //ExecutorService es = pool.getDefaultExecutorService();
-        //CompletionService<List<Path>> executorCompletionService= new ExecutorCompletionService<>(es);
-        ExecutorService es = Executors.newFixedThreadPool(threads);
-        int numTask = 0;
+        // the workers only see committed data, so uncommitted changes of this transaction are searched on this thread
+        if (DataflowCache.hasChanges(tx)) {
+            for (Relationship startEdge : startEdges) {
+                for (Relationship endEdge : endEdges) {
+                    returnedPath.addAll(new DataflowCallable(startEdge, endEdge, cfgCheck).search(tx));
+                }
+            }
+            return returnedPath;
+        }
 
-        //int threads =  Runtime.getRuntime().availableProcessors();
+        Queue<Future<long[][]>> list = new LinkedList<>();
+        ExecutorService es = Executors.newFixedThreadPool((int) numThreads);
         for (Relationship startEdge : startEdges) {
             for (Relationship endEdge : endEdges) {
-                numTask += 1;
-
-                /**final FutureTask<List<Path>> futureTask = new FutureTask<>(
-                        new DataflowCallable(startEdge, endEdge, cfgCheck)
-                );
-                findPaths.add(new DataflowCallable(startEdge, endEdge, cfgCheck));**/
+                list.add(es.submit(new DataflowCallable(startEdge, endEdge, cfgCheck)));
+            }
+        }
 
-                Future<List<Path>> ftr = es.submit(
-                        new DataflowCallable(startEdge, endEdge, cfgCheck)
-                );
-                list.add(ftr);
+        try {
+            while (!list.isEmpty()) {
+                // the paths found by a worker are rebuilt in the transaction of the query
+                returnedPath.addAll(DataflowCache.toPaths(list.remove().get(), tx));
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interruption error executing in parallel: ", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Execution error executing in parallel: ", e);
+        } finally {
+            es.shutdownNow();
+        }
 
+        return returnedPath;
 
-                /**executorCompletionService.submit(
-                        new DataflowCallable(startEdge, endEdge, cfgCheck)
-                );**/
+    }
 
-            }
+    @Procedure
+    @Description("apoc.dataflow.rosTopicIndex() - lists every ROS topic with its publishing pubVar and subscribing pubTarget relationships")
+    public Stream<RosTopicResult> rosTopicIndex() {
+        RosTopicIndex index = RosTopicIndex.forDatabase(db, tx);
+        return Arrays.stream(index.getTopics()).mapToObj(topicId -> topicResult(index, topicId))
+                .filter(Objects::nonNull);
+    }
 
+    // helper function: a topic with its relationships, or null if the topic was deleted after the index was built
+    private RosTopicResult topicResult(RosTopicIndex index, long topicId) {
+        try {
+            return new RosTopicResult(tx.getNodeById(topicId), toRelationships(index.getPublishers(topicId)),
+                    toRelationships(index.getSubscribers(topicId)));
+        } catch (NotFoundException e) {
+            return null;
         }
+    }
 
+    @Procedure
+    @Description("apoc.dataflow.rosComposeFlows(startEdges, endEdges, cfgCheck, {maxTopics:-1}) - composes end-to-end dataflow paths across ROS topics from prefix, middle and suffix segments")
+    public Stream<PathResult> rosComposeFlows(@Name("startEdges") List<Relationship> startEdges,
+                                              @Name("endEdges") List<Relationship> endEdges,
+                                              @Name("cfgCheck") boolean cfgCheck,
+                                              @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        // Accepted parameters:
+        //    - maxTopics: maximum number of topics a composed path passes through (default: unlimited)
+        long maxTopics = Util.toLong(config.getOrDefault("maxTopics", -1));
+        RosTopicIndex index = RosTopicIndex.forDatabase(db, tx);
+
+        // segments are memoised on [first edge, last edge], so that a middle segment shared by many chains is only
+        //      searched once, and what a segment can reach is memoised on its start node
+        HashMap<List<Long>, List<Path>> segments = new HashMap<>();
+        HashMap<Long, Reach> reaches = new HashMap<>();
+        List<Path> flows = new ArrayList<>();
 
-        while (!list.isEmpty()) {
-            Future<List<Path>> ftr = list.remove();
-            try {
-                final List<Path> result = ftr.get();
-                if ((result != null) && (!result.isEmpty())) {
-                    returnedPath.addAll(result);
+        for (Relationship startEdge : startEdges) {
+            for (Relationship pubVar : reach(startEdge.getEndNode(), reaches).publishers) {
+                for (Path prefix : getSegment(startEdge, pubVar, cfgCheck, segments)) {
+                    ArrayList<Path> chain = new ArrayList<>(List.of(prefix));
+                    HashSet<Long> visitedTopics = new HashSet<>(List.of(pubVar.getEndNodeId()));
+                    composeFlows(chain, pubVar.getEndNodeId(), visitedTopics, endEdges, cfgCheck, maxTopics,
+                            index, segments, reaches, flows);
                 }
-            } catch (InterruptedException e) {
-                // If an InterruptedException or ExecutionException is thrown, print the exception message
-                es.shutdown();
-                throw new RuntimeException("Interruption error executing in parallel: ", e);
-            } catch (ExecutionException e) {
-                es.shutdown();
-                throw new RuntimeException("Execution error executing in parallel: ", e);
             }
-
-            ftr = null;
-            Runtime.getRuntime().gc();
         }
 
-        es.shutdown();
-        try {
-            es.awaitTermination(10, TimeUnit.SECONDS);
-            es.shutdownNow();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Interruption error executing in parallel: ", e);
-        }
+        return flows.stream().map(PathResult::new);
+    }
 
+    // helper function: extend a chain of segments ending at topic with either a suffix segment (completing a flow)
+    //      or a middle segment leading to a topic that is not part of the chain yet
+    private void composeFlows(ArrayList<Path> chain, long topicId, HashSet<Long> visitedTopics,
+                              List<Relationship> endEdges, boolean cfgCheck, long maxTopics, RosTopicIndex index,
+                              HashMap<List<Long>, List<Path>> segments, HashMap<Long, Reach> reaches,
+                              List<Path> flows) {
+        for (long pubTargetId : index.getSubscribers(topicId)) {
+            guard.check();
+            Relationship pubTarget = relationship(pubTargetId);
+            if (pubTarget == null) {
+                continue;
+            }
+            Reach reach = reach(pubTarget.getEndNode(), reaches);
 
+            for (Relationship endEdge : endEdges) {
+                if (!reach.nodes.contains(endEdge.getStartNodeId())) {
+                    continue;
+                }
+                for (Path suffix : getSegment(pubTarget, endEdge, cfgCheck, segments)) {
+                    chain.add(suffix);
+                    flows.add(concatenate(chain));
+                    chain.remove(chain.size() - 1);
+                }
+            }
 
+            if ((maxTopics >= 0) && (visitedTopics.size() >= maxTopics)) {
+                continue;
+            }
 
+            for (Relationship pubVar : reach.publishers) {
+                long nextTopicId = pubVar.getEndNodeId();
+                if (visitedTopics.contains(nextTopicId)) {
+                    continue;
+                }
+                for (Path middle : getSegment(pubTarget, pubVar, cfgCheck, segments)) {
+                    chain.add(middle);
+                    visitedTopics.add(nextTopicId);
+                    composeFlows(chain, nextTopicId, visitedTopics, endEdges, cfgCheck, maxTopics, index,
+                            segments, reaches, flows);
+                    visitedTopics.remove(nextTopicId);
+                    chain.remove(chain.size() - 1);
+                }
+            }
+        }
+    }
 
-        /**try {
+    // the variables reached by dataflow from the start node of a segment, and the pubVar relationships publishing
+    //      one of them; a segment can only end at these, so no search is run towards any other publisher
+    private static class Reach {
+        private final HashSet<Long> nodes = new HashSet<>();
+        private final List<Relationship> publishers = new ArrayList<>();
+    }
 
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }**/
+    // helper function: follow the dataflow relationships of the segment searches from start, once per query
+    private Reach reach(Node start, HashMap<Long, Reach> reaches) {
+        Reach reach = reaches.get(start.getId());
+        if (reach != null) {
+            return reach;
+        }
 
+        reach = new Reach();
+        Queue<Node> queue = new LinkedList<>(List.of(start));
+        reach.nodes.add(start.getId());
+        while (!queue.isEmpty()) {
+            guard.check();
+            Node node = queue.remove();
+            for (Relationship pubVar : node.getRelationships(Direction.OUTGOING, DataflowHelper.RelTypes.pubVar)) {
+                reach.publishers.add(pubVar);
+            }
+            for (Relationship rel : DataflowHelper.getNextRels(node)) {
+                if (reach.nodes.add(rel.getEndNodeId())) {
+                    queue.add(rel.getEndNode());
+                }
+            }
+        }
+        reaches.put(start.getId(), reach);
+        return reach;
+    }
 
+    // helper function: prefix, middle or suffix segment between two edges, computed once per query
+    private List<Path> getSegment(Relationship startEdge, Relationship endEdge, boolean cfgCheck,
+                                  HashMap<List<Long>, List<Path>> segments) {
+        List<Long> key = List.of(startEdge.getId(), endEdge.getId());
+        List<Path> segment = segments.get(key);
+        if (segment == null) {
+            segment = new DataflowCallable(startEdge, endEdge, cfgCheck).search(tx);
+            segments.put(key, segment);
+        }
+        return segment;
+    }
 
-        return returnedPath;
+    // helper function: join consecutive segments into a single path
+    private Path concatenate(List<Path> segments) {
+        PathImpl.Builder builder = new PathImpl.Builder(segments.get(0).startNode());
+        for (Path segment : segments) {
+            for (Relationship rel : segment.relationships()) {
+                builder = builder.push(rel);
+            }
+        }
+        return builder.build();
+    }
 
+    private List<Relationship> toRelationships(long[] relIds) {
+        List<Relationship> rels = new ArrayList<>(relIds.length);
+        for (long relId : relIds) {
+            Relationship rel = relationship(relId);
+            if (rel != null) {
+                rels.add(rel);
+            }
+        }
+        return rels;
+    }
+
+    // helper function: the relationship with the id, or null if it was deleted after the topic index was built
+    private Relationship relationship(long relId) {
+        try {
+            return tx.getRelationshipById(relId);
+        } catch (NotFoundException e) {
+            return null;
+        }
     }
 
     public List<Path> rosAllShortestMulti(@Name("startNode") Node startNode,
@@ -183,7 +348,8 @@ public class ROSFindPath {
                                      @Name("pubVar") Relationship pubVar,
                                      @Name("pubTarget") Relationship pubTarget,
                                      @Name("category") DataflowHelper.DataflowType category,
-                                     @Name("cfgCheck") boolean cfgCheck) {
+                                     @Name("cfgCheck") boolean cfgCheck,
+                                     DataflowHelper helper) {
 
         // path finding data structures
         HashSet<Long> visitedRels = new HashSet<>();
@@ -244,14 +410,14 @@ public class ROSFindPath {
             }
 
             // validate or get the corresponding CFG
-            if ((!cfgCheck) || getCFGPath(curEdge)) {
+            if ((!cfgCheck) || getCFGPath(curEdge, helper)) {
 
                 visitedRel.add(curRel.getId());
 
                 if (curRel.getEndNode().getId() == end.getId()) {
                     if (category == DataflowHelper.DataflowType.SUFFIX) {
                         EdgeInfo vifEdge = new EdgeInfo(endEdge, curEdge);
-                        if ((!cfgCheck) || getCFGPath(vifEdge)) {
+                        if ((!cfgCheck) || getCFGPath(vifEdge, helper)) {
                             returnedPath.add(recursiveConstructPath(vifEdge, pubTarget).build());
                             foundPath = vifEdge;
                             visitedRels.addAll(visitedRel);
@@ -285,12 +451,61 @@ public class ROSFindPath {
     }
 
     @UserFunction
-    @Description("apoc.dataflow.rosAllShortest()")
+    @Description("apoc.dataflow.rosAllShortest(startNode, endNode, startEdge, endEdge, cfgCheck, {cache:false, maxDepth:-1, maxResults:-1, timeoutMs:-1, maxExpansions:-1, order:'bfs', weights:{}, lineWeight:0, cfgWeight:0, limit:-1})")
     public List<Path> rosAllShortest(@Name("startNode") Node startNode,
                                      @Name("endNode") Node endNode,
                                      @Name("startEdge") Relationship startEdge,
                                      @Name("endEdge") Relationship endEdge,
-                                     @Name("cfgCheck") boolean cfgCheck) {
+                                     @Name("cfgCheck") boolean cfgCheck,
+                                     @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+
+        // reuse the result of an identical query if the graph did not change since
+        if (Util.toBoolean(config.getOrDefault("cache", false)) && !DataflowCache.hasChanges(tx)) {
+            DataflowCache cache = DataflowCache.forDatabase(db);
+            DataflowCache.Key cacheKey = DataflowCache.key("apoc.dataflow.rosAllShortest",
+                    Arrays.asList(startNode, endNode, startEdge, endEdge, cfgCheck), config);
+            long txId = DataflowCache.lastCommittedTxId(db);
+            List<Path> cached = cache.get(cacheKey, tx, txId);
+            if (cached != null) {
+                return cached;
+            }
+
+            SearchBudget budget = new SearchBudget(config, guard);
+            List<Path> paths = rosAllShortest(startNode, endNode, startEdge, endEdge, cfgCheck, budget,
+                    CostModel.from(config));
+            // truncated results depend on the limits and timing of this particular run, so they are not cached
+            if ((paths != null) && (!budget.isTruncated())) {
+                cache.put(cacheKey, paths, txId);
+            }
+            return paths;
+        }
+
+        return rosAllShortest(startNode, endNode, startEdge, endEdge, cfgCheck, new SearchBudget(config, guard),
+                CostModel.from(config));
+    }
+
+    @Procedure
+    @Description("apoc.dataflow.rosAllShortestBounded(startNode, endNode, startEdge, endEdge, cfgCheck, {maxDepth:-1, maxResults:-1, timeoutMs:-1, maxExpansions:-1, order:'bfs', weights:{}, lineWeight:0, cfgWeight:0, limit:-1}) - same as rosAllShortest, also reports whether the search was truncated by its limits")
+    public Stream<BoundedPathsResult> rosAllShortestBounded(@Name("startNode") Node startNode,
+                                                            @Name("endNode") Node endNode,
+                                                            @Name("startEdge") Relationship startEdge,
+                                                            @Name("endEdge") Relationship endEdge,
+                                                            @Name("cfgCheck") boolean cfgCheck,
+                                                            @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        SearchBudget budget = new SearchBudget(config, guard);
+        List<Path> paths = rosAllShortest(startNode, endNode, startEdge, endEdge, cfgCheck, budget,
+                CostModel.from(config));
+        return Stream.of(PathOutput.result(paths, config, budget));
+    }
+
+    public List<Path> rosAllShortest(Node startNode, Node endNode, Relationship startEdge, Relationship endEdge,
+                                     boolean cfgCheck, SearchBudget budget) {
+        return rosAllShortest(startNode, endNode, startEdge, endEdge, cfgCheck, budget, null);
+    }
+
+    // cost: order of the search, see CostModel, or null for the breadth first search
+    public List<Path> rosAllShortest(Node startNode, Node endNode, Relationship startEdge, Relationship endEdge,
+                                     boolean cfgCheck, SearchBudget budget, CostModel cost) {
 
         // path finding data structures
         HashSet<Long> visitedRels = new HashSet<>();
@@ -317,6 +532,11 @@ public class ROSFindPath {
             return List.of(builder.build());
         }
 
+        // no dataflow path connects the functions of start and end
+        if (!CallGraphReachability.mayReach(db, tx, start, end)) {
+            return returnedPath;
+        }
+
         // Add first edges to queue before beginning search
         if (category != DataflowHelper.DataflowType.PREFIX) {
             Iterable<Relationship> nextRels = DataflowHelper.getNextRels(startNode);
@@ -329,9 +549,23 @@ public class ROSFindPath {
             queueEdge.add(new EdgeInfo(startEdge, null));
         }
 
+        // cheapest paths first, a relationship is expanded a bounded number of times instead of once per length
+        if (cost != null) {
+            List<EdgeInfo> found = new DataflowTraversal<>(new EdgeStrategy(end, endEdge, category, cfgCheck), cost,
+                    budget).run(queueEdge, new HashSet<>(), new ArrayList<>());
+            for (EdgeInfo edge : found) {
+                returnedPath.add(constructPath(edge));
+            }
+            return returnedPath;
+        }
 
         while (!queueEdge.isEmpty()) {
 
+            // stop once a limit is hit or the query has been terminated
+            if (!budget.next(returnedPath.size())) {
+                break;
+            }
+
             EdgeInfo curEdge = queueEdge.remove();
             Relationship curRel = curEdge.getCurRel();
 
@@ -346,14 +580,14 @@ public class ROSFindPath {
             }
 
             // validate or get the corresponding CFG
-            if ((!cfgCheck) || getCFGPath(curEdge)) {
+            if ((!cfgCheck) || getCFGPath(curEdge, dataflowHelper())) {
 
                 visitedRels.add(curRel.getId());
 
                 if (curRel.getEndNode().getId() == end.getId()) {
                     if (category == DataflowHelper.DataflowType.SUFFIX) {
                         curEdge = new EdgeInfo(endEdge, curEdge);
-                        if ((!cfgCheck) || getCFGPath(curEdge)) {
+                        if ((!cfgCheck) || getCFGPath(curEdge, dataflowHelper())) {
                             returnedPath.add(constructPath(curEdge));
                             foundPath = curEdge;
                             visitedRels.addAll(visitedRel);
@@ -371,7 +605,7 @@ public class ROSFindPath {
 
                 Iterable<Relationship> nextRels = DataflowHelper.getNextRels(curRel.getEndNode());
                 for (Relationship nextRel : nextRels) {
-                    if (!visitedRels.contains(nextRel)) {
+                    if (!visitedRels.contains(nextRel) && budget.canExtend(curEdge.getPathLength())) {
                         queueEdge.add(new EdgeInfo(nextRel, curEdge));
                     }
                 }
@@ -382,13 +616,66 @@ public class ROSFindPath {
         return returnedPath;
     }
 
-    private boolean getCFGPath(EdgeInfo curEdge) {
+    // Traversal strategy of the cost ordered rosAllShortest, with the same end and CFG checks as the breadth first search
+    private class EdgeStrategy implements DataflowTraversal.Strategy<EdgeInfo> {
+
+        private final Node end;
+        private final Relationship endEdge;
+        private final DataflowHelper.DataflowType category;
+        private final boolean cfgCheck;
+
+        EdgeStrategy(Node end, Relationship endEdge, DataflowHelper.DataflowType category, boolean cfgCheck) {
+            this.end = end;
+            this.endEdge = endEdge;
+            this.category = category;
+            this.cfgCheck = cfgCheck;
+        }
+
+        @Override
+        public boolean isValid(EdgeInfo path) {
+            return (!cfgCheck) || getCFGPath(path, dataflowHelper());
+        }
+
+        @Override
+        public EdgeInfo complete(EdgeInfo path) {
+            if (path.getCurRel().getEndNode().getId() != end.getId()) {
+                return null;
+            }
+            if (category == DataflowHelper.DataflowType.SUFFIX) {
+                EdgeInfo suffixPath = new EdgeInfo(endEdge, path);
+                return isValid(suffixPath) ? suffixPath : null;
+            }
+            return path;
+        }
+
+        // a relationship is taken at most once per path, as the best-first search may expand it more than once
+        @Override
+        public void expand(EdgeInfo path, Predicate<Relationship> admissible, Consumer<EdgeInfo> queue) {
+            for (Relationship nextRel : DataflowHelper.getNextRels(path.getCurRel().getEndNode())) {
+                if (admissible.test(nextRel) && (!path.contains(nextRel))) {
+                    queue.accept(new EdgeInfo(nextRel, path));
+                }
+            }
+        }
+
+        @Override
+        public Relationship getLastRel(EdgeInfo path) {
+            return path.getCurRel();
+        }
+
+        @Override
+        public int getPathSize(EdgeInfo path) {
+            return path.getPathLength();
+        }
+    }
+
+    private boolean getCFGPath(EdgeInfo curEdge, DataflowHelper helper) {
 
-        HashMap<List<Node>, Relationship> curCFG = DataflowHelper.getConnectionNodes(curEdge.getCurRel());
+        HashMap<List<Node>, Relationship> curCFG = helper.getConnectionNodes(curEdge.getCurRel());
         ArrayList<Node> prevCFG = curEdge.getPrevRelCFG();
 
         ShortestPath shortestPath = new ShortestPath(
-                new BasicEvaluationContext(tx, db),
+                helper.getContext(),
                 (int) Integer.MAX_VALUE,
                 CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
 
@@ -0,0 +1,133 @@
+package apoc.dataflow;
+
+import apoc.algo.GraphSummary;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+
+// Index of ROS topics: for every topic node, the pubVar relationships publishing to it and the pubTarget
+// relationships delivering from it, stored as relationship ids in compressed sparse row arrays.
+// The index is rebuilt in the background once a newer transaction has been committed to the database; until then,
+// queries are served the previous index, which may still list relationships deleted since and miss new ones.
+public class RosTopicIndex {
+
+    private static final long[] EMPTY = new long[0];
+
+    // one index per database
+    private static final GraphSummary<RosTopicIndex> INDEXES = new GraphSummary<>(RosTopicIndex::build);
+
+    private final LongIntHashMap topicIndex;    // topic node id -> dense topic index
+    private final long[] topics;                // dense topic index -> topic node id
+    private final int[] pubVarOffsets;
+    private final long[] pubVars;
+    private final int[] pubTargetOffsets;
+    private final long[] pubTargets;
+
+    private RosTopicIndex(LongIntHashMap topicIndex, long[] topics, int[] pubVarOffsets, long[] pubVars,
+                          int[] pubTargetOffsets, long[] pubTargets) {
+        this.topicIndex = topicIndex;
+        this.topics = topics;
+        this.pubVarOffsets = pubVarOffsets;
+        this.pubVars = pubVars;
+        this.pubTargetOffsets = pubTargetOffsets;
+        this.pubTargets = pubTargets;
+    }
+
+    // return the last index built for the committed graph (see GraphSummary); only if tx has uncommitted changes, or
+    //      before a first index is built, an index of the graph seen by tx is built for this query
+    public static RosTopicIndex forDatabase(GraphDatabaseService db, Transaction tx) {
+        RosTopicIndex index = INDEXES.getLatest(db, tx);
+        return (index != null) ? index : build(tx);
+    }
+
+    // check whether the index of the latest committed graph is ready
+    static boolean isCurrent(GraphDatabaseService db, Transaction tx) {
+        return INDEXES.get(db, tx) != null;
+    }
+
+    // helper function: scan all pubVar and pubTarget relationships and group them by topic
+    private static RosTopicIndex build(Transaction tx) {
+        LongIntHashMap topicIndex = new LongIntHashMap();
+        long[][] pubVarEdges = collect(tx, DataflowHelper.RelTypes.pubVar, true, topicIndex);
+        long[][] pubTargetEdges = collect(tx, DataflowHelper.RelTypes.pubTarget, false, topicIndex);
+
+        long[] topics = new long[topicIndex.size()];
+        topicIndex.forEachKeyValue((topic, i) -> topics[i] = topic);
+
+        int[] pubVarOffsets = new int[topics.length + 1];
+        long[] pubVars = group(pubVarEdges, topicIndex, pubVarOffsets);
+        int[] pubTargetOffsets = new int[topics.length + 1];
+        long[] pubTargets = group(pubTargetEdges, topicIndex, pubTargetOffsets);
+
+        return new RosTopicIndex(topicIndex, topics, pubVarOffsets, pubVars, pubTargetOffsets, pubTargets);
+    }
+
+    // helper function: collect [topic ids, relationship ids] of one relationship type; the topic is the end node of
+    //      a pubVar and the start node of a pubTarget
+    private static long[][] collect(Transaction tx, DataflowHelper.RelTypes type, boolean topicIsEnd,
+                                    LongIntHashMap topicIndex) {
+        long[] topicIds = new long[256];
+        long[] relIds = new long[256];
+        int size = 0;
+
+        try (ResourceIterator<Relationship> rels = tx.findRelationships(type)) {
+            while (rels.hasNext()) {
+                Relationship rel = rels.next();
+                if (size == topicIds.length) {
+                    topicIds = Arrays.copyOf(topicIds, size * 2);
+                    relIds = Arrays.copyOf(relIds, size * 2);
+                }
+                long topic = topicIsEnd ? rel.getEndNodeId() : rel.getStartNodeId();
+                topicIndex.getIfAbsentPut(topic, topicIndex.size());
+                topicIds[size] = topic;
+                relIds[size] = rel.getId();
+                size++;
+            }
+        }
+
+        return new long[][] {Arrays.copyOf(topicIds, size), Arrays.copyOf(relIds, size)};
+    }
+
+    // helper function: counting sort of relationship ids by topic, filling offsets and returning the ids
+    private static long[] group(long[][] edges, LongIntHashMap topicIndex, int[] offsets) {
+        long[] topicIds = edges[0];
+        long[] relIds = edges[1];
+        for (long topic : topicIds) {
+            offsets[topicIndex.get(topic) + 1]++;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+        int[] position = Arrays.copyOf(offsets, offsets.length - 1);
+        long[] grouped = new long[relIds.length];
+        for (int i = 0; i < relIds.length; i++) {
+            grouped[position[topicIndex.get(topicIds[i])]++] = relIds[i];
+        }
+        return grouped;
+    }
+
+    public int getTopicCount() {
+        return topics.length;
+    }
+
+    // topic node ids, in index order
+    public long[] getTopics() {
+        return topics;
+    }
+
+    // pubVar relationship ids publishing to the topic
+    public long[] getPublishers(long topicId) {
+        int i = topicIndex.getIfAbsent(topicId, -1);
+        return (i < 0) ? EMPTY : Arrays.copyOfRange(pubVars, pubVarOffsets[i], pubVarOffsets[i + 1]);
+    }
+
+    // pubTarget relationship ids receiving from the topic
+    public long[] getSubscribers(long topicId) {
+        int i = topicIndex.getIfAbsent(topicId, -1);
+        return (i < 0) ? EMPTY : Arrays.copyOfRange(pubTargets, pubTargetOffsets[i], pubTargetOffsets[i + 1]);
+    }
+}
@@ -0,0 +1,121 @@
+package apoc.dataflow;
+
+import apoc.util.Util;
+import org.neo4j.procedure.TerminationGuard;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Limits for a single path search, read from the query configuration:
+//    - maxDepth: maximum number of relationships in a path (default: unlimited)
+//    - maxResults: maximum number of returned paths (default: unlimited)
+//    - timeoutMs: maximum time spent searching, in milliseconds (default: unlimited)
+//    - maxExpansions: maximum number of candidate paths taken from the search queue (default: unlimited)
+// The search loop calls next() once per iteration, which also checks whether the query has been terminated.
+// Once a limit is hit the search stops and the paths found so far are flagged as truncated.
+public class SearchBudget {
+
+    public static final long UNLIMITED = -1;
+
+    // how often (in expansions) the clock is read
+    private static final int TIME_CHECK_INTERVAL = 64;
+
+    private final TerminationGuard guard;
+    private final long maxDepth;
+    private final long maxResults;
+    private final long timeoutNanos;
+    private final long maxExpansions;
+    private final long startTime;
+
+    private long expansions = 0;
+    private boolean truncated = false;
+    private String reason = null;
+    private final Map<String, Object> decisions = new LinkedHashMap<>();
+
+    public SearchBudget(Map<String, Object> config, TerminationGuard guard) {
+        this.guard = guard;
+        this.maxDepth = limit(config, "maxDepth");
+        this.maxResults = limit(config, "maxResults");
+        long timeoutMs = limit(config, "timeoutMs");
+        this.timeoutNanos = (timeoutMs == UNLIMITED) ? UNLIMITED : TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.maxExpansions = limit(config, "maxExpansions");
+        this.startTime = System.nanoTime();
+    }
+
+    public static SearchBudget unbounded(TerminationGuard guard) {
+        return new SearchBudget(Map.of(), guard);
+    }
+
+    // helper function: read a limit, where a missing or negative value means unlimited
+    private static long limit(Map<String, Object> config, String key) {
+        if (config == null) {
+            return UNLIMITED;
+        }
+        Long value = Util.toLong(config.get(key));
+        return ((value == null) || (value < 0)) ? UNLIMITED : value;
+    }
+
+    // called at the start of every iteration of a search loop while there is work left
+    // returns: whether or not the search may continue
+    public boolean next(int resultCount) {
+        if (guard != null) {
+            guard.check();
+        }
+        if ((maxResults != UNLIMITED) && (resultCount >= maxResults)) {
+            return stop("maxResults");
+        }
+        if ((maxExpansions != UNLIMITED) && (expansions >= maxExpansions)) {
+            return stop("maxExpansions");
+        }
+        if ((timeoutNanos != UNLIMITED) && (expansions % TIME_CHECK_INTERVAL == 0) &&
+                (System.nanoTime() - startTime > timeoutNanos)) {
+            return stop("timeoutMs");
+        }
+        expansions++;
+        return true;
+    }
+
+    // check whether a path of the given length may be extended by another relationship
+    public boolean canExtend(int pathLength) {
+        if ((maxDepth != UNLIMITED) && (pathLength >= maxDepth)) {
+            truncated = true;
+            if (reason == null) {reason = "maxDepth";}
+            return false;
+        }
+        return true;
+    }
+
+    private boolean stop(String limit) {
+        truncated = true;
+        reason = limit;
+        return false;
+    }
+
+    public long getMaxResults() {
+        return maxResults;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public long getExpansions() {
+        return expansions;
+    }
+
+    // record a decision taken while planning the search, reported in the profile
+    public void record(String key, Object value) {
+        decisions.put(key, value);
+    }
+
+    public Map<String, Object> profile() {
+        Map<String, Object> profile = new LinkedHashMap<>();
+        profile.put("expansions", expansions);
+        profile.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        profile.put("truncated", truncated);
+        profile.put("reason", reason);
+        profile.putAll(decisions);
+        return profile;
+    }
+}
@@ -0,0 +1,122 @@
+package apoc.dataflow;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Choice between a forward and a backward search for direction:'auto', from the estimated size of the first two
+// levels of each search:
+//    - the degree of the node a search starts from, over the relationship types of its first step
+//    - the average branching of a sample of the nodes reached by the first step, over the relationship types of
+//          the following steps
+// The cheaper search is used, forward on a tie. Degrees come from the relationship counts of the nodes, so only the
+// sampled neighbours are visited.
+public class SearchDirection {
+
+    public static final String FORWARD = "forward";
+    public static final String BACKWARD = "backward";
+    public static final String AUTO = "auto";
+
+    // number of first step relationships whose end is sampled for the branching factor
+    private static final int SAMPLE_SIZE = 16;
+
+    // one side of the choice: where a search starts and which relationships it follows
+    public static class Side {
+        private final Node node;
+        private final Direction firstDirection;
+        private final List<RelationshipType> firstTypes;
+        private final Direction direction;
+        private final List<RelationshipType> types;
+
+        // node: where the search starts, firstDirection, firstTypes: relationships of the first step,
+        //      direction, types: relationships of the following steps
+        public Side(Node node, Direction firstDirection, List<RelationshipType> firstTypes, Direction direction,
+                    List<RelationshipType> types) {
+            this.node = node;
+            this.firstDirection = firstDirection;
+            this.firstTypes = firstTypes;
+            this.direction = direction;
+            this.types = types;
+        }
+    }
+
+    private final double forwardCost;
+    private final double backwardCost;
+    private final boolean backward;
+
+    private SearchDirection(double forwardCost, double backwardCost) {
+        this.forwardCost = forwardCost;
+        this.backwardCost = backwardCost;
+        this.backward = backwardCost < forwardCost;
+    }
+
+    public static SearchDirection choose(Side forward, Side backward) {
+        return new SearchDirection(estimate(forward), estimate(backward));
+    }
+
+    // the direction option of the configuration, falling back to the backward flag when it is missing
+    public static String parse(Map<String, Object> config, boolean backward) {
+        Object direction = config.get("direction");
+        if (direction == null) {
+            return backward ? BACKWARD : FORWARD;
+        }
+        String value = direction.toString();
+        if ((!value.equals(FORWARD)) && (!value.equals(BACKWARD)) && (!value.equals(AUTO))) {
+            throw new IllegalArgumentException("Unknown direction " + value + ", expected " + FORWARD + ", " +
+                    BACKWARD + " or " + AUTO);
+        }
+        return value;
+    }
+
+    public boolean isBackward() {
+        return backward;
+    }
+
+    // record the choice in the profile of the search
+    public void record(SearchBudget budget) {
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("chosen", backward ? BACKWARD : FORWARD);
+        choice.put("forwardCost", forwardCost);
+        choice.put("backwardCost", backwardCost);
+        budget.record("direction", choice);
+    }
+
+    // helper function: estimated number of paths of the first two levels of a search
+    private static double estimate(Side side) {
+        if (side.node == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        long firstDegree = degree(side.node, side.firstDirection, side.firstTypes);
+        if (firstDegree == 0) {
+            return 0;
+        }
+
+        long sampled = 0;
+        long branching = 0;
+        for (Relationship rel : side.node.getRelationships(side.firstDirection,
+                side.firstTypes.toArray(RelationshipType[]::new))) {
+            if (sampled == SAMPLE_SIZE) {
+                break;
+            }
+            branching += degree(rel.getOtherNode(side.node), side.direction, side.types);
+            sampled++;
+        }
+
+        double averageBranching = (sampled == 0) ? 0 : ((double) branching) / sampled;
+        return firstDegree * (1 + averageBranching);
+    }
+
+    private static long degree(Node node, Direction direction, List<RelationshipType> types) {
+        long degree = 0;
+        for (RelationshipType type : types) {
+            degree += node.getDegree(type, direction);
+        }
+        return degree;
+    }
+}
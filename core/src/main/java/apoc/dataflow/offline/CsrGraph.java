@@ -0,0 +1,352 @@
+package apoc.dataflow.offline;
+
+import apoc.export.arrow.ArrowUtils;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Read-only graph loaded from a file written by apoc.export.arrow.all, in compressed sparse row form.
+// Nodes and relationships are numbered densely in file order. The per-node and per-relationship columns and the
+// outgoing and incoming adjacency arrays live in a memory-mapped temporary file, which is deleted on close.
+// The heap holds the type and label dictionaries and the map from exported node ids to dense indices for the
+// lifetime of the graph. While loading, the rows of the Arrow file are first staged in primitive lists on the heap,
+// and the adjacency arrays are built with two int[nodeCount + 1] degree arrays, so loading needs heap for every
+// node and relationship of the file; only the built graph is off heap.
+// Only what the dataflow searches need is kept: node ids and first label, relationship ids, endpoints and type, and
+// whether the cfgInvoke and cfgReturn properties of a relationship are set to "1".
+// Dense indices are ints, so a graph may hold at most 2^31 - 1 nodes and relationships.
+public class CsrGraph implements AutoCloseable {
+
+    public static final int CFG_INVOKE = 1;
+    public static final int CFG_RETURN = 2;
+
+    private static final String CFG_INVOKE_PROPERTY = "cfgInvoke";
+    private static final String CFG_RETURN_PROPERTY = "cfgReturn";
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+
+    private final int nodeCount;
+    private final int relCount;
+    private final List<String> types;
+    private final ObjectIntHashMap<String> typeIds;
+    private final List<String> labels;
+    private final ObjectIntHashMap<String> labelIds;
+    private final LongIntHashMap nodeIndex;
+
+    private final MappedArray nodeIds;      // node -> id in the exported database
+    private final MappedArray nodeLabel;    // node -> first label, or -1
+    private final MappedArray relIds;       // relationship -> id in the exported database
+    private final MappedArray relSource;    // relationship -> start node
+    private final MappedArray relTarget;    // relationship -> end node
+    private final MappedArray relType;      // relationship -> type
+    private final MappedArray relFlags;     // relationship -> CFG_INVOKE | CFG_RETURN
+    private final MappedArray outOffsets;   // node -> first position in outRels, nodeCount + 1 entries
+    private final MappedArray outRels;
+    private final MappedArray inOffsets;    // node -> first position in inRels, nodeCount + 1 entries
+    private final MappedArray inRels;
+
+    private CsrGraph(Staging staging) throws IOException {
+        this.nodeCount = staging.nodeIds.size();
+        this.relCount = staging.relTypes.size();
+        this.types = staging.types;
+        this.typeIds = staging.typeIds;
+        this.labels = staging.labels;
+        this.labelIds = staging.labelIds;
+        this.nodeIndex = staging.nodeIndex;
+
+        this.file = File.createTempFile("apoc-dataflow-csr", ".bin");
+        this.file.deleteOnExit();
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        FileChannel channel = randomAccessFile.getChannel();
+
+        long offset = 0;
+        nodeIds = new MappedArray(channel, offset, nodeCount, Long.BYTES);
+        offset += nodeIds.bytes();
+        nodeLabel = new MappedArray(channel, offset, nodeCount, Integer.BYTES);
+        offset += nodeLabel.bytes();
+        relIds = new MappedArray(channel, offset, relCount, Long.BYTES);
+        offset += relIds.bytes();
+        relSource = new MappedArray(channel, offset, relCount, Integer.BYTES);
+        offset += relSource.bytes();
+        relTarget = new MappedArray(channel, offset, relCount, Integer.BYTES);
+        offset += relTarget.bytes();
+        relType = new MappedArray(channel, offset, relCount, Integer.BYTES);
+        offset += relType.bytes();
+        relFlags = new MappedArray(channel, offset, relCount, Integer.BYTES);
+        offset += relFlags.bytes();
+        outOffsets = new MappedArray(channel, offset, nodeCount + 1L, Integer.BYTES);
+        offset += outOffsets.bytes();
+        outRels = new MappedArray(channel, offset, relCount, Integer.BYTES);
+        offset += outRels.bytes();
+        inOffsets = new MappedArray(channel, offset, nodeCount + 1L, Integer.BYTES);
+        offset += inOffsets.bytes();
+        inRels = new MappedArray(channel, offset, relCount, Integer.BYTES);
+
+        for (int node = 0; node < nodeCount; node++) {
+            nodeIds.setLong(node, staging.nodeIds.get(node));
+            nodeLabel.setInt(node, staging.nodeLabels.get(node));
+        }
+
+        // resolve the endpoints and count the degrees
+        int[] outDegree = new int[nodeCount + 1];
+        int[] inDegree = new int[nodeCount + 1];
+        for (int rel = 0; rel < relCount; rel++) {
+            int source = resolve(staging.relSources.get(rel));
+            int target = resolve(staging.relTargets.get(rel));
+            relIds.setLong(rel, staging.relIds.get(rel));
+            relSource.setInt(rel, source);
+            relTarget.setInt(rel, target);
+            relType.setInt(rel, staging.relTypes.get(rel));
+            relFlags.setInt(rel, staging.relFlags.get(rel));
+            outDegree[source + 1]++;
+            inDegree[target + 1]++;
+        }
+
+        // prefix sums give the offsets, relationships are then placed in file order
+        for (int node = 0; node < nodeCount; node++) {
+            outDegree[node + 1] += outDegree[node];
+            inDegree[node + 1] += inDegree[node];
+        }
+        for (int node = 0; node <= nodeCount; node++) {
+            outOffsets.setInt(node, outDegree[node]);
+            inOffsets.setInt(node, inDegree[node]);
+        }
+        for (int rel = 0; rel < relCount; rel++) {
+            outRels.setInt(outDegree[relSource.getInt(rel)]++, rel);
+            inRels.setInt(inDegree[relTarget.getInt(rel)]++, rel);
+        }
+    }
+
+    // load the graph from an Arrow file written by apoc.export.arrow.all
+    public static CsrGraph load(String fileName) throws IOException {
+        Staging staging = new Staging();
+        try (RootAllocator allocator = new RootAllocator();
+             FileChannel channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.READ);
+             ArrowFileReader reader = new ArrowFileReader(channel, allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            while (reader.loadNextBatch()) {
+                staging.read(root);
+            }
+        }
+        return new CsrGraph(staging);
+    }
+
+    private int resolve(long id) {
+        if (!nodeIndex.containsKey(id)) {
+            throw new IllegalArgumentException("Relationship endpoint " + id + " is not a node of the exported graph");
+        }
+        return nodeIndex.get(id);
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int relCount() {
+        return relCount;
+    }
+
+    // dense index of the node with the exported id, or -1
+    public int node(long id) {
+        return nodeIndex.getIfAbsent(id, -1);
+    }
+
+    public long nodeId(int node) {
+        return nodeIds.getLong(node);
+    }
+
+    public int nodeLabel(int node) {
+        return nodeLabel.getInt(node);
+    }
+
+    // id of the type or label with the given name, or -1 if the graph does not use it
+    public int type(String name) {
+        return typeIds.getIfAbsent(name, -1);
+    }
+
+    public int label(String name) {
+        return labelIds.getIfAbsent(name, -1);
+    }
+
+    public String typeName(int type) {
+        return types.get(type);
+    }
+
+    public int typeCount() {
+        return types.size();
+    }
+
+    // name of the label with the given id, or null for -1
+    public String labelName(int label) {
+        return (label < 0) ? null : labels.get(label);
+    }
+
+    public long relId(int rel) {
+        return relIds.getLong(rel);
+    }
+
+    public int source(int rel) {
+        return relSource.getInt(rel);
+    }
+
+    public int target(int rel) {
+        return relTarget.getInt(rel);
+    }
+
+    public int relType(int rel) {
+        return relType.getInt(rel);
+    }
+
+    public boolean hasFlag(int rel, int flag) {
+        return (relFlags.getInt(rel) & flag) != 0;
+    }
+
+    // outgoing relationships of node are outRel(i) for outStart(node) <= i < outStart(node + 1)
+    public int outStart(int node) {
+        return outOffsets.getInt(node);
+    }
+
+    public int outRel(int position) {
+        return outRels.getInt(position);
+    }
+
+    // incoming relationships of node are inRel(i) for inStart(node) <= i < inStart(node + 1)
+    public int inStart(int node) {
+        return inOffsets.getInt(node);
+    }
+
+    public int inRel(int position) {
+        return inRels.getInt(position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+        file.delete();
+    }
+
+    // fixed size array of ints or longs mapped from a region of the graph file, in segments of at most 1GB
+    private static class MappedArray {
+        private static final int SEGMENT_SHIFT = 30;
+        private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+        private final MappedByteBuffer[] segments;
+        private final long length;
+        private final int width;
+
+        MappedArray(FileChannel channel, long offset, long length, int width) throws IOException {
+            this.length = length;
+            this.width = width;
+            long bytes = length * width;
+            int segmentCount = (int) ((bytes + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            this.segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long start = ((long) i) << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset + start,
+                        Math.min(bytes - start, 1L << SEGMENT_SHIFT));
+            }
+        }
+
+        long bytes() {
+            return length * width;
+        }
+
+        int getInt(long index) {
+            long position = index * width;
+            return segments[(int) (position >>> SEGMENT_SHIFT)].getInt((int) (position & SEGMENT_MASK));
+        }
+
+        void setInt(long index, int value) {
+            long position = index * width;
+            segments[(int) (position >>> SEGMENT_SHIFT)].putInt((int) (position & SEGMENT_MASK), value);
+        }
+
+        long getLong(long index) {
+            long position = index * width;
+            return segments[(int) (position >>> SEGMENT_SHIFT)].getLong((int) (position & SEGMENT_MASK));
+        }
+
+        void setLong(long index, long value) {
+            long position = index * width;
+            segments[(int) (position >>> SEGMENT_SHIFT)].putLong((int) (position & SEGMENT_MASK), value);
+        }
+    }
+
+    // rows read from the Arrow file, before the dense arrays are built
+    private static class Staging {
+        private final LongIntHashMap nodeIndex = new LongIntHashMap();
+        private final LongArrayList nodeIds = new LongArrayList();
+        private final IntArrayList nodeLabels = new IntArrayList();
+        private final LongArrayList relIds = new LongArrayList();
+        private final LongArrayList relSources = new LongArrayList();
+        private final LongArrayList relTargets = new LongArrayList();
+        private final IntArrayList relTypes = new IntArrayList();
+        private final IntArrayList relFlags = new IntArrayList();
+        private final List<String> types = new ArrayList<>();
+        private final ObjectIntHashMap<String> typeIds = new ObjectIntHashMap<>();
+        private final List<String> labels = new ArrayList<>();
+        private final ObjectIntHashMap<String> labelIds = new ObjectIntHashMap<>();
+
+        // a row is a relationship if it has a type, and a node otherwise
+        void read(VectorSchemaRoot root) {
+            BigIntVector ids = (BigIntVector) root.getVector(ArrowUtils.FIELD_ID.getName());
+            FieldVector typeVector = root.getVector(ArrowUtils.FIELD_TYPE.getName());
+            FieldVector labelVector = root.getVector(ArrowUtils.FIELD_LABELS.getName());
+            BigIntVector sources = (BigIntVector) root.getVector(ArrowUtils.FIELD_SOURCE_ID.getName());
+            BigIntVector targets = (BigIntVector) root.getVector(ArrowUtils.FIELD_TARGET_ID.getName());
+            FieldVector cfgInvoke = root.getVector(CFG_INVOKE_PROPERTY);
+            FieldVector cfgReturn = root.getVector(CFG_RETURN_PROPERTY);
+
+            for (int row = 0; row < root.getRowCount(); row++) {
+                long id = ids.get(row);
+                if ((typeVector != null) && !typeVector.isNull(row)) {
+                    relIds.add(id);
+                    relSources.add(sources.get(row));
+                    relTargets.add(targets.get(row));
+                    relTypes.add(intern(typeVector.getObject(row).toString(), types, typeIds));
+                    relFlags.add((isSet(cfgInvoke, row) ? CFG_INVOKE : 0) | (isSet(cfgReturn, row) ? CFG_RETURN : 0));
+                } else {
+                    int label = -1;
+                    if ((labelVector != null) && !labelVector.isNull(row)) {
+                        List<?> nodeLabels = (List<?>) labelVector.getObject(row);
+                        if (!nodeLabels.isEmpty()) {
+                            label = intern(nodeLabels.get(0).toString(), labels, labelIds);
+                        }
+                    }
+                    nodeIndex.put(id, nodeIds.size());
+                    nodeIds.add(id);
+                    this.nodeLabels.add(label);
+                }
+            }
+        }
+
+        // helper function: a CFG property counts as set if its value is "1", as in DataflowHelper
+        private static boolean isSet(FieldVector vector, int row) {
+            return (vector != null) && !vector.isNull(row) && vector.getObject(row).toString().equals("1");
+        }
+
+        private static int intern(String name, List<String> names, ObjectIntHashMap<String> ids) {
+            if (!ids.containsKey(name)) {
+                ids.put(name, names.size());
+                names.add(name);
+            }
+            return ids.get(name);
+        }
+    }
+}
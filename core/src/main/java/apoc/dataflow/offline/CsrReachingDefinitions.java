@@ -0,0 +1,212 @@
+package apoc.dataflow.offline;
+
+import apoc.algo.ReachingDefinitions;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The reaching definitions of ReachingDefinitions on a CsrGraph, with nodes replaced by their dense indices.
+// Functions, definitions, parameters and entry blocks are found the same way, and the equations are solved by
+// ReachingDefinitions.solve. The graph never changes, so every function is analysed on first use and kept for the
+// lifetime of the instance, which can be shared by all the worker threads.
+public class CsrReachingDefinitions {
+
+    private final CsrGraph graph;
+    private final int nextCFGBlock;
+    private final int parWrite;
+    private final boolean[] variableBlockTypes;     // type -> *Source or *Destination
+    private final boolean[] definitionTypes;        // type -> *Destination, apart from the influence ones
+    private final Map<Integer, FunctionDefinitions> functions = new ConcurrentHashMap<>();   // block -> function
+
+    public CsrReachingDefinitions(CsrGraph graph) {
+        this.graph = graph;
+        this.nextCFGBlock = graph.type("nextCFGBlock");
+        this.parWrite = graph.type("parWrite");
+        this.variableBlockTypes = new boolean[graph.typeCount()];
+        this.definitionTypes = new boolean[graph.typeCount()];
+        for (int type = 0; type < graph.typeCount(); type++) {
+            String name = graph.typeName(type);
+            variableBlockTypes[type] = name.endsWith("Source") || name.endsWith("Destination");
+            definitionTypes[type] = name.endsWith("Destination") && !name.startsWith("vi") &&
+                    !name.startsWith("varInf");
+        }
+    }
+
+    // return the reaching definitions of the function that contains block
+    public FunctionDefinitions forBlock(int block) {
+        FunctionDefinitions function = functions.get(block);
+        if (function != null) {
+            return function;
+        }
+        function = new FunctionDefinitions(block);
+        for (int functionBlock : function.blocks) {
+            functions.putIfAbsent(functionBlock, function);
+        }
+        return function;
+    }
+
+    // check whether the value of variable at block may come from a definition in the same function, as in
+    //      ReachingDefinitions.isDefinedAt
+    public boolean isDefinedAt(int variable, int block) {
+        FunctionDefinitions function = forBlock(block);
+        return !function.definesVariable(variable) || function.reaches(variable, block);
+    }
+
+    // helper function: nextCFGBlock relationships of node within its function, outgoing or incoming
+    private IntArrayList intraEdges(int node, boolean out) {
+        IntArrayList rels = new IntArrayList();
+        int from = out ? graph.outStart(node) : graph.inStart(node);
+        int to = out ? graph.outStart(node + 1) : graph.inStart(node + 1);
+        for (int position = from; position < to; position++) {
+            int rel = out ? graph.outRel(position) : graph.inRel(position);
+            if ((graph.relType(rel) == nextCFGBlock) &&
+                    !graph.hasFlag(rel, CsrGraph.CFG_INVOKE | CsrGraph.CFG_RETURN)) {
+                rels.add(rel);
+            }
+        }
+        return rels;
+    }
+
+    // helper function: a variable is a parameter if it is written by a parWrite relationship
+    private boolean isParameter(int variable) {
+        for (int position = graph.inStart(variable); position < graph.inStart(variable + 1); position++) {
+            if (graph.relType(graph.inRel(position)) == parWrite) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // helper function: a block is an entry of the function if it is called or has no predecessor in it
+    private boolean isEntry(int block, int[] predecessors) {
+        if (predecessors.length == 0) {
+            return true;
+        }
+        for (int position = graph.inStart(block); position < graph.inStart(block + 1); position++) {
+            int rel = graph.inRel(position);
+            if ((graph.relType(rel) == nextCFGBlock) && graph.hasFlag(rel, CsrGraph.CFG_INVOKE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public class FunctionDefinitions {
+        private final int[] blocks;                 // block index -> block
+        private final IntIntHashMap blockIndex;     // block -> block index
+        private final IntObjectHashMap<RoaringBitmap> variableDefs = new IntObjectHashMap<>();
+        private final RoaringBitmap[] gen;          // block index -> definitions made in the block
+        private final RoaringBitmap[] in;           // block index -> definitions reaching the block entry
+
+        FunctionDefinitions(int entry) {
+            // collect the blocks of the function (undirected, intra-procedural edges only)
+            blockIndex = new IntIntHashMap();
+            IntArrayList nodes = IntArrayList.newListWith(entry);
+            blockIndex.put(entry, 0);
+            for (int i = 0; i < nodes.size(); i++) {
+                int node = nodes.get(i);
+                IntArrayList rels = intraEdges(node, true);
+                rels.addAll(intraEdges(node, false));
+                for (int r = 0; r < rels.size(); r++) {
+                    int rel = rels.get(r);
+                    int other = (graph.source(rel) == node) ? graph.target(rel) : graph.source(rel);
+                    if (!blockIndex.containsKey(other)) {
+                        blockIndex.put(other, nodes.size());
+                        nodes.add(other);
+                    }
+                }
+            }
+            blocks = nodes.toArray();
+            int blockCount = blocks.length;
+
+            // successors and predecessors of every block
+            int[][] successors = new int[blockCount][];
+            IntArrayList[] predecessorLists = new IntArrayList[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                predecessorLists[i] = new IntArrayList();
+            }
+            for (int i = 0; i < blockCount; i++) {
+                IntArrayList rels = intraEdges(blocks[i], true);
+                successors[i] = new int[rels.size()];
+                for (int r = 0; r < rels.size(); r++) {
+                    int target = blockIndex.get(graph.target(rels.get(r)));
+                    successors[i][r] = target;
+                    predecessorLists[target].add(i);
+                }
+            }
+            int[][] predecessors = new int[blockCount][];
+            for (int i = 0; i < blockCount; i++) {
+                predecessors[i] = predecessorLists[i].toArray();
+            }
+
+            // definitions and gen sets, and the parameters of the function
+            IntArrayList defVariables = new IntArrayList();
+            gen = new RoaringBitmap[blockCount];
+            IntHashSet checked = new IntHashSet();
+            IntArrayList parameters = new IntArrayList();
+            for (int i = 0; i < blockCount; i++) {
+                gen[i] = new RoaringBitmap();
+                for (int position = graph.inStart(blocks[i]); position < graph.inStart(blocks[i] + 1); position++) {
+                    int rel = graph.inRel(position);
+                    int type = graph.relType(rel);
+                    int variable = graph.source(rel);
+                    if (variableBlockTypes[type] && checked.add(variable) && isParameter(variable)) {
+                        parameters.add(variable);
+                    }
+                    if (!definitionTypes[type]) {continue;}
+                    gen[i].add(defVariables.size());
+                    variableDefs.getIfAbsentPut(variable, RoaringBitmap::new).add(defVariables.size());
+                    defVariables.add(variable);
+                }
+            }
+
+            // parameters are defined on entry to the function, unless the entry block defines them itself
+            RoaringBitmap[] entryDefs = new RoaringBitmap[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                entryDefs[i] = new RoaringBitmap();
+                if (!isEntry(blocks[i], predecessors[i])) {continue;}
+                for (int p = 0; p < parameters.size(); p++) {
+                    int variable = parameters.get(p);
+                    RoaringBitmap defs = variableDefs.get(variable);
+                    if ((defs != null) && RoaringBitmap.intersects(defs, gen[i])) {continue;}
+                    entryDefs[i].add(defVariables.size());
+                    variableDefs.getIfAbsentPut(variable, RoaringBitmap::new).add(defVariables.size());
+                    defVariables.add(variable);
+                }
+            }
+
+            // kill: every other definition of a variable defined in the block
+            RoaringBitmap[] kill = new RoaringBitmap[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                kill[i] = new RoaringBitmap();
+                for (int def : gen[i]) {
+                    kill[i].or(variableDefs.get(defVariables.get(def)));
+                }
+                kill[i].andNot(gen[i]);
+            }
+
+            in = ReachingDefinitions.solve(predecessors, successors, entryDefs, gen, kill);
+        }
+
+        public int[] getBlocks() {
+            return blocks;
+        }
+
+        public boolean definesVariable(int variable) {
+            return variableDefs.containsKey(variable);
+        }
+
+        // check whether a definition of the variable reaches the entry of a block or is made in the block
+        public boolean reaches(int variable, int block) {
+            int i = blockIndex.getIfAbsent(block, -1);
+            RoaringBitmap defs = variableDefs.get(variable);
+            return (i >= 0) && (defs != null) &&
+                    (RoaringBitmap.intersects(in[i], defs) || RoaringBitmap.intersects(gen[i], defs));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package apoc.dataflow.offline;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+
+// Linear varWrite chains of a CsrGraph, contracted into single steps for the dataflow searches.
+// A node is interior if its only incoming and only outgoing dataflow relationships (varWrite, parWrite, retWrite)
+// are two different varWrite relationships. A chain is a maximal sequence of varWrite relationships whose inner
+// nodes are all interior; it starts at the relationship entering the first interior node from a node that is not
+// interior. A search reaching the start of a chain has no choice until its last node, so the whole chain can be
+// taken as one step and expanded back to its relationships when the path is returned.
+// Chains lying on a cycle of interior nodes have no start and are left alone.
+public class DataflowChains {
+
+    public static final int NONE = -1;
+
+    private final IntIntHashMap chainOfHead = new IntIntHashMap();       // first relationship -> chain
+    private final IntIntHashMap chainOfInterior = new IntIntHashMap();   // interior node -> chain
+    private final IntArrayList offsets = new IntArrayList();             // chain -> first position in rels
+    private final IntArrayList rels = new IntArrayList();                // relationships of the chains, in order
+
+    public DataflowChains(CsrGraph graph, int varWrite, int[] dataflowTypes) {
+        if (varWrite < 0) {
+            offsets.add(0);
+            return;
+        }
+
+        for (int rel = 0; rel < graph.relCount(); rel++) {
+            if ((graph.relType(rel) != varWrite) || isInterior(graph, graph.source(rel), varWrite, dataflowTypes) ||
+                    !isInterior(graph, graph.target(rel), varWrite, dataflowTypes)) {
+                continue;
+            }
+
+            int chain = offsets.size();
+            offsets.add(rels.size());
+            chainOfHead.put(rel, chain);
+            rels.add(rel);
+
+            // an interior node has a single incoming relationship, so the walk cannot come back to one of them
+            int node = graph.target(rel);
+            while (isInterior(graph, node, varWrite, dataflowTypes)) {
+                chainOfInterior.put(node, chain);
+                int next = single(graph, graph.outStart(node), graph.outStart(node + 1), true, dataflowTypes);
+                rels.add(next);
+                node = graph.target(next);
+            }
+        }
+        offsets.add(rels.size());
+    }
+
+    // chain starting with the relationship, or NONE
+    public int chainOfHead(int rel) {
+        return chainOfHead.getIfAbsent(rel, NONE);
+    }
+
+    // chain passing through the node, or NONE
+    public int chainOfInterior(int node) {
+        return chainOfInterior.getIfAbsent(node, NONE);
+    }
+
+    public int chainCount() {
+        return offsets.size() - 1;
+    }
+
+    // number of relationships in all the chains
+    public int relCount() {
+        return rels.size();
+    }
+
+    public int length(int chain) {
+        return offsets.get(chain + 1) - offsets.get(chain);
+    }
+
+    public int rel(int chain, int position) {
+        return rels.get(offsets.get(chain) + position);
+    }
+
+    public int lastRel(int chain) {
+        return rels.get(offsets.get(chain + 1) - 1);
+    }
+
+    private static boolean isInterior(CsrGraph graph, int node, int varWrite, int[] dataflowTypes) {
+        int in = single(graph, graph.inStart(node), graph.inStart(node + 1), false, dataflowTypes);
+        if ((in < 0) || (graph.relType(in) != varWrite)) {
+            return false;
+        }
+        int out = single(graph, graph.outStart(node), graph.outStart(node + 1), true, dataflowTypes);
+        return (out >= 0) && (out != in) && (graph.relType(out) == varWrite);
+    }
+
+    // helper function: the only dataflow relationship between two adjacency positions, or -1 if there are none or
+    //      several
+    private static int single(CsrGraph graph, int from, int to, boolean out, int[] dataflowTypes) {
+        int found = -1;
+        for (int position = from; position < to; position++) {
+            int rel = out ? graph.outRel(position) : graph.inRel(position);
+            int relType = graph.relType(rel);
+            for (int type : dataflowTypes) {
+                if (type == relType) {
+                    if (found >= 0) {
+                        return -1;
+                    }
+                    found = rel;
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+}
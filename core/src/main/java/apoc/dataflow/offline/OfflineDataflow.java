@@ -0,0 +1,825 @@
+package apoc.dataflow.offline;
+
+import apoc.cfgPath.CFGSetting;
+import apoc.cfgPath.ROSPath;
+import apoc.cfgPath.RelExtension;
+import apoc.dataflow.SearchBudget;
+import apoc.util.Util;
+import org.eclipse.collections.api.iterator.IntIterator;
+import org.eclipse.collections.api.iterator.LongIterator;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+// The searches of apoc.dataflow.rosAllShortest and apoc.cfgPath.rosFindPaths on a CsrGraph.
+// The loops mirror the ones in ROSFindPath and ROSPath, with relationships and nodes replaced by their dense indices.
+// An instance only reads the graph, apart from the per-thread scratch space of the CFG reachability check, so one
+// instance can be shared by all the worker threads.
+// rosAllShortest takes every linear varWrite chain (see DataflowChains) as a single step, with the CFG check of the
+// chain composed into a map from its entry CFG blocks to its exit CFG blocks on first use.
+// The CFG check of rosFindPaths keeps the source blocks reached by a definition of the source variable, using the
+// reaching definitions of the graph (see CsrReachingDefinitions) in place of the ones of the database.
+public class OfflineDataflow {
+
+    private static final int[] NO_BLOCKS = new int[0];
+
+    private final CsrGraph graph;
+
+    private final int varWrite;
+    private final int parWrite;
+    private final int retWrite;
+    private final int nextCFGBlock;
+    private final int pubVar;
+    private final int cVariable;
+    private final int cReturn;
+    private final boolean[] overwritingTypes;   // type -> *Destination, apart from vifDestination and viDestination
+    private final int[] dataflowTypes;
+    private final DataflowChains chains;
+    private final CsrReachingDefinitions reachingDefinitions;
+
+    // composed CFG check of every chain, computed on first use
+    private final AtomicReferenceArray<ChainCFG> chainCFGs;
+
+    // scratch space of the CFG reachability check, one per thread
+    private final ThreadLocal<Reachability> reachability;
+
+    public OfflineDataflow(CsrGraph graph) {
+        this(graph, true);
+    }
+
+    // collapseChains: false to take every relationship as a step of its own, e.g. to compare the results
+    OfflineDataflow(CsrGraph graph, boolean collapseChains) {
+        this.graph = graph;
+        this.varWrite = graph.type("varWrite");
+        this.parWrite = graph.type("parWrite");
+        this.retWrite = graph.type("retWrite");
+        this.nextCFGBlock = graph.type("nextCFGBlock");
+        this.pubVar = graph.type("pubVar");
+        this.cVariable = graph.label("cVariable");
+        this.cReturn = graph.label("cReturn");
+        this.overwritingTypes = new boolean[graph.typeCount()];
+        for (int type = 0; type < graph.typeCount(); type++) {
+            String name = graph.typeName(type);
+            overwritingTypes[type] = name.endsWith("Destination") && !name.equals("vifDestination") &&
+                    !name.equals("viDestination");
+        }
+        this.dataflowTypes = new int[]{varWrite, parWrite, retWrite};
+        this.chains = new DataflowChains(graph, collapseChains ? varWrite : -1, dataflowTypes);
+        this.reachingDefinitions = new CsrReachingDefinitions(graph);
+        this.chainCFGs = new AtomicReferenceArray<>(chains.chainCount());
+        this.reachability = ThreadLocal.withInitial(() -> new Reachability(graph.nodeCount()));
+    }
+
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    public DataflowChains getChains() {
+        return chains;
+    }
+
+    // all shortest dataflow paths between two nodes, as in ROSFindPath.rosAllShortest with a start and an end node
+    //      returns the relationships of each path
+    public List<int[]> rosAllShortest(int start, int end, boolean cfgCheck, SearchBudget budget) {
+        List<int[]> returnedPaths = new ArrayList<>();
+        if (start == end) {
+            returnedPaths.add(new int[0]);
+            return returnedPaths;
+        }
+
+        // a chain through the end node is walked relationship by relationship, so that the path can stop there
+        int splitChain = chains.chainOfInterior(end);
+
+        // steps are taken by path length, which is breadth first order as long as every step is one relationship
+        LengthQueue queue = new LengthQueue();
+        for (int rel : outgoing(start, dataflowTypes)) {
+            queue.add(step(rel, null, splitChain, budget));
+        }
+
+        Step foundPath = null;
+        ArrayList<IntArrayList> retCovered = new ArrayList<>();
+
+        while (!queue.isEmpty()) {
+
+            // stop once a limit is hit
+            if (!budget.next(returnedPaths.size())) {
+                break;
+            }
+
+            Step curStep = queue.remove();
+
+            if (foundPath != null) {
+                if (!curStep.compareRetWrites(foundPath) || retCovered.contains(curStep.retWrites)) {
+                    continue;
+                }
+            }
+
+            // validate or get the corresponding CFG
+            if ((!cfgCheck) || validateAllShortest(curStep)) {
+                if (graph.target(curStep.rel) == end) {
+                    returnedPaths.add(curStep.rels(false));
+                    foundPath = curStep;
+                    retCovered.addAll(curStep.retComp());
+                }
+
+                for (int nextRel : outgoing(graph.target(curStep.rel), dataflowTypes)) {
+                    if (budget.canExtend(curStep.length)) {
+                        queue.add(step(nextRel, curStep, splitChain, budget));
+                    }
+                }
+            }
+        }
+
+        return returnedPaths;
+    }
+
+    // helper function: the step taking a relationship, or the whole chain it starts if the chain fits in maxDepth
+    private Step step(int rel, Step prev, int splitChain, SearchBudget budget) {
+        int chain = chains.chainOfHead(rel);
+        int length = (prev == null) ? 0 : prev.length;
+        if ((chain != DataflowChains.NONE) && (chain != splitChain) &&
+                budget.canExtend(length + chains.length(chain) - 1)) {
+            int[] chainRels = new int[chains.length(chain)];
+            for (int i = 0; i < chainRels.length; i++) {
+                chainRels[i] = chains.rel(chain, i);
+            }
+            return new Step(chain, chainRels, prev);
+        }
+        return new Step(rel, prev, -1, isRetWrite(rel), false);
+    }
+
+    // paths following a relationship pattern, as in ROSPath.rosFindPaths with a start node
+    //      accepted settings: relSeq, repeat, backward, shortest, filter, endN (exported node id), cfg and config
+    //      (the CFG settings, whose attributes can only be cfgInvoke and cfgReturn)
+    //      returns the relationships of each path, in search order
+    public List<int[]> rosFindPaths(int start, Map<String, Object> config, SearchBudget budget) {
+        boolean cfgCheck = Util.toBoolean(config.getOrDefault("cfg", true));
+        HashMap<String, CFGSetting> cfgConfig = ROSPath.parseCFGConfiguration(
+                (List<Map<String, Object>>) config.getOrDefault("config", null));
+        for (CFGSetting setting : cfgConfig.values()) {
+            for (String attribute : (setting.getAttribute() == null) ? new String[0] : setting.getAttribute()) {
+                cfgFlag(attribute);
+            }
+        }
+        String relSequence = (String) config.getOrDefault("relSeq", null);
+        boolean repeat = Util.toBoolean(config.getOrDefault("repeat", false));
+        boolean backward = Util.toBoolean(config.getOrDefault("backward", false));
+        boolean allShortestPath = Util.toBoolean(config.getOrDefault("shortest", false));
+        RelExtension extension = new RelExtension(relSequence, repeat, backward);
+        IntHashSet acceptedNodes = filterNodes((String) config.getOrDefault("filter", null));
+        Object endNode = config.get("endN");
+        int end = (endNode == null) ? -1 : graph.node(Util.toLong(endNode));
+
+        // first relationships of the sequence, always followed outgoing from the start node as in ROSPath
+        Queue<Step> queue = new LinkedList<>();
+        IntHashSet visitedRels = new IntHashSet();
+        ArrayList<ArrayList<RelationshipType>> curType = extension.constructTypes(0);
+        int y = 0;
+        for (ArrayList<RelationshipType> curT : curType) {
+            for (int nextRel : outgoing(start, types(curT))) {
+                int nextNode = backward ? graph.source(nextRel) : graph.target(nextRel);
+                if ((acceptedNodes != null) && !acceptedNodes.contains(graph.nodeLabel(nextNode))) {
+                    continue;
+                }
+                Step first = new Step(nextRel, null, y, isRetWrite(nextRel), backward);
+                if (cfgCheck) {
+                    first.cfgNodes = firstCFGNodes(nextRel, cfgConfig, backward);
+                }
+                queue.add(first);
+            }
+            y += 1;
+        }
+
+        Predicate<Step> cfgValid = cfgCheck ? step -> validateFindPaths(step, cfgConfig, backward) : null;
+        return allShortestPath ?
+                findShortestPaths(queue, visitedRels, extension, acceptedNodes, backward, end, cfgValid, budget) :
+                findAllPaths(queue, extension, acceptedNodes, backward, end, cfgValid, budget);
+    }
+
+    // helper function: breadth first search for every path without repeated relationships
+    private List<int[]> findAllPaths(Queue<Step> queue, RelExtension extension, IntHashSet acceptedNodes,
+                                     boolean backward, int end, Predicate<Step> cfgValid, SearchBudget budget) {
+        List<int[]> returnedPaths = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            if (!budget.next(returnedPaths.size())) {
+                break;
+            }
+            Step curStep = queue.remove();
+            if ((cfgValid != null) && !cfgValid.test(curStep)) {
+                continue;
+            }
+            if (isComplete(curStep, extension, backward, end)) {
+                returnedPaths.add(curStep.rels(backward));
+            }
+            if (budget.canExtend(curStep.length)) {
+                expand(curStep, extension, acceptedNodes, backward, rel -> !curStep.contains(rel), queue);
+            }
+        }
+        return returnedPaths;
+    }
+
+    // helper function: shortest paths, continuing only through return sites not covered yet once a path is found
+    //      (DataflowTraversal.Mode.COVERED)
+    private List<int[]> findShortestPaths(Queue<Step> queue, IntHashSet visitedEdges, RelExtension extension,
+                                          IntHashSet acceptedNodes, boolean backward, int end,
+                                          Predicate<Step> cfgValid, SearchBudget budget) {
+        List<int[]> returnedPaths = new ArrayList<>();
+        IntHashSet visitedEdge = new IntHashSet();
+        Step found = null;
+        ArrayList<IntArrayList> retCovered = new ArrayList<>();
+        int pathLen = -1;
+
+        while (!queue.isEmpty()) {
+            if (!budget.next(returnedPaths.size())) {
+                break;
+            }
+            Step curStep = queue.remove();
+
+            if (found != null) {
+                visitedEdges.addAll(visitedEdge);
+                if (!curStep.compareRetSources(found, graph) || retCovered.contains(curStep.retWrites)) {
+                    continue;
+                }
+            }
+
+            if (retCovered.isEmpty() && (found != null) && (curStep.length > pathLen)) {
+                break;
+            }
+            if (curStep.length > pathLen) {
+                visitedEdges.addAll(visitedEdge);
+                visitedEdge = new IntHashSet();
+            }
+            pathLen = curStep.length;
+
+            if ((cfgValid != null) && !cfgValid.test(curStep)) {
+                continue;
+            }
+
+            visitedEdge.add(curStep.rel);
+            if (isComplete(curStep, extension, backward, end)) {
+                returnedPaths.add(curStep.rels(backward));
+                found = curStep;
+                retCovered.addAll(curStep.retComp());
+                continue;
+            }
+
+            if (budget.canExtend(curStep.length)) {
+                expand(curStep, extension, acceptedNodes, backward, rel -> !visitedEdges.contains(rel), queue);
+            }
+        }
+        return returnedPaths;
+    }
+
+    // helper function: whether the path matches the end of the relationship sequence (and the end node)
+    private boolean isComplete(Step step, RelExtension extension, boolean backward, int end) {
+        int compNode = backward ? graph.source(step.rel) : graph.target(step.rel);
+        return extension.isEndIndex(step.pathIndex) && ((end < 0) || (compNode == end));
+    }
+
+    // helper function: extend a path by the next relationships of the sequence, as in PatternStrategy.expand
+    private void expand(Step step, RelExtension extension, IntHashSet acceptedNodes, boolean backward,
+                        IntPredicate admissible, Queue<Step> queue) {
+        int index = extension.nextIndex(RelationshipType.withName(graph.typeName(graph.relType(step.rel))),
+                step.pathIndex);
+        if (index > extension.lastIndex) {
+            return;
+        }
+
+        ArrayList<ArrayList<RelationshipType>> curType = extension.constructTypes(index);
+        int i = 0;
+        for (ArrayList<RelationshipType> curT : curType) {
+            int curNode = backward ? graph.source(step.rel) : graph.target(step.rel);
+            int[] nextRels = backward ? incoming(curNode, types(curT)) : outgoing(curNode, types(curT));
+            for (int nextRel : nextRels) {
+                int nextNode = backward ? graph.source(nextRel) : graph.target(nextRel);
+                if ((acceptedNodes != null) && !acceptedNodes.contains(graph.nodeLabel(nextNode))) {
+                    continue;
+                }
+                if (admissible.test(nextRel)) {
+                    queue.add(new Step(nextRel, step, index + i, isRetWrite(nextRel), backward));
+                }
+            }
+            i += 1;
+        }
+    }
+
+    // helper function: CFG check of ROSFindPath.getCFGPath
+    //      the CFG nodes of a relationship are the (source, destination) blocks that DataflowHelper.getConnectionNodes
+    //      connects, the check passes if a destination block can be reached from an accepted block of the previous
+    //      relationship through nextCFGBlock relationships
+    private boolean validateAllShortest(Step step) {
+        if (step.chain != DataflowChains.NONE) {
+            return validateChain(step);
+        }
+        int[][] curCFG = connectionNodes(step.rel);
+        IntArrayList accepted = new IntArrayList();
+        Reachability search = reachability.get();
+
+        for (int[] endCFG : curCFG) {
+            if (step.length == 1) {
+                accepted.add(endCFG[1]);
+                continue;
+            }
+            for (int startCFG : step.prev.cfgNodes) {
+                if (search.reachable(startCFG, endCFG[0])) {
+                    accepted.add(endCFG[0]);
+                }
+            }
+        }
+
+        step.cfgNodes = accepted.toArray();
+        return !accepted.isEmpty();
+    }
+
+    // helper function: CFG check of a chain step, the same as checking each of its relationships in turn
+    //      every accepted entry block adds the exit blocks it leads to
+    private boolean validateChain(Step step) {
+        ChainCFG cfg = chainCFG(step.chain);
+        IntHashSet accepted = new IntHashSet();
+        Reachability search = reachability.get();
+
+        for (int i = 0; i < cfg.entries.length; i++) {
+            boolean entered = (step.prev == null);
+            for (int j = 0; (!entered) && (j < step.prev.cfgNodes.length); j++) {
+                entered = search.reachable(step.prev.cfgNodes[j], cfg.entries[i]);
+            }
+            if (entered) {
+                accepted.addAll(cfg.exits[i]);
+            }
+        }
+
+        step.cfgNodes = accepted.toArray();
+        return !accepted.isEmpty();
+    }
+
+    private ChainCFG chainCFG(int chain) {
+        ChainCFG cfg = chainCFGs.get(chain);
+        if (cfg == null) {
+            cfg = composeChainCFG(chain);
+            chainCFGs.compareAndSet(chain, null, cfg);
+        }
+        return cfg;
+    }
+
+    // helper function: the CFG blocks a chain leaves from, starting at each block of its first relationship
+    //      a varWrite relationship connects a block with itself, so the accepted blocks of a relationship are the
+    //      blocks of it reached from an accepted block of the previous one
+    private ChainCFG composeChainCFG(int chain) {
+        int[] entries = blocks(chains.rel(chain, 0));
+        int[][] exits = new int[entries.length][];
+        Reachability search = reachability.get();
+
+        for (int i = 0; i < entries.length; i++) {
+            IntHashSet accepted = IntHashSet.newSetWith(entries[i]);
+            for (int position = 1; (position < chains.length(chain)) && !accepted.isEmpty(); position++) {
+                IntHashSet next = new IntHashSet();
+                for (int block : blocks(chains.rel(chain, position))) {
+                    IntIterator previous = accepted.intIterator();
+                    while (previous.hasNext()) {
+                        if (search.reachable(previous.next(), block)) {
+                            next.add(block);
+                            break;
+                        }
+                    }
+                }
+                accepted = next;
+            }
+            exits[i] = accepted.toArray();
+        }
+        return new ChainCFG(entries, exits);
+    }
+
+    private int[] blocks(int rel) {
+        int[][] pairs = connectionNodes(rel);
+        int[] blocks = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            blocks[i] = pairs[i][0];
+        }
+        return blocks;
+    }
+
+    // helper function: pairs of source and destination CFG blocks of a dataflow relationship
+    private int[][] connectionNodes(int rel) {
+        String typeName = graph.typeName(graph.relType(rel));
+        int[] srcCFGs = targets(outgoing(graph.source(rel), graph.type(typeName + "Source")));
+        int[] dstCFGs = targets(outgoing(graph.target(rel), graph.type(typeName + "Destination")));
+        int relType = graph.relType(rel);
+
+        ArrayList<int[]> cfgNodes = new ArrayList<>();
+        for (int srcCFG : srcCFGs) {
+            for (int dstCFG : dstCFGs) {
+                boolean addNode = false;
+                if (relType == varWrite) {
+                    addNode = (srcCFG == dstCFG);
+                } else if ((relType == parWrite) || (relType == retWrite)) {
+                    int flag = (relType == parWrite) ? CsrGraph.CFG_INVOKE : CsrGraph.CFG_RETURN;
+                    for (int nextCFGRel : outgoing(srcCFG, nextCFGBlock)) {
+                        if ((graph.target(nextCFGRel) == dstCFG) && graph.hasFlag(nextCFGRel, flag)) {
+                            addNode = true;
+                            break;
+                        }
+                    }
+                }
+                if (addNode) {
+                    cfgNodes.add(new int[]{srcCFG, dstCFG});
+                }
+            }
+        }
+        return cfgNodes.toArray(new int[0][]);
+    }
+
+    // helper function: CFG check of ROSPath.getCFGPath
+    //      a block of the new relationship is accepted if it can be reached from (or, backward, reach) a block
+    //      accepted for the previous one without passing a block where the source of the checked relationship is
+    //      written again
+    private boolean validateFindPaths(Step step, HashMap<String, CFGSetting> cfgConfig, boolean backward) {
+        if (step.prev == null) {
+            return true;
+        }
+        int[] blocked = overwritingBlocks(backward ? step.prev.rel : step.rel);
+        int[][] curCFGs = connectionNodesAll(step.rel, cfgConfig);
+        IntHashSet accepted = new IntHashSet();
+        Reachability search = reachability.get();
+
+        for (int prevCFG : step.prev.cfgNodes) {
+            for (int[] curCFG : curCFGs) {
+                int startCFG = backward ? curCFG[1] : prevCFG;
+                int dstCFG = backward ? prevCFG : curCFG[0];
+                if (search.reachable(startCFG, dstCFG, blocked)) {
+                    accepted.add(backward ? curCFG[0] : curCFG[1]);
+                }
+            }
+        }
+
+        step.cfgNodes = accepted.toArray();
+        return !accepted.isEmpty();
+    }
+
+    // helper function: CFG blocks of the first relationship of a path, as in ROSPath.updateFirstCFGNodes
+    private int[] firstCFGNodes(int rel, HashMap<String, CFGSetting> cfgConfig, boolean backward) {
+        IntHashSet blocks = new IntHashSet();
+        for (int[] pair : connectionNodesAll(rel, cfgConfig)) {
+            blocks.add(backward ? pair[0] : pair[1]);
+        }
+        return blocks.toArray();
+    }
+
+    // helper function: pairs of source and destination CFG blocks of a relationship, as in
+    //      CFGValidationHelper.getConnectionNodesAll
+    //      an attribute is followed through the nextCFGBlock relationships where it is set to "1", the only value
+    //      CsrGraph keeps
+    private int[][] connectionNodesAll(int rel, HashMap<String, CFGSetting> cfgConfig) {
+        int source = graph.source(rel);
+        int target = graph.target(rel);
+        String typeName = graph.typeName(graph.relType(rel));
+        CFGSetting setting = cfgConfig.get(graph.labelName(graph.nodeLabel(source)) + typeName +
+                graph.labelName(graph.nodeLabel(target)));
+        int length = (setting != null) ? setting.getLength() : 0;
+        String[] attribute = (setting != null) ? setting.getAttribute() : null;
+
+        // source blocks reached by a definition of the source variable, as (source, current) pairs
+        LongHashSet pairs = new LongHashSet();
+        for (int srcCFG : targets(outgoing(source, graph.type(typeName + "Source")))) {
+            if (reachingDefinitions.isDefinedAt(source, srcCFG)) {
+                pairs.add(pair(srcCFG, srcCFG));
+            }
+        }
+
+        // one nextCFGBlock relationship for each attribute
+        for (int i = 0; (attribute != null) && (i < attribute.length); i++) {
+            int flag = cfgFlag(attribute[i]);
+            LongHashSet nextPairs = new LongHashSet();
+            LongIterator iterator = pairs.longIterator();
+            while (iterator.hasNext()) {
+                long pair = iterator.next();
+                for (int nextCFGRel : outgoing(second(pair), nextCFGBlock)) {
+                    if (graph.hasFlag(nextCFGRel, flag)) {
+                        nextPairs.add(pair(first(pair), graph.target(nextCFGRel)));
+                    }
+                }
+            }
+            pairs = nextPairs;
+        }
+
+        // the current block must reach the destination block with length "*" or "+", and be it otherwise
+        int[] dstCFGs = targets(outgoing(target, graph.type(typeName + "Destination")));
+        LongHashSet related = new LongHashSet();
+        Reachability search = reachability.get();
+        LongIterator iterator = pairs.longIterator();
+        while (iterator.hasNext()) {
+            long pair = iterator.next();
+            for (int dstCFG : dstCFGs) {
+                if ((length < 0) ? search.reachable(second(pair), dstCFG) : (second(pair) == dstCFG)) {
+                    related.add(pair(first(pair), dstCFG));
+                }
+            }
+        }
+
+        int[][] cfgNodes = new int[related.size()][];
+        int i = 0;
+        iterator = related.longIterator();
+        while (iterator.hasNext()) {
+            long pair = iterator.next();
+            cfgNodes[i++] = new int[]{first(pair), second(pair)};
+        }
+        return cfgNodes;
+    }
+
+    // helper function: CFG blocks where the source of a relationship is written, as in
+    //      CFGCondensation.overwritingBlocks, sorted; none unless the source is a variable or a return value
+    //      (first label only) and the relationship is not a pubVar
+    private int[] overwritingBlocks(int rel) {
+        int source = graph.source(rel);
+        int label = graph.nodeLabel(source);
+        if ((label < 0) || ((label != cVariable) && (label != cReturn)) || (graph.relType(rel) == pubVar)) {
+            return new int[0];
+        }
+        IntArrayList blocks = new IntArrayList();
+        for (int position = graph.outStart(source); position < graph.outStart(source + 1); position++) {
+            int cfgRel = graph.outRel(position);
+            if (overwritingTypes[graph.relType(cfgRel)]) {
+                blocks.add(graph.target(cfgRel));
+            }
+        }
+        return blocks.toSortedArray();
+    }
+
+    // helper function: flag of a CFG attribute, CsrGraph only keeps cfgInvoke and cfgReturn
+    private static int cfgFlag(String attribute) {
+        if (attribute.equals("cfgInvoke")) {
+            return CsrGraph.CFG_INVOKE;
+        }
+        if (attribute.equals("cfgReturn")) {
+            return CsrGraph.CFG_RETURN;
+        }
+        throw new IllegalArgumentException("Unsupported CFG attribute " + attribute + " offline, only cfgInvoke " +
+                "and cfgReturn are kept by the graph");
+    }
+
+    private static long pair(int first, int second) {
+        return (((long) first) << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    private static int first(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    private static int second(long pair) {
+        return (int) pair;
+    }
+
+    private boolean isRetWrite(int rel) {
+        return (retWrite >= 0) && (graph.relType(rel) == retWrite);
+    }
+
+    // helper function: type ids of a relationship sequence entry, types not in the graph are dropped
+    private int[] types(List<RelationshipType> relTypes) {
+        return relTypes.stream().mapToInt(type -> graph.type(type.name())).filter(type -> type >= 0).toArray();
+    }
+
+    private IntHashSet filterNodes(String acceptNodesStr) {
+        if (acceptNodesStr == null) {
+            return null;
+        }
+        IntHashSet acceptedNodes = new IntHashSet();
+        for (String acceptedNodeStr : acceptNodesStr.split(",")) {
+            acceptedNodes.add(graph.label(acceptedNodeStr));
+        }
+        return acceptedNodes;
+    }
+
+    private int[] targets(int[] rels) {
+        int[] nodes = new int[rels.length];
+        for (int i = 0; i < rels.length; i++) {
+            nodes[i] = graph.target(rels[i]);
+        }
+        return nodes;
+    }
+
+    private int[] outgoing(int node, int... relTypes) {
+        return select(graph.outStart(node), graph.outStart(node + 1), true, relTypes);
+    }
+
+    private int[] incoming(int node, int... relTypes) {
+        return select(graph.inStart(node), graph.inStart(node + 1), false, relTypes);
+    }
+
+    // helper function: relationships between two adjacency positions having one of the types
+    private int[] select(int from, int to, boolean out, int[] relTypes) {
+        IntArrayList rels = new IntArrayList(to - from);
+        for (int position = from; position < to; position++) {
+            int rel = out ? graph.outRel(position) : graph.inRel(position);
+            int relType = graph.relType(rel);
+            for (int type : relTypes) {
+                if (type == relType) {
+                    rels.add(rel);
+                    break;
+                }
+            }
+        }
+        return rels.toArray();
+    }
+
+    // candidate path: the last relationship and a pointer to the candidate path it extends
+    private static class Step {
+        private final int rel;
+        private final Step prev;
+        private final int length;
+        private final int pathIndex;
+        private final IntArrayList retWrites;   // retWrite relationships of the path, in path order
+        private final int chain;                // chain taken by the step, or DataflowChains.NONE
+        private final int[] chainRels;          // relationships of the chain, rel being the last one
+        private int[] cfgNodes = new int[0];
+
+        Step(int rel, Step prev, int pathIndex, boolean isRetWrite, boolean backward) {
+            this.rel = rel;
+            this.prev = prev;
+            this.chain = DataflowChains.NONE;
+            this.chainRels = null;
+            this.length = (prev == null) ? 1 : prev.length + 1;
+            this.pathIndex = pathIndex;
+            this.retWrites = (prev == null) ? new IntArrayList() : new IntArrayList(prev.retWrites.toArray());
+            if (isRetWrite) {
+                if (backward) {
+                    retWrites.addAtIndex(0, rel);
+                } else {
+                    retWrites.add(rel);
+                }
+            }
+        }
+
+        // a chain holds only varWrite relationships, so it does not change the retWrites of the path
+        Step(int chain, int[] chainRels, Step prev) {
+            this.rel = chainRels[chainRels.length - 1];
+            this.prev = prev;
+            this.length = ((prev == null) ? 0 : prev.length) + chainRels.length;
+            this.pathIndex = -1;
+            this.retWrites = (prev == null) ? new IntArrayList() : new IntArrayList(prev.retWrites.toArray());
+            this.chain = chain;
+            this.chainRels = chainRels;
+        }
+
+        boolean contains(int otherRel) {
+            for (Step step = this; step != null; step = step.prev) {
+                if (step.rel == otherRel) {
+                    return true;
+                }
+                if (step.chainRels != null) {
+                    for (int chainRel : step.chainRels) {
+                        if (chainRel == otherRel) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        // EdgeInfo.compareRetNodes: both paths went through the same first retWrite
+        boolean compareRetWrites(Step other) {
+            return !other.retWrites.isEmpty() && !retWrites.isEmpty() &&
+                    (retWrites.get(0) == other.retWrites.get(0));
+        }
+
+        // BasicCandidatePath.compareRetNodes: the first retWrites of both paths leave the same node
+        boolean compareRetSources(Step other, CsrGraph graph) {
+            return !other.retWrites.isEmpty() && !retWrites.isEmpty() &&
+                    (graph.source(retWrites.get(0)) == graph.source(other.retWrites.get(0)));
+        }
+
+        // prefixes of the retWrite list
+        List<IntArrayList> retComp() {
+            List<IntArrayList> comps = new ArrayList<>();
+            IntArrayList comp = new IntArrayList();
+            for (int i = 0; i < retWrites.size(); i++) {
+                comp = new IntArrayList(comp.toArray());
+                comp.add(retWrites.get(i));
+                comps.add(comp);
+            }
+            return comps;
+        }
+
+        // relationships from the first to the last step, reversed for backward searches
+        int[] rels(boolean backward) {
+            int[] rels = new int[length];
+            int i = length;
+            for (Step step = this; step != null; step = step.prev) {
+                if (step.chainRels == null) {
+                    rels[--i] = step.rel;
+                } else {
+                    for (int j = step.chainRels.length - 1; j >= 0; j--) {
+                        rels[--i] = step.chainRels[j];
+                    }
+                }
+            }
+            if (backward) {
+                for (int left = 0, right = rels.length - 1; left < right; left++, right--) {
+                    int tmp = rels[left];
+                    rels[left] = rels[right];
+                    rels[right] = tmp;
+                }
+            }
+            return rels;
+        }
+    }
+
+    // CFG check of a chain: exits[i] are the blocks the chain leaves from when entered at entries[i]
+    private static class ChainCFG {
+        private final int[] entries;
+        private final int[][] exits;
+
+        ChainCFG(int[] entries, int[][] exits) {
+            this.entries = entries;
+            this.exits = exits;
+        }
+    }
+
+    // queue of steps by path length, first in first out among steps of the same length
+    private static class LengthQueue {
+        private final ArrayList<ArrayDeque<Step>> levels = new ArrayList<>();
+        private int current = 0;
+        private int size = 0;
+
+        void add(Step step) {
+            while (levels.size() <= step.length) {
+                levels.add(new ArrayDeque<>());
+            }
+            levels.get(step.length).add(step);
+            size++;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        // steps are only added with a length above the one of the step being taken, so the levels below current
+        //      stay empty
+        Step remove() {
+            while (levels.get(current).isEmpty()) {
+                current++;
+            }
+            size--;
+            return levels.get(current).poll();
+        }
+    }
+
+    // breadth first search over nextCFGBlock relationships, with a visited stamp per node
+    private class Reachability {
+        private final int[] visited;
+        private final int[] frontier;
+        private int stamp = 0;
+
+        Reachability(int nodeCount) {
+            this.visited = new int[nodeCount];
+            this.frontier = new int[nodeCount];
+        }
+
+        boolean reachable(int start, int end) {
+            return reachable(start, end, NO_BLOCKS);
+        }
+
+        // blocked is sorted, start and end themselves are never blocked
+        boolean reachable(int start, int end, int[] blocked) {
+            if (start == end) {
+                return true;
+            }
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                stamp = 1;
+            }
+            int size = 0;
+            frontier[size++] = start;
+            visited[start] = stamp;
+            for (int head = 0; head < size; head++) {
+                int node = frontier[head];
+                for (int position = graph.outStart(node); position < graph.outStart(node + 1); position++) {
+                    int rel = graph.outRel(position);
+                    if (graph.relType(rel) != nextCFGBlock) {continue;}
+                    int next = graph.target(rel);
+                    if (next == end) {
+                        return true;
+                    }
+                    if ((visited[next] != stamp) &&
+                            ((blocked.length == 0) || (Arrays.binarySearch(blocked, next) < 0))) {
+                        visited[next] = stamp;
+                        frontier[size++] = next;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package apoc.dataflow.offline;
+
+import apoc.dataflow.SearchBudget;
+import apoc.util.JsonUtil;
+import apoc.util.Util;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.impl.UnionListWriter;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.Types;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Standalone runner for dataflow batches on an apoc.export.arrow.all snapshot, without a database:
+//
+//    java -cp apoc-core.jar:<dependencies> apoc.dataflow.offline.OfflineDataflowRunner graph.arrow job.json out.arrow [threads]
+//
+// The job file is a JSON map:
+//    - procedure: "rosAllShortest" or "rosFindPaths"
+//    - pairs: [[startId, endId], ...] for rosAllShortest
+//    - starts: [startId, ...] for rosFindPaths
+//    - cfgCheck: CFG check of rosAllShortest (default: false)
+//    - config: configuration map of rosFindPaths, and the search limits of both (maxDepth, maxResults, timeoutMs,
+//          maxExpansions, see SearchBudget)
+// Ids are the node ids of the exported database. Every query runs as a separate task on a fixed thread pool, and the
+// results are written in query order as an Arrow file with one row per path: query (position in the job), start,
+// end, rels and nodes (ids of the path), and truncated (whether the query hit a limit).
+public class OfflineDataflowRunner {
+
+    public static final String ROS_ALL_SHORTEST = "rosAllShortest";
+    public static final String ROS_FIND_PATHS = "rosFindPaths";
+
+    private static final int BATCH_SIZE = 10000;
+
+    private static final Field FIELD_QUERY = new Field("query", FieldType.nullable(Types.MinorType.BIGINT.getType()), null);
+    private static final Field FIELD_START = new Field("start", FieldType.nullable(Types.MinorType.BIGINT.getType()), null);
+    private static final Field FIELD_END = new Field("end", FieldType.nullable(Types.MinorType.BIGINT.getType()), null);
+    private static final Field FIELD_RELS = new Field("rels", FieldType.nullable(Types.MinorType.LIST.getType()),
+            List.of(new Field("$data$", FieldType.nullable(Types.MinorType.BIGINT.getType()), null)));
+    private static final Field FIELD_NODES = new Field("nodes", FieldType.nullable(Types.MinorType.LIST.getType()),
+            List.of(new Field("$data$", FieldType.nullable(Types.MinorType.BIGINT.getType()), null)));
+    private static final Field FIELD_TRUNCATED = new Field("truncated", FieldType.nullable(Types.MinorType.BIT.getType()), null);
+
+    private final OfflineDataflow dataflow;
+    private final CsrGraph graph;
+
+    public OfflineDataflowRunner(CsrGraph graph) {
+        this.graph = graph;
+        this.dataflow = new OfflineDataflow(graph);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("usage: OfflineDataflowRunner graph.arrow job.json out.arrow [threads]");
+            System.exit(1);
+        }
+        int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        Map<String, Object> job = JsonUtil.OBJECT_MAPPER.readValue(new File(args[1]), Map.class);
+
+        try (CsrGraph graph = CsrGraph.load(args[0])) {
+            OfflineDataflowRunner runner = new OfflineDataflowRunner(graph);
+            DataflowChains chains = runner.dataflow.getChains();
+            System.out.println("collapsed " + chains.relCount() + " of " + graph.relCount() + " relationships into " +
+                    chains.chainCount() + " chains");
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                long rows = runner.run(job, pool, args[2]);
+                System.out.println("wrote " + rows + " paths to " + args[2]);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    // run every query of the job on the pool and write the paths to outFile, returns the number of paths written
+    public long run(Map<String, Object> job, ExecutorService pool, String outFile) throws IOException,
+            InterruptedException, ExecutionException {
+        String procedure = (String) job.getOrDefault("procedure", ROS_ALL_SHORTEST);
+        boolean cfgCheck = Util.toBoolean(job.getOrDefault("cfgCheck", false));
+        Map<String, Object> config = (Map<String, Object>) job.getOrDefault("config", Map.of());
+
+        List<long[]> queries = new ArrayList<>();
+        if (procedure.equals(ROS_ALL_SHORTEST)) {
+            for (List<Number> pair : (List<List<Number>>) job.getOrDefault("pairs", List.of())) {
+                queries.add(new long[]{pair.get(0).longValue(), pair.get(1).longValue()});
+            }
+        } else if (procedure.equals(ROS_FIND_PATHS)) {
+            for (Number start : (List<Number>) job.getOrDefault("starts", List.of())) {
+                Object end = config.get("endN");
+                queries.add(new long[]{start.longValue(), (end == null) ? -1 : Util.toLong(end)});
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown procedure " + procedure + ", expected " + ROS_ALL_SHORTEST +
+                    " or " + ROS_FIND_PATHS);
+        }
+
+        // queries are independent, so each one is a task of its own
+        List<Future<QueryResult>> futures = new ArrayList<>(queries.size());
+        for (long[] query : queries) {
+            futures.add(pool.submit(() -> {
+                int start = node(query[0]);
+                SearchBudget budget = new SearchBudget(config, null);
+                List<int[]> paths = procedure.equals(ROS_ALL_SHORTEST) ?
+                        dataflow.rosAllShortest(start, node(query[1]), cfgCheck, budget) :
+                        dataflow.rosFindPaths(start, config, budget);
+                return new QueryResult(query, paths, budget.isTruncated());
+            }));
+        }
+
+        return write(futures, outFile);
+    }
+
+    private int node(long id) {
+        int node = graph.node(id);
+        if (node < 0) {
+            throw new IllegalArgumentException("Node " + id + " is not part of the exported graph");
+        }
+        return node;
+    }
+
+    // helper function: write the results in query order, in batches of BATCH_SIZE paths
+    private long write(List<Future<QueryResult>> futures, String outFile) throws IOException,
+            InterruptedException, ExecutionException {
+        long rows = 0;
+        Schema schema = new Schema(List.of(FIELD_QUERY, FIELD_START, FIELD_END, FIELD_RELS, FIELD_NODES,
+                FIELD_TRUNCATED));
+        try (RootAllocator allocator = new RootAllocator();
+             VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator);
+             FileChannel channel = FileChannel.open(new File(outFile).toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             ArrowFileWriter writer = new ArrowFileWriter(root, new DictionaryProvider.MapDictionaryProvider(),
+                     channel)) {
+            writer.start();
+            BigIntVector queryVector = (BigIntVector) root.getVector(FIELD_QUERY.getName());
+            BigIntVector startVector = (BigIntVector) root.getVector(FIELD_START.getName());
+            BigIntVector endVector = (BigIntVector) root.getVector(FIELD_END.getName());
+            ListVector relsVector = (ListVector) root.getVector(FIELD_RELS.getName());
+            ListVector nodesVector = (ListVector) root.getVector(FIELD_NODES.getName());
+            BitVector truncatedVector = (BitVector) root.getVector(FIELD_TRUNCATED.getName());
+
+            root.allocateNew();
+            int row = 0;
+            for (int queryIndex = 0; queryIndex < futures.size(); queryIndex++) {
+                QueryResult result = futures.get(queryIndex).get();
+                for (int[] path : result.paths) {
+                    queryVector.setSafe(row, queryIndex);
+                    startVector.setSafe(row, result.query[0]);
+                    if (result.query[1] < 0) {
+                        endVector.setNull(row);
+                    } else {
+                        endVector.setSafe(row, result.query[1]);
+                    }
+                    writeList(relsVector, row, relIds(path));
+                    writeList(nodesVector, row, nodeIds(result.query[0], path));
+                    truncatedVector.setSafe(row, result.truncated ? 1 : 0);
+                    row++;
+                    rows++;
+
+                    if (row == BATCH_SIZE) {
+                        flush(root, writer, row);
+                        row = 0;
+                    }
+                }
+            }
+            if (row > 0) {
+                flush(root, writer, row);
+            }
+            writer.end();
+        }
+        return rows;
+    }
+
+    private static void flush(VectorSchemaRoot root, ArrowFileWriter writer, int rowCount) throws IOException {
+        root.setRowCount(rowCount);
+        writer.writeBatch();
+        root.clear();
+        root.allocateNew();
+    }
+
+    private static void writeList(ListVector listVector, int index, long[] values) {
+        UnionListWriter listWriter = listVector.getWriter();
+        listWriter.setPosition(index);
+        listWriter.startList();
+        for (long value : values) {
+            listWriter.bigInt().writeBigInt(value);
+        }
+        listWriter.endList();
+    }
+
+    private long[] relIds(int[] path) {
+        long[] ids = new long[path.length];
+        for (int i = 0; i < path.length; i++) {
+            ids[i] = graph.relId(path[i]);
+        }
+        return ids;
+    }
+
+    // helper function: node ids along the path, the start node alone for a path without relationships
+    private long[] nodeIds(long startId, int[] path) {
+        if (path.length == 0) {
+            return new long[]{startId};
+        }
+        long[] ids = new long[path.length + 1];
+        ids[0] = graph.nodeId(graph.source(path[0]));
+        for (int i = 0; i < path.length; i++) {
+            ids[i + 1] = graph.nodeId(graph.target(path[i]));
+        }
+        return ids;
+    }
+
+    private static class QueryResult {
+        private final long[] query;
+        private final List<int[]> paths;
+        private final boolean truncated;
+
+        QueryResult(long[] query, List<int[]> paths, boolean truncated) {
+            this.query = query;
+            this.paths = paths;
+            this.truncated = truncated;
+        }
+    }
+}
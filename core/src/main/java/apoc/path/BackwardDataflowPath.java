@@ -1,8 +1,8 @@
 package apoc.path;
 
-import apoc.algo.CFGShortestPath;
+import apoc.algo.CFGReachability;
+import apoc.algo.CallGraphReachability;
 import apoc.algo.CFGTraversalBackwardShortestPath;
-import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphalgo.impl.util.PathImpl;
 import org.neo4j.graphdb.*;
 import org.neo4j.procedure.Context;
@@ -21,6 +21,12 @@ public class BackwardDataflowPath {
     @Context
     public Transaction tx;
 
+    // helper function: CFG helper bound to the transaction of this query
+    //      (procedure classes cannot hold state, so a helper is created for each use)
+    private CFGValidationHelper cfgHelper() {
+        return new CFGValidationHelper(db, tx);
+    }
+
     @UserFunction
     @Description("apoc.path.backwardDataflowPath(startNode, endNode, startEdge, endEdge, cfgCheck) - finds a dataflow path using backward propagation")
     public Path backwardDataflowPath(@Name("startNode") Node startNode, @Name("endNode") Node endNode,
@@ -58,6 +64,11 @@ public class BackwardDataflowPath {
         Iterable<Relationship> dataflowRels;
         HashMap<List<Node>, Relationship> endCFGs;
 
+        // no dataflow path connects the functions of start and end
+        if (!CallGraphReachability.mayReach(db, tx, start, end)) {
+            return null;
+        }
+
         // check if we reach end node
         if (end.equals(start)) {
             PathImpl.Builder builder = (startNode != null) ? new PathImpl.Builder(startNode):
@@ -77,7 +88,7 @@ public class BackwardDataflowPath {
                 if (!visitedEdge.contains(dataflowRel)) {
                     CandidatePath candidatePath = new CandidatePath(dataflowRel);
                     if (cfgCheck) {
-                        endCFGs = CFGValidationHelper.getConnectionNodes(dataflowRel, candidatePath,
+                        endCFGs = cfgHelper().getConnectionNodes(dataflowRel, candidatePath,
                                 false, true);
                         CFGValidationHelper.addCFGToCandidatePath(candidatePath, endCFGs, true);
                     }
@@ -86,54 +97,20 @@ public class BackwardDataflowPath {
             }
         } else {
             if (cfgCheck) {
-                endCFGs = CFGValidationHelper.getConnectionNodes(endEdge, curPath,
+                endCFGs = cfgHelper().getConnectionNodes(endEdge, curPath,
                         false, true);
                 CFGValidationHelper.addCFGToCandidatePath(curPath, endCFGs, true);
             }
         }
 
-        // cfgPath variable
-        List<Relationship> cfgPath = null;
-
-        while (!queuePath.isEmpty()) {
+        // search backward until the first path reaching the start node
+        CandidatePathStrategy strategy = new CandidatePathStrategy(true,
+                (cfgCheck) ? this::backwardGetCFGPath : null,
+                path -> completePath(path, start, (category == DataflowType.PREFIX) ? startEdge : null, cfgCheck));
+        List<CandidatePath> found = new DataflowTraversal<>(strategy, DataflowTraversal.Mode.FIRST)
+                .run(queuePath, visitedEdge, new ArrayList<>());
 
-            // get the last path
-            curPath = queuePath.poll();
-
-            // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (backwardGetCFGPath(curPath))) {
-
-                visitedEdge.add(curPath.getLastRel());
-
-                // check if we reach end node
-                if (curPath.getStartNode().equals(start)) {
-
-                    if (category == DataflowType.PREFIX) {
-                        CandidatePath varPath = new CandidatePath(curPath, startEdge);
-                        if ((!cfgCheck) || (backwardGetCFGPath(varPath))) {
-                            // build path, and return (exit)
-                            return varPath.backwardBuildPath();
-                        }
-                    } else {
-                        // build path, and return (exit)
-                        return curPath.backwardBuildPath();
-                    }
-
-                }
-
-                dataflowRels = CFGValidationHelper.getPrevRels(curPath.getStartNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
-                    if (!visitedEdge.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
-                    }
-                }
-
-            }
-
-        }
-
-        return null;
+        return found.isEmpty() ? null : found.get(0).backwardBuildPath();
 
     }
 
@@ -175,6 +152,11 @@ public class BackwardDataflowPath {
         Iterable<Relationship> dataflowRels;
         HashMap<List<Node>, Relationship> endCFGs;
 
+        // no dataflow path connects the functions of start and end
+        if (!CallGraphReachability.mayReach(db, tx, start, end)) {
+            return new ArrayList<>();
+        }
+
         // check if we reach end node
         if (end.equals(start)) {
             PathImpl.Builder builder = (startNode != null) ? new PathImpl.Builder(startNode):
@@ -193,7 +175,7 @@ public class BackwardDataflowPath {
                 if (!visitedEdges.contains(dataflowRel)) {
                     CandidatePath candidatePath = new CandidatePath(dataflowRel);
                     if (cfgCheck) {
-                        endCFGs = CFGValidationHelper.getConnectionNodes(dataflowRel, candidatePath,
+                        endCFGs = cfgHelper().getConnectionNodes(dataflowRel, candidatePath,
                                 false, true);
                         CFGValidationHelper.addCFGToCandidatePath(candidatePath, endCFGs, true);
                     }
@@ -202,70 +184,18 @@ public class BackwardDataflowPath {
             }
         } else {
             if (cfgCheck) {
-                endCFGs = CFGValidationHelper.getConnectionNodes(endEdge, curPath,
+                endCFGs = cfgHelper().getConnectionNodes(endEdge, curPath,
                         false, true);
                 CFGValidationHelper.addCFGToCandidatePath(curPath, endCFGs, true);
             }
         }
 
-        // cfgPath variable
-        List<Relationship> cfgPath = null;
-        int pathLen = -1;
-        boolean foundPath = false;
-
-        // keep track of visited relationships at current length
-        HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
-
-        while (!queuePath.isEmpty()) {
-
-            curPath = queuePath.poll();
-            int curLen = curPath.getPathSize();
-
-            if (foundPath && curLen > pathLen) {
-                // if path has been found and current path is longer than found path, can break
-                break;
-            }
-
-            if (curLen > pathLen) {
-                // add all relationships found at previous path length to visitedRels
-                visitedEdges.addAll(visitedEdge);
-                visitedEdge = new HashSet<Relationship>();
-            }
-            pathLen = curLen;
-
-            // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (backwardGetCFGPath(curPath))) {
-
-                visitedEdge.add(curPath.getLastRel());
-
-                // check if we reach end node
-                if (curPath.getStartNode().equals(start)) {
-
-                    if (category == DataflowType.PREFIX) {
-                        CandidatePath varPath = new CandidatePath(curPath, startEdge);
-                        if ((!cfgCheck) || (backwardGetCFGPath(varPath))) {
-                            // build path, and return (exit)
-                            foundPath = true;
-                            returnCandidates.add(varPath);
-                        }
-                    } else {
-                        // build path, and return (exit)
-                        foundPath = true;
-                        returnCandidates.add(curPath);
-                    }
-                }
-
-                dataflowRels = CFGValidationHelper.getPrevRels(curPath.getStartNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
-                    if (!visitedEdges.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
-                    }
-                }
-
-            }
-
-        }
+        // search backward for all shortest paths reaching the start node
+        CandidatePathStrategy strategy = new CandidatePathStrategy(true,
+                (cfgCheck) ? this::backwardGetCFGPath : null,
+                path -> completePath(path, start, (category == DataflowType.PREFIX) ? startEdge : null, cfgCheck));
+        new DataflowTraversal<>(strategy, DataflowTraversal.Mode.SHORTEST)
+                .run(queuePath, visitedEdges, returnCandidates);
 
         List<Path> returnPaths = new ArrayList<Path>();
         for (CandidatePath returnCandidate : returnCandidates) {
@@ -278,6 +208,21 @@ public class BackwardDataflowPath {
 
     }
 
+    // helper function: the result of a candidate path once it reaches start, extended with startEdge (which then
+    //      also has to pass the CFG check) if not null
+    // returns:
+    //      - CandidatePath: the path to return, or null if the candidate path does not reach start
+    private CandidatePath completePath(CandidatePath curPath, Node start, Relationship startEdge, boolean cfgCheck) {
+        if (!curPath.getStartNode().equals(start)) {
+            return null;
+        }
+        if (startEdge == null) {
+            return curPath;
+        }
+        CandidatePath varPath = new CandidatePath(curPath, startEdge);
+        return ((!cfgCheck) || (backwardGetCFGPath(varPath))) ? varPath : null;
+    }
+
     // helper function: find and verify CFG path
     // returns:
     //      - boolean: indicating candidatePath is feasible
@@ -291,7 +236,7 @@ public class BackwardDataflowPath {
         Relationship curRel = candidatePath.getLastRel();
 
         // obtain cfg nodes and relationships associated with r1 and r2
-        HashMap<List<Node>, Relationship> startCFGs = CFGValidationHelper.getConnectionNodes(curRel,
+        HashMap<List<Node>, Relationship> startCFGs = cfgHelper().getConnectionNodes(curRel,
                 candidatePath, true, true);
         HashSet<Node> endCFGs = candidatePath.validCFGs;
 
@@ -299,16 +244,14 @@ public class BackwardDataflowPath {
         //List<Path> validPaths = cfgBackwardShortestPath.findPath(startCFGs, endCFGs, candidatePath);
         HashSet<Node> acceptedCFGStart = new HashSet<>();
 
-        CFGShortestPath shortestPath = new CFGShortestPath(
-                new BasicEvaluationContext(tx, db),
-                (int) Integer.MAX_VALUE,
-                CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
+        // pooled reachability engine of this thread
+        CFGReachability reachability = CFGReachability.forThread();
 
         for (List<Node> startCFG : startCFGs.keySet()) {
             Node srcNode = startCFG.get(1);
             for (Node dstNode : endCFGs) {
-                Path cfgPath = shortestPath.findSinglePath(srcNode, dstNode, curRel);
-                if (cfgPath != null) {
+                boolean cfgPath = reachability.reachable(srcNode, dstNode, curRel);
+                if (cfgPath) {
                     acceptedCFGStart.add(startCFG.get(0));
                 }
             }
@@ -1,6 +1,7 @@
 package apoc.path;
 
-import apoc.algo.CFGShortestPath;
+import apoc.algo.CFGReachability;
+import apoc.algo.CallGraphReachability;
 import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphalgo.GraphAlgoFactory;
 import org.neo4j.graphalgo.PathFinder;
@@ -23,6 +24,12 @@ public class BackwardGmDataflowPath {
     @Context
     public Transaction tx;
 
+    // helper function: CFG helper bound to the transaction of this query
+    //      (procedure classes cannot hold state, so a helper is created for each use)
+    private CFGValidationHelper cfgHelper() {
+        return new CFGValidationHelper(db, tx);
+    }
+
     @UserFunction
     @Description("apoc.path.backwardGmDataflowPath(startNode, endNode, startEdge, endEdge, cfgCheck) - finds a gm dataflow path using backward propagation")
     public Path backwardGmDataflowPath(@Name("startEdge") Relationship startEdge,
@@ -52,45 +59,14 @@ public class BackwardGmDataflowPath {
             return null;
         }
 
-        while (!queuePath.isEmpty()) {
-
-            // get the last path
-            curPath = queuePath.poll();
-
-            // isStartPW: category != PREFIX, len == 2
-            boolean isStartPW = false;
-            boolean isEndPW = ((category != DataflowType.SUFFIX) && (curPath.getPathSize() == 2));
-
-            // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (backwardGmGetCFGPath(curPath,isStartPW, isEndPW))) {
-
-                visitedEdge.add(curPath.getLastRel());
-
-                // check if we reach end node
-                if (curPath.getStartNode().equals(start)) {
-
-                    CandidatePath returnPath = new CandidatePath(curPath, startEdge);
-                    isStartPW = (category != DataflowType.PREFIX);
-                    isEndPW = ((category != DataflowType.SUFFIX) && (curPath.getPathSize() == 2));
-
-                    if ((!cfgCheck) || (backwardGmGetCFGPath(returnPath, isStartPW, isEndPW))) {
-                        return returnPath.backwardBuildPath();
-                    }
-                }
+        // search backward until the first path reaching the start node
+        CandidatePathStrategy strategy = new CandidatePathStrategy(true,
+                (cfgCheck) ? path -> backwardGmGetCFGPath(path, false, isEndPW(path, category, 2)) : null,
+                path -> completeBackwardGmPath(path, start, category, startEdge, false, 2, cfgCheck));
+        List<CandidatePath> found = new DataflowTraversal<>(strategy, DataflowTraversal.Mode.FIRST)
+                .run(queuePath, visitedEdge, new ArrayList<>());
 
-                dataflowRels = CFGValidationHelper.getPrevRels(curPath.getStartNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
-                    if (!visitedEdge.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
-                    }
-                }
-
-            }
-
-        }
-
-        return null;
+        return found.isEmpty() ? null : found.get(0).backwardBuildPath();
 
     }
 
@@ -124,66 +100,12 @@ public class BackwardGmDataflowPath {
             return null;
         }
 
-        // cfgPath variable
-        List<Relationship> cfgPath = null;
-        int pathLen = -1;
-        boolean foundPath = false;
-
-        // keep track of visited relationships at current length
-        HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
-
-        while (!queuePath.isEmpty()) {
-
-            // get the last path
-            curPath = queuePath.poll();
-
-            int curLen = curPath.getPathSize();
-
-            if (foundPath && curLen > pathLen) {
-                // if path has been found and current path is longer than found path, can break
-                break;
-            }
-
-            if (curLen > pathLen) {
-                // add all relationships found at previous path length to visitedRels
-                visitedEdges.addAll(visitedEdge);
-                visitedEdge = new HashSet<Relationship>();
-            }
-            pathLen = curLen;
-
-            // isStartPW: category != PREFIX, len == 2
-            boolean isStartPW = false;
-            boolean isEndPW = ((category != DataflowType.SUFFIX) && (curPath.getPathSize() == 2));
-
-            // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (backwardGmGetCFGPath(curPath,isStartPW, isEndPW))) {
-
-                visitedEdge.add(curPath.getLastRel());
-
-                // check if we reach end node
-                if (curPath.getStartNode().equals(start)) {
-
-                    CandidatePath returnPath = new CandidatePath(curPath, startEdge);
-                    isStartPW = (category != DataflowType.PREFIX);
-                    isEndPW = ((category != DataflowType.SUFFIX) && (curPath.getPathSize() == 2));
-
-                    if ((!cfgCheck) || (backwardGmGetCFGPath(returnPath, isStartPW, isEndPW))) {
-                        foundPath = true;
-                        returnCandidates.add(returnPath);
-                    }
-                }
-
-                dataflowRels = CFGValidationHelper.getPrevRels(curPath.getStartNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
-                    if (!visitedEdges.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
-                    }
-                }
-
-            }
-
-        }
+        // search backward for all shortest paths reaching the start node
+        CandidatePathStrategy strategy = new CandidatePathStrategy(true,
+                (cfgCheck) ? path -> backwardGmGetCFGPath(path, false, isEndPW(path, category, 2)) : null,
+                path -> completeBackwardGmPath(path, start, category, startEdge, false, 2, cfgCheck));
+        new DataflowTraversal<>(strategy, DataflowTraversal.Mode.SHORTEST)
+                .run(queuePath, visitedEdges, returnCandidates);
 
         List<Path> returnPaths = new ArrayList<Path>();
         for (CandidatePath returnCandidate : returnCandidates) {
@@ -248,11 +170,16 @@ public class BackwardGmDataflowPath {
         if (cfgCheck) {
             HashMap<List<Node>, Relationship> firstCFGs = (category != DataflowType.SUFFIX) ?
                     CFGValidationHelper.getParWriteConnectionNodes(end, curPath, false) :
-                    CFGValidationHelper.getConnectionNodes(endEdge, curPath,
+                    cfgHelper().getConnectionNodes(endEdge, curPath,
                             false, false);
             CFGValidationHelper.addCFGToCandidatePath(curPath, firstCFGs, true);
         }
 
+        // no dataflow path connects the functions of start and end
+        if (!CallGraphReachability.mayReach(db, tx, start, end)) {
+            return new ArrayList<>();
+        }
+
         // check for already found values
         if (start.equals(end)) {
             curPath = (category == DataflowType.PREFIX) ? new CandidatePath(curPath, startEdge) :
@@ -279,68 +206,13 @@ public class BackwardGmDataflowPath {
             }
         }
 
-        CandidatePath foundCandidatePath = null;
-        ArrayList<ArrayList<Relationship>> retCovered = new ArrayList<>();
-
-        while (!queuePath.isEmpty()) {
-
-            // get the last path
-            curPath = queuePath.remove();
-
-            if (foundCandidatePath != null) {
-                if ((!curPath.compareRetNodes(foundCandidatePath))) {
-                    continue;
-                } else {
-                    if (retCovered.contains(curPath.retRel)) {
-                        continue;
-                    }
-                }
-            }
-
-            // boolean variables indicating whether we are doing a start or end check
-            boolean isStartPW = false;
-            boolean isEndPW = ((category != DataflowType.SUFFIX) && (curPath.getPathSize() == 1));
-
-            // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (backwardGmGetCFGPath(curPath,isStartPW, isEndPW))) {
-
-                visitedEdge.add(curPath.getLastRel());
-
-                // check if we reach end node
-                if (curPath.getStartNode().equals(start)) {
-
-                    if (category == DataflowType.PREFIX) {
-                        CandidatePath returnPath = new CandidatePath(curPath, startEdge);
-                        isStartPW = (category != DataflowType.PREFIX);
-                        isEndPW = ((category != DataflowType.SUFFIX) && (curPath.getPathSize() == 1));
-
-                        if ((!cfgCheck) || (backwardGmGetCFGPath(returnPath, isStartPW, isEndPW))) {
-                            foundCandidatePath = returnPath;
-                            retCovered.addAll(returnPath.getRetComp());
-                            returnCandidates.add(returnPath);
-                            continue;
-                        }
-                    } else {
-                        foundCandidatePath = curPath;
-                        retCovered.addAll(curPath.getRetComp());
-                        returnCandidates.add(curPath);
-                        continue;
-                    }
-
-
-                }
-
-                dataflowRels = CFGValidationHelper.getPrevRels(curPath.getStartNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
-                    if (!visitedEdge.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
-                    }
-                }
-
-            }
-
-        }
+        // search backward for shortest paths, continuing after the first one only for paths through other return
+        //      edges
+        CandidatePathStrategy strategy = new CandidatePathStrategy(true,
+                (cfgCheck) ? path -> backwardGmGetCFGPath(path, false, isEndPW(path, category, 1)) : null,
+                path -> completeBackwardGmPath(path, start, category, startEdge, true, 1, cfgCheck), true);
+        new DataflowTraversal<>(strategy, DataflowTraversal.Mode.COVERED, false, null)
+                .run(queuePath, visitedEdge, returnCandidates);
 
         List<Path> returnPaths = new ArrayList<Path>();
         for (CandidatePath returnCandidate : returnCandidates) {
@@ -355,6 +227,32 @@ public class BackwardGmDataflowPath {
     }
 
 
+    // helper function: whether the end check (parWrite out of the end node) applies to a candidate path, which is
+    //      the case for paths of endPWSize relationships
+    private static boolean isEndPW(CandidatePath curPath, DataflowType category, int endPWSize) {
+        return (category != DataflowType.SUFFIX) && (curPath.getPathSize() == endPWSize);
+    }
+
+    // helper function: the result of a candidate path once it reaches start, extended with startEdge after a CFG
+    //      check including the start edge; with prefixOnly set, other queries return the path itself
+    // returns:
+    //      - CandidatePath: the path to return, or null if the candidate path does not reach start
+    private CandidatePath completeBackwardGmPath(CandidatePath curPath, Node start, DataflowType category,
+                                                 Relationship startEdge, boolean prefixOnly, int endPWSize,
+                                                 boolean cfgCheck) {
+        if (!curPath.getStartNode().equals(start)) {
+            return null;
+        }
+        if (prefixOnly && (category != DataflowType.PREFIX)) {
+            return curPath;
+        }
+
+        CandidatePath returnPath = new CandidatePath(curPath, startEdge);
+        boolean isStartPW = (category != DataflowType.PREFIX);
+        return ((!cfgCheck) || (backwardGmGetCFGPath(returnPath, isStartPW, isEndPW(curPath, category, endPWSize)))) ?
+                returnPath : null;
+    }
+
     // helper function: find and verify CFG path
     // returns:
     //      - boolean: indicating candidatePath is feasible
@@ -383,19 +281,17 @@ public class BackwardGmDataflowPath {
 
         HashMap<List<Node>, Relationship> startCFGs = (isStartPW) ?
                 CFGValidationHelper.getParWriteConnectionNodes(targetNode, candidatePath, true) :
-                CFGValidationHelper.getConnectionNodes(curRel, candidatePath, true, false);
+                cfgHelper().getConnectionNodes(curRel, candidatePath, true, false);
 
-        CFGShortestPath shortestPath = new CFGShortestPath(
-                new BasicEvaluationContext(tx, db),
-                (int) Integer.MAX_VALUE,
-                CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
+        // pooled reachability engine of this thread
+        CFGReachability reachability = CFGReachability.forThread();
         HashSet<Node> acceptedCFGStart = new HashSet<>();
 
         for (Node dstNode : endNodes) {
             for (List<Node> startCFG : startCFGs.keySet()) {
                 Node srcNode = startCFG.get(1);
-                Path cfgPath = shortestPath.findSinglePath(srcNode, dstNode, targetNode, filterVar);
-                if (cfgPath != null) {
+                boolean cfgPath = reachability.reachable(srcNode, dstNode, targetNode, filterVar);
+                if (cfgPath) {
                     acceptedCFGStart.add(startCFG.get(0));
                 }
             }
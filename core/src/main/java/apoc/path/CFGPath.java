@@ -1,8 +1,7 @@
 package apoc.path;
 
-import apoc.algo.CFGShortestPath;
+import apoc.algo.CFGReachability;
 import apoc.util.Util;
-import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.Path;
@@ -22,6 +21,12 @@ public class CFGPath {
     @Context
     public Transaction tx;
 
+    // helper function: CFG helper bound to the transaction of this query
+    //      (procedure classes cannot hold state, so a helper is created for each use)
+    private CFGValidationHelper cfgHelper() {
+        return new CFGValidationHelper(db, tx);
+    }
+
     @UserFunction
     @Description("apoc.path.cfgValidatedPath(start, [settings])")
     public List<Path> cfgValidatedPath(@Name("start") Object start, @Name("config") Map<String,Object> config) {
@@ -205,7 +210,7 @@ public class CFGPath {
     }
 
     private void updateFirstCFGNodes(BasicCandidatePath path, HashMap<String, CFGSetting> config) {
-        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(path.getLastEdge(), config);
+        HashSet<List<Node>> endCFGs = cfgHelper().getConnectionNodesAll(path.getLastEdge(), config);
         HashSet<Node> endNodes = new HashSet<>();
         for (List<Node> endCFG : endCFGs) {
             endNodes.add(endCFG.get(1));
@@ -243,19 +248,17 @@ public class CFGPath {
 
         HashSet<Node> startCFGs = path.getValidCFGs();
 
-        CFGShortestPath shortestPath = new CFGShortestPath(
-                new BasicEvaluationContext(tx, db),
-                (int) Integer.MAX_VALUE,
-                CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
+        // pooled reachability engine of this thread
+        CFGReachability reachability = CFGReachability.forThread();
 
-        HashSet<List<Node>> endCFGs = CFGValidationHelper.getConnectionNodesAll(nextEdge, config);
+        HashSet<List<Node>> endCFGs = cfgHelper().getConnectionNodesAll(nextEdge, config);
         HashSet<Node> acceptedCFGEnd = new HashSet<>();
 
         for (Node startCFG : startCFGs) {
             for (List<Node> endCFG : endCFGs) {
                 Node dstNode = endCFG.get(0);
-                Path cfgPath = shortestPath.findSinglePath(startCFG, dstNode, nextEdge);
-                if (cfgPath != null) {
+                boolean cfgPath = reachability.reachable(startCFG, dstNode, nextEdge);
+                if (cfgPath) {
                     acceptedCFGEnd.add(endCFG.get(1));
                 }
             }
@@ -442,21 +445,19 @@ public class CFGPath {
 
         // obtain cfg nodes and relationships associated with r1 and r2
         HashSet<Node> startCFGs = candidatePath.validCFGs;
-        HashMap<List<Node>, Relationship> endCFGs = CFGValidationHelper.getConnectionNodes(nextRel,
+        HashMap<List<Node>, Relationship> endCFGs = cfgHelper().getConnectionNodes(nextRel,
                 candidatePath, false, false);
 
         HashSet<Node> acceptedCFGEnd = new HashSet<>();
 
-        CFGShortestPath shortestPath = new CFGShortestPath(
-                new BasicEvaluationContext(tx, db),
-                (int) Integer.MAX_VALUE,
-                CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
+        // pooled reachability engine of this thread
+        CFGReachability reachability = CFGReachability.forThread();
 
         for (Node srcNode : startCFGs) {
             for (List<Node> endCFG : endCFGs.keySet()) {
                 Node dstNode = endCFG.get(0);
-                Path cfgPath = shortestPath.findSinglePath(srcNode, dstNode, curRel);
-                if (cfgPath != null) {
+                boolean cfgPath = reachability.reachable(srcNode, dstNode, curRel);
+                if (cfgPath) {
                     acceptedCFGEnd.add(endCFG.get(1));
                 }
             }
@@ -1,11 +1,11 @@
 package apoc.path;
 import org.checkerframework.checker.units.qual.N;
 import org.neo4j.graphalgo.BasicEvaluationContext;
+import org.neo4j.graphalgo.EvaluationContext;
 import org.neo4j.graphalgo.GraphAlgoFactory;
 import org.neo4j.graphalgo.PathFinder;
 import org.neo4j.graphdb.*;
 import org.neo4j.internal.helpers.collection.Pair;
-import org.neo4j.procedure.Context;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -13,11 +13,16 @@ import java.util.stream.StreamSupport;
 
 public class CFGValidationHelper {
 
-    @Context
-    public static GraphDatabaseService db;
+    private final GraphDatabaseService db;
+    private final Transaction tx;
+    private final EvaluationContext context;
 
-    @Context
-    public static Transaction tx;
+    // a helper is bound to the transaction of a single query or worker, and must not be shared between threads
+    public CFGValidationHelper(GraphDatabaseService db, Transaction tx) {
+        this.db = db;
+        this.tx = tx;
+        this.context = new BasicEvaluationContext(tx, db);
+    }
 
 
     // define used relationship types
@@ -46,7 +51,7 @@ public class CFGValidationHelper {
 
     // helper function: return start and end CFG nodes along with the connections
     // return: a hashset of CFG nodes
-    public static HashSet<List<Node>> getConnectionNodesAll(Relationship edge,
+    public HashSet<List<Node>> getConnectionNodesAll(Relationship edge,
                                                             HashMap<String,
                                                                     CFGPath.CFGSetting> cfgConfig) {
 
@@ -99,7 +104,7 @@ public class CFGValidationHelper {
         // check for shortest path
         if (length < 0) {
             PathFinder<Path> algo = GraphAlgoFactory.shortestPath(
-                    new BasicEvaluationContext(tx, db),
+                    context,
                     buildPathExpander("nextCFGBlock>"), (int) Integer.MAX_VALUE
             );
 
@@ -133,7 +138,7 @@ public class CFGValidationHelper {
 
     // helper function: return start and end CFG nodes along with the connections
     // return: a hashset of CFG nodes
-    public static HashMap<List<Node>, Relationship> getConnectionNodes(Relationship r, CandidatePath candidatePath,
+    public HashMap<List<Node>, Relationship> getConnectionNodes(Relationship r, CandidatePath candidatePath,
                                                          boolean isFirst, boolean isReverse) {
 
         //ArrayList<Node> cfgNodes = new ArrayList<>();
@@ -245,7 +250,7 @@ public class CFGValidationHelper {
 
                 }  else if (r.isType(RelTypes.varInfFunc) || r.isType(RelTypes.varInfluence)) {
                     PathFinder<Path> algo = GraphAlgoFactory.shortestPath(
-                            new BasicEvaluationContext(tx, db),
+                            context,
                             buildPathExpander("nextCFGBlock>"), (int) Integer.MAX_VALUE
                     );
                     Path vifCFG = algo.findSinglePath(srcCFG.getEndNode(), dstCFG.getEndNode());
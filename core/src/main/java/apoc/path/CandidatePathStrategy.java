@@ -0,0 +1,88 @@
+package apoc.path;
+
+import org.neo4j.graphdb.Relationship;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Traversal strategy over CandidatePath: forward searches extend a path with the dataflow relationships leaving its
+// end node, backward searches with the ones entering its start node.
+public class CandidatePathStrategy implements DataflowTraversal.Strategy<CandidatePath> {
+
+    private final boolean backward;
+    private final Predicate<CandidatePath> validator;
+    private final Function<CandidatePath, CandidatePath> completer;
+    private final boolean compareWithResult;
+
+    // validator: CFG check of a candidate path, or null if no check is performed
+    // completer: the result of a candidate path, or null if it does not reach the target
+    public CandidatePathStrategy(boolean backward, Predicate<CandidatePath> validator,
+                                 Function<CandidatePath, CandidatePath> completer) {
+        this(backward, validator, completer, false);
+    }
+
+    // compareWithResult: whether later candidates are compared with the result rather than the candidate path that
+    //      produced it (see DataflowTraversal.Mode.COVERED)
+    public CandidatePathStrategy(boolean backward, Predicate<CandidatePath> validator,
+                                 Function<CandidatePath, CandidatePath> completer, boolean compareWithResult) {
+        this.backward = backward;
+        this.validator = validator;
+        this.completer = completer;
+        this.compareWithResult = compareWithResult;
+    }
+
+    @Override
+    public boolean isValid(CandidatePath path) {
+        return (validator == null) || validator.test(path);
+    }
+
+    @Override
+    public CandidatePath complete(CandidatePath path) {
+        return completer.apply(path);
+    }
+
+    @Override
+    public void expand(CandidatePath path, Predicate<Relationship> admissible, Consumer<CandidatePath> queue) {
+        Iterable<Relationship> dataflowRels = (backward) ?
+                CFGValidationHelper.getPrevRels(path.getStartNode(), false) :
+                CFGValidationHelper.getNextRels(path.getEndNode(), false);
+        for (Relationship dataflowRel : dataflowRels) {
+            if (admissible.test(dataflowRel)) {
+                queue.accept(new CandidatePath(path, dataflowRel));
+            }
+        }
+    }
+
+    @Override
+    public Relationship getLastRel(CandidatePath path) {
+        return path.getLastRel();
+    }
+
+    @Override
+    public int getPathSize(CandidatePath path) {
+        return path.getPathSize();
+    }
+
+    @Override
+    public boolean compareRetNodes(CandidatePath path, CandidatePath found) {
+        return path.compareRetNodes(found);
+    }
+
+    @Override
+    public CandidatePath getFoundPath(CandidatePath path, CandidatePath result) {
+        return (compareWithResult) ? result : path;
+    }
+
+    @Override
+    public List<ArrayList<Relationship>> getRetComp(CandidatePath path) {
+        return path.getRetComp();
+    }
+
+    @Override
+    public List<Relationship> getRetRel(CandidatePath path) {
+        return path.retRel;
+    }
+}
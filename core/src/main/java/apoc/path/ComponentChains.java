@@ -0,0 +1,155 @@
+package apoc.path;
+
+import apoc.dataflow.SearchBudget;
+import apoc.path.CFGValidationHelper.RelTypes;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Breadth first enumeration of the component chains of apoc.path.phase2, producing each chain when it is dequeued.
+// A chain alternates a compCall/compReturn relationship of the start node with a dataflow relationship
+// (dataflowOTF with the CFG check, dataflowNCFG without) leaving the end of that relationship, and every chain of
+// odd length is a result. As in the original search, the compCall/compReturn relationships are always those of the
+// start node, and a relationship may appear only once in a chain.
+//
+// Chains share their prefix through parent pointers, with a bitset of the relationships they use. Relationships get
+// a local index the first time they are seen, and the relationships of the start node and the dataflow relationships
+// of each node are read from the database only once.
+public class ComponentChains implements Iterator<Path> {
+
+    private final boolean isCFG;
+    private final SearchBudget budget;
+    private final long maxHops;
+    private final long limit;
+
+    private final Relationship[] startRels;
+    private final LongObjectHashMap<Relationship[]> dataflowRels = new LongObjectHashMap<>();
+    private final LongIntHashMap relIndex = new LongIntHashMap();
+    private final ArrayDeque<Chain> queue = new ArrayDeque<>();
+
+    private Chain next = null;
+    private int produced = 0;
+
+    // maxHops: maximum number of relationships in a chain, limit: maximum number of chains, or UNLIMITED
+    public ComponentChains(Node startNode, boolean isCFG, SearchBudget budget, long maxHops, long limit) {
+        this.isCFG = isCFG;
+        this.budget = budget;
+        this.maxHops = maxHops;
+        this.limit = limit;
+        this.startRels = toArray(startNode.getRelationships(Direction.OUTGOING, RelTypes.compCall,
+                RelTypes.compReturn));
+
+        for (Relationship startRel : startRels) {
+            queue.add(new Chain(startRel, null, index(startRel)));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Path next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Chain chain = next;
+        next = null;
+        produced++;
+        return chain.buildPath();
+    }
+
+    // helper function: continue the search until the next chain of odd length, or null once the search is over
+    private Chain advance() {
+        while (!queue.isEmpty()) {
+            // stop once a limit is hit or the query has been terminated
+            if (((limit != SearchBudget.UNLIMITED) && (produced >= limit)) || (!budget.next(produced))) {
+                queue.clear();
+                return null;
+            }
+
+            Chain chain = queue.poll();
+            boolean isResult = (chain.size % 2 == 1);
+
+            if (budget.canExtend(chain.size) && ((maxHops == SearchBudget.UNLIMITED) || (chain.size < maxHops))) {
+                Relationship[] nextRels = (isResult) ? dataflowRels(chain.rel.getEndNode()) : startRels;
+                for (Relationship nextRel : nextRels) {
+                    int relId = index(nextRel);
+                    if (!chain.used.get(relId)) {
+                        queue.add(new Chain(nextRel, chain, relId));
+                    }
+                }
+            }
+
+            if (isResult) {
+                return chain;
+            }
+        }
+        return null;
+    }
+
+    // helper function: dataflow relationships leaving node, read once per node
+    private Relationship[] dataflowRels(Node node) {
+        Relationship[] rels = dataflowRels.get(node.getId());
+        if (rels == null) {
+            rels = toArray(node.getRelationships(Direction.OUTGOING,
+                    (isCFG) ? RelTypes.dataflowOTF : RelTypes.dataflowNCFG));
+            dataflowRels.put(node.getId(), rels);
+        }
+        return rels;
+    }
+
+    private int index(Relationship rel) {
+        return relIndex.getIfAbsentPut(rel.getId(), relIndex.size());
+    }
+
+    private static Relationship[] toArray(Iterable<Relationship> rels) {
+        ArrayList<Relationship> list = new ArrayList<>();
+        rels.forEach(list::add);
+        return list.toArray(Relationship[]::new);
+    }
+
+    private static class Chain {
+        private final Relationship rel;
+        private final Chain parent;
+        private final int size;
+        private final BitSet used;
+
+        Chain(Relationship rel, Chain parent, int relId) {
+            this.rel = rel;
+            this.parent = parent;
+            this.size = (parent == null) ? 1 : parent.size + 1;
+            this.used = (parent == null) ? new BitSet() : (BitSet) parent.used.clone();
+            this.used.set(relId);
+        }
+
+        Path buildPath() {
+            Relationship[] rels = new Relationship[size];
+            Chain chain = this;
+            for (int i = size - 1; i >= 0; i--) {
+                rels[i] = chain.rel;
+                chain = chain.parent;
+            }
+
+            PathImpl.Builder builder = new PathImpl.Builder(rels[0].getStartNode());
+            for (Relationship rel : rels) {
+                builder = builder.push(rel);
+            }
+            return builder.build();
+        }
+    }
+}
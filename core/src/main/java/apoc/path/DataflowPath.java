@@ -1,14 +1,18 @@
 package apoc.path;
 
-import org.neo4j.graphalgo.BasicEvaluationContext;
+import apoc.dataflow.PathOutput;
+import apoc.dataflow.SearchBudget;
+import apoc.result.BoundedPathsResult;
 import org.neo4j.graphalgo.impl.util.PathImpl;
 import org.neo4j.graphdb.*;
 import org.neo4j.procedure.*;
 import apoc.path.CFGValidationHelper.DataflowType;
 import apoc.algo.CFGTraversalShortestPath;
-import apoc.algo.CFGShortestPath;
+import apoc.algo.CFGReachability;
+import apoc.algo.CallGraphReachability;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 public class DataflowPath {
 
@@ -18,6 +22,15 @@ public class DataflowPath {
     @Context
     public Transaction tx;
 
+    @Context
+    public TerminationGuard guard;
+
+    // helper function: CFG helper bound to the transaction of this query
+    //      (procedure classes cannot hold state, so a helper is created for each use)
+    private CFGValidationHelper cfgHelper() {
+        return new CFGValidationHelper(db, tx);
+    }
+
     @UserFunction
     @Description("apoc.path.dataflowPath(startNode, endNode, startEdge, endEdge, cfgCheck) - finds a dataflow path using forward propagation")
     public Path dataflowPath(@Name("startNode") Node startNode, @Name("endNode") Node endNode,
@@ -56,6 +69,11 @@ public class DataflowPath {
         Iterable<Relationship> dataflowRels;
         HashMap<List<Node>, Relationship> startCFGs;
 
+        // no dataflow path connects the functions of start and end
+        if (!CallGraphReachability.mayReach(db, tx, start, end)) {
+            return null;
+        }
+
         if (start.equals(end)) {
             PathImpl.Builder builder = (startNode != null) ? new PathImpl.Builder(startNode):
                     new PathImpl.Builder(startEdge.getStartNode());
@@ -73,7 +91,7 @@ public class DataflowPath {
                 if (!visitedEdge.contains(dataflowRel)) {
                     CandidatePath candidatePath = new CandidatePath(dataflowRel);
                     if (cfgCheck) {
-                        startCFGs = CFGValidationHelper.getConnectionNodes(dataflowRel, candidatePath,
+                        startCFGs = cfgHelper().getConnectionNodes(dataflowRel, candidatePath,
                                 true, false);
                         CFGValidationHelper.addCFGToCandidatePath(candidatePath, startCFGs, false);
                     }
@@ -82,55 +100,20 @@ public class DataflowPath {
             }
         } else {
             if (cfgCheck) {
-                startCFGs = CFGValidationHelper.getConnectionNodes(startEdge, curPath,
+                startCFGs = cfgHelper().getConnectionNodes(startEdge, curPath,
                         true, false);
                 CFGValidationHelper.addCFGToCandidatePath(curPath, startCFGs, false);
             }
             queuePath.add(curPath);
         }
 
-        // cfgPath variable
-        List<Relationship> cfgPath = null;
-
-        while (!queuePath.isEmpty()) {
-
-            // get the last path
-            curPath = queuePath.poll();
-
-            // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (getCFGPath(curPath))) {
+        // search until the first path reaching the end node
+        CandidatePathStrategy strategy = new CandidatePathStrategy(false, (cfgCheck) ? this::getCFGPath : null,
+                path -> completePath(path, end, (category == DataflowType.SUFFIX) ? endEdge : null, cfgCheck));
+        List<CandidatePath> found = new DataflowTraversal<>(strategy, DataflowTraversal.Mode.FIRST)
+                .run(queuePath, visitedEdge, new ArrayList<>());
 
-                visitedEdge.add(curPath.getLastRel());
-
-                // check if we reach end node
-                if (curPath.getEndNode().equals(end)) {
-
-                    if (category == DataflowType.SUFFIX) {
-                        CandidatePath vifPath = new CandidatePath(curPath, endEdge);
-                        if ((!cfgCheck) || (getCFGPath(vifPath))) {
-                            // build path, and return (exit)
-                            return vifPath.buildPath();
-                        }
-                    } else {
-                        // build path, and return (exit)
-                        return curPath.buildPath();
-                    }
-
-                }
-
-                dataflowRels = CFGValidationHelper.getNextRels(curPath.getEndNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
-                    if (!visitedEdge.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
-                    }
-                }
-
-            }
-
-        }
-
-        return null;
+        return found.isEmpty() ? null : found.get(0).buildPath();
 
     }
 
@@ -172,6 +155,11 @@ public class DataflowPath {
         Iterable<Relationship> dataflowRels;
         HashMap<List<Node>, Relationship> startCFGs;
 
+        // no dataflow path connects the functions of start and end
+        if (!CallGraphReachability.mayReach(db, tx, start, end)) {
+            return new ArrayList<>();
+        }
+
         if (start.equals(end)) {
             PathImpl.Builder builder = (startNode != null) ? new PathImpl.Builder(startNode):
                     new PathImpl.Builder(startEdge.getStartNode());
@@ -189,7 +177,7 @@ public class DataflowPath {
                 if (!visitedEdges.contains(dataflowRel)) {
                     CandidatePath candidatePath = new CandidatePath(dataflowRel);
                     if (cfgCheck) {
-                        startCFGs = CFGValidationHelper.getConnectionNodes(dataflowRel, candidatePath,
+                        startCFGs = cfgHelper().getConnectionNodes(dataflowRel, candidatePath,
                                 true, false);
                         CFGValidationHelper.addCFGToCandidatePath(candidatePath, startCFGs, false);
                     }
@@ -198,70 +186,17 @@ public class DataflowPath {
             }
         } else {
             if (cfgCheck) {
-                startCFGs = CFGValidationHelper.getConnectionNodes(startEdge, curPath,
+                startCFGs = cfgHelper().getConnectionNodes(startEdge, curPath,
                         true, false);
                 CFGValidationHelper.addCFGToCandidatePath(curPath, startCFGs, false);
             }
         }
 
-        // cfgPath variable
-        List<Relationship> cfgPath = null;
-        int pathLen = -1;
-        boolean foundPath = false;
-
-        // keep track of visited relationships at current length
-        HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
-
-        while (!queuePath.isEmpty()) {
-
-            curPath = queuePath.poll();
-            int curLen = curPath.getPathSize();
-
-            if (foundPath && curLen > pathLen) {
-                // if path has been found and current path is longer than found path, can break
-                break;
-            }
-
-            if (curLen > pathLen) {
-                // add all relationships found at previous path length to visitedRels
-                visitedEdges.addAll(visitedEdge);
-                visitedEdge = new HashSet<Relationship>();
-            }
-            pathLen = curLen;
-
-            // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (getCFGPath(curPath))) {
-
-                visitedEdge.add(curPath.getLastRel());
-
-                // check if we reach end node
-                if (curPath.getEndNode().equals(end)) {
-
-                    if (category == DataflowType.SUFFIX) {
-                        CandidatePath vifPath = new CandidatePath(curPath, endEdge);
-                        if ((!cfgCheck) || (getCFGPath(vifPath))) {
-                            // build path, and return (exit)
-                            foundPath = true;
-                            returnCandidates.add(vifPath);
-                        }
-                    } else {
-                        // build path, and return (exit)
-                        foundPath = true;
-                        returnCandidates.add(curPath);
-                    }
-                }
-
-                dataflowRels = CFGValidationHelper.getNextRels(curPath.getEndNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
-                    if (!visitedEdges.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
-                    }
-                }
-
-            }
-
-        }
+        // search all shortest paths reaching the end node
+        CandidatePathStrategy strategy = new CandidatePathStrategy(false, (cfgCheck) ? this::getCFGPath : null,
+                path -> completePath(path, end, (category == DataflowType.SUFFIX) ? endEdge : null, cfgCheck));
+        new DataflowTraversal<>(strategy, DataflowTraversal.Mode.SHORTEST)
+                .run(queuePath, visitedEdges, returnCandidates);
 
         List<Path> returnPaths = new ArrayList<Path>();
         for (CandidatePath returnCandidate : returnCandidates) {
@@ -275,10 +210,27 @@ public class DataflowPath {
     }
 
     @UserFunction
-    @Description("apoc.path.allDataflowPathsV2(startNode, endNode, startEdge, endEdge, cfgCheck) - finds all shortest dataflow paths using forward propagation")
+    @Description("apoc.path.allDataflowPathsV2(startNode, endNode, startEdge, endEdge, cfgCheck, {maxDepth:-1, maxResults:-1, timeoutMs:-1, maxExpansions:-1}) - finds all shortest dataflow paths using forward propagation")
     public List<Path> allDataflowPathsV2(@Name("startNode") Node startNode, @Name("endNode") Node endNode,
                                        @Name("startEdge") Relationship startEdge, @Name("endEdge") Relationship endEdge,
-                                       @Name("cfgCheck") boolean cfgCheck) {
+                                       @Name("cfgCheck") boolean cfgCheck,
+                                       @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        return allDataflowPathsV2(startNode, endNode, startEdge, endEdge, cfgCheck, new SearchBudget(config, guard));
+    }
+
+    @Procedure
+    @Description("apoc.path.allDataflowPathsV2Bounded(startNode, endNode, startEdge, endEdge, cfgCheck, {maxDepth:-1, maxResults:-1, timeoutMs:-1, maxExpansions:-1}) - same as allDataflowPathsV2, also reports whether the search was truncated by its limits")
+    public Stream<BoundedPathsResult> allDataflowPathsV2Bounded(@Name("startNode") Node startNode, @Name("endNode") Node endNode,
+                                       @Name("startEdge") Relationship startEdge, @Name("endEdge") Relationship endEdge,
+                                       @Name("cfgCheck") boolean cfgCheck,
+                                       @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        SearchBudget budget = new SearchBudget(config, guard);
+        List<Path> paths = allDataflowPathsV2(startNode, endNode, startEdge, endEdge, cfgCheck, budget);
+        return Stream.of(PathOutput.result(paths, config, budget));
+    }
+
+    public List<Path> allDataflowPathsV2(Node startNode, Node endNode, Relationship startEdge, Relationship endEdge,
+                                       boolean cfgCheck, SearchBudget budget) {
 
         Node start;
         Node end;
@@ -318,6 +270,11 @@ public class DataflowPath {
         Iterable<Relationship> dataflowRels;
         HashMap<List<Node>, Relationship> startCFGs;
 
+        // no dataflow path connects the functions of start and end
+        if (!CallGraphReachability.mayReach(db, tx, start, end)) {
+            return new ArrayList<>();
+        }
+
         /**if (start.equals(end)) {
             PathImpl.Builder builder = (startNode != null) ? new PathImpl.Builder(startNode):
                     new PathImpl.Builder(startEdge.getStartNode());
@@ -335,7 +292,7 @@ public class DataflowPath {
                 if (!visitedEdge.contains(dataflowRel)) {
                     CandidatePath candidatePath = new CandidatePath(dataflowRel);
                     if (cfgCheck) {
-                        startCFGs = CFGValidationHelper.getConnectionNodes(dataflowRel, candidatePath,
+                        startCFGs = cfgHelper().getConnectionNodes(dataflowRel, candidatePath,
                                 true, false);
                         CFGValidationHelper.addCFGToCandidatePath(candidatePath, startCFGs, false);
                     }
@@ -344,73 +301,19 @@ public class DataflowPath {
             }
         } else {
             if (cfgCheck) {
-                startCFGs = CFGValidationHelper.getConnectionNodes(startEdge, curPath,
+                startCFGs = cfgHelper().getConnectionNodes(startEdge, curPath,
                         true, false);
                 CFGValidationHelper.addCFGToCandidatePath(curPath, startCFGs, false);
             }
             queuePath.add(curPath);
         }
 
-        // cfgPath variable
-        List<Relationship> cfgPath = null;
-        CandidatePath foundCandidatePath = null;
-        ArrayList<ArrayList<Relationship>> retCovered = new ArrayList<>();
-
-        // keep track of visited relationships at current length
-        //HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
-
-        while (!queuePath.isEmpty()) {
-
-            curPath = queuePath.remove();
-
-
-            if (foundCandidatePath != null) {
-                if ((!curPath.compareRetNodes(foundCandidatePath))) {
-                    continue;
-                } else {
-                    if (retCovered.contains(curPath.retRel)) {
-                        continue;
-                    }
-                }
-            }
-
-            // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (getCFGPath(curPath))) {
-
-                visitedEdge.add(curPath.getLastRel());
-
-                // check if we reach end node
-                if (curPath.getEndNode().equals(end)) {
-
-                    if ((category == DataflowType.SUFFIX) || (category == DataflowType.ALL)) {
-                        CandidatePath vifPath = new CandidatePath(curPath, endEdge);
-                        if ((!cfgCheck) || (getCFGPath(vifPath))) {
-                            // build path, and return (exit)
-                            foundCandidatePath = curPath;
-                            returnCandidates.add(vifPath);
-                            retCovered.addAll(vifPath.getRetComp());
-                            continue;
-                        }
-                    } else {
-                        // build path, and return (exit)
-                        foundCandidatePath = curPath;
-                        returnCandidates.add(curPath);
-                        retCovered.addAll(curPath.getRetComp());
-                        continue;
-                    }
-                }
-
-                dataflowRels = CFGValidationHelper.getNextRels(curPath.getEndNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
-                    if (!visitedEdge.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
-                    }
-                }
-
-            }
-
-        }
+        // search shortest paths, continuing after the first one only for paths through other return edges
+        boolean withEndEdge = (category == DataflowType.SUFFIX) || (category == DataflowType.ALL);
+        CandidatePathStrategy strategy = new CandidatePathStrategy(false, (cfgCheck) ? this::getCFGPath : null,
+                path -> completePath(path, end, (withEndEdge) ? endEdge : null, cfgCheck));
+        new DataflowTraversal<>(strategy, DataflowTraversal.Mode.COVERED, false, budget)
+                .run(queuePath, visitedEdge, returnCandidates);
 
         List<Path> returnPaths = new ArrayList<Path>();
         for (CandidatePath returnCandidate : returnCandidates) {
@@ -424,6 +327,21 @@ public class DataflowPath {
     }
 
 
+    // helper function: the result of a candidate path once it reaches end, extended with endEdge (which then also
+    //      has to pass the CFG check) if not null
+    // returns:
+    //      - CandidatePath: the path to return, or null if the candidate path does not reach end
+    private CandidatePath completePath(CandidatePath curPath, Node end, Relationship endEdge, boolean cfgCheck) {
+        if (!curPath.getEndNode().equals(end)) {
+            return null;
+        }
+        if (endEdge == null) {
+            return curPath;
+        }
+        CandidatePath vifPath = new CandidatePath(curPath, endEdge);
+        return ((!cfgCheck) || (getCFGPath(vifPath))) ? vifPath : null;
+    }
+
     // helper function: find and verify CFG path
     // returns:
     //      - boolean: indicating candidatePath is feasible
@@ -438,21 +356,19 @@ public class DataflowPath {
 
         // obtain cfg nodes and relationships associated with r1 and r2
         HashSet<Node> startCFGs = candidatePath.validCFGs;
-        HashMap<List<Node>, Relationship> endCFGs = CFGValidationHelper.getConnectionNodes(nextRel,
+        HashMap<List<Node>, Relationship> endCFGs = cfgHelper().getConnectionNodes(nextRel,
                 candidatePath, false, false);
 
         HashSet<Node> acceptedCFGEnd = new HashSet<>();
 
-        CFGShortestPath shortestPath = new CFGShortestPath(
-                new BasicEvaluationContext(tx, db),
-                (int) Integer.MAX_VALUE,
-                CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
+        // pooled reachability engine of this thread
+        CFGReachability reachability = CFGReachability.forThread();
 
         for (Node srcNode : startCFGs) {
             for (List<Node> endCFG : endCFGs.keySet()) {
                 Node dstNode = endCFG.get(0);
-                Path cfgPath = shortestPath.findSinglePath(srcNode, dstNode, nextRel);
-                if (cfgPath != null) {
+                boolean cfgPath = reachability.reachable(srcNode, dstNode, nextRel);
+                if (cfgPath) {
                     acceptedCFGEnd.add(endCFG.get(1));
                 }
             }
@@ -0,0 +1,240 @@
+package apoc.path;
+
+import apoc.algo.CostHeap;
+import apoc.dataflow.CostModel;
+import apoc.dataflow.SearchBudget;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Breadth first traversal kernel shared by the dataflow path searches.
+// The search loop is the same for every entry point; what differs is plugged in through a Strategy:
+//    - direction and relationship pattern: which relationships extend a candidate path
+//    - validation: whether a candidate path passes the CFG check
+//    - emission: which result, if any, a candidate path produces once it reaches the target
+// The Mode decides how relationships are marked as visited and when the search stops:
+//    - FIRST: a relationship is expanded at most once, the search stops at the first result
+//    - SHORTEST: a relationship is not expanded again once visited at a shorter length, the search stops after the
+//          length of the first result
+//    - COVERED: like SHORTEST, but once a result is found only candidates returning to the same call site through
+//          retWrite combinations not covered yet are processed further; results are not extended
+//          (with layered set to false, a relationship is expanded at most once whatever the length)
+//    - ALL: every candidate is expanded, strategies are expected to keep paths simple
+//    - BEST: best-first search, the cheapest candidate under a CostModel is processed first and results come out in
+//          order of cost; a relationship ends at most CostModel.getExpansionsPerRelationship() expanded candidates
+public class DataflowTraversal<P> {
+
+    public enum Mode {
+        FIRST, SHORTEST, COVERED, ALL, BEST
+    }
+
+    public interface Strategy<P> {
+        // whether the candidate path passes validation
+        boolean isValid(P path);
+
+        // the result produced by a candidate path, or null if it does not reach the target (or the result is
+        //      rejected)
+        P complete(P path);
+
+        // add every extension of the path by an admissible relationship to the queue
+        void expand(P path, Predicate<Relationship> admissible, Consumer<P> queue);
+
+        Relationship getLastRel(P path);
+
+        int getPathSize(P path);
+
+        // return site bookkeeping, only used by Mode.COVERED
+        default boolean compareRetNodes(P path, P found) {
+            return false;
+        }
+
+        // the path later candidates are compared with once path produced result
+        default P getFoundPath(P path, P result) {
+            return path;
+        }
+
+        default List<ArrayList<Relationship>> getRetComp(P path) {
+            return List.of();
+        }
+
+        default List<Relationship> getRetRel(P path) {
+            return List.of();
+        }
+    }
+
+    private final Strategy<P> strategy;
+    private final Mode mode;
+    private final boolean layered;
+    private final SearchBudget budget;
+    private final CostModel cost;
+
+    public DataflowTraversal(Strategy<P> strategy, Mode mode) {
+        this(strategy, mode, true, null);
+    }
+
+    // best-first search under the cost model
+    public DataflowTraversal(Strategy<P> strategy, CostModel cost, SearchBudget budget) {
+        this.strategy = strategy;
+        this.mode = Mode.BEST;
+        this.layered = false;
+        this.budget = budget;
+        this.cost = cost;
+    }
+
+    // budget: limits of the search, or null for an unlimited search
+    public DataflowTraversal(Strategy<P> strategy, Mode mode, boolean layered, SearchBudget budget) {
+        this.strategy = strategy;
+        this.mode = mode;
+        this.layered = layered;
+        this.budget = budget;
+        this.cost = null;
+    }
+
+    // run the search from the candidate paths in queue
+    //      visited: relationships that must not be expanded
+    //      results: results found so far, the new results are appended
+    public List<P> run(Queue<P> queue, HashSet<Relationship> visited, List<P> results) {
+        if (mode == Mode.BEST) {
+            return runBestFirst(queue, visited, results);
+        }
+
+        // visited relationships at shorter lengths, and at the current length
+        HashSet<Relationship> visitedEdges = visited;
+        HashSet<Relationship> visitedEdge = ((mode == Mode.FIRST) || !layered) ? visitedEdges : new HashSet<>();
+
+        Predicate<Relationship> admissible;
+        if (mode == Mode.ALL) {
+            admissible = rel -> true;
+        } else {
+            HashSet<Relationship> expandedAgainst = visitedEdges;
+            admissible = rel -> !expandedAgainst.contains(rel);
+        }
+
+        P found = null;
+        ArrayList<List<Relationship>> retCovered = new ArrayList<>();
+        int pathLen = -1;
+
+        while (!queue.isEmpty()) {
+
+            // stop once a limit is hit or the query has been terminated
+            if ((budget != null) && !budget.next(results.size())) {
+                break;
+            }
+
+            P curPath = queue.poll();
+
+            // once something is found, only proceed with paths returning to the same call site through return edge
+            //      combinations that are not covered yet
+            if ((mode == Mode.COVERED) && (found != null)) {
+                if (layered) {visitedEdges.addAll(visitedEdge);}
+                if ((!strategy.compareRetNodes(curPath, found)) ||
+                        retCovered.contains(strategy.getRetRel(curPath))) {
+                    continue;
+                }
+            }
+
+            if ((mode == Mode.SHORTEST) || ((mode == Mode.COVERED) && layered)) {
+                int curLen = strategy.getPathSize(curPath);
+                boolean stop = (mode == Mode.SHORTEST) ? (found != null) : (retCovered.isEmpty() && (found != null));
+                if (stop && (curLen > pathLen)) {
+                    // if path has been found and current path is longer than found path, can break
+                    break;
+                }
+
+                if (curLen > pathLen) {
+                    // add all relationships found at previous path length to visited relationships
+                    visitedEdges.addAll(visitedEdge);
+                    visitedEdge = new HashSet<>();
+                }
+                pathLen = curLen;
+            }
+
+            // continue searching only if validation passes
+            if (!strategy.isValid(curPath)) {
+                continue;
+            }
+
+            if (mode != Mode.ALL) {
+                visitedEdge.add(strategy.getLastRel(curPath));
+            }
+
+            P result = strategy.complete(curPath);
+            if (result != null) {
+                results.add(result);
+                if (mode == Mode.FIRST) {
+                    return results;
+                }
+                if (mode == Mode.COVERED) {
+                    found = strategy.getFoundPath(curPath, result);
+                    retCovered.addAll(strategy.getRetComp(result));
+                    continue;
+                }
+                if (mode == Mode.SHORTEST) {
+                    found = curPath;
+                }
+            }
+
+            int curLen = strategy.getPathSize(curPath);
+            Predicate<Relationship> extend = (budget == null) ? admissible :
+                    admissible.and(rel -> budget.canExtend(curLen));
+            strategy.expand(curPath, extend, queue::add);
+        }
+
+        return results;
+    }
+
+    // helper function: the search loop of Mode.BEST, the candidates of queue are the starting points
+    private List<P> runBestFirst(Queue<P> queue, HashSet<Relationship> visited, List<P> results) {
+        CostHeap<P> heap = new CostHeap<>();
+        for (P path : queue) {
+            heap.add(path, cost.step(null, strategy.getLastRel(path)));
+        }
+        queue.clear();
+
+        HashMap<Relationship, Integer> expanded = new HashMap<>();
+        int maxExpansions = cost.getExpansionsPerRelationship();
+
+        while (!heap.isEmpty()) {
+
+            // stop once a limit is hit or the query has been terminated
+            if ((budget != null) && !budget.next(results.size())) {
+                break;
+            }
+
+            double curCost = heap.peekCost();
+            P curPath = heap.poll();
+
+            // continue searching only if validation passes
+            if (!strategy.isValid(curPath)) {
+                continue;
+            }
+
+            // the first candidates ending with a relationship are its cheapest ones
+            Relationship lastRel = strategy.getLastRel(curPath);
+            if (expanded.merge(lastRel, 1, Integer::sum) > maxExpansions) {
+                continue;
+            }
+
+            P result = strategy.complete(curPath);
+            if (result != null) {
+                results.add(result);
+                if ((cost.getLimit() != SearchBudget.UNLIMITED) && (results.size() >= cost.getLimit())) {
+                    break;
+                }
+            }
+
+            int curLen = strategy.getPathSize(curPath);
+            strategy.expand(curPath,
+                    rel -> !visited.contains(rel) && ((budget == null) || budget.canExtend(curLen)),
+                    next -> heap.add(next, curCost + cost.step(lastRel, strategy.getLastRel(next))));
+        }
+
+        return results;
+    }
+}
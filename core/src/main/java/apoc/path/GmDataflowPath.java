@@ -1,6 +1,12 @@
 package apoc.path;
 
-import apoc.algo.CFGShortestPath;
+import apoc.algo.CFGReachability;
+import apoc.algo.CallGraphReachability;
+import apoc.dataflow.PathOutput;
+import apoc.dataflow.SearchBudget;
+import apoc.result.BoundedPathsResult;
+import apoc.result.PathResult;
+import apoc.util.Util;
 import org.checkerframework.checker.units.qual.C;
 import org.neo4j.graphalgo.BasicEvaluationContext;
 import org.neo4j.graphalgo.GraphAlgoFactory;
@@ -12,6 +18,8 @@ import apoc.path.CFGValidationHelper.DataflowType;
 import apoc.path.CFGValidationHelper.RelTypes;
 
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 public class GmDataflowPath {
@@ -22,47 +30,52 @@ public class GmDataflowPath {
     @Context
     public Transaction tx;
 
-    @UserFunction
-    @Description("apoc.path.phase2")
-    public List<Path> phase2(@Name("startNode") Node startNode, @Name("cfgCheck") boolean isCFG) {
-        ArrayList<Path> resultPath = new ArrayList<>();
-        Queue<ArrayList<Relationship>> queue = new LinkedList<>();
-        ArrayList<ArrayList<Relationship>> candidatePath = new ArrayList<>();
-        boolean flag;
-
-       Iterable<Relationship> nextRels = startNode.getRelationships(Direction.OUTGOING,
-               RelTypes.compCall, RelTypes.compReturn);
-       for (Relationship nextRel : nextRels) {
-           queue.add(new ArrayList<Relationship>(List.of(nextRel)));
-       }
-
-        while (!queue.isEmpty()) {
-            ArrayList<Relationship> curSubPath = queue.poll();
-            flag = (curSubPath.size() % 2 == 1);
-
-            if (flag) {
-                resultPath.add(buildP2Path(curSubPath));
-            }
+    @Context
+    public TerminationGuard guard;
 
-            Node curNode = curSubPath.get(curSubPath.size()-1).getEndNode();
+    // helper function: CFG helper bound to the transaction of this query
+    //      (procedure classes cannot hold state, so a helper is created for each use)
+    private CFGValidationHelper cfgHelper() {
+        return new CFGValidationHelper(db, tx);
+    }
 
-            nextRels = (flag) ? curNode.getRelationships(Direction.OUTGOING,
-                    (isCFG) ? RelTypes.dataflowOTF : RelTypes.dataflowNCFG) :
-                    startNode.getRelationships(Direction.OUTGOING,
-                    RelTypes.compCall, RelTypes.compReturn);
+    @UserFunction
+    @Description("apoc.path.phase2(startNode, cfgCheck, {maxDepth:-1, maxResults:-1, timeoutMs:-1, maxExpansions:-1})")
+    public List<Path> phase2(@Name("startNode") Node startNode, @Name("cfgCheck") boolean isCFG,
+                             @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        return phase2(startNode, isCFG, new SearchBudget(config, guard));
+    }
 
-            for (Relationship nextRel : nextRels) {
-                if (!curSubPath.contains(nextRel)) {
-                    ArrayList<Relationship> newSubPath = new ArrayList<>(curSubPath);
-                    newSubPath.add(nextRel);
-                    queue.add(newSubPath);
-                }
-            }
+    @Procedure
+    @Description("apoc.path.phase2Bounded(startNode, cfgCheck, {maxDepth:-1, maxResults:-1, timeoutMs:-1, maxExpansions:-1}) - same as phase2, also reports whether the search was truncated by its limits")
+    public Stream<BoundedPathsResult> phase2Bounded(@Name("startNode") Node startNode, @Name("cfgCheck") boolean isCFG,
+                                                    @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        SearchBudget budget = new SearchBudget(config, guard);
+        List<Path> paths = phase2(startNode, isCFG, budget);
+        return Stream.of(PathOutput.result(paths, config, budget));
+    }
 
-        }
+    @Procedure("apoc.path.phase2.stream")
+    @Description("apoc.path.phase2.stream(startNode, cfgCheck, {maxHops:-1, limit:-1, maxDepth:-1, maxResults:-1, timeoutMs:-1, maxExpansions:-1}) - streams the paths of phase2 as they are found")
+    public Stream<PathResult> phase2Stream(@Name("startNode") Node startNode, @Name("cfgCheck") boolean isCFG,
+                                           @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        ComponentChains chains = new ComponentChains(startNode, isCFG, new SearchBudget(config, guard),
+                limit(config, "maxHops"), limit(config, "limit"));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chains,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).map(PathResult::new);
+    }
 
+    public List<Path> phase2(Node startNode, boolean isCFG, SearchBudget budget) {
+        ArrayList<Path> resultPath = new ArrayList<>();
+        new ComponentChains(startNode, isCFG, budget, SearchBudget.UNLIMITED, SearchBudget.UNLIMITED)
+                .forEachRemaining(resultPath::add);
         return resultPath;
+    }
 
+    // helper function: read a limit, where a missing or negative value means unlimited
+    private static long limit(Map<String, Object> config, String key) {
+        Long value = Util.toLong(config.get(key));
+        return ((value == null) || (value < 0)) ? SearchBudget.UNLIMITED : value;
     }
 
     // Need to change before running this function
@@ -115,11 +128,16 @@ public class GmDataflowPath {
         // Adding first CFGs to Candidate path
         if (cfgCheck) {
             HashMap<List<Node>, Relationship> firstCFGs = (category == DataflowType.PREFIX) ?
-                    CFGValidationHelper.getConnectionNodes(startEdge, curPath, true, false) :
+                    cfgHelper().getConnectionNodes(startEdge, curPath, true, false) :
                     CFGValidationHelper.getParWriteConnectionNodes(start, curPath, true);
             CFGValidationHelper.addCFGToCandidatePath(curPath, firstCFGs, false);
         }
 
+        // no dataflow path connects the functions of start and end
+        if (!CallGraphReachability.mayReach(db, tx, start, end)) {
+            return null;
+        }
+
         // check for already found values
         if (start.equals(end)) {
 
@@ -151,49 +169,14 @@ public class GmDataflowPath {
         }
 
 
-        while (!queuePath.isEmpty()) {
-
-            // get the last path
-            curPath = queuePath.poll();
+        // search until the first path reaching the end node
+        CandidatePathStrategy strategy = new CandidatePathStrategy(false,
+                (cfgCheck) ? path -> gmGetCFGPath(path, isStartPW(path, category), false, null) : null,
+                path -> completeGmPath(path, end, category, endEdge, true, cfgCheck, null));
+        List<CandidatePath> found = new DataflowTraversal<>(strategy, DataflowTraversal.Mode.FIRST)
+                .run(queuePath, visitedEdge, new ArrayList<>());
 
-            // isStartPW: category != PREFIX, len == 2
-            boolean isStartPW = ((category != DataflowType.PREFIX) &&
-                    (curPath.getPathSize() == 1));
-
-            // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (gmGetCFGPath(curPath,isStartPW, false, null))) {
-
-                visitedEdge.add(curPath.getLastRel());
-
-                // check if we reach end node
-                if (curPath.getEndNode().equals(end)) {
-
-                    CandidatePath returnPath = (category == DataflowType.SUFFIX) ?
-                            new CandidatePath(curPath, endEdge) :
-                            new CandidatePath(curPath);
-                    isStartPW = ((category != DataflowType.PREFIX)
-                            && (curPath.getPathSize() == 1));
-                    boolean isEndPW = (category != DataflowType.SUFFIX);
-
-                    if ((!cfgCheck) || (gmGetCFGPath(returnPath, isStartPW, isEndPW, null))) {
-                        return returnPath.buildPath();
-                    }
-                }
-
-                dataflowRels = CFGValidationHelper.getNextRels(curPath.getEndNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
-                    if (!visitedEdge.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
-                    }
-                }
-
-            }
-
-        }
-
-
-        return null;
+        return found.isEmpty() ? null : found.get(0).buildPath();
 
     }
 
@@ -249,11 +232,16 @@ public class GmDataflowPath {
         if (cfgCheck) {
             HashMap<List<Node>, Relationship> firstCFGs = (category != DataflowType.PREFIX) ?
                     CFGValidationHelper.getParWriteConnectionNodes(start, curPath, true) :
-                    CFGValidationHelper.getConnectionNodes(startEdge, curPath,
+                    cfgHelper().getConnectionNodes(startEdge, curPath,
                             true, false);
             CFGValidationHelper.addCFGToCandidatePath(curPath, firstCFGs, false);
         }
 
+        // no dataflow path connects the functions of start and end
+        if (!CallGraphReachability.mayReach(db, tx, start, end)) {
+            return new ArrayList<>();
+        }
+
         // check for already found values
         if (start.equals(end)) {
             curPath = (category == DataflowType.SUFFIX) ? new CandidatePath(curPath, endEdge) :
@@ -281,70 +269,12 @@ public class GmDataflowPath {
             }
         }
 
-        HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
-        int pathLen = -1;
-        boolean foundPath = false;
-
-
-        while (!queuePath.isEmpty()) {
-
-            // get the last path
-            curPath = queuePath.poll();
-
-            int curLen = curPath.getPathSize();
-
-            if (foundPath && curLen > pathLen) {
-                // if path has been found and current path is longer than found path, can break
-                break;
-            }
-
-            if (curLen > pathLen) {
-                // add all relationships found at previous path length to visitedRels
-                visitedEdges.addAll(visitedEdge);
-                visitedEdge = new HashSet<Relationship>();
-            }
-            pathLen = curLen;
-
-            // boolean variables indicating whether we are doing a start or end check
-            boolean isStartPW = ((category != DataflowType.PREFIX) && (curPath.getPathSize() == 1));
-            boolean isEndPW = false;
-
-            // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (gmGetCFGPath(curPath,isStartPW, isEndPW, null))) {
-
-                visitedEdge.add(curPath.getLastRel());
-
-                // check if we reach end node
-                if (curPath.getEndNode().equals(end)) {
-
-                    if (category == DataflowType.SUFFIX) {
-                        CandidatePath returnPath = new CandidatePath(curPath, endEdge);
-                        isStartPW = ((category != DataflowType.PREFIX) && (curPath.getPathSize() == 1));
-                        isEndPW = (category != DataflowType.SUFFIX);
-
-                        if ((!cfgCheck) || (gmGetCFGPath(returnPath, isStartPW, isEndPW, null))) {
-                            foundPath = true;
-                            returnCandidates.add(returnPath);
-                        }
-                    } else {
-                        foundPath = true;
-                        returnCandidates.add(curPath);
-                    }
-
-
-                }
-
-                dataflowRels = CFGValidationHelper.getNextRels(curPath.getEndNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
-                    if (!visitedEdges.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
-                    }
-                }
-
-            }
-
-        }
+        // search all shortest paths reaching the end node
+        CandidatePathStrategy strategy = new CandidatePathStrategy(false,
+                (cfgCheck) ? path -> gmGetCFGPath(path, isStartPW(path, category), false, null) : null,
+                path -> completeGmPath(path, end, category, endEdge, false, cfgCheck, null));
+        new DataflowTraversal<>(strategy, DataflowTraversal.Mode.SHORTEST)
+                .run(queuePath, visitedEdges, returnCandidates);
 
         List<Path> returnPaths = new ArrayList<Path>();
         for (CandidatePath returnCandidate : returnCandidates) {
@@ -411,12 +341,17 @@ public class GmDataflowPath {
         if (cfgCheck) {
             HashMap<List<Node>, Relationship> firstCFGs = (category != DataflowType.PREFIX) ?
                     CFGValidationHelper.getStartEndNodes(start, startType, true) :
-                    CFGValidationHelper.getConnectionNodes(startEdge, curPath,
+                    cfgHelper().getConnectionNodes(startEdge, curPath,
                             true, false);
             CFGValidationHelper.addCFGToCandidatePath(curPath, firstCFGs, false);
         }
 
 
+        // no dataflow path connects the functions of start and end
+        if (!CallGraphReachability.mayReach(db, tx, start, end)) {
+            return new ArrayList<>();
+        }
+
         // check for already found values
         if (start.equals(end)) {
             curPath = (category == DataflowType.SUFFIX) ? new CandidatePath(curPath, endEdge) :
@@ -447,70 +382,12 @@ public class GmDataflowPath {
             }
         }
 
-        //HashSet<Relationship> visitedEdge = new HashSet<Relationship>();
-        CandidatePath foundCandidatePath = null;
-        ArrayList<ArrayList<Relationship>> retCovered = new ArrayList<>();
-
-
-        while (!queuePath.isEmpty()) {
-
-            // get the last path
-            curPath = queuePath.remove();
-
-            if (foundCandidatePath != null) {
-                if ((!curPath.compareRetNodes(foundCandidatePath))) {
-                    continue;
-                } else {
-                    if (retCovered.contains(curPath.retRel)) {
-                        continue;
-                    }
-                }
-            }
-
-            // boolean variables indicating whether we are doing a start or end check
-            boolean isStartPW = ((category != DataflowType.PREFIX) && (curPath.getPathSize() == 1));
-            boolean isEndPW = false;
-
-            // continue searching only if does not require cfg check or cfg check passes
-            if ((!cfgCheck) || (gmGetCFGPath(curPath,isStartPW, isEndPW, endType))) {
-
-                visitedEdge.add(curPath.getLastRel());
-
-                // check if we reach end node
-                if (curPath.getEndNode().equals(end)) {
-
-                    if (category == DataflowType.SUFFIX) {
-                        CandidatePath returnPath = new CandidatePath(curPath, endEdge);
-                        isStartPW = ((category != DataflowType.PREFIX) && (curPath.getPathSize() == 1));
-                        isEndPW = (category != DataflowType.SUFFIX);
-
-                        if ((!cfgCheck) || (gmGetCFGPath(returnPath, isStartPW, isEndPW, endType))) {
-                            foundCandidatePath = returnPath;
-                            retCovered.addAll(returnPath.getRetComp());
-                            returnCandidates.add(returnPath);
-                            continue;
-                        }
-                    } else {
-                        foundCandidatePath = curPath;
-                        retCovered.addAll(curPath.getRetComp());
-                        returnCandidates.add(curPath);
-                        continue;
-                    }
-
-
-                }
-
-                dataflowRels = CFGValidationHelper.getNextRels(curPath.getEndNode(), false);
-                for (Relationship dataflowRel : dataflowRels) {
-                    if (!visitedEdge.contains(dataflowRel)) {
-                        CandidatePath newCandidatePath = new CandidatePath(curPath, dataflowRel);
-                        queuePath.add(newCandidatePath);
-                    }
-                }
-
-            }
-
-        }
+        // search shortest paths, continuing after the first one only for paths through other return edges
+        CandidatePathStrategy strategy = new CandidatePathStrategy(false,
+                (cfgCheck) ? path -> gmGetCFGPath(path, isStartPW(path, category), false, endType) : null,
+                path -> completeGmPath(path, end, category, endEdge, false, cfgCheck, endType), true);
+        new DataflowTraversal<>(strategy, DataflowTraversal.Mode.COVERED, false, null)
+                .run(queuePath, visitedEdge, returnCandidates);
 
         List<Path> returnPaths = new ArrayList<Path>();
         for (CandidatePath returnCandidate : returnCandidates) {
@@ -525,6 +402,36 @@ public class GmDataflowPath {
     }
 
 
+    // helper function: whether the start check (parWrite into the start node) applies to a candidate path
+    private static boolean isStartPW(CandidatePath curPath, DataflowType category) {
+        return (category != DataflowType.PREFIX) && (curPath.getPathSize() == 1);
+    }
+
+    // helper function: the result of a candidate path once it reaches end
+    //      - suffix queries return the path extended with endEdge, after a CFG check including the end edge
+    //      - other queries return the path itself, checked against the end parWrite only if checkEnd is set
+    // returns:
+    //      - CandidatePath: the path to return, or null if the candidate path does not reach end
+    private CandidatePath completeGmPath(CandidatePath curPath, Node end, DataflowType category,
+                                         Relationship endEdge, boolean checkEnd, boolean cfgCheck, String endType) {
+        if (!curPath.getEndNode().equals(end)) {
+            return null;
+        }
+
+        CandidatePath returnPath;
+        if (category == DataflowType.SUFFIX) {
+            returnPath = new CandidatePath(curPath, endEdge);
+        } else if (checkEnd) {
+            returnPath = new CandidatePath(curPath);
+        } else {
+            return curPath;
+        }
+
+        boolean isEndPW = (category != DataflowType.SUFFIX);
+        return ((!cfgCheck) || (gmGetCFGPath(returnPath, isStartPW(curPath, category), isEndPW, endType))) ?
+                returnPath : null;
+    }
+
     // helper function: find and verify CFG path
     // returns:
     //      - boolean: indicating candidatePath is feasible
@@ -550,19 +457,17 @@ public class GmDataflowPath {
 
         HashMap<List<Node>, Relationship> endCFGs = (isEndPW) ?
                 CFGValidationHelper.getStartEndNodes(targetNode, endType, false) :
-                CFGValidationHelper.getConnectionNodes(nextRel, candidatePath, false, false);
+                cfgHelper().getConnectionNodes(nextRel, candidatePath, false, false);
 
-        CFGShortestPath shortestPath = new CFGShortestPath(
-                new BasicEvaluationContext(tx, db),
-                (int) Integer.MAX_VALUE,
-                CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
+        // pooled reachability engine of this thread
+        CFGReachability reachability = CFGReachability.forThread();
         HashSet<Node> acceptedCFGEnd = new HashSet<>();
 
         for (Node srcNode : startNodes) {
             for (List<Node> endCFG : endCFGs.keySet()) {
                 Node dstNode = endCFG.get(0);
-                Path cfgPath = shortestPath.findSinglePath(srcNode, dstNode, targetNode, filterVar);
-                if (cfgPath != null) {
+                boolean cfgPath = reachability.reachable(srcNode, dstNode, targetNode, filterVar);
+                if (cfgPath) {
                     acceptedCFGEnd.add(endCFG.get(1));
                 }
             }
@@ -0,0 +1,186 @@
+package apoc.periodic;
+
+import apoc.util.Util;
+import org.neo4j.configuration.Config;
+import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch size of apoc.periodic.iterate, either fixed or, with <code>batchSize:'auto'</code>, adjusted after every
+ * finished batch:
+ * <ul>
+ *     <li>a failed or retried batch halves the size</li>
+ *     <li>otherwise the size is scaled towards <code>targetBatchMillis</code>, by at most a factor of 2 at a time</li>
+ *     <li>and kept so that the peak heap of a batch transaction stays below half of <code>maxTxMemory</code>
+ *     (by default <code>dbms.memory.transaction.max_size</code>, if set)</li>
+ * </ul>
+ * The size always stays between <code>minBatchSize</code> and <code>maxBatchSize</code>.
+ */
+public class AdaptiveBatchSize {
+
+    public static final String AUTO = "auto";
+
+    private static final long DEFAULT_BATCH_SIZE = 10000;
+    private static final long DEFAULT_INITIAL_SIZE = 1000;
+    private static final long DEFAULT_MIN_SIZE = 100;
+    private static final long DEFAULT_MAX_SIZE = 100000;
+    private static final long DEFAULT_TARGET_MILLIS = 1000;
+    private static final double MAX_FACTOR = 2.0;
+    private static final double MEMORY_HEADROOM = 0.5;
+    // number of size changes kept for the result, the later ones only update min, max and last
+    private static final int MAX_CHANGES = 100;
+
+    private final boolean adaptive;
+    private final int initial;
+    private final int minSize;
+    private final int maxSize;
+    private final long targetNanos;
+    private final long maxTxMemory;
+
+    private int current;
+    private int smallest;
+    private int largest;
+    private long samples = 0;
+    private final List<Map<String, Object>> changes = new ArrayList<>();
+
+    private AdaptiveBatchSize(boolean adaptive, int initial, int minSize, int maxSize, long targetMillis,
+                              long maxTxMemory) {
+        this.adaptive = adaptive;
+        this.initial = initial;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.maxTxMemory = maxTxMemory;
+        this.current = initial;
+        this.smallest = initial;
+        this.largest = initial;
+    }
+
+    public static AdaptiveBatchSize fixed(int batchSize) {
+        return new AdaptiveBatchSize(false, batchSize, batchSize, batchSize, DEFAULT_TARGET_MILLIS, 0);
+    }
+
+    public static AdaptiveBatchSize fromConfig(Map<String, Object> config, GraphDatabaseService db) {
+        Object batchSize = config.getOrDefault("batchSize", DEFAULT_BATCH_SIZE);
+        if (!AUTO.equalsIgnoreCase(batchSize.toString())) {
+            long size = Util.toLong(batchSize);
+            if (size < 1) {
+                throw new IllegalArgumentException("batchSize parameter must be > 0");
+            }
+            return fixed((int) size);
+        }
+
+        long minSize = Util.toLong(config.getOrDefault("minBatchSize", DEFAULT_MIN_SIZE));
+        long maxSize = Util.toLong(config.getOrDefault("maxBatchSize", DEFAULT_MAX_SIZE));
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("minBatchSize must be > 0 and maxBatchSize must be >= minBatchSize");
+        }
+        long targetMillis = Util.toLong(config.getOrDefault("targetBatchMillis", DEFAULT_TARGET_MILLIS));
+        if (targetMillis < 1) {
+            throw new IllegalArgumentException("targetBatchMillis parameter must be > 0");
+        }
+        Object maxTxMemory = config.get("maxTxMemory");
+        long memory = (maxTxMemory == null) ? configuredTxMemory(db) : Util.toLong(maxTxMemory);
+        long initial = Math.max(minSize, Math.min(maxSize, DEFAULT_INITIAL_SIZE));
+        return new AdaptiveBatchSize(true, (int) initial, (int) minSize, (int) maxSize, targetMillis, memory);
+    }
+
+    // 0 if transactions have no memory limit
+    private static long configuredTxMemory(GraphDatabaseService db) {
+        Config config = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Config.class);
+        Long maxSize = config.get(GraphDatabaseSettings.memory_transaction_max_size);
+        return (maxSize == null) ? 0 : maxSize;
+    }
+
+    public synchronized int next() {
+        return current;
+    }
+
+    public Sample sample(int size) {
+        return new Sample(size);
+    }
+
+    // update the size from a finished batch
+    public synchronized void complete(Sample sample) {
+        if (!adaptive || sample.startNanos == 0) {
+            return;
+        }
+        samples++;
+        long elapsed = Math.max(1, System.nanoTime() - sample.startNanos);
+
+        double size;
+        if (sample.failed || sample.attempts > 1) {
+            size = sample.size / MAX_FACTOR;
+        } else {
+            double factor = Math.max(1 / MAX_FACTOR, Math.min(MAX_FACTOR, ((double) targetNanos) / elapsed));
+            if (maxTxMemory > 0 && sample.heapPeak > 0) {
+                factor = Math.min(factor, maxTxMemory * MEMORY_HEADROOM / sample.heapPeak);
+            }
+            size = sample.size * factor;
+        }
+
+        int next = (int) Math.max(minSize, Math.min(maxSize, Math.round(size)));
+        if (next != current) {
+            current = next;
+            smallest = Math.min(smallest, next);
+            largest = Math.max(largest, next);
+            if (changes.size() < MAX_CHANGES) {
+                changes.add(Util.map("batch", samples, "size", (long) next));
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", adaptive ? AUTO : "fixed");
+        result.put("initial", (long) initial);
+        result.put("min", (long) smallest);
+        result.put("max", (long) largest);
+        result.put("last", (long) current);
+        result.put("changes", new ArrayList<>(changes));
+        return result;
+    }
+
+    /**
+     * Measurements of a single batch: the time from its first attempt until it finishes, the peak heap of the
+     * transaction of its last attempt, and whether it was committed in the end.
+     */
+    public static class Sample {
+        private final int size;
+        private volatile long startNanos = 0;
+        private volatile long heapPeak = 0;
+        private volatile int attempts = 0;
+        private volatile boolean failed = false;
+
+        private Sample(int size) {
+            this.size = size;
+        }
+
+        public void started() {
+            if (attempts++ == 0) {
+                startNanos = System.nanoTime();
+            }
+        }
+
+        // an attempt has run its statements, tx is still open
+        public void measured(Transaction tx) {
+            if (tx instanceof InternalTransaction) {
+                heapPeak = ((InternalTransaction) tx).kernelTransaction().memoryTracker().heapHighWaterMark();
+            }
+        }
+
+        // the batch has been committed, or has failed after its last attempt
+        public void finished(boolean failed) {
+            this.failed = failed;
+        }
+    }
+}
@@ -26,6 +26,7 @@ public class BatchAndTotalCollector {
     private Map<String, Long> batchErrors = new HashMap<>();
     private Map<String, List<Map<String, Object>>> failedParamsMap = new ConcurrentHashMap<>();
     private final boolean wasTerminated;
+    private final AdaptiveBatchSize batchSize;
 
     private AtomicLong nodesCreated = new AtomicLong();
     private AtomicLong nodesDeleted = new AtomicLong();
@@ -36,7 +37,12 @@ public class BatchAndTotalCollector {
     private AtomicLong labelsRemoved = new AtomicLong();
 
     public BatchAndTotalCollector(TerminationGuard terminationGuard, int failedParams) {
+        this(terminationGuard, failedParams, null);
+    }
+
+    public BatchAndTotalCollector(TerminationGuard terminationGuard, int failedParams, AdaptiveBatchSize batchSize) {
         this.failedParams = failedParams;
+        this.batchSize = batchSize;
         wasTerminated = Util.transactionIsTerminated(terminationGuard);
     }
 
@@ -53,7 +59,7 @@ public class BatchAndTotalCollector {
 
         return new BatchAndTotalResult(batches.get(), count.get(), timeTaken, successes, failedOps.get(),
                 failedBatches.get(), retried.get(), operationErrors, batchErrors, wasTerminated,
-                failedParamsMap, updateStatistics);
+                failedParamsMap, updateStatistics, batchSize == null ? null : batchSize.toMap());
     }
 
     public long getBatches() {
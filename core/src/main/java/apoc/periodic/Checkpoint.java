@@ -0,0 +1,275 @@
+package apoc.periodic;
+
+import apoc.ApocConfig;
+import apoc.SystemLabels;
+import apoc.SystemPropertyKeys;
+import apoc.util.Util;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.helpers.collection.Iterators;
+import org.neo4j.internal.helpers.collection.Pair;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Progress of an apoc.periodic.iterate run with <code>checkpoint:{name, every, key}</code>, stored in the system
+ * database so that apoc.periodic.resume(name) can continue after a failure or a restart.
+ * The watermark covers the batches committed without a gap from the start of the data-driven statement: either the
+ * number of rows (skipped on resume), or, with <code>key</code>, the value of that column in the last row (passed as
+ * <code>$_checkpoint</code> to the data-driven statement on resume). It is stored every <code>every</code> committed
+ * batches and when the run ends. A failed batch, or one skipped because the run was terminated, stops the watermark,
+ * so a resumed run starts again with that batch.
+ */
+public class Checkpoint {
+
+    private static final long DEFAULT_EVERY = 10;
+
+    // runs in progress, by database and name
+    private static final Map<String, Checkpoint> RUNNING = new ConcurrentHashMap<>();
+
+    private final String databaseName;
+    private final String name;
+    private final long every;
+    private final String key;
+
+    // batches by submission index, until the watermark passes them
+    private final Map<Long, Object[]> pending = new HashMap<>();   // index -> {rows, last key, committed}
+    private long submitted = 0;
+    private long watermarkIndex = 0;
+    private long rows;
+    private Object watermark;
+    private long batches;
+    private long sinceWrite = 0;
+    private boolean stopped = false;
+
+    private Checkpoint(String databaseName, String name, long every, String key, long rows, Object watermark,
+                       long batches) {
+        this.databaseName = databaseName;
+        this.name = name;
+        this.every = every;
+        this.key = key;
+        this.rows = rows;
+        this.watermark = watermark;
+        this.batches = batches;
+    }
+
+    // a new run from the checkpoint option of the configuration, or null if there is none
+    public static Checkpoint start(GraphDatabaseService db, String cypherIterate, String cypherAction,
+                                   Map<String, Object> config) {
+        Map<String, Object> checkpointConfig = (Map<String, Object>) config.get("checkpoint");
+        if (checkpointConfig == null) {
+            return null;
+        }
+        if (checkpointConfig.get("name") == null) {
+            throw new IllegalArgumentException("checkpoint needs a name");
+        }
+        if (config.get("partitionBy") != null) {
+            throw new IllegalArgumentException("checkpoint cannot be used with partitionBy, as batches do not cover consecutive rows");
+        }
+        long every = Util.toLong(checkpointConfig.getOrDefault("every", DEFAULT_EVERY));
+        if (every < 1) {
+            throw new IllegalArgumentException("checkpoint.every parameter must be > 0");
+        }
+        String name = checkpointConfig.get("name").toString();
+        Checkpoint checkpoint = new Checkpoint(db.databaseName(), name, every, (String) checkpointConfig.get("key"),
+                0, null, 0);
+        checkpoint.register();
+        try {
+            withSystemDb(systemTx -> {
+                Node node = Util.mergeNode(systemTx, SystemLabels.ApocPeriodicCheckpoint, null,
+                        Pair.of(SystemPropertyKeys.database.name(), db.databaseName()),
+                        Pair.of(SystemPropertyKeys.name.name(), name));
+                node.setProperty(SystemPropertyKeys.statement.name(), cypherIterate);
+                node.setProperty(SystemPropertyKeys.action.name(), cypherAction);
+                node.setProperty(SystemPropertyKeys.params.name(), Util.toJson(config));
+                // an earlier run with the same name may have left its watermark
+                node.removeProperty(SystemPropertyKeys.watermark.name());
+                checkpoint.write(node, false);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            checkpoint.release();
+            throw e;
+        }
+        return checkpoint;
+    }
+
+    // continue a stored run, returning its statements and configuration and the checkpoint to continue with
+    public static Resumed resume(GraphDatabaseService db, String name) {
+        Resumed resumed = withSystemDb(systemTx -> {
+            Node node = find(systemTx, db.databaseName(), name);
+            if (node == null) {
+                throw new IllegalArgumentException("No periodic checkpoint named " + name);
+            }
+            if ((boolean) node.getProperty(SystemPropertyKeys.done.name(), false)) {
+                throw new IllegalArgumentException("The periodic iterate with checkpoint " + name + " has already completed");
+            }
+            Map<String, Object> config = Util.fromJson((String) node.getProperty(SystemPropertyKeys.params.name()), Map.class);
+            Map<String, Object> checkpointConfig = (Map<String, Object>) config.get("checkpoint");
+            Object watermark = node.hasProperty(SystemPropertyKeys.watermark.name()) ?
+                    Util.fromJson((String) node.getProperty(SystemPropertyKeys.watermark.name()), Object.class) : null;
+            Checkpoint checkpoint = new Checkpoint(db.databaseName(), name,
+                    Util.toLong(checkpointConfig.getOrDefault("every", DEFAULT_EVERY)), (String) checkpointConfig.get("key"),
+                    (long) node.getProperty(SystemPropertyKeys.offset.name(), 0L), watermark,
+                    (long) node.getProperty(SystemPropertyKeys.batches.name(), 0L));
+            return new Resumed((String) node.getProperty(SystemPropertyKeys.statement.name()),
+                    (String) node.getProperty(SystemPropertyKeys.action.name()), config, checkpoint);
+        });
+        resumed.checkpoint.register();
+        return resumed;
+    }
+
+    // remove a stored run, returns whether there was one
+    public static boolean remove(GraphDatabaseService db, String name) {
+        return withSystemDb(systemTx -> {
+            Node node = find(systemTx, db.databaseName(), name);
+            if (node != null) {
+                node.delete();
+            }
+            return node != null;
+        });
+    }
+
+    // progress of the stored runs of the database, the running ones included
+    public static Stream<Periodic.JobInfo> list(GraphDatabaseService db) {
+        List<Periodic.JobInfo> infos = withSystemDb(systemTx -> Iterators.asList(Iterators.map(node -> {
+            String name = (String) node.getProperty(SystemPropertyKeys.name.name());
+            Checkpoint running = RUNNING.get(db.databaseName() + "." + name);
+            Periodic.JobInfo info = new Periodic.JobInfo(name);
+            info.done = (boolean) node.getProperty(SystemPropertyKeys.done.name(), false);
+            info.progress = (running != null) ? running.progress() : Util.map(
+                    "running", false,
+                    "rows", node.getProperty(SystemPropertyKeys.offset.name(), 0L),
+                    "batches", node.getProperty(SystemPropertyKeys.batches.name(), 0L),
+                    "watermark", node.hasProperty(SystemPropertyKeys.watermark.name()) ?
+                            Util.fromJson((String) node.getProperty(SystemPropertyKeys.watermark.name()), Object.class) : null,
+                    "lastUpdated", node.getProperty(SystemPropertyKeys.lastUpdated.name(), null));
+            return info;
+        }, systemTx.findNodes(SystemLabels.ApocPeriodicCheckpoint, SystemPropertyKeys.database.name(), db.databaseName()))));
+        return infos.stream();
+    }
+
+    private void register() {
+        if (RUNNING.putIfAbsent(databaseName + "." + name, this) != null) {
+            throw new IllegalArgumentException("The periodic iterate with checkpoint " + name + " is already running");
+        }
+    }
+
+    // rows to skip from the data-driven statement, none when the watermark is a key
+    public long getOffset() {
+        return (key == null) ? rows : 0;
+    }
+
+    // parameters added to the data-driven statement
+    public Map<String, Object> getParams() {
+        return (key == null) ? Map.of() : Util.map("_checkpoint", watermark);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    // called when a batch is submitted, returns its index
+    public synchronized long submitted(List<Map<String, Object>> batch) {
+        Object lastKey = (key == null || batch.isEmpty()) ? null : batch.get(batch.size() - 1).get(key);
+        pending.put(submitted, new Object[]{(long) batch.size(), lastKey, false});
+        return submitted++;
+    }
+
+    public synchronized void committed(long index) {
+        Object[] batch = pending.get(index);
+        batch[2] = true;
+        if (stopped) {
+            return;
+        }
+        while (pending.containsKey(watermarkIndex) && (boolean) pending.get(watermarkIndex)[2]) {
+            Object[] next = pending.remove(watermarkIndex++);
+            rows += (long) next[0];
+            if (key != null && next[1] != null) {
+                watermark = next[1];
+            }
+            batches++;
+            sinceWrite++;
+        }
+        if (sinceWrite >= every) {
+            store(false);
+        }
+    }
+
+    public synchronized void failed(long index) {
+        stopped = true;
+    }
+
+    // store the final watermark, the run is done if the data-driven statement was exhausted without a failure
+    public synchronized void finish(boolean exhausted) {
+        try {
+            store(exhausted && !stopped && pending.isEmpty());
+        } finally {
+            release();
+        }
+    }
+
+    // end the run without storing anything, when it failed before its first batch
+    public void release() {
+        RUNNING.remove(databaseName + "." + name, this);
+    }
+
+    public synchronized Map<String, Object> progress() {
+        return Util.map("running", true, "rows", rows, "batches", batches, "watermark", watermark,
+                "pending", (long) pending.size());
+    }
+
+    private void store(boolean done) {
+        sinceWrite = 0;
+        withSystemDb(systemTx -> {
+            Node node = find(systemTx, databaseName, name);
+            if (node != null) {
+                write(node, done);
+            }
+            return null;
+        });
+    }
+
+    private void write(Node node, boolean done) {
+        node.setProperty(SystemPropertyKeys.offset.name(), rows);
+        node.setProperty(SystemPropertyKeys.batches.name(), batches);
+        if (watermark != null) {
+            node.setProperty(SystemPropertyKeys.watermark.name(), Util.toJson(watermark));
+        }
+        node.setProperty(SystemPropertyKeys.done.name(), done);
+        node.setProperty(SystemPropertyKeys.lastUpdated.name(), System.currentTimeMillis());
+    }
+
+    private static Node find(Transaction systemTx, String databaseName, String name) {
+        return Iterators.singleOrNull(systemTx.findNodes(SystemLabels.ApocPeriodicCheckpoint,
+                SystemPropertyKeys.database.name(), databaseName, SystemPropertyKeys.name.name(), name));
+    }
+
+    private static <T> T withSystemDb(Function<Transaction, T> action) {
+        try (Transaction tx = ApocConfig.apocConfig().getSystemDb().beginTx()) {
+            T result = action.apply(tx);
+            tx.commit();
+            return result;
+        }
+    }
+
+    public static class Resumed {
+        public final String cypherIterate;
+        public final String cypherAction;
+        public final Map<String, Object> config;
+        public final Checkpoint checkpoint;
+
+        Resumed(String cypherIterate, String cypherAction, Map<String, Object> config, Checkpoint checkpoint) {
+            this.cypherIterate = cypherIterate;
+            this.cypherAction = cypherAction;
+            this.config = config;
+            this.checkpoint = checkpoint;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package apoc.periodic;
+
+import apoc.export.util.ExportConfig;
+import apoc.util.FileUtils;
+import apoc.util.Util;
+import org.neo4j.graphdb.Entity;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static apoc.ApocConfig.apocConfig;
+
+/**
+ * Destination of the rows of the batches of apoc.periodic.iterate that failed for good, for a later replay, set with
+ * <code>deadLetter: {file: 'failed.jsonl'}</code> or <code>deadLetter: {label: 'DeadLetter'}</code>.
+ * A file gets one JSON line per batch, and a label one node per batch, both with the periodicId of the run, the batch
+ * number, the error and the rows. Nodes and relationships in a row are replaced by their ids, and a node keeps the
+ * rows as a JSON string.
+ */
+public class DeadLetterSink implements AutoCloseable {
+
+    private final GraphDatabaseService db;
+    private final String fileName;
+    private final Label label;
+    private OutputStream out;
+
+    private DeadLetterSink(GraphDatabaseService db, String fileName, Label label) {
+        this.db = db;
+        this.fileName = fileName;
+        this.label = label;
+    }
+
+    // the sink of the deadLetter option of the configuration, or null if there is none
+    public static DeadLetterSink fromConfig(Map<String, Object> config, GraphDatabaseService db) {
+        Map<String, Object> deadLetter = (Map<String, Object>) config.get("deadLetter");
+        if (deadLetter == null) {
+            return null;
+        }
+        Object file = deadLetter.get("file");
+        Object label = deadLetter.get("label");
+        if ((file == null) == (label == null)) {
+            throw new IllegalArgumentException("deadLetter needs either a file or a label");
+        }
+        if (file != null) {
+            apocConfig().checkWriteAllowed(ExportConfig.EMPTY, file.toString());
+            return new DeadLetterSink(db, file.toString(), null);
+        }
+        return new DeadLetterSink(db, null, Label.label(label.toString()));
+    }
+
+    public synchronized void write(String periodicId, long batch, String error, List<Map<String, Object>> rows) {
+        List<Object> values = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            values.add(toValue(row));
+        }
+
+        if (label != null) {
+            try (Transaction tx = db.beginTx()) {
+                Node node = tx.createNode(label);
+                node.setProperty("periodicId", periodicId);
+                node.setProperty("batch", batch);
+                node.setProperty("error", error == null ? "" : error);
+                node.setProperty("rows", Util.toJson(values));
+                node.setProperty("time", System.currentTimeMillis());
+                tx.commit();
+            }
+            return;
+        }
+
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("periodicId", periodicId);
+        line.put("batch", batch);
+        line.put("error", error);
+        line.put("rows", values);
+        try {
+            if (out == null) {
+                out = FileUtils.getOutputStream(fileName);
+            }
+            out.write((Util.toJson(line) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // helper function: nodes and relationships are replaced by their ids, nested maps and lists are converted too
+    private static Object toValue(Object value) {
+        if (value instanceof Entity) {
+            return ((Entity) value).getId();
+        }
+        if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            ((Map<String, Object>) value).forEach((k, v) -> map.put(k, toValue(v)));
+            return map;
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object element : (List<Object>) value) {
+                list.add(toValue(element));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            out = null;
+        }
+    }
+}
@@ -1,18 +1,21 @@
 package apoc.periodic;
 
 import apoc.Pools;
+import apoc.util.RetryPolicy;
 import apoc.util.Util;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.QueryStatistics;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.TransactionTerminatedException;
 import org.neo4j.graphdb.schema.ConstraintDefinition;
 import org.neo4j.graphdb.schema.IndexDefinition;
 import org.neo4j.graphdb.schema.Schema;
 import org.neo4j.internal.helpers.collection.Iterables;
 import org.neo4j.internal.helpers.collection.Iterators;
 import org.neo4j.internal.helpers.collection.Pair;
+import org.neo4j.kernel.api.exceptions.Status;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 
@@ -60,9 +63,10 @@ public class Periodic {
     }
 
     @Procedure
-    @Description("apoc.periodic.list - list all jobs")
+    @Description("apoc.periodic.list - list all jobs, and the progress of the apoc.periodic.iterate runs with a checkpoint")
     public Stream<JobInfo> list() {
-        return pools.getJobList().entrySet().stream().map( (e) -> e.getKey().update(e.getValue()));
+        return Stream.concat(pools.getJobList().entrySet().stream().map( (e) -> e.getKey().update(e.getValue())),
+                Checkpoint.list(db));
     }
 
     @Procedure(mode = Mode.WRITE)
@@ -151,7 +155,7 @@ public class Periodic {
     }
 
     @Procedure
-    @Description("apoc.periodic.cancel(name) - cancel job with the given name")
+    @Description("apoc.periodic.cancel(name) - cancel job with the given name, or remove the checkpoint of an apoc.periodic.iterate run")
     public Stream<JobInfo> cancel(@Name("name") String name) {
         JobInfo info = new JobInfo(name);
         Future future = pools.getJobList().remove(info);
@@ -159,6 +163,10 @@ public class Periodic {
             future.cancel(false);
             return Stream.of(info.update(future));
         }
+        if (Checkpoint.remove(db, name)) {
+            info.cancelled = true;
+            return Stream.of(info);
+        }
         return Stream.empty();
     }
 
@@ -249,45 +257,76 @@ public class Periodic {
      * @param cypherAction
      */
     @Procedure(mode = Mode.WRITE)
-    @Description("apoc.periodic.iterate('statement returning items', 'statement per item', {batchSize:1000,iterateList:true,parallel:false,params:{},concurrency:50,retries:0}) YIELD batches, total - run the second statement for each item returned by the first statement. Returns number of batches and total processed rows")
+    @Description("apoc.periodic.iterate('statement returning items', 'statement per item', {batchSize:1000,iterateList:true,parallel:false,params:{},concurrency:50,retries:0,retryOn:'transient',backoff:{base:100,max:10000,jitter:0.5}}) YIELD batches, total - run the second statement for each item returned by the first statement. Returns number of batches and total processed rows. batchSize:'auto' adapts the batch size to the batch latency, failures and transaction memory")
     public Stream<BatchAndTotalResult> iterate(
             @Name("cypherIterate") String cypherIterate,
             @Name("cypherAction") String cypherAction,
             @Name("config") Map<String,Object> config) {
-        validateQuery(cypherIterate);
+        return iterate(cypherIterate, cypherAction, config, null);
+    }
 
-        long batchSize = Util.toLong(config.getOrDefault("batchSize", 10000));
-        if (batchSize < 1) {
-            throw new IllegalArgumentException("batchSize parameter must be > 0");
-        }
-        int concurrency = Util.toInteger(config.getOrDefault("concurrency", 50));
-        if (concurrency < 1) {
-            throw new IllegalArgumentException("concurrency parameter must be > 0");
-        }
-        boolean parallel = Util.toBoolean(config.getOrDefault("parallel", false));
-        long retries = Util.toLong(config.getOrDefault("retries", 0)); // todo sleep/delay or push to end of batch to try again or immediate ?
-        int failedParams = Util.toInteger(config.getOrDefault("failedParams", -1));
-
-        BatchMode batchMode = BatchMode.fromConfig(config);
-        Map<String,Object> params = (Map<String, Object>) config.getOrDefault("params", Collections.emptyMap());
-
-        try (Result result = tx.execute(slottedRuntime(cypherIterate),params)) {
-            Pair<String,Boolean> prepared = PeriodicUtils.prepareInnerStatement(cypherAction, batchMode, result.columns(), "_batch");
-            String innerStatement = applyPlanner(prepared.first(), Planner.valueOf((String) config.getOrDefault("planner", Planner.DEFAULT.name())));
-            boolean iterateList = prepared.other();
-            String periodicId = UUID.randomUUID().toString();
-            if (log.isDebugEnabled()) {
-            	log.debug("Starting periodic iterate from `%s` operation using iteration `%s` in separate thread with id: `%s`", cypherIterate,cypherAction, periodicId);
+    @Procedure(mode = Mode.WRITE)
+    @Description("apoc.periodic.resume(name) - continue an apoc.periodic.iterate run with the checkpoint name from its last stored watermark")
+    public Stream<BatchAndTotalResult> resume(@Name("name") String name) {
+        Checkpoint.Resumed resumed = Checkpoint.resume(db, name);
+        return iterate(resumed.cypherIterate, resumed.cypherAction, resumed.config, resumed.checkpoint);
+    }
+
+    // a resumed run continues with its checkpoint, which is released however the run ends
+    private Stream<BatchAndTotalResult> iterate(String cypherIterate, String cypherAction, Map<String,Object> config, Checkpoint resumed) {
+        Checkpoint checkpoint = resumed;
+        try {
+            validateQuery(cypherIterate);
+
+            AdaptiveBatchSize batchSize = AdaptiveBatchSize.fromConfig(config, db);
+            int concurrency = Util.toInteger(config.getOrDefault("concurrency", 50));
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("concurrency parameter must be > 0");
+            }
+            boolean parallel = Util.toBoolean(config.getOrDefault("parallel", false));
+            RetryPolicy retryPolicy = RetryPolicy.fromConfig(config);
+            DeadLetterSink deadLetter = DeadLetterSink.fromConfig(config, db);
+            int failedParams = Util.toInteger(config.getOrDefault("failedParams", -1));
+            String partitionBy = (String) config.get("partitionBy");
+            int partitions = Util.toInteger(config.getOrDefault("partitions", Math.min(concurrency, Runtime.getRuntime().availableProcessors())));
+            if (partitions < 1) {
+                throw new IllegalArgumentException("partitions parameter must be > 0");
+            }
+
+            BatchMode batchMode = BatchMode.fromConfig(config);
+            Map<String,Object> params = (Map<String, Object>) config.getOrDefault("params", Collections.emptyMap());
+            if (resumed == null) {
+                checkpoint = Checkpoint.start(db, cypherIterate, cypherAction, config);
+            }
+            Map<String,Object> iterateParams = checkpoint == null ? params : merge(params, checkpoint.getParams());
+
+            try (Result result = tx.execute(slottedRuntime(cypherIterate),iterateParams)) {
+                if (partitionBy != null && !result.columns().contains(partitionBy)) {
+                    throw new IllegalArgumentException("partitionBy must be one of the columns " + result.columns() + " returned by the first statement");
+                }
+                Pair<String,Boolean> prepared = PeriodicUtils.prepareInnerStatement(cypherAction, batchMode, result.columns(), "_batch");
+                String innerStatement = applyPlanner(prepared.first(), Planner.valueOf((String) config.getOrDefault("planner", Planner.DEFAULT.name())));
+                boolean iterateList = prepared.other();
+                String periodicId = UUID.randomUUID().toString();
+                // rows before the watermark were committed by a previous run
+                for (long skipped = 0; checkpoint != null && skipped < checkpoint.getOffset() && result.hasNext(); skipped++) {
+                    result.next();
+                }
+                if (log.isDebugEnabled()) {
+                	log.debug("Starting periodic iterate from `%s` operation using iteration `%s` in separate thread with id: `%s`", cypherIterate,cypherAction, periodicId);
+                }
+                return PeriodicUtils.iterateAndExecuteBatchedInSeparateThread(
+                        db, terminationGuard, log, pools,
+                        batchSize, parallel, iterateList, retryPolicy, result,
+                        (tx, p) -> {
+                            final Result r = tx.execute(innerStatement, merge(params, p));
+                            Iterators.count(r); // XXX: consume all results
+                            return r.getQueryStatistics();
+                        },
+                        concurrency, failedParams, periodicId, partitionBy, partitions, checkpoint, deadLetter);
             }
-            return PeriodicUtils.iterateAndExecuteBatchedInSeparateThread(
-                    db, terminationGuard, log, pools,
-                    (int)batchSize, parallel, iterateList, retries, result,
-                    (tx, p) -> {
-                        final Result r = tx.execute(innerStatement, merge(params, p));
-                        Iterators.count(r); // XXX: consume all results
-                        return r.getQueryStatistics();
-                    },
-                    concurrency, failedParams, periodicId);
+        } finally {
+            if (checkpoint != null) checkpoint.release();
         }
     }
 
@@ -320,6 +359,8 @@ public class Periodic {
     }
 
 
+    // runs a batch in the given transaction and returns its number of committed operations, or null if the batch was
+    //      skipped because the query was terminated before it started
     static abstract class ExecuteBatch implements Function<Transaction, Long> {
 
         protected TerminationGuard terminationGuard;
@@ -356,7 +397,7 @@ public class Periodic {
 
         @Override
         public final Long apply(Transaction txInThread) {
-            if (Util.transactionIsTerminated(terminationGuard)) return 0L;
+            if (Util.transactionIsTerminated(terminationGuard)) return null;
             Map<String, Object> params = Util.map("_count", collector.getCount(), "_batch", batch);
             return executeAndReportErrors(txInThread, consumer, params, batch, batch.size(), null, collector);
         }
@@ -373,12 +414,13 @@ public class Periodic {
 
         @Override
         public final Long apply(Transaction txInThread) {
-            if (Util.transactionIsTerminated(terminationGuard)) return 0L;
+            if (Util.transactionIsTerminated(terminationGuard)) return null;
             AtomicLong localCount = new AtomicLong(collector.getCount());
             return batch.stream().mapToLong(
                     p -> {
+                        // a batch stopped halfway is rolled back, so that none of its rows counts as committed
                         if (localCount.get() % 1000 == 0 && Util.transactionIsTerminated(terminationGuard)) {
-                            return 0;
+                            throw new TransactionTerminatedException(Status.Transaction.Terminated);
                         }
                         Map<String, Object> params = merge(p, Util.map("_count", localCount.get(), "_batch", batch));
                         return executeAndReportErrors(txInThread, consumer, params, batch, 1, localCount, collector);
@@ -409,6 +451,7 @@ public class Periodic {
         public long rate;
         public boolean done;
         public boolean cancelled;
+        public Map<String,Object> progress;
 
         public JobInfo(String name) {
             this.name = name;
@@ -1,7 +1,10 @@
 package apoc.periodic;
 
 import apoc.Pools;
+import apoc.util.RetryPolicy;
 import apoc.util.Util;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.neo4j.graphdb.Entity;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.QueryStatistics;
 import org.neo4j.graphdb.Transaction;
@@ -13,18 +16,25 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
-import java.util.function.ToLongFunction;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class PeriodicUtils {
 
+    // how long the iterating thread waits for a free batch slot before checking for cancellation again
+    private static final long PERMIT_WAIT_MILLIS = 100;
+    // error of a batch without a result that did not fail
+    private static final String SKIPPED = "skipped";
+
     private PeriodicUtils() {
 
     }
@@ -59,56 +69,56 @@ public class PeriodicUtils {
             int batchsize, boolean parallel, boolean iterateList, long retries,
             Iterator<Map<String, Object>> iterator, BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer,
             int concurrency, int failedParams, String periodicId) {
+        return iterateAndExecuteBatchedInSeparateThread(db, terminationGuard, log, pools,
+                AdaptiveBatchSize.fixed(batchsize), parallel, iterateList, RetryPolicy.fixed(retries), iterator, consumer,
+                concurrency, failedParams, periodicId, null, 0, null, null);
+    }
+
+    public static Stream<BatchAndTotalResult> iterateAndExecuteBatchedInSeparateThread(
+            GraphDatabaseService db, TerminationGuard terminationGuard, Log log, Pools pools,
+            AdaptiveBatchSize batchSize, boolean parallel, boolean iterateList, RetryPolicy retryPolicy,
+            Iterator<Map<String, Object>> iterator, BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer,
+            int concurrency, int failedParams, String periodicId, String partitionBy, int partitions,
+            Checkpoint checkpoint, DeadLetterSink deadLetter) {
 
         ExecutorService pool = parallel ? pools.getDefaultExecutorService() : pools.getSingleExecutorService();
-        List<Future<Long>> futures = new ArrayList<>(concurrency);
-        BatchAndTotalCollector collector = new BatchAndTotalCollector(terminationGuard, failedParams);
-        AtomicInteger activeFutures = new AtomicInteger(0);
-
-        do {
-            if (Util.transactionIsTerminated(terminationGuard)) break;
-
-            if (activeFutures.get() < concurrency || !parallel) {
-                // we have capacity, add a new Future to the list
-                activeFutures.incrementAndGet();
-
-                if (log.isDebugEnabled()) log.debug("Execute, in periodic iteration with id %s, no %d batch size ", periodicId, batchsize);
-                List<Map<String,Object>> batch = Util.take(iterator, batchsize);
-                final long currentBatchSize = batch.size();
-                Periodic.ExecuteBatch executeBatch =
-                        iterateList ?
-                                new Periodic.ListExecuteBatch(terminationGuard, collector, batch, consumer) :
-                                new Periodic.OneByOneExecuteBatch(terminationGuard, collector, batch, consumer);
-
-                futures.add(Util.inTxFuture(log,
-                        pool,
-                        db,
-                        executeBatch,
-                        retries,
-                        retryCount -> collector.incrementRetried(),
-                        onComplete -> {
-                            collector.incrementBatches();
-                            executeBatch.release();
-                            activeFutures.decrementAndGet();
-                        }));
-                collector.incrementCount(currentBatchSize);
-                if (log.isDebugEnabled()) {
-                    log.debug("Processed in periodic iteration with id %s, %d iterations of %d total", periodicId, batchsize, collector.getCount());
-                }
+        // batches taken from the iterator but not finished yet, at most concurrency of them in parallel, and a
+        // single one otherwise so that the next batch is only read while the current one runs
+        Semaphore permits = new Semaphore(parallel ? concurrency : 1);
+        BatchAndTotalCollector collector = new BatchAndTotalCollector(terminationGuard, failedParams, batchSize);
+        BatchRunner runner = new BatchRunner(db, terminationGuard, log, pool, batchSize, iterateList, retryPolicy, consumer,
+                collector, concurrency, checkpoint, deadLetter, periodicId);
+
+        // recorded while iterating, as the result of a terminated data-driven statement can no longer be read
+        boolean exhausted = false;
+        try {
+            if (parallel && partitionBy != null) {
+                exhausted = iteratePartitioned(runner, terminationGuard, log, batchSize, iterator, permits, periodicId, partitionBy, partitions);
             } else {
-                // we can't block until the counter decrease as we might miss a cancellation, so
-                // let this thread be preempted for a bit before we check for cancellation or
-                // capacity.
-                LockSupport.parkNanos(1000);
-            }
-        } while (iterator.hasNext());
+                do {
+                    if (Util.transactionIsTerminated(terminationGuard)) break;
 
-        boolean wasTerminated = Util.transactionIsTerminated(terminationGuard);
-        ToLongFunction<Future<Long>> toLongFunction = wasTerminated ?
-                f -> Util.getFutureOrCancel(f, collector.getBatchErrors(), collector.getFailedBatches(), 0L) :
-                f -> Util.getFuture(f, collector.getBatchErrors(), collector.getFailedBatches(), 0L);
-        collector.incrementSuccesses(futures.stream().mapToLong(toLongFunction).sum());
+                    // block until a batch finishes, still checking for cancellation every once in a while
+                    if (!acquire(permits, terminationGuard)) break;
 
+                    int batchsize = batchSize.next();
+                    if (log.isDebugEnabled()) log.debug("Execute, in periodic iteration with id %s, no %d batch size ", periodicId, batchsize);
+                    runner.submit(Util.take(iterator, batchsize), permits);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Processed in periodic iteration with id %s, %d iterations of %d total", periodicId, batchsize, collector.getCount());
+                    }
+                    exhausted = !iterator.hasNext();
+                } while (!exhausted);
+            }
+        } finally {
+            // the submitted batches are collected, and the checkpoint and dead letter sink closed, even when reading
+            //      the data-driven statement failed
+            try {
+                runner.finish(exhausted);
+            } finally {
+                if (deadLetter != null) deadLetter.close();
+            }
+        }
         Util.logErrors("Error during iterate.commit:", collector.getBatchErrors(), log);
         Util.logErrors("Error during iterate.execute:", collector.getOperationErrors(), log);
         if (log.isDebugEnabled()) {
@@ -116,6 +126,226 @@ public class PeriodicUtils {
         }
         return Stream.of(collector.getResult());
     }
+
+    // rows are routed to one of the partitions by the hash of their partitionBy value, and a partition runs at most
+    // one batch at a time, so that batches running in parallel never share a partition key; returns whether every
+    //      row was submitted
+    private static boolean iteratePartitioned(BatchRunner runner, TerminationGuard terminationGuard, Log log,
+                                           AdaptiveBatchSize batchSize, Iterator<Map<String, Object>> iterator,
+                                           Semaphore permits, String periodicId, String partitionBy, int partitions) {
+        List<List<Map<String, Object>>> buffers = new ArrayList<>(partitions);
+        List<Semaphore> running = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            buffers.add(new ArrayList<>());
+            running.add(new Semaphore(1));
+        }
+
+        long rows = 0;
+        while (iterator.hasNext()) {
+            if (rows++ % 1000 == 0 && Util.transactionIsTerminated(terminationGuard)) return false;
+            Map<String, Object> row = iterator.next();
+            int partition = partition(row.get(partitionBy), partitions);
+            List<Map<String, Object>> buffer = buffers.get(partition);
+            buffer.add(row);
+            if (buffer.size() >= batchSize.next()) {
+                if (log.isDebugEnabled()) log.debug("Execute, in periodic iteration with id %s, partition %d batch size %d", periodicId, partition, buffer.size());
+                // a full partition waits for its previous batch, the rows of the other partitions are still buffered
+                if (!acquire(running.get(partition), terminationGuard)) return false;
+                if (!acquire(permits, terminationGuard)) return false;
+                runner.submit(buffer, permits, running.get(partition));
+                buffers.set(partition, new ArrayList<>());
+            }
+        }
+
+        for (int partition = 0; partition < partitions; partition++) {
+            if (buffers.get(partition).isEmpty()) continue;
+            if (!acquire(running.get(partition), terminationGuard)) return false;
+            if (!acquire(permits, terminationGuard)) return false;
+            runner.submit(buffers.get(partition), permits, running.get(partition));
+        }
+        return true;
+    }
+
+    // nodes and relationships are partitioned by id
+    static int partition(Object key, int partitions) {
+        Object value = key instanceof Entity ? ((Entity) key).getId() : key;
+        return Math.floorMod(Objects.hashCode(value), partitions);
+    }
+
+    // every attempt of a batch that runs its statements is measured before the transaction is committed; a failed
+    //      attempt leaves its transaction closed, so it is not measured
+    private static Function<Transaction, Long> measured(Periodic.ExecuteBatch executeBatch, AdaptiveBatchSize.Sample sample) {
+        return txInThread -> {
+            sample.started();
+            Long result = executeBatch.apply(txInThread);
+            sample.measured(txInThread);
+            return result;
+        };
+    }
+
+    // submits the batches of an iteration and collects their results
+    private static class BatchRunner {
+        private final GraphDatabaseService db;
+        private final TerminationGuard terminationGuard;
+        private final Log log;
+        private final ExecutorService pool;
+        private final AdaptiveBatchSize batchSize;
+        private final boolean iterateList;
+        private final RetryPolicy retryPolicy;
+        private final BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer;
+        private final BatchAndTotalCollector collector;
+        private final Checkpoint checkpoint;
+        private final DeadLetterSink deadLetter;
+        private final String periodicId;
+        private final List<Pending> futures;
+        private long submitted = 0;
+
+        BatchRunner(GraphDatabaseService db, TerminationGuard terminationGuard, Log log, ExecutorService pool,
+                    AdaptiveBatchSize batchSize, boolean iterateList, RetryPolicy retryPolicy,
+                    BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer,
+                    BatchAndTotalCollector collector, int concurrency, Checkpoint checkpoint,
+                    DeadLetterSink deadLetter, String periodicId) {
+            this.db = db;
+            this.terminationGuard = terminationGuard;
+            this.log = log;
+            this.pool = pool;
+            this.batchSize = batchSize;
+            this.iterateList = iterateList;
+            this.retryPolicy = retryPolicy;
+            this.consumer = consumer;
+            this.collector = collector;
+            this.checkpoint = checkpoint;
+            this.deadLetter = deadLetter;
+            this.periodicId = periodicId;
+            this.futures = new ArrayList<>(concurrency);
+        }
+
+        // run a batch, the permits are released once it has finished
+        void submit(List<Map<String, Object>> batch, Semaphore... permits) {
+            final long currentBatchSize = batch.size();
+            Periodic.ExecuteBatch executeBatch =
+                    iterateList ?
+                            new Periodic.ListExecuteBatch(terminationGuard, collector, batch, consumer) :
+                            new Periodic.OneByOneExecuteBatch(terminationGuard, collector, batch, consumer);
+            AdaptiveBatchSize.Sample sample = batchSize.sample(batch.size());
+            long index = (checkpoint == null) ? -1 : checkpoint.submitted(batch);
+
+            // as Util.inTxFuture, but the sample is completed once the batch is committed or has failed for good
+            Future<Long> future;
+            try {
+                future = pool.submit(() -> {
+                    boolean committed = false;
+                    try {
+                        Long result = Util.retryInTx(log, db, measured(executeBatch, sample), 0, retryPolicy,
+                                retryCount -> collector.incrementRetried());
+                        committed = true;
+                        return result;
+                    } finally {
+                        collector.incrementBatches();
+                        executeBatch.release();
+                        sample.finished(!committed);
+                        batchSize.complete(sample);
+                        for (Semaphore permit : permits) {
+                            permit.release();
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                throw new RuntimeException("Error executing in separate transaction", e);
+            }
+            // the rows are only kept for the dead letter sink
+            futures.add(new Pending(future, submitted++, index, deadLetter == null ? null : batch));
+            collector.incrementCount(currentBatchSize);
+
+            // aggregate the finished batches right away, so that only the running ones are kept
+            futures.removeIf(f -> {
+                if (!f.future.isDone()) return false;
+                collect(f, Util.getFuture(f.future, collector.getBatchErrors(), collector.getFailedBatches(), null));
+                return true;
+            });
+        }
+
+        // wait for the running batches, or cancel them if the query was terminated
+        //      exhausted: whether every row of the data-driven statement was submitted
+        void finish(boolean exhausted) {
+            boolean wasTerminated = Util.transactionIsTerminated(terminationGuard);
+            // a running batch is not stopped by cancelling its future and may still commit, so every batch is waited
+            //      for; one that has not started yet skips its rows once it sees the termination
+            for (Pending f : futures) {
+                collect(f, Util.getFuture(f.future, collector.getBatchErrors(), collector.getFailedBatches(), null));
+            }
+            futures.clear();
+            if (checkpoint != null) {
+                checkpoint.finish(exhausted && !wasTerminated);
+            }
+        }
+
+        // a failed batch, or one skipped because the query was terminated, has no result
+        private void collect(Pending f, Long result) {
+            String error = (result == null) ? error(f.future) : null;
+            if (result != null) {
+                collector.incrementSuccesses(result);
+            } else if (SKIPPED.equals(error)) {
+                // neither failed nor cancelled, so Util.getFuture did not count it
+                collector.getFailedBatches().incrementAndGet();
+                collector.getBatchErrors().merge(SKIPPED, 1L, Long::sum);
+            }
+            if (checkpoint != null) {
+                if (result != null) {
+                    checkpoint.committed(f.checkpointIndex);
+                } else {
+                    checkpoint.failed(f.checkpointIndex);
+                }
+            }
+            if (deadLetter != null && result == null) {
+                deadLetter.write(periodicId, f.batch, error, f.rows);
+            }
+        }
+    }
+
+    // helper function: message of the root cause of a failed batch, "cancelled" for a batch whose future was cancelled,
+    //      or "skipped" for one that found the query terminated when it started
+    private static String error(Future<Long> future) {
+        if (future.isCancelled()) {
+            return "cancelled";
+        }
+        try {
+            future.get();
+            return SKIPPED;
+        } catch (ExecutionException e) {
+            return ExceptionUtils.getRootCause(e).getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e.getMessage();
+        }
+    }
+
+    // a submitted batch: its number in the run, its checkpoint index and its rows, if they are needed once it fails
+    private static class Pending {
+        private final Future<Long> future;
+        private final long batch;
+        private final long checkpointIndex;
+        private final List<Map<String, Object>> rows;
+
+        Pending(Future<Long> future, long batch, long checkpointIndex, List<Map<String, Object>> rows) {
+            this.future = future;
+            this.batch = batch;
+            this.checkpointIndex = checkpointIndex;
+            this.rows = rows;
+        }
+    }
+
+    private static boolean acquire(Semaphore permits, TerminationGuard terminationGuard) {
+        try {
+            while (!permits.tryAcquire(PERMIT_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (Util.transactionIsTerminated(terminationGuard)) return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 }
 
 /*
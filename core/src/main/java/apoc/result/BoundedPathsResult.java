@@ -0,0 +1,24 @@
+package apoc.result;
+
+import org.neo4j.graphdb.Path;
+
+import java.util.List;
+import java.util.Map;
+
+public class BoundedPathsResult {
+    public final List<Path> paths;
+    public final List<List<Long>> ids;
+    public final boolean truncated;
+    public final Map<String, Object> profile;
+
+    public BoundedPathsResult(List<Path> paths, boolean truncated, Map<String, Object> profile) {
+        this(paths, null, truncated, profile);
+    }
+
+    public BoundedPathsResult(List<Path> paths, List<List<Long>> ids, boolean truncated, Map<String, Object> profile) {
+        this.paths = paths;
+        this.ids = ids;
+        this.truncated = truncated;
+        this.profile = profile;
+    }
+}
@@ -0,0 +1,15 @@
+package apoc.result;
+
+import org.neo4j.graphdb.Node;
+
+public class DataflowFlowResult {
+    public final Node source;
+    public final Node sink;
+    public final long crossings;
+
+    public DataflowFlowResult(Node source, Node sink, long crossings) {
+        this.source = source;
+        this.sink = sink;
+        this.crossings = crossings;
+    }
+}
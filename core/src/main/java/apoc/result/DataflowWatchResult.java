@@ -0,0 +1,20 @@
+package apoc.result;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+
+public class DataflowWatchResult {
+    public final Node source;
+    public final Node sink;
+    public final Path path;
+    public final String change;
+    public final long txId;
+
+    public DataflowWatchResult(Node source, Node sink, Path path, String change, long txId) {
+        this.source = source;
+        this.sink = sink;
+        this.path = path;
+        this.change = change;
+        this.txId = txId;
+    }
+}
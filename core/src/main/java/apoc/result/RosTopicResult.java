@@ -0,0 +1,18 @@
+package apoc.result;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.List;
+
+public class RosTopicResult {
+    public final Node topic;
+    public final List<Relationship> pubVars;
+    public final List<Relationship> pubTargets;
+
+    public RosTopicResult(Node topic, List<Relationship> pubVars, List<Relationship> pubTargets) {
+        this.topic = topic;
+        this.pubVars = pubVars;
+        this.pubTargets = pubTargets;
+    }
+}
@@ -0,0 +1,17 @@
+package apoc.result;
+
+import java.util.List;
+
+public class SliceResult {
+    public final List<Long> nodes;
+    public final byte[] bitmap;
+    public final long size;
+    public final boolean truncated;
+
+    public SliceResult(List<Long> nodes, byte[] bitmap, long size, boolean truncated) {
+        this.nodes = nodes;
+        this.bitmap = bitmap;
+        this.size = size;
+        this.truncated = truncated;
+    }
+}
@@ -0,0 +1,99 @@
+package apoc.util;
+
+import org.neo4j.kernel.api.exceptions.Status;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When and after how long a failed transaction is tried again:
+ * <ul>
+ *     <li><code>retries</code>: maximum number of retries (default: 0)</li>
+ *     <li><code>retryOn</code>: <code>"transient"</code> to only retry transient errors such as deadlocks and lock
+ *     timeouts (default), or <code>"all"</code></li>
+ *     <li><code>backoff: {base, max, jitter}</code>: the n-th retry waits <code>min(max, base * 2^n)</code>
+ *     milliseconds (default: base 100, max 10000), shortened by a random fraction of at most <code>jitter</code>
+ *     (between 0 and 1, default 0.5) so that conflicting transactions do not retry in lockstep</li>
+ * </ul>
+ */
+public class RetryPolicy {
+
+    public static final String RETRY_ON_TRANSIENT = "transient";
+    public static final String RETRY_ON_ALL = "all";
+
+    private static final long DEFAULT_BASE_MILLIS = 100;
+    private static final long DEFAULT_MAX_MILLIS = 10000;
+    private static final double DEFAULT_JITTER = 0.5;
+
+    private final long maxRetries;
+    private final boolean retryAll;
+    private final long baseMillis;
+    private final long maxMillis;
+    private final double jitter;
+
+    private RetryPolicy(long maxRetries, boolean retryAll, long baseMillis, long maxMillis, double jitter) {
+        this.maxRetries = maxRetries;
+        this.retryAll = retryAll;
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+        this.jitter = jitter;
+    }
+
+    // any error is retried after 100ms
+    public static RetryPolicy fixed(long maxRetries) {
+        return new RetryPolicy(maxRetries, true, DEFAULT_BASE_MILLIS, DEFAULT_BASE_MILLIS, 0);
+    }
+
+    public static RetryPolicy fromConfig(Map<String, Object> config) {
+        long maxRetries = Util.toLong(config.getOrDefault("retries", 0));
+        String retryOn = config.getOrDefault("retryOn", RETRY_ON_TRANSIENT).toString();
+        if (!retryOn.equals(RETRY_ON_TRANSIENT) && !retryOn.equals(RETRY_ON_ALL)) {
+            throw new IllegalArgumentException("Unknown retryOn " + retryOn + ", expected " + RETRY_ON_TRANSIENT +
+                    " or " + RETRY_ON_ALL);
+        }
+        Map<String, Object> backoff = (Map<String, Object>) config.getOrDefault("backoff", Collections.emptyMap());
+        long baseMillis = Util.toLong(backoff.getOrDefault("base", DEFAULT_BASE_MILLIS));
+        long maxMillis = Util.toLong(backoff.getOrDefault("max", DEFAULT_MAX_MILLIS));
+        double jitter = Util.toDouble(backoff.getOrDefault("jitter", DEFAULT_JITTER));
+        if (baseMillis < 0 || maxMillis < baseMillis) {
+            throw new IllegalArgumentException("backoff.base must be >= 0 and backoff.max must be >= backoff.base");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("backoff.jitter must be between 0 and 1");
+        }
+        return new RetryPolicy(maxRetries, retryOn.equals(RETRY_ON_ALL), baseMillis, maxMillis, jitter);
+    }
+
+    public long getMaxRetries() {
+        return maxRetries;
+    }
+
+    // whether the attempt number retry (0 for the first one) may be tried again after failing with e
+    public boolean shouldRetry(Exception e, long retry) {
+        return retry < maxRetries && (retryAll || isTransient(e));
+    }
+
+    // how long to wait before the retry following attempt number retry
+    public long delayMillis(long retry) {
+        long delay = maxMillis;
+        if (retry < Long.SIZE - 1 && baseMillis <= (maxMillis >> retry)) {
+            delay = baseMillis << retry;
+        }
+        return delay - (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    // whether the error or one of its causes is classified as transient by the database
+    public static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof Status.HasStatus &&
+                    ((Status.HasStatus) cause).status().code().classification() == Status.Classification.TransientError) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+}
@@ -216,18 +216,22 @@ public class Util {
     }
 
     public static <T> T retryInTx(Log log, GraphDatabaseService db, Function<Transaction, T> function, long retry, long maxRetries, Consumer<Long> callbackForRetry) {
+        return retryInTx(log, db, function, retry, RetryPolicy.fixed(maxRetries), callbackForRetry);
+    }
+
+    public static <T> T retryInTx(Log log, GraphDatabaseService db, Function<Transaction, T> function, long retry, RetryPolicy retryPolicy, Consumer<Long> callbackForRetry) {
         try (Transaction tx = db.beginTx()) {
             T result = function.apply(tx);
             tx.commit();
             return result;
         } catch (Exception e) {
-            if (retry >= maxRetries) throw e;
+            if (!retryPolicy.shouldRetry(e, retry)) throw e;
             if (log!=null) {
-                log.warn("Retrying operation %d of %d", retry, maxRetries);
+                log.warn("Retrying operation %d of %d", retry, retryPolicy.getMaxRetries());
             }
             callbackForRetry.accept(retry);
-            Util.sleep(100);
-            return retryInTx(log, db, function, retry + 1, maxRetries, callbackForRetry);
+            Util.sleep((int) Math.min(Integer.MAX_VALUE, retryPolicy.delayMillis(retry)));
+            return retryInTx(log, db, function, retry + 1, retryPolicy, callbackForRetry);
         }
     }
 
@@ -238,10 +242,20 @@ public class Util {
                                            long maxRetries,
                                            Consumer<Long> callbackForRetry,
                                            Consumer<Void> callbackAction) {
+        return inTxFuture(log, pool, db, function, RetryPolicy.fixed(maxRetries), callbackForRetry, callbackAction);
+    }
+
+    public static <T> Future<T> inTxFuture(Log log,
+                                           ExecutorService pool,
+                                           GraphDatabaseService db,
+                                           Function<Transaction, T> function,
+                                           RetryPolicy retryPolicy,
+                                           Consumer<Long> callbackForRetry,
+                                           Consumer<Void> callbackAction) {
         try {
             return pool.submit(() -> {
                 try {
-                    return retryInTx(log, db, function, 0, maxRetries, callbackForRetry);
+                    return retryInTx(log, db, function, 0, retryPolicy, callbackForRetry);
                 } finally {
                     callbackAction.accept(null);
                 }
@@ -1,10 +1,17 @@
 package apoc.warmup;
 
+import apoc.Pools;
 import apoc.util.Util;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.io.pagecache.PageCache;
 import org.neo4j.io.pagecache.PageCursor;
 import org.neo4j.io.pagecache.PagedFile;
+import org.neo4j.io.pagecache.tracing.cursor.PageCursorTracer;
 import org.neo4j.kernel.api.KernelTransaction;
 import org.neo4j.kernel.impl.coreapi.InternalTransaction;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
@@ -13,8 +20,11 @@ import org.neo4j.procedure.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -32,6 +42,15 @@ public class Warmup {
     public TerminationGuard guard;
     @Context
     public Log log;
+    @Context
+    public Pools pools;
+
+    // relationship types of the dataflow graph, apart from the *Source and *Destination types
+    private static final List<String> DATAFLOW_TYPES = List.of("varWrite", "parWrite", "retWrite", "varInfFunc",
+            "varInfluence", "call", "write", "pubVar", "pubTarget", "compCall", "compReturn", "dataflowOTF",
+            "dataflowNCFG", "nextCFGBlock");
+    private static final List<String> DATAFLOW_LABELS = List.of("cVariable", "cReturn");
+    private static final List<String> DATAFLOW_PROPERTIES = List.of("LINE_NUMBER", "cfgInvoke", "cfgReturn");
 
     static class PageResult {
         public final String file;
@@ -121,10 +140,109 @@ public class Warmup {
         return Stream.of(result);
     }
 
+    @Procedure
+    @Description("apoc.warmup.dataflow({labels:['cVariable','cReturn'], types:[dataflow, *Source, *Destination and nextCFGBlock types], properties:['LINE_NUMBER','cfgInvoke','cfgReturn']}) - loads the nodes and relationships used by dataflow queries into memory, one label or relationship type per thread")
+    public Stream<DataflowWarmupResult> dataflow(@Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        List<String> labels = (List<String>) config.getOrDefault("labels", DATAFLOW_LABELS);
+        List<String> properties = (List<String>) config.getOrDefault("properties", DATAFLOW_PROPERTIES);
+        List<String> types = (List<String>) config.get("types");
+        if (types == null) {
+            types = new ArrayList<>();
+            for (RelationshipType type : tx.getAllRelationshipTypesInUse()) {
+                String name = type.name();
+                if (DATAFLOW_TYPES.contains(name) || name.endsWith("Source") || name.endsWith("Destination")) {
+                    types.add(name);
+                }
+            }
+        }
+
+        // every label and type is scanned in a transaction of its own
+        List<Future<DataflowWarmupResult>> futures = new ArrayList<>();
+        for (String label : labels) {
+            futures.add(Util.inTxFuture(pools.getDefaultExecutorService(), db,
+                    txInThread -> warmupNodes(txInThread, label, properties)));
+        }
+        for (String type : types) {
+            futures.add(Util.inTxFuture(pools.getDefaultExecutorService(), db,
+                    txInThread -> warmupRelationships(txInThread, type, properties)));
+        }
+
+        List<DataflowWarmupResult> results = new ArrayList<>(futures.size());
+        for (Future<DataflowWarmupResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Error during dataflow warmup", e);
+            }
+        }
+        return results.stream();
+    }
+
+    // helper function: load the records, relationship chains and properties of the nodes with label
+    private DataflowWarmupResult warmupNodes(Transaction txInThread, String label, List<String> properties) {
+        long start = System.currentTimeMillis();
+        long records = 0;
+        try (ResourceIterator<Node> nodes = txInThread.findNodes(Label.label(label))) {
+            while (nodes.hasNext()) {
+                Node node = nodes.next();
+                node.getDegree();
+                for (String property : properties) {
+                    node.getProperty(property, null);
+                }
+                records++;
+                if (records % 1000 == 0 && Util.transactionIsTerminated(guard)) {
+                    break;
+                }
+            }
+        }
+        return new DataflowWarmupResult("label", label, records, txInThread, start);
+    }
+
+    // helper function: load the records and properties of the relationships of type, and of their end nodes
+    private DataflowWarmupResult warmupRelationships(Transaction txInThread, String type, List<String> properties) {
+        long start = System.currentTimeMillis();
+        long records = 0;
+        try (ResourceIterator<Relationship> rels = txInThread.findRelationships(RelationshipType.withName(type))) {
+            while (rels.hasNext()) {
+                Relationship rel = rels.next();
+                for (String property : properties) {
+                    rel.getProperty(property, null);
+                    rel.getStartNode().getProperty(property, null);
+                    rel.getEndNode().getProperty(property, null);
+                }
+                records++;
+                if (records % 1000 == 0 && Util.transactionIsTerminated(guard)) {
+                    break;
+                }
+            }
+        }
+        return new DataflowWarmupResult("type", type, records, txInThread, start);
+    }
+
     public boolean isSchema(File file) {
         return file.getAbsolutePath().contains(File.separator+"schema"+File.separator);
     }
 
+    public static class DataflowWarmupResult {
+        public final String kind;
+        public final String name;
+        public final long records;
+        public final long pins;             // pages pinned in the page cache, once per cursor that pins a page
+        public final long pageFaults;
+        public final long time;
+
+        public DataflowWarmupResult(String kind, String name, long records, Transaction txInThread, long start) {
+            PageCursorTracer tracer = ((InternalTransaction) txInThread).kernelTransaction().cursorContext()
+                    .getCursorTracer();
+            this.kind = kind;
+            this.name = name;
+            this.records = records;
+            this.pins = tracer.pins();
+            this.pageFaults = tracer.faults();
+            this.time = System.currentTimeMillis() - start;
+        }
+    }
+
     public static class WarmupResult {
         public final long pageSize;
         public final long totalTime;
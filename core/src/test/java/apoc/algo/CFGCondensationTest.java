@@ -0,0 +1,124 @@
+package apoc.algo;
+
+import apoc.cfgPath.ROSPath;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static apoc.dataflow.DataflowTestUtil.CFG_CONFIG;
+import static apoc.dataflow.DataflowTestUtil.SETUP_PROGRAM;
+import static apoc.dataflow.DataflowTestUtil.names;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.test.assertion.Assert.assertEventually;
+
+public class CFGCondensationTest {
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSPath.class);
+        db.executeTransactionally(SETUP_PROGRAM);
+    }
+
+    @Test
+    public void testReachability() {
+        awaitCondensation();
+        try (Transaction tx = db.beginTx()) {
+            CFGCondensation condensation = CFGCondensation.forDatabase(db, tx);
+            assertTrue(condensation.reachable(block(tx, "m1"), block(tx, "m4")));
+            assertTrue(condensation.reachable(block(tx, "m2"), block(tx, "f2")));
+            assertTrue(condensation.reachable(block(tx, "f1"), block(tx, "f3")));
+            assertFalse(condensation.reachable(block(tx, "m4"), block(tx, "m1")));
+            assertFalse(condensation.reachable(block(tx, "f2"), block(tx, "f1")));
+        }
+    }
+
+    @Test
+    public void testRebuiltInBackgroundAfterCommit() {
+        awaitCondensation();
+
+        // the commit does not rebuild the condensation, the next query starts a build and searches the CFG meanwhile
+        db.executeTransactionally("MATCH (m4:cfgBlock {name:'m4'}), (m1:cfgBlock {name:'m1'}) " +
+                "CREATE (m4)-[:nextCFGBlock]->(m1)");
+        try (Transaction tx = db.beginTx()) {
+            assertNull(CFGCondensation.forDatabase(db, tx));
+        }
+
+        awaitCondensation();
+        try (Transaction tx = db.beginTx()) {
+            CFGCondensation condensation = CFGCondensation.forDatabase(db, tx);
+            assertTrue(condensation.reachable(block(tx, "m4"), block(tx, "m1")));
+            assertEquals(condensation.componentOf(block(tx, "m1")), condensation.componentOf(block(tx, "m4")));
+        }
+    }
+
+    @Test
+    public void testSharedByProcedures() {
+        awaitCondensation();
+
+        // a procedure is given a GraphDatabaseService of its own for the same database
+        GraphDatabaseService database = db.getManagementService().database(db.databaseName());
+        try (Transaction tx = database.beginTx()) {
+            assertNotNull(CFGCondensation.forDatabase(database, tx));
+        }
+    }
+
+    @Test
+    public void testNotUsedWithUncommittedChanges() {
+        awaitCondensation();
+        try (Transaction tx = db.beginTx()) {
+            tx.execute("MATCH (f2:cfgBlock {name:'f2'}), (f1:cfgBlock {name:'f1'}) CREATE (f2)-[:nextCFGBlock]->(f1)")
+                    .close();
+            assertNull(CFGCondensation.forDatabase(db, tx));
+            tx.rollback();
+        }
+    }
+
+    @Test
+    public void testSameResultWithoutCondensation() {
+        String query = "MATCH (s:cVariable {name:'s'}) " +
+                "RETURN apoc.cfgPath.rosFindPaths(s, {relSeq:'varWrite,parWrite,varWrite,retWrite,varWrite', " +
+                "config:" + CFG_CONFIG + "}) AS paths";
+
+        // the first query runs before the condensation is built
+        List<String> searched = db.executeTransactionally(query, Map.of(),
+                result -> names((List<Path>) result.next().get("paths")));
+        awaitCondensation();
+        List<String> condensed = db.executeTransactionally(query, Map.of(),
+                result -> names((List<Path>) result.next().get("paths")));
+
+        assertEquals(List.of("s>x>p>q>r>y"), searched);
+        assertEquals(searched, condensed);
+    }
+
+    private void awaitCondensation() {
+        assertEventually(() -> {
+            try (Transaction tx = db.beginTx()) {
+                return CFGCondensation.forDatabase(db, tx) != null;
+            }
+        }, (built) -> built, 30L, TimeUnit.SECONDS);
+    }
+
+    private static long block(Transaction tx, String name) {
+        Node node = tx.findNode(Label.label("cfgBlock"), "name", name);
+        return node.getId();
+    }
+}
@@ -0,0 +1,140 @@
+package apoc.algo;
+
+import apoc.cfgPath.CFGValidationHelper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphalgo.BasicEvaluationContext;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CFGReachabilityTest {
+
+    private static final int BLOCKS = 12;
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() {
+        // a random CFG with loops, and variables that are written in some of its blocks
+        Random random = new Random(42);
+        List<List<Integer>> edges = new ArrayList<>();
+        for (int i = 0; i < 2 * BLOCKS; i++) {
+            edges.add(List.of(random.nextInt(BLOCKS), random.nextInt(BLOCKS)));
+        }
+        List<List<Integer>> writes = new ArrayList<>();
+        for (int i = 0; i < BLOCKS / 2; i++) {
+            writes.add(List.of(random.nextInt(3), random.nextInt(BLOCKS)));
+        }
+        db.executeTransactionally("UNWIND range(0, $blocks - 1) AS i CREATE (:cfgBlock {id:i})", Map.of("blocks", BLOCKS));
+        db.executeTransactionally("UNWIND $edges AS e MATCH (a:cfgBlock {id:e[0]}), (b:cfgBlock {id:e[1]}) " +
+                "CREATE (a)-[:nextCFGBlock]->(b)", Map.of("edges", edges));
+        db.executeTransactionally("UNWIND range(0, 2) AS i CREATE (v:cVariable {id:i})-[:varWrite]->(:cVariable {id:i + 10}) " +
+                "CREATE (v)-[:pubVar]->(:rosTopic)", Map.of());
+        db.executeTransactionally("UNWIND $writes AS w MATCH (v:cVariable {id:w[0]}), (b:cfgBlock {id:w[1]}) " +
+                "CREATE (v)-[:varWriteDestination]->(b), (v)-[:viDestination]->(b)", Map.of("writes", writes));
+    }
+
+    @Test
+    public void testSameAsShortestPath() {
+        try (Transaction tx = db.beginTx()) {
+            CFGShortestPath shortestPath = new CFGShortestPath(new BasicEvaluationContext(tx, db), Integer.MAX_VALUE,
+                    CFGValidationHelper.buildPathExpander("nextCFGBlock>"));
+            CFGReachability reachability = CFGReachability.forThread();
+            List<Relationship> dataflowRels = new ArrayList<>();
+            tx.getAllRelationships().forEach(rel -> {
+                if (rel.isType(RelationshipType.withName("varWrite")) || rel.isType(RelationshipType.withName("pubVar"))) {
+                    dataflowRels.add(rel);
+                }
+            });
+
+            int reachable = 0;
+            for (Relationship rel : dataflowRels) {
+                for (int i = 0; i < BLOCKS; i++) {
+                    for (int j = 0; j < BLOCKS; j++) {
+                        Node start = block(tx, i);
+                        Node end = block(tx, j);
+                        boolean expected = shortestPath.findSinglePath(start, end, rel) != null;
+                        assertEquals(rel.getType().name() + " " + i + "->" + j, expected,
+                                reachability.reachable(start, end, rel));
+                        reachable += expected ? 1 : 0;
+                    }
+                }
+            }
+            // the graph has both reachable and unreachable pairs
+            assertTrue(reachable > 0);
+            assertTrue(reachable < dataflowRels.size() * BLOCKS * BLOCKS);
+        }
+    }
+
+    @Test
+    public void testPath() {
+        try (Transaction tx = db.beginTx()) {
+            CFGReachability reachability = CFGReachability.forThread();
+            for (int i = 0; i < BLOCKS; i++) {
+                for (int j = 0; j < BLOCKS; j++) {
+                    Node start = block(tx, i);
+                    Node end = block(tx, j);
+                    if (!reachability.search(start, end, new long[0])) {
+                        assertNull(reachability.path());
+                        continue;
+                    }
+                    // the path follows nextCFGBlock relationships from start to end
+                    long[] path = reachability.path();
+                    assertEquals(start.getId(), path[0]);
+                    assertEquals(end.getId(), path[path.length - 1]);
+                    for (int k = 1; k < path.length; k++) {
+                        long next = path[k];
+                        boolean connected = false;
+                        for (Relationship rel : tx.getNodeById(path[k - 1]).getRelationships(
+                                Direction.OUTGOING, RelationshipType.withName("nextCFGBlock"))) {
+                            connected |= rel.getEndNodeId() == next;
+                        }
+                        assertTrue(connected);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBlockedNodes() {
+        db.executeTransactionally("MATCH (b:cfgBlock) DETACH DELETE b");
+        db.executeTransactionally("CREATE (:cfgBlock {id:0})-[:nextCFGBlock]->(b:cfgBlock {id:1})-[:nextCFGBlock]->(:cfgBlock {id:2}), " +
+                "(b)-[:nextCFGBlock]->(b)");
+        try (Transaction tx = db.beginTx()) {
+            CFGReachability reachability = CFGReachability.forThread();
+            Node b0 = block(tx, 0);
+            Node b1 = block(tx, 1);
+            Node b2 = block(tx, 2);
+            assertTrue(reachability.search(b0, b2, new long[0]));
+            assertArrayEquals(new long[] {b0.getId(), b1.getId(), b2.getId()}, reachability.path());
+            // intermediate blocks are blocked, the ends are not
+            assertFalse(reachability.search(b0, b2, new long[] {b1.getId()}));
+            assertTrue(reachability.search(b0, b1, new long[] {b1.getId(), b0.getId()}));
+            assertTrue(reachability.search(b1, b1, new long[] {b1.getId()}));
+        }
+    }
+
+    private static Node block(Transaction tx, int id) {
+        return tx.findNode(Label.label("cfgBlock"), "id", id);
+    }
+}
@@ -0,0 +1,87 @@
+package apoc.algo;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.concurrent.TimeUnit;
+
+import static apoc.dataflow.DataflowTestUtil.SETUP_PROGRAM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.test.assertion.Assert.assertEventually;
+
+public class CallGraphReachabilityTest {
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        db.executeTransactionally(SETUP_PROGRAM);
+    }
+
+    @Test
+    public void testReachability() {
+        awaitSummary();
+        try (Transaction tx = db.beginTx()) {
+            // main (s, x), foo (p, q) and the rest of main after the call (r, y)
+            CallGraphReachability summary = CallGraphReachability.forDatabase(db, tx);
+            assertEquals(3, summary.getFunctionCount());
+            assertTrue(CallGraphReachability.mayReach(db, tx, variable(tx, "s"), variable(tx, "y")));
+            assertTrue(CallGraphReachability.mayReach(db, tx, variable(tx, "x"), variable(tx, "q")));
+            assertFalse(CallGraphReachability.mayReach(db, tx, variable(tx, "p"), variable(tx, "s")));
+            assertFalse(CallGraphReachability.mayReach(db, tx, variable(tx, "y"), variable(tx, "p")));
+        }
+    }
+
+    @Test
+    public void testMayReachWhileRebuilt() {
+        awaitSummary();
+
+        // the commit does not rebuild the summary, every flow may exist until the next one is ready; the new flow is
+        //      never ruled out by the summary of the graph before the commit, even if the next one is ready by now
+        db.executeTransactionally("MATCH (y:cVariable {name:'y'}), (p:cVariable {name:'p'}) " +
+                "CREATE (y)-[:parWrite]->(p)");
+        try (Transaction tx = db.beginTx()) {
+            assertNull(CallGraphReachability.forDatabase(db, tx));
+            assertTrue(CallGraphReachability.mayReach(db, tx, variable(tx, "y"), variable(tx, "p")));
+        }
+
+        awaitSummary();
+        try (Transaction tx = db.beginTx()) {
+            assertTrue(CallGraphReachability.mayReach(db, tx, variable(tx, "y"), variable(tx, "p")));
+            assertFalse(CallGraphReachability.mayReach(db, tx, variable(tx, "p"), variable(tx, "s")));
+        }
+    }
+
+    @Test
+    public void testMayReachWithUncommittedChanges() {
+        awaitSummary();
+        try (Transaction tx = db.beginTx()) {
+            tx.execute("MATCH (y:cVariable {name:'y'}), (s:cVariable {name:'s'}) CREATE (y)-[:parWrite]->(s)").close();
+            assertNull(CallGraphReachability.forDatabase(db, tx));
+            assertTrue(CallGraphReachability.mayReach(db, tx, variable(tx, "p"), variable(tx, "s")));
+            tx.rollback();
+        }
+    }
+
+    private void awaitSummary() {
+        assertEventually(() -> {
+            try (Transaction tx = db.beginTx()) {
+                return CallGraphReachability.forDatabase(db, tx) != null;
+            }
+        }, (built) -> built, 30L, TimeUnit.SECONDS);
+    }
+
+    private static Node variable(Transaction tx, String name) {
+        return tx.findNode(Label.label("cVariable"), "name", name);
+    }
+}
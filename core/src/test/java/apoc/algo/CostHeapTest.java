@@ -0,0 +1,55 @@
+package apoc.algo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CostHeapTest {
+
+    @Test
+    public void testPollsInCostOrder() {
+        // more items than the initial capacity, so that the arrays grow
+        Random random = new Random(42);
+        CostHeap<Double> heap = new CostHeap<>();
+        List<Double> costs = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            double cost = random.nextInt(100) / 4.0d;
+            costs.add(cost);
+            heap.add(cost, cost);
+        }
+        costs.sort(null);
+
+        assertEquals(500, heap.size());
+        for (double cost : costs) {
+            assertEquals(cost, heap.peekCost(), 0.0d);
+            assertEquals(cost, heap.poll(), 0.0d);
+        }
+        assertTrue(heap.isEmpty());
+        assertNull(heap.poll());
+    }
+
+    @Test
+    public void testEqualCostsInInsertionOrder() {
+        CostHeap<String> heap = new CostHeap<>();
+        heap.add("b1", 2);
+        heap.add("a1", 1);
+        heap.add("b2", 2);
+        heap.add("a2", 1);
+        assertEquals("a1", heap.poll());
+        // added after some items were taken out, still behind the earlier ones of the same cost
+        heap.add("a3", 1);
+        heap.add("b3", 2);
+
+        List<String> polled = new ArrayList<>();
+        while (!heap.isEmpty()) {
+            polled.add(heap.poll());
+        }
+        assertEquals(List.of("a2", "a3", "b1", "b2", "b3"), polled);
+    }
+}
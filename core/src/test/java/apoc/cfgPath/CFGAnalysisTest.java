@@ -0,0 +1,162 @@
+package apoc.cfgPath;
+
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class CFGAnalysisTest {
+
+    // v is written in b1 and again in b2, w only in b2; w is read in b2, b3 and b4
+    private static final String SETUP_BRANCH = "CREATE (b1:cfgBlock {name:'b1'}), (b2:cfgBlock {name:'b2'}), (b3:cfgBlock {name:'b3'}), (b4:cfgBlock {name:'b4'})\n" +
+            "CREATE (b1)-[:nextCFGBlock]->(b2), (b1)-[:nextCFGBlock]->(b3), (b2)-[:nextCFGBlock]->(b4), (b3)-[:nextCFGBlock]->(b4)\n" +
+            "CREATE (i:cVariable {name:'i'}), (j:cVariable {name:'j'}), (v:cVariable {name:'v'}), (w:cVariable {name:'w'})\n" +
+            "CREATE (o2:cVariable {name:'o2'}), (o3:cVariable {name:'o3'}), (o4:cVariable {name:'o4'})\n" +
+            "CREATE (i)-[:varWrite]->(v), (i)-[:varWriteSource]->(b1), (v)-[:varWriteDestination]->(b1)\n" +
+            "CREATE (j)-[:varWrite]->(v), (j)-[:varWriteSource]->(b2), (v)-[:varWriteDestination]->(b2)\n" +
+            "CREATE (j)-[:varWrite]->(w), (w)-[:varWriteDestination]->(b2)\n" +
+            "CREATE (w)-[:varWrite]->(o2), (w)-[:varWriteSource]->(b2), (o2)-[:varWriteDestination]->(b2)\n" +
+            "CREATE (w)-[:varWrite]->(o3), (w)-[:varWriteSource]->(b3), (o3)-[:varWriteDestination]->(b3)\n" +
+            "CREATE (w)-[:varWrite]->(o4), (w)-[:varWriteSource]->(b4), (o4)-[:varWriteDestination]->(b4)";
+
+    // n is written before the loop l2-l3 and in its body
+    private static final String SETUP_LOOP = "CREATE (l1:cfgBlock {name:'l1'}), (l2:cfgBlock {name:'l2'}), (l3:cfgBlock {name:'l3'}), (l4:cfgBlock {name:'l4'})\n" +
+            "CREATE (l1)-[:nextCFGBlock]->(l2), (l2)-[:nextCFGBlock]->(l3), (l3)-[:nextCFGBlock]->(l2), (l3)-[:nextCFGBlock]->(l4)\n" +
+            "CREATE (i:cVariable {name:'i'}), (n:cVariable {name:'n'})\n" +
+            "CREATE (i)-[:varWrite]->(n), (i)-[:varWriteSource]->(l1), (n)-[:varWriteDestination]->(l1)\n" +
+            "CREATE (n)-[:varWrite]->(n), (n)-[:varWriteSource]->(l3), (n)-[:varWriteDestination]->(l3)";
+
+    // c1 calls h1; the parameter p is reassigned in h2, the parameter k is read in h2 and only reassigned in h3
+    private static final String SETUP_PARAMETERS = "CREATE (c1:cfgBlock {name:'c1'}), (h1:cfgBlock {name:'h1'}), (h2:cfgBlock {name:'h2'}), (h3:cfgBlock {name:'h3'})\n" +
+            "CREATE (c1)-[:nextCFGBlock {cfgInvoke:'1'}]->(h1), (h1)-[:nextCFGBlock]->(h2), (h2)-[:nextCFGBlock]->(h3)\n" +
+            "CREATE (a:cVariable {name:'a'}), (p:cVariable {name:'p'}), (k:cVariable {name:'k'}), (u:cVariable {name:'u'}), (o:cVariable {name:'o'})\n" +
+            "CREATE (a)-[:parWrite]->(p), (a)-[:parWriteSource]->(c1), (p)-[:parWriteDestination]->(h1)\n" +
+            "CREATE (a)-[:parWrite]->(k), (a)-[:parWriteSource]->(c1)\n" +
+            "CREATE (u)-[:varWrite]->(p), (u)-[:varWriteSource]->(h2), (p)-[:varWriteDestination]->(h2)\n" +
+            "CREATE (k)-[:varWrite]->(o), (k)-[:varWriteSource]->(h2), (o)-[:varWriteDestination]->(h2)\n" +
+            "CREATE (u)-[:varWrite]->(k), (u)-[:varWriteSource]->(h3), (k)-[:varWriteDestination]->(h3)";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, CFGAnalysis.class);
+    }
+
+    @Test
+    public void testReachingDefsBranch() {
+        db.executeTransactionally(SETUP_BRANCH);
+        assertEquals(List.of(), reachingDefs("b1"));
+        assertEquals(List.of("v@b1"), reachingDefs("b2"));
+        assertEquals(List.of("v@b1"), reachingDefs("b3"));
+        assertEquals(List.of("o2@b2", "o3@b3", "v@b1", "v@b2", "w@b2"), reachingDefs("b4"));
+    }
+
+    @Test
+    public void testReachingDefsLoop() {
+        db.executeTransactionally(SETUP_LOOP);
+        assertEquals(List.of("n@l1", "n@l3"), reachingDefs("l2"));
+        assertEquals(List.of("n@l1", "n@l3"), reachingDefs("l3"));
+        assertEquals(List.of("n@l3"), reachingDefs("l4"));
+    }
+
+    @Test
+    public void testReachingDefsParameters() {
+        db.executeTransactionally(SETUP_PARAMETERS);
+        // k is defined on entry, p by its parWrite
+        assertEquals(List.of("k@h1", "p@h1"), reachingDefs("h2"));
+        assertEquals(List.of("k@h1", "o@h2", "p@h2"), reachingDefs("h3"));
+    }
+
+    @Test
+    public void testReachingDefsUncommittedChanges() {
+        db.executeTransactionally(SETUP_LOOP);
+        assertEquals(List.of("n@l3"), reachingDefs("l4"));
+
+        try (Transaction tx = db.beginTx()) {
+            tx.execute("MATCH (i:cVariable {name:'i'}), (l4:cfgBlock {name:'l4'}), (l2:cfgBlock {name:'l2'}) " +
+                    "CREATE (l2)-[:nextCFGBlock]->(l4), (i)-[:varWrite]->(:cVariable {name:'m'})-[:varWriteDestination]->(l2)").close();
+            assertEquals(List.of("m@l2", "n@l1", "n@l3"), reachingDefs(tx, "l4"));
+            tx.rollback();
+        }
+        assertEquals(List.of("n@l3"), reachingDefs("l4"));
+    }
+
+    @Test
+    public void testConnectionNodesBranch() {
+        db.executeTransactionally(SETUP_BRANCH);
+        try (Transaction tx = db.beginTx()) {
+            // w is read in the block that writes it and after the branches join, but never reaches b3
+            assertEquals(List.of("b2>b2"), connectionNodes(tx, "w", "o2"));
+            assertEquals(List.of(), connectionNodes(tx, "w", "o3"));
+            assertEquals(List.of("b4>b4"), connectionNodes(tx, "w", "o4"));
+            // i is not defined in the function
+            assertEquals(List.of("b1>b1"), connectionNodes(tx, "i", "v"));
+        }
+    }
+
+    @Test
+    public void testConnectionNodesLoop() {
+        db.executeTransactionally(SETUP_LOOP);
+        try (Transaction tx = db.beginTx()) {
+            assertEquals(List.of("l3>l3"), connectionNodes(tx, "n", "n"));
+        }
+    }
+
+    @Test
+    public void testConnectionNodesReassignedParameter() {
+        db.executeTransactionally(SETUP_PARAMETERS);
+        try (Transaction tx = db.beginTx()) {
+            // k is read before its only local definition, its value comes from the caller
+            assertEquals(List.of("h2>h2"), connectionNodes(tx, "k", "o"));
+            assertEquals(List.of("h3>h3"), connectionNodes(tx, "u", "k"));
+        }
+    }
+
+    private List<String> reachingDefs(String block) {
+        try (Transaction tx = db.beginTx()) {
+            return reachingDefs(tx, block);
+        }
+    }
+
+    private static List<String> reachingDefs(Transaction tx, String block) {
+        List<String> defs = new ArrayList<>();
+        tx.execute("MATCH (b:cfgBlock {name:$name}) CALL apoc.cfgPath.reachingDefs(b) YIELD variable, definition " +
+                "RETURN variable.name + '@' + definition.name AS def", Map.of("name", block))
+                .forEachRemaining(row -> defs.add((String) row.get("def")));
+        defs.sort(null);
+        return defs;
+    }
+
+    // source and destination CFG blocks of the varWrite relationship between two variables
+    private List<String> connectionNodes(Transaction tx, String from, String to) {
+        Node start = tx.findNode(Label.label("cVariable"), "name", from);
+        Relationship edge = null;
+        for (Relationship rel : start.getRelationships(RelationshipType.withName("varWrite"))) {
+            if (rel.getStartNode().equals(start) && rel.getEndNode().getProperty("name").equals(to)) {
+                edge = rel;
+            }
+        }
+        List<String> nodes = new ArrayList<>();
+        for (List<Node> pair : new CFGValidationHelper(db, tx).getConnectionNodesAll(edge, new HashMap<>())) {
+            nodes.add(pair.get(0).getProperty("name") + ">" + pair.get(1).getProperty("name"));
+        }
+        nodes.sort(null);
+        return nodes;
+    }
+}
@@ -0,0 +1,84 @@
+package apoc.cfgPath;
+
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Path;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.List;
+import java.util.Map;
+
+import static apoc.dataflow.DataflowTestUtil.CFG_CONFIG;
+import static apoc.dataflow.DataflowTestUtil.SETUP_PROGRAM;
+import static apoc.dataflow.DataflowTestUtil.names;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ROSPathTest {
+
+    // two diamonds in a row, with a cycle back from the end: every path through c and e shares its future
+    private static final String SETUP_DIAMONDS = "CREATE (s:cVariable {name:'s'}), (a:cVariable {name:'a'}), (b:cVariable {name:'b'}), (c:cVariable {name:'c'})\n" +
+            "CREATE (d1:cVariable {name:'d1'}), (d2:cVariable {name:'d2'}), (e:cVariable {name:'e'})\n" +
+            "CREATE (s)-[:varWrite]->(a), (s)-[:varWrite]->(b), (a)-[:varWrite]->(c), (b)-[:varWrite]->(c)\n" +
+            "CREATE (c)-[:varWrite]->(d1), (c)-[:varWrite]->(d2), (d1)-[:varWrite]->(e), (d2)-[:varWrite]->(e), (e)-[:varWrite]->(a)";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSPath.class);
+    }
+
+    @Test
+    public void testAllPathsSameAsCypher() {
+        db.executeTransactionally(SETUP_DIAMONDS);
+        List<String> paths = rosFindPaths("s", "{relSeq:'varWrite', repeat:true, cfg:false}");
+        List<String> expected = db.executeTransactionally("MATCH p = (:cVariable {name:'s'})-[:varWrite*]->() " +
+                "RETURN collect(p) AS paths", Map.of(), result -> names((List<Path>) result.next().get("paths")));
+
+        // relationships are unique within a path, so the cycle through e can only be taken after entering c from b
+        assertEquals(expected, paths);
+        assertTrue(paths.contains("s>b>c>d1>e>a>c>d2>e"));
+        assertFalse(paths.contains("s>a>c>d1>e>a>c>d2>e"));
+    }
+
+    @Test
+    public void testAllPathsWithEndNode() {
+        db.executeTransactionally(SETUP_DIAMONDS);
+        List<String> paths = db.executeTransactionally("MATCH (s:cVariable {name:'s'}), (e:cVariable {name:'e'}) " +
+                "RETURN apoc.cfgPath.rosFindPaths(s, {relSeq:'varWrite', repeat:true, cfg:false, endN:e}) AS paths",
+                Map.of(), result -> names((List<Path>) result.next().get("paths")));
+        List<String> expected = db.executeTransactionally("MATCH p = (:cVariable {name:'s'})-[:varWrite*]->(:cVariable {name:'e'}) " +
+                "RETURN collect(p) AS paths", Map.of(), result -> names((List<Path>) result.next().get("paths")));
+        assertEquals(expected, paths);
+        assertEquals(6, paths.size());
+    }
+
+    @Test
+    public void testAllPathsMaxDepth() {
+        db.executeTransactionally(SETUP_DIAMONDS);
+        List<String> paths = rosFindPaths("s", "{relSeq:'varWrite', repeat:true, cfg:false, maxDepth:3}");
+        assertEquals(List.of("s>a", "s>a>c", "s>a>c>d1", "s>a>c>d2", "s>b", "s>b>c", "s>b>c>d1", "s>b>c>d2"), paths);
+    }
+
+    @Test
+    public void testAllPathsSameAsShortestWithCFG() {
+        db.executeTransactionally(SETUP_PROGRAM);
+        String settings = "relSeq:'varWrite,parWrite,varWrite,retWrite,varWrite', config:" + CFG_CONFIG;
+        List<String> all = rosFindPaths("s", "{" + settings + "}");
+        List<String> shortest = rosFindPaths("s", "{" + settings + ", shortest:true}");
+        assertEquals(List.of("s>x>p>q>r>y"), all);
+        assertEquals(shortest, all);
+    }
+
+    private List<String> rosFindPaths(String start, String config) {
+        return db.executeTransactionally("MATCH (s:cVariable {name:$start}) " +
+                        "RETURN apoc.cfgPath.rosFindPaths(s, " + config + ") AS paths", Map.of("start", start),
+                result -> names((List<Path>) result.next().get("paths")));
+    }
+}
@@ -0,0 +1,163 @@
+package apoc.dataflow;
+
+import apoc.cfgPath.ROSPath;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static apoc.dataflow.DataflowTestUtil.names;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CostModelTest {
+
+    // three ways from s to t: through a on close lines, through b far away, and a longer one through a parWrite
+    private static final String SETUP_LINES = "CREATE (s:cVariable {name:'s', LINE_NUMBER:1}), (a:cVariable {name:'a', LINE_NUMBER:2}), " +
+            "(b:cVariable {name:'b', LINE_NUMBER:40}), (c:cVariable {name:'c', LINE_NUMBER:1}), (d:cVariable {name:'d', LINE_NUMBER:2}), " +
+            "(t:cVariable {name:'t', LINE_NUMBER:3})\n" +
+            "CREATE (s)-[:varWrite]->(a)-[:varWrite]->(t), (s)-[:varWrite]->(b)-[:varWrite]->(t)\n" +
+            "CREATE (s)-[:parWrite]->(c)-[:varWrite]->(d)-[:varWrite]->(t)";
+
+    // two ways from s to t through u and v; u is read three CFG blocks after it is written, v one block after
+    private static final String SETUP_BLOCKS = "CREATE (k1:cfgBlock {name:'k1'}), (k2:cfgBlock {name:'k2'}), (k3:cfgBlock {name:'k3'}), (k4:cfgBlock {name:'k4'})\n" +
+            "CREATE (k1)-[:nextCFGBlock]->(k2), (k2)-[:nextCFGBlock]->(k3), (k3)-[:nextCFGBlock]->(k4)\n" +
+            "CREATE (s:cVariable {name:'s'}), (u:cVariable {name:'u'}), (v:cVariable {name:'v'}), (t:cVariable {name:'t'})\n" +
+            "CREATE (s)-[:varWrite]->(u), (u)-[:varWriteDestination]->(k1), (u)-[:varWrite]->(t), (u)-[:varWriteSource]->(k4)\n" +
+            "CREATE (s)-[:varWrite]->(v), (v)-[:varWriteDestination]->(k1), (v)-[:varWrite]->(t), (v)-[:varWriteSource]->(k2)";
+
+    // a cycle between x and y on the way from s to t, which a path can only go round by taking x>y twice
+    private static final String SETUP_CYCLE = "CREATE (s:cVariable {name:'s'}), (x:cVariable {name:'x'}), (y:cVariable {name:'y'}), (t:cVariable {name:'t'})\n" +
+            "CREATE (s)-[:varWrite]->(x), (x)-[:varWrite]->(y), (y)-[:varWrite]->(x), (y)-[:varWrite]->(t)";
+
+    private static final String FIND_PATHS = "MATCH (s:cVariable {name:'s'}), (t:cVariable {name:'t'}) WITH s, t, $config AS config " +
+            "RETURN apoc.cfgPath.rosFindPaths(s, config {.*, relSeq:'varWrite|parWrite', repeat:true, cfg:false, endN:t}) AS paths";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSPath.class, ROSFindPath.class);
+    }
+
+    @Test
+    public void testPathsInCostOrder() {
+        db.executeTransactionally(SETUP_LINES);
+
+        // breadth first: the longer path comes last
+        List<String> bfs = findPaths(Map.of());
+        assertEquals(3, bfs.size());
+        assertEquals("s>c>d>t", bfs.get(2));
+
+        // s>a>t costs 2 + 2 lines, s>c>d>t 3 + 2 lines, s>b>t 2 + 76 lines
+        List<String> cheapest = findPaths(Map.of("order", "cost", "lineWeight", 1));
+        assertEquals(List.of("s>a>t", "s>c>d>t", "s>b>t"), cheapest);
+        // the same paths as the breadth first search
+        assertEquals(sorted(bfs), sorted(cheapest));
+
+        // an expensive parWrite moves the longer path to the end
+        assertEquals(List.of("s>a>t", "s>b>t", "s>c>d>t"),
+                findPaths(Map.of("order", "cost", "lineWeight", 1, "weights", Map.of("parWrite", 100))));
+    }
+
+    @Test
+    public void testLimit() {
+        db.executeTransactionally(SETUP_LINES);
+        assertEquals(List.of("s>a>t"), findPaths(Map.of("order", "cost", "lineWeight", 1, "limit", 1)));
+        assertEquals(List.of("s>a>t", "s>c>d>t"), findPaths(Map.of("order", "cost", "lineWeight", 1, "limit", 2)));
+    }
+
+    @Test
+    public void testCfgWeight() {
+        db.executeTransactionally(SETUP_BLOCKS);
+        List<String> paths = findPaths(Map.of("order", "cost"));
+        assertEquals(2, paths.size());
+        // the CFG distance of v is 1 and the one of u is 3
+        assertEquals(List.of("s>v>t", "s>u>t"), findPaths(Map.of("order", "cost", "cfgWeight", 1)));
+        assertEquals(List.of("s>v>t"), findPaths(Map.of("order", "cost", "cfgWeight", 1, "limit", 1)));
+    }
+
+    @Test
+    public void testRosAllShortestInCostOrder() {
+        db.executeTransactionally(SETUP_LINES);
+        String query = "MATCH (s:cVariable {name:'s'}), (t:cVariable {name:'t'}) " +
+                "RETURN apoc.dataflow.rosAllShortest(s, t, null, null, false, $config) AS paths";
+
+        // breadth first: a shortest path, the first one found since none returns through a call site
+        List<String> shortest = db.executeTransactionally(query, Map.of("config", Map.of()),
+                result -> names((List<Path>) result.next().get("paths")));
+        assertEquals(1, shortest.size());
+        assertTrue(List.of("s>a>t", "s>b>t").containsAll(shortest));
+
+        // cheapest first, including the longer path
+        List<String> cheapest = db.executeTransactionally(query,
+                Map.of("config", Map.of("order", "cost", "lineWeight", 1, "limit", 2)),
+                result -> inOrder((List<Path>) result.next().get("paths")));
+        assertEquals(List.of("s>a>t", "s>c>d>t"), cheapest);
+    }
+
+    @Test
+    public void testNoRepeatedRelationships() {
+        db.executeTransactionally(SETUP_CYCLE);
+        Map<String, Object> config = Map.of("order", "cost", "limit", 2);
+        List<String> allShortest = db.executeTransactionally("MATCH (s:cVariable {name:'s'}), (t:cVariable {name:'t'}) " +
+                        "RETURN apoc.dataflow.rosAllShortest(s, t, null, null, false, $config) AS paths",
+                Map.of("config", config), result -> inOrder((List<Path>) result.next().get("paths")));
+
+        // s>x>y>x>y>t would be the second cheapest path, but it takes x>y twice
+        assertEquals(List.of("s>x>y>t"), allShortest);
+        assertEquals(List.of("s>x>y>t"), findPaths(config));
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        db.executeTransactionally(SETUP_LINES);
+        assertInvalid(Map.of("order", "fastest"), "Unknown order fastest");
+        assertInvalid(Map.of("order", "cost", "lineWeight", -1), "Cost lineWeight must not be negative");
+        assertInvalid(Map.of("order", "cost", "weights", Map.of("varWrite", -2)), "Cost varWrite must not be negative");
+    }
+
+    private void assertInvalid(Map<String, Object> config, String message) {
+        try {
+            findPaths(config);
+        } catch (QueryExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+            return;
+        }
+        throw new AssertionError("Expected the configuration " + config + " to be rejected");
+    }
+
+    private List<String> findPaths(Map<String, Object> config) {
+        return db.executeTransactionally(FIND_PATHS, Map.of("config", config),
+                result -> inOrder((List<Path>) result.next().get("paths")));
+    }
+
+    private static List<String> sorted(List<String> values) {
+        List<String> copy = new ArrayList<>(values);
+        copy.sort(null);
+        return copy;
+    }
+
+    // the names of the nodes of each path, in the order the paths were returned
+    private static List<String> inOrder(List<Path> paths) {
+        List<String> names = new ArrayList<>();
+        for (Path path : paths) {
+            StringBuilder builder = new StringBuilder(String.valueOf(path.startNode().getProperty("name")));
+            for (Relationship rel : path.relationships()) {
+                builder.append('>').append(rel.getEndNode().getProperty("name"));
+            }
+            names.add(builder.toString());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,86 @@
+package apoc.dataflow;
+
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static apoc.dataflow.DataflowTestUtil.SETUP_PROGRAM;
+import static apoc.dataflow.DataflowTestUtil.SETUP_ROS;
+import static org.junit.Assert.assertEquals;
+
+public class DataflowAnalysisTest {
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, DataflowAnalysis.class);
+    }
+
+    @Test
+    public void testAnalyzeAllByFunction() {
+        db.executeTransactionally(SETUP_PROGRAM);
+        // x is passed to foo and q returned from it, each call crosses a function boundary
+        assertEquals(List.of("s>p:1", "s>q:1", "s>x:0", "s>y:2"),
+                flows(List.of("s"), List.of("x", "p", "q", "y"), Map.of()));
+        assertEquals(List.of(), flows(List.of("y"), List.of("s"), Map.of()));
+    }
+
+    @Test
+    public void testAnalyzeAllByComponent() {
+        db.executeTransactionally(SETUP_ROS);
+        db.executeTransactionally("MATCH (v:cVariable) SET v.compName = substring(v.name, 0, 1)");
+        Map<String, Object> byComponent = Map.of("partitionBy", "compName");
+
+        // topics have no compName and form partitions of their own
+        List<String> flows = flows(List.of("a1"), List.of("b2", "b3", "c2"), byComponent);
+        assertEquals(List.of("a1>b2:2", "a1>b3:2", "a1>c2:4"), flows);
+        assertEquals(flows, flows(List.of("a1"), List.of("b2", "b3", "c2"), Map.of("partitionBy", "function")));
+
+        // with one component for the whole program, nothing crosses a boundary
+        db.executeTransactionally("MATCH (n) SET n.compName = 'all'");
+        assertEquals(List.of("a1>b2:0", "a1>b3:0", "a1>c2:0"),
+                flows(List.of("a1"), List.of("b2", "b3", "c2"), byComponent));
+    }
+
+    @Test
+    public void testAnalyzeAllInfluence() {
+        db.executeTransactionally(SETUP_ROS);
+        assertEquals(List.of(), flows(List.of("a1"), List.of("b4", "c3"), Map.of()));
+        assertEquals(List.of("a1>b4:2", "a1>c3:4"), flows(List.of("a1"), List.of("b4", "c3"), Map.of("influence", true)));
+    }
+
+    @Test
+    public void testAnalyzeAllWithLabels() {
+        db.executeTransactionally(SETUP_PROGRAM);
+        db.executeTransactionally("MATCH (v:cVariable) WHERE v.name IN ['s', 'p'] SET v:Source");
+        db.executeTransactionally("MATCH (v:cVariable) WHERE v.name IN ['q', 'y'] SET v:Sink");
+        // the listed sink x is added to the labelled ones
+        assertEquals(List.of("p>q:0", "p>y:1", "s>q:1", "s>x:0", "s>y:2"),
+                flows(List.of(), List.of("x"), Map.of("sourceLabel", "Source", "sinkLabel", "Sink")));
+    }
+
+    // "source>sink:crossings" of every flow between the named variables, sorted
+    private List<String> flows(List<String> sources, List<String> sinks, Map<String, Object> config) {
+        List<String> flows = new ArrayList<>();
+        db.executeTransactionally("MATCH (n:cVariable) WITH collect(n) AS nodes, $config AS config " +
+                        "CALL apoc.dataflow.analyzeAll(config {.*, sources:[n IN nodes WHERE n.name IN $sources], " +
+                        "sinks:[n IN nodes WHERE n.name IN $sinks]}) YIELD source, sink, crossings " +
+                        "RETURN source.name + '>' + sink.name + ':' + crossings AS flow",
+                Map.of("sources", sources, "sinks", sinks, "config", config),
+                result -> {
+                    result.forEachRemaining(row -> flows.add((String) row.get("flow")));
+                    return null;
+                });
+        flows.sort(null);
+        return flows;
+    }
+}
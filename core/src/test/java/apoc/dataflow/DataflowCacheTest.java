@@ -0,0 +1,99 @@
+package apoc.dataflow;
+
+import apoc.cfgPath.ROSPath;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.List;
+import java.util.Map;
+
+import static apoc.dataflow.DataflowTestUtil.SETUP_PROGRAM;
+import static apoc.dataflow.DataflowTestUtil.names;
+import static apoc.util.TestUtil.singleResultFirstColumn;
+import static org.junit.Assert.assertEquals;
+
+public class DataflowCacheTest {
+
+    private static final String FIND_PATHS = "MATCH (s:cVariable {name:'s'}) " +
+            "RETURN apoc.cfgPath.rosFindPaths(s, {relSeq:'varWrite', cfg:false, cache:true}) AS paths";
+
+    private static final String ALL_SHORTEST = "MATCH (s:cVariable {name:'s'}), (y:cVariable {name:'y'}) " +
+            "RETURN apoc.dataflow.rosAllShortest(s, y, null, null, false, {cache:true}) AS paths";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSPath.class, ROSFindPath.class, DataflowCacheProcedures.class);
+        db.executeTransactionally(SETUP_PROGRAM);
+        // the cache outlives the database of a test
+        db.executeTransactionally("CALL apoc.dataflow.cacheClear()", Map.of(), Result::resultAsString);
+    }
+
+    @Test
+    public void testCachedUntilCommit() {
+        Map<String, Object> before = stats();
+        assertEquals(List.of("s>x"), findPaths());
+        assertEquals(List.of("s>x"), findPaths());
+        assertEquals(1L, (long) stats().get("hits") - (long) before.get("hits"));
+
+        // a committed write invalidates the entry
+        db.executeTransactionally("MATCH (s:cVariable {name:'s'}) CREATE (s)-[:varWrite]->(:cVariable {name:'z'})");
+        assertEquals(List.of("s>x", "s>z"), findPaths());
+        assertEquals(1L, (long) stats().get("invalidations") - (long) before.get("invalidations"));
+        assertEquals(1L, (long) stats().get("hits") - (long) before.get("hits"));
+        assertEquals(List.of("s>x", "s>z"), findPaths());
+        assertEquals(2L, (long) stats().get("hits") - (long) before.get("hits"));
+    }
+
+    @Test
+    public void testUncommittedChangesBypassCache() {
+        assertEquals(List.of("s>x"), findPaths());
+        Map<String, Object> before = stats();
+
+        // the transaction sees its own relationship, and neither reads nor fills the cache
+        try (Transaction tx = db.beginTx()) {
+            tx.execute("MATCH (s:cVariable {name:'s'}) CREATE (s)-[:varWrite]->(:cVariable {name:'z'})").close();
+            assertEquals(List.of("s>x", "s>z"), names((List<Path>) tx.execute(FIND_PATHS).next().get("paths")));
+            assertEquals(List.of("s>x>p>q>r>y"), names((List<Path>) tx.execute(ALL_SHORTEST).next().get("paths")));
+            tx.rollback();
+        }
+        assertEquals(before.get("hits"), stats().get("hits"));
+        assertEquals(before.get("size"), stats().get("size"));
+
+        assertEquals(List.of("s>x"), findPaths());
+        assertEquals((long) before.get("hits") + 1, stats().get("hits"));
+    }
+
+    @Test
+    public void testAllShortestCached() {
+        Map<String, Object> before = stats();
+        assertEquals(List.of("s>x>p>q>r>y"), allShortest());
+        assertEquals(List.of("s>x>p>q>r>y"), allShortest());
+        assertEquals(1L, (long) stats().get("hits") - (long) before.get("hits"));
+
+        db.executeTransactionally("MATCH (p:cVariable {name:'p'})-[rel:varWrite]->() DELETE rel");
+        assertEquals(List.of(), allShortest());
+        assertEquals(1L, (long) stats().get("invalidations") - (long) before.get("invalidations"));
+    }
+
+    private List<String> findPaths() {
+        return db.executeTransactionally(FIND_PATHS, Map.of(), result -> names((List<Path>) result.next().get("paths")));
+    }
+
+    private List<String> allShortest() {
+        return db.executeTransactionally(ALL_SHORTEST, Map.of(), result -> names((List<Path>) result.next().get("paths")));
+    }
+
+    private Map<String, Object> stats() {
+        return singleResultFirstColumn(db, "CALL apoc.dataflow.cacheStats() YIELD value RETURN value");
+    }
+}
@@ -0,0 +1,137 @@
+package apoc.dataflow;
+
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static apoc.dataflow.DataflowTestUtil.SETUP_PROGRAM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DataflowSliceTest {
+
+    // q is only written in f2, so its value cannot be read into z in f1
+    private static final String SETUP_UNDEFINED_READ = "MATCH (q:cVariable {name:'q'}), (f1:cfgBlock {name:'f1'}) " +
+            "CREATE (q)-[:varWrite]->(z:cVariable {name:'z'}), (q)-[:varWriteSource]->(f1), " +
+            "(z)-[:varWriteDestination]->(f1)";
+
+    private static final String SLICE = "CALL apoc.dataflow.slice($target, $config) YIELD nodes, size, truncated " +
+            "MATCH (n) WHERE id(n) IN nodes " +
+            "WITH size, truncated, n.name AS name ORDER BY name " +
+            "RETURN collect(name) AS names, size, truncated";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, DataflowSlice.class);
+        db.executeTransactionally(SETUP_PROGRAM);
+    }
+
+    @Test
+    public void testNodeSlice() {
+        assertEquals(List.of("p", "q", "r", "s", "x", "y"), slice("y", Map.of()).names);
+        assertEquals(List.of("p", "q", "r", "s", "x", "y"), slice("s", Map.of("direction", "forward")).names);
+        assertEquals(List.of("p", "q", "r", "y"), slice("p", Map.of("direction", "forward")).names);
+        assertEquals(List.of("p", "s", "x"), slice("p", Map.of("direction", "backward")).names);
+
+        Slice slice = slice("y", Map.of());
+        assertEquals(6L, slice.size);
+        assertFalse(slice.truncated);
+    }
+
+    @Test
+    public void testRelationshipSlice() {
+        // the retWrite q>r is sliced from q backward and from r forward
+        String target = "MATCH (:cVariable {name:'q'})-[rel:retWrite]->(:cVariable {name:'r'}) RETURN rel";
+        assertEquals(List.of("p", "q", "s", "x"), slice(target, true, Map.of()).names);
+        assertEquals(List.of("r", "y"), slice(target, true, Map.of("direction", "forward")).names);
+    }
+
+    @Test
+    public void testMaxDepth() {
+        Slice slice = slice("y", Map.of("maxDepth", 2));
+        assertEquals(List.of("q", "r", "y"), slice.names);
+        assertTrue(slice.truncated);
+    }
+
+    @Test
+    public void testCfgCheck() {
+        db.executeTransactionally(SETUP_UNDEFINED_READ);
+        assertEquals(List.of("p", "q", "r", "y", "z"), slice("p", Map.of("direction", "forward")).names);
+        // the value of q cannot reach z, the other relationships pass the check
+        assertEquals(List.of("p", "q", "r", "y"),
+                slice("p", Map.of("direction", "forward", "cfgCheck", true)).names);
+        assertEquals(List.of("p", "q", "r", "s", "x", "y"), slice("y", Map.of("cfgCheck", true)).names);
+        assertEquals(List.of("q", "z"), slice("z", Map.of("cfgCheck", true)).names);
+    }
+
+    @Test
+    public void testBitmapOutput() throws Exception {
+        String query = "MATCH (y:cVariable {name:'y'}) " +
+                "CALL apoc.dataflow.slice(y, {}) YIELD nodes WITH y, nodes " +
+                "CALL apoc.dataflow.slice(y, {output:'bitmap'}) YIELD bitmap, size " +
+                "RETURN nodes, bitmap, size";
+        Map<String, Object> row = db.executeTransactionally(query, Map.of(), result -> result.next());
+
+        Roaring64NavigableMap bitmap = new Roaring64NavigableMap();
+        bitmap.deserialize(new DataInputStream(new ByteArrayInputStream((byte[]) row.get("bitmap"))));
+        List<Long> ids = new ArrayList<>();
+        bitmap.forEach(ids::add);
+        assertEquals(row.get("nodes"), ids);
+        assertEquals(6L, row.get("size"));
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        assertInvalid(Map.of("direction", "auto"), "A slice has to be either backward or forward");
+        assertInvalid(Map.of("direction", "sideways"), "Unknown direction sideways");
+        assertInvalid(Map.of("output", "names"), "Unknown output names");
+    }
+
+    private void assertInvalid(Map<String, Object> config, String message) {
+        try {
+            slice("y", config);
+        } catch (QueryExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+            return;
+        }
+        throw new AssertionError("Expected the configuration " + config + " to be rejected");
+    }
+
+    private static class Slice {
+        private final List<String> names;
+        private final long size;
+        private final boolean truncated;
+
+        private Slice(Map<String, Object> row) {
+            this.names = (List<String>) row.get("names");
+            this.size = (long) row.get("size");
+            this.truncated = (boolean) row.get("truncated");
+        }
+    }
+
+    private Slice slice(String variable, Map<String, Object> config) {
+        return slice("MATCH (target:cVariable {name:'" + variable + "'}) RETURN target", false, config);
+    }
+
+    // helper function: the sorted names of the slice of the target returned by the query
+    private Slice slice(String target, boolean relationship, Map<String, Object> config) {
+        String query = "CALL { " + target + " } WITH " + (relationship ? "rel" : "target") + " AS target " +
+                SLICE.replace("$target", "target");
+        return db.executeTransactionally(query, Map.of("config", config), result -> new Slice(result.next()));
+    }
+}
@@ -0,0 +1,154 @@
+package apoc.dataflow;
+
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static apoc.dataflow.DataflowTestUtil.SETUP_PROGRAM;
+import static apoc.dataflow.DataflowTestUtil.names;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.test.assertion.Assert.assertEventually;
+
+public class DataflowWatchTest {
+
+    private static final String WATCH = "MATCH (n:cVariable) WITH collect(n) AS nodes " +
+            "CALL apoc.dataflow.watch($name, [n IN nodes WHERE n.name IN $sources], [n IN nodes WHERE n.name IN $sinks], $config) " +
+            "YIELD value RETURN value";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, DataflowWatch.class);
+        db.executeTransactionally(SETUP_PROGRAM);
+        db.executeTransactionally("CREATE (:cVariable {name:'z'})");
+    }
+
+    @Test
+    public void testWatch() {
+        Map<String, Object> info = watch("w", List.of("s"), List.of("q", "y", "z"), Map.of());
+        assertEquals(1L, info.get("sources"));
+        assertEquals(3L, info.get("sinks"));
+        assertEquals(2L, info.get("flows"));
+        assertEquals(DataflowCache.lastCommittedTxId(db), info.get("txId"));
+        assertEquals(List.of("present s>x>p>q", "present s>x>p>q>r>y"), watched("w", null));
+    }
+
+    @Test
+    public void testAddedFlow() {
+        long txId = (long) watch("w", List.of("s"), List.of("z"), Map.of()).get("txId");
+        assertEquals(List.of(), watched("w", null));
+
+        db.executeTransactionally("MATCH (y:cVariable {name:'y'}), (z:cVariable {name:'z'}) CREATE (y)-[:varWrite]->(z)");
+        assertEventually(() -> watched("w", txId), changes -> changes.equals(List.of("added s>x>p>q>r>y>z")),
+                30L, TimeUnit.SECONDS);
+        assertEquals(List.of("present s>x>p>q>r>y>z"), watched("w", null));
+        // nothing changed after the commit that added the flow
+        assertEquals(List.of(), watched("w", DataflowCache.lastCommittedTxId(db)));
+    }
+
+    @Test
+    public void testRemovedFlow() {
+        long txId = (long) watch("w", List.of("s"), List.of("q", "y"), Map.of()).get("txId");
+
+        db.executeTransactionally("MATCH (:cVariable {name:'p'})-[r:varWrite]->(:cVariable {name:'q'}) DELETE r");
+        assertEventually(() -> watched("w", txId),
+                changes -> changes.equals(List.of("removed s..q", "removed s..y")), 30L, TimeUnit.SECONDS);
+        assertEquals(List.of(), watched("w", null));
+    }
+
+    @Test
+    public void testDeletedSink() {
+        long txId = (long) watch("w", List.of("s"), List.of("q", "y"), Map.of()).get("txId");
+
+        // neither the sink nor the path of the removed flow exist anymore
+        db.executeTransactionally("MATCH (y:cVariable {name:'y'}) DETACH DELETE y");
+        assertEventually(() -> watched("w", txId), changes -> changes.equals(List.of("removed null")),
+                30L, TimeUnit.SECONDS);
+        assertEquals(List.of("present s>x>p>q"), watched("w", null));
+    }
+
+    @Test
+    public void testCFGChange() {
+        long txId = (long) watch("w", List.of("s"), List.of("y"), Map.of("cfgCheck", true)).get("txId");
+        assertEquals(List.of("present s>x>p>q>r>y"), watched("w", null));
+
+        // q is written in f2 and returned from f3, which cannot be reached from f2 anymore
+        db.executeTransactionally("MATCH (:cfgBlock {name:'f2'})-[r:nextCFGBlock]->(:cfgBlock {name:'f3'}) DELETE r");
+        assertEventually(() -> watched("w", txId), changes -> changes.equals(List.of("removed s>x>p>q>r>y")),
+                30L, TimeUnit.SECONDS);
+
+        db.executeTransactionally("MATCH (f2:cfgBlock {name:'f2'}), (f3:cfgBlock {name:'f3'}) CREATE (f2)-[:nextCFGBlock]->(f3)");
+        assertEventually(() -> watched("w", txId),
+                changes -> changes.equals(List.of("removed s>x>p>q>r>y", "added s>x>p>q>r>y")), 30L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testWatchInTransactionWithChanges() {
+        // the flows are computed from the committed graph, the new sink is added once the transaction commits
+        try (Transaction tx = db.beginTx()) {
+            tx.execute("MATCH (y:cVariable {name:'y'}) CREATE (y)-[:varWrite]->(:cVariable {name:'n'})").close();
+            Map<String, Object> info = (Map<String, Object>) tx.execute(WATCH, Map.of("name", "w",
+                    "sources", List.of("s"), "sinks", List.of("n", "y"), "config", Map.of())).next().get("value");
+            assertEquals(2L, info.get("sinks"));
+            assertEquals(1L, info.get("flows"));
+            tx.commit();
+        }
+        assertEventually(() -> watched("w", null),
+                flows -> flows.equals(List.of("present s>x>p>q>r>y", "present s>x>p>q>r>y>n")), 30L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testUnwatch() {
+        watch("w", List.of("s"), List.of("y"), Map.of());
+        TestUtil.testCall(db, "CALL apoc.dataflow.unwatch('w')", row -> {
+            Map<String, Object> info = (Map<String, Object>) row.get("value");
+            assertEquals("w", info.get("name"));
+            assertEquals(1L, info.get("flows"));
+        });
+        TestUtil.testCallEmpty(db, "CALL apoc.dataflow.unwatch('w')", Map.of());
+        try {
+            watched("w", null);
+            fail("Expected the watch to be removed");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("No dataflow watch named w"));
+        }
+    }
+
+    private Map<String, Object> watch(String name, List<String> sources, List<String> sinks, Map<String, Object> config) {
+        return db.executeTransactionally(WATCH, Map.of("name", name, "sources", sources, "sinks", sinks, "config", config),
+                result -> (Map<String, Object>) result.next().get("value"));
+    }
+
+    // "change path" of the current flows, or of the changes after since, sorted unless they are changes; a removed
+    //      flow whose path no longer exists is shown as "change source..sink"
+    private List<String> watched(String name, Long since) {
+        Map<String, Object> config = (since == null) ? Map.of() : Map.of("since", since);
+        List<String> flows = db.executeTransactionally("CALL apoc.dataflow.watched($name, $config) " +
+                        "YIELD source, sink, path, change RETURN source.name + '..' + sink.name AS pair, path, change",
+                Map.of("name", name, "config", config),
+                result -> {
+                    List<String> rows = new ArrayList<>();
+                    result.forEachRemaining(row -> rows.add(row.get("change") + " " + ((row.get("path") == null) ?
+                            row.get("pair") : names(List.of((Path) row.get("path"))).get(0))));
+                    return rows;
+                });
+        if (since == null) {
+            flows.sort(null);
+        }
+        return flows;
+    }
+}
@@ -0,0 +1,103 @@
+package apoc.dataflow;
+
+import apoc.cfgPath.ROSPath;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Result;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.List;
+import java.util.Map;
+
+import static apoc.dataflow.DataflowTestUtil.CFG_CONFIG;
+import static apoc.dataflow.DataflowTestUtil.SETUP_PROGRAM;
+import static apoc.dataflow.DataflowTestUtil.names;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PathOutputTest {
+
+    private static final String SETTINGS = "relSeq:'varWrite,parWrite,varWrite', config:" + CFG_CONFIG;
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSPath.class, ROSFindPath.class, DataflowAnalysis.class);
+        db.executeTransactionally(SETUP_PROGRAM);
+    }
+
+    @Test
+    public void testIdsHydrateToSamePaths() {
+        List<String> paths = db.executeTransactionally("MATCH (s:cVariable {name:'s'}) " +
+                        "CALL apoc.cfgPath.rosFindPathsBounded(s, {" + SETTINGS + "}) YIELD paths, ids " +
+                        "RETURN paths, ids",
+                Map.of(), result -> {
+                    Map<String, Object> row = result.next();
+                    assertNull(row.get("ids"));
+                    return names((List<Path>) row.get("paths"));
+                });
+        List<String> hydrated = db.executeTransactionally("MATCH (s:cVariable {name:'s'}) " +
+                        "CALL apoc.cfgPath.rosFindPathsBounded(s, {" + SETTINGS + ", output:'ids'}) YIELD paths, ids " +
+                        "RETURN paths, [path IN ids | apoc.dataflow.hydrate(path)] AS hydrated",
+                Map.of(), result -> {
+                    Map<String, Object> row = result.next();
+                    assertNull(row.get("paths"));
+                    return names((List<Path>) row.get("hydrated"));
+                });
+        assertEquals(List.of("s>x>p>q"), paths);
+        assertEquals(paths, hydrated);
+    }
+
+    @Test
+    public void testIdsAreRelationshipIds() {
+        List<List<Long>> ids = db.executeTransactionally("MATCH (s:cVariable {name:'s'}), (y:cVariable {name:'y'}) " +
+                        "CALL apoc.dataflow.rosAllShortestBounded(s, y, null, null, false, {output:'ids'}) YIELD ids " +
+                        "RETURN ids",
+                Map.of(), result -> (List<List<Long>>) result.next().get("ids"));
+        List<Long> expected = db.executeTransactionally("MATCH p = (:cVariable {name:'s'})-[*]->(:cVariable {name:'y'}) " +
+                        "RETURN [r IN relationships(p) | id(r)] AS ids",
+                Map.of(), result -> (List<Long>) result.next().get("ids"));
+        assertEquals(List.of(expected), ids);
+    }
+
+    @Test
+    public void testNullPaths() {
+        // without a start node, and without a category, the searches return null rather than paths
+        for (String call : List.of("apoc.cfgPath.rosFindPathsBounded(null, {relSeq:'varWrite', output:$output})",
+                "apoc.dataflow.rosAllShortestBounded(null, null, null, null, false, {output:$output})")) {
+            for (String output : List.of("paths", "ids")) {
+                TestUtil.testCall(db, "CALL " + call + " YIELD paths, ids RETURN paths, ids", Map.of("output", output),
+                        row -> {
+                            assertNull(row.get("paths"));
+                            assertNull(row.get("ids"));
+                        });
+            }
+        }
+    }
+
+    @Test
+    public void testHydrateEmpty() {
+        TestUtil.testCall(db, "RETURN apoc.dataflow.hydrate([]) AS path", row -> assertNull(row.get("path")));
+        TestUtil.testCall(db, "RETURN apoc.dataflow.hydrate(null) AS path", row -> assertNull(row.get("path")));
+    }
+
+    @Test
+    public void testUnknownOutput() {
+        try {
+            db.executeTransactionally("MATCH (s:cVariable {name:'s'}) " +
+                    "CALL apoc.cfgPath.rosFindPathsBounded(s, {relSeq:'varWrite', output:'nodes'}) YIELD ids RETURN ids", Map.of(),
+                    Result::resultAsString);
+            fail("Expected an unknown output to be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Unknown output 'nodes'"));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package apoc.dataflow;
+
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.helpers.collection.Iterators;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static apoc.dataflow.DataflowTestUtil.SETUP_ROS;
+import static apoc.dataflow.DataflowTestUtil.names;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.neo4j.test.assertion.Assert.assertEventually;
+
+public class ROSFindPathTest {
+
+    private static final String EDGES = "MATCH (:cVariable {name:'a1'})-[prefix:varWrite]->(:cVariable {name:'a2'})-[pub:pubVar]->(), " +
+            "()-[sub:pubTarget]->(:cVariable {name:'b1'}), (:cVariable {name:'b3'})-[sink:varInfFunc]->() ";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSFindPath.class);
+        db.executeTransactionally(SETUP_ROS);
+    }
+
+    @Test
+    public void testRosDataflow() {
+        List<String> paths = db.executeTransactionally(EDGES +
+                "RETURN apoc.dataflow.rosDataflow([prefix, sub], [pub, sink], false, 2) AS paths", Map.of(),
+                result -> names((List<Path>) result.next().get("paths")));
+        assertEquals(List.of("a1>a2>t1", "t1>b1>b3>b4"), paths);
+    }
+
+    @Test
+    public void testRosDataflowWithUncommittedChanges() {
+        // the new sink only exists in this transaction, so the search cannot run on other threads
+        try (Transaction tx = db.beginTx()) {
+            List<String> paths = names((List<Path>) tx.execute(EDGES +
+                    "MATCH (b2:cVariable {name:'b2'}) " +
+                    "CREATE (b2)-[newSink:varInfFunc]->(:cVariable {name:'b8'}) " +
+                    "RETURN apoc.dataflow.rosDataflow([sub], [sink, newSink], false, 2) AS paths").next().get("paths"));
+            assertEquals(List.of("t1>b1>b2>b8", "t1>b1>b3>b4"), paths);
+            tx.rollback();
+        }
+    }
+
+    @Test
+    public void testRosTopicIndex() {
+        String query = "CALL apoc.dataflow.rosTopicIndex() YIELD topic, pubVars, pubTargets " +
+                "RETURN topic.name AS topic, [r IN pubVars | startNode(r).name] AS publishers, " +
+                "[r IN pubTargets | endNode(r).name] AS subscribers ORDER BY topic";
+        TestUtil.testResult(db, query, result -> {
+            assertEquals(Map.of("topic", "t1", "publishers", List.of("a2"), "subscribers", List.of("b1")), result.next());
+            assertEquals(Map.of("topic", "t2", "publishers", List.of("b2"), "subscribers", List.of("c1")), result.next());
+            assertFalse(result.hasNext());
+        });
+
+        // a transaction sees its own publishers
+        try (Transaction tx = db.beginTx()) {
+            tx.execute("MATCH (c2:cVariable {name:'c2'}), (t1:rosTopic {name:'t1'}) CREATE (c2)-[:pubVar]->(t1)").close();
+            Map<String, Object> row = tx.execute(query).next();
+            assertEquals(List.of("a2", "c2"), sorted((List<String>) row.get("publishers")));
+            tx.rollback();
+        }
+    }
+
+    @Test
+    public void testRosTopicIndexAfterDelete() {
+        String query = "CALL apoc.dataflow.rosTopicIndex() YIELD topic, pubVars, pubTargets " +
+                "RETURN topic.name AS topic, size(pubVars) AS publishers, size(pubTargets) AS subscribers ORDER BY topic";
+        TestUtil.testResult(db, query, result -> assertEquals(2, Iterators.count(result)));
+        assertEventually(() -> {
+            try (Transaction tx = db.beginTx()) {
+                return RosTopicIndex.isCurrent(db, tx);
+            }
+        }, (built) -> built, 30L, TimeUnit.SECONDS);
+
+        // the index of the graph before the commits is served until the next one is built, without the deleted topic
+        //      and relationship
+        db.executeTransactionally("MATCH (t2:rosTopic {name:'t2'}) DETACH DELETE t2");
+        db.executeTransactionally("MATCH ()-[sub:pubTarget]->(:cVariable {name:'b1'}) DELETE sub");
+        TestUtil.testResult(db, query, result -> {
+            assertEquals(Map.of("topic", "t1", "publishers", 1L, "subscribers", 0L), result.next());
+            assertFalse(result.hasNext());
+        });
+    }
+
+    @Test
+    public void testRosComposeFlows() {
+        String query = "MATCH (:cVariable {name:'a1'})-[start:varWrite]->(), (:cVariable {name:'b3'})-[sinkB:varInfFunc]->(), " +
+                "(:cVariable {name:'c2'})-[sinkC:varInfFunc]->() " +
+                "CALL apoc.dataflow.rosComposeFlows([start], [sinkB, sinkC], false, $config) YIELD path " +
+                "RETURN collect(path) AS paths";
+
+        // through t1 to b4, and through t1 and t2 to c3
+        List<String> paths = db.executeTransactionally(query, Map.of("config", Map.of()),
+                result -> names((List<Path>) result.next().get("paths")));
+        assertEquals(List.of("a1>a2>t1>b1>b2>t2>c1>c2>c3", "a1>a2>t1>b1>b3>b4"), paths);
+
+        paths = db.executeTransactionally(query, Map.of("config", Map.of("maxTopics", 1)),
+                result -> names((List<Path>) result.next().get("paths")));
+        assertEquals(List.of("a1>a2>t1>b1>b3>b4"), paths);
+    }
+
+    @Test
+    public void testRosComposeFlowsVisitsTopicOnce() {
+        // c2 publishes back to t1, which must not be entered a second time
+        db.executeTransactionally("MATCH (c2:cVariable {name:'c2'}), (t1:rosTopic {name:'t1'}) CREATE (c2)-[:pubVar]->(t1)");
+        List<String> paths = db.executeTransactionally("MATCH (:cVariable {name:'a1'})-[start:varWrite]->(), " +
+                        "(:cVariable {name:'c2'})-[sinkC:varInfFunc]->() " +
+                        "CALL apoc.dataflow.rosComposeFlows([start], [sinkC], false) YIELD path " +
+                        "RETURN collect(path) AS paths", Map.of(),
+                result -> names((List<Path>) result.next().get("paths")));
+        assertEquals(List.of("a1>a2>t1>b1>b2>t2>c1>c2>c3"), paths);
+    }
+
+    private static List<String> sorted(List<String> values) {
+        List<String> copy = new ArrayList<>(values);
+        copy.sort(null);
+        return copy;
+    }
+}
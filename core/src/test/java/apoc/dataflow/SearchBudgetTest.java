@@ -0,0 +1,192 @@
+package apoc.dataflow;
+
+import apoc.cfgPath.ROSPath;
+import apoc.path.DataflowPath;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Result;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static apoc.dataflow.DataflowTestUtil.names;
+import static apoc.util.TestUtil.singleResultFirstColumn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchBudgetTest {
+
+    // four ways from s to t, through a1 to a4
+    private static final String SETUP_FAN = "CREATE (s:cVariable {name:'s'}), (t:cVariable {name:'t'}) " +
+            "WITH s, t UNWIND range(1, 4) AS i " +
+            "CREATE (s)-[:varWrite]->(:cVariable {name:'a' + i})-[:varWrite]->(t)";
+
+    private static final String FIND_PATHS = "MATCH (s:cVariable {name:'s'}) WITH s, $config AS config " +
+            "CALL apoc.cfgPath.rosFindPathsBounded(s, config {.*, relSeq:'varWrite', repeat:true, cfg:false}) " +
+            "YIELD paths, truncated, profile RETURN paths, truncated, profile";
+    private static final String ALL_SHORTEST = "MATCH (s:cVariable {name:'s'}), (t:cVariable {name:'t'}) " +
+            "CALL apoc.dataflow.rosAllShortestBounded(s, t, null, null, false, $config) " +
+            "YIELD paths, truncated, profile RETURN paths, truncated, profile";
+    private static final String ALL_DATAFLOW = "MATCH (s:cVariable {name:'s'}), (t:cVariable {name:'t'}) " +
+            "CALL apoc.path.allDataflowPathsV2Bounded(s, t, null, null, false, $config) " +
+            "YIELD paths, truncated, profile RETURN paths, truncated, profile";
+
+    private static final List<String> ALL_PATHS = List.of("s>a1", "s>a1>t", "s>a2", "s>a2>t", "s>a3", "s>a3>t",
+            "s>a4", "s>a4>t");
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSPath.class, ROSFindPath.class, DataflowPath.class, DataflowCacheProcedures.class);
+        db.executeTransactionally(SETUP_FAN);
+        // the cache outlives the database of a test
+        db.executeTransactionally("CALL apoc.dataflow.cacheClear()", Map.of(), Result::resultAsString);
+    }
+
+    @Test
+    public void testUnbounded() {
+        Map<String, Object> row = search(FIND_PATHS, Map.of());
+        assertEquals(ALL_PATHS, paths(row));
+        assertComplete(row);
+        // one expansion per path, and one per path that is not extended any further
+        assertEquals(16L, profile(row).get("expansions"));
+
+        for (String query : List.of(ALL_SHORTEST, ALL_DATAFLOW)) {
+            row = search(query, Map.of());
+            assertEquals(1, paths(row).size());
+            assertComplete(row);
+        }
+    }
+
+    @Test
+    public void testMaxDepth() {
+        Map<String, Object> row = search(FIND_PATHS, Map.of("maxDepth", 1));
+        assertEquals(List.of("s>a1", "s>a2", "s>a3", "s>a4"), paths(row));
+        assertTruncated(row, "maxDepth");
+
+        // every path to t is longer than the limit
+        for (String query : List.of(ALL_SHORTEST, ALL_DATAFLOW)) {
+            row = search(query, Map.of("maxDepth", 1));
+            assertEquals(List.of(), paths(row));
+            assertTruncated(row, "maxDepth");
+        }
+    }
+
+    @Test
+    public void testMaxResults() {
+        Map<String, Object> row = search(FIND_PATHS, Map.of("maxResults", 2));
+        assertEquals(2, paths(row).size());
+        assertTrue(ALL_PATHS.containsAll(paths(row)));
+        assertTruncated(row, "maxResults");
+
+        // a single shortest path does not reach the limit
+        row = search(ALL_SHORTEST, Map.of("maxResults", 2));
+        assertEquals(1, paths(row).size());
+        assertComplete(row);
+    }
+
+    @Test
+    public void testMaxExpansions() {
+        Map<String, Object> row = search(FIND_PATHS, Map.of("maxExpansions", 12));
+        assertTrue(paths(row).size() > 0);
+        assertTrue(paths(row).size() < ALL_PATHS.size());
+        assertTrue(ALL_PATHS.containsAll(paths(row)));
+        assertTruncated(row, "maxExpansions");
+        assertEquals(12L, profile(row).get("expansions"));
+
+        // the shortest path is found before the search runs out of expansions, the others are not looked at
+        for (String query : List.of(ALL_SHORTEST, ALL_DATAFLOW)) {
+            row = search(query, Map.of("maxExpansions", 5));
+            assertEquals(1, paths(row).size());
+            assertTruncated(row, "maxExpansions");
+            assertEquals(5L, profile(row).get("expansions"));
+
+            row = search(query, Map.of("maxExpansions", 2));
+            assertEquals(List.of(), paths(row));
+            assertTruncated(row, "maxExpansions");
+        }
+    }
+
+    @Test
+    public void testTimeout() {
+        // the clock is read before the first expansion, and some time has always passed by then
+        for (String query : List.of(FIND_PATHS, ALL_SHORTEST, ALL_DATAFLOW)) {
+            Map<String, Object> row = search(query, Map.of("timeoutMs", 0));
+            assertEquals(List.of(), paths(row));
+            assertTruncated(row, "timeoutMs");
+            assertEquals(0L, profile(row).get("expansions"));
+        }
+    }
+
+    @Test
+    public void testTruncatedNotCached() {
+        Map<String, Object> before = stats();
+        String findPaths = "MATCH (s:cVariable {name:'s'}) WITH s, $config AS config " +
+                "RETURN apoc.cfgPath.rosFindPaths(s, config {.*, relSeq:'varWrite', repeat:true, cfg:false, cache:true}) AS paths";
+        String allShortest = "MATCH (s:cVariable {name:'s'}), (t:cVariable {name:'t'}) WITH s, t, $config AS config " +
+                "RETURN apoc.dataflow.rosAllShortest(s, t, null, null, false, config {.*, cache:true}) AS paths";
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(2, function(findPaths, Map.of("maxResults", 2)).size());
+            assertEquals(1, function(allShortest, Map.of("maxExpansions", 5)).size());
+        }
+        assertEquals(before.get("size"), stats().get("size"));
+        assertEquals(before.get("hits"), stats().get("hits"));
+
+        // the same queries without limits are cached
+        for (int i = 0; i < 2; i++) {
+            assertEquals(ALL_PATHS, function(findPaths, Map.of()));
+            assertEquals(1, function(allShortest, Map.of()).size());
+        }
+        assertEquals(2L, (long) stats().get("size") - (long) before.get("size"));
+        assertEquals(2L, (long) stats().get("hits") - (long) before.get("hits"));
+    }
+
+    // the row of a bounded search, with the names of its paths
+    private Map<String, Object> search(String query, Map<String, Object> config) {
+        return db.executeTransactionally(query, Map.of("config", config), result -> {
+            Map<String, Object> row = new HashMap<>(result.next());
+            row.put("paths", names((List<Path>) row.get("paths")));
+            return row;
+        });
+    }
+
+    private List<String> function(String query, Map<String, Object> config) {
+        return db.executeTransactionally(query, Map.of("config", config),
+                result -> names((List<Path>) result.next().get("paths")));
+    }
+
+    private static List<String> paths(Map<String, Object> row) {
+        return (List<String>) row.get("paths");
+    }
+
+    private static Map<String, Object> profile(Map<String, Object> row) {
+        return (Map<String, Object>) row.get("profile");
+    }
+
+    private static void assertComplete(Map<String, Object> row) {
+        assertFalse((boolean) row.get("truncated"));
+        assertFalse((boolean) profile(row).get("truncated"));
+        assertNull(profile(row).get("reason"));
+    }
+
+    private static void assertTruncated(Map<String, Object> row, String reason) {
+        assertTrue((boolean) row.get("truncated"));
+        assertTrue((boolean) profile(row).get("truncated"));
+        assertEquals(reason, profile(row).get("reason"));
+    }
+
+    private Map<String, Object> stats() {
+        return singleResultFirstColumn(db, "CALL apoc.dataflow.cacheStats() YIELD value RETURN value");
+    }
+}
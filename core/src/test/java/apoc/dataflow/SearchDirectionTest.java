@@ -0,0 +1,115 @@
+package apoc.dataflow;
+
+import apoc.cfgPath.ROSPath;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.List;
+import java.util.Map;
+
+import static apoc.dataflow.DataflowTestUtil.names;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SearchDirectionTest {
+
+    // s>a>b>e, with 20 more variables written from s (fan out) or into b (fan in)
+    private static final String SETUP_CHAIN = "CREATE (s:cVariable {name:'s'})-[:varWrite]->(a:cVariable {name:'a'})" +
+            "-[:varWrite]->(b:cVariable {name:'b'})-[:varWrite]->(e:cVariable {name:'e'})";
+    private static final String SETUP_FAN_OUT = "MATCH (s:cVariable {name:'s'}) UNWIND range(1, 20) AS i " +
+            "CREATE (s)-[:varWrite]->(:cVariable {name:'n' + i})";
+    private static final String SETUP_FAN_IN = "MATCH (b:cVariable {name:'b'}) UNWIND range(1, 20) AS i " +
+            "CREATE (:cVariable {name:'n' + i})-[:varWrite]->(b)";
+
+    private static final String FIND_PATHS = "MATCH (s:cVariable {name:'s'}), (b:cVariable {name:'b'})-[sink]->(e:cVariable {name:'e'}) " +
+            "WITH s, e, sink, $config AS config " +
+            "CALL apoc.cfgPath.rosFindPathsBounded(s, config {.*, relSeq:'varWrite', repeat:true, cfg:false, " +
+            "endN:CASE WHEN $end = 'node' THEN e END, endE:CASE WHEN $end = 'edge' THEN sink END}) " +
+            "YIELD paths, profile RETURN paths, profile";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSPath.class);
+        db.executeTransactionally(SETUP_CHAIN);
+    }
+
+    @Test
+    public void testAutoFromEndEdge() {
+        db.executeTransactionally(SETUP_FAN_OUT);
+        List<String> forward = findPaths("edge", "forward").paths;
+        assertEquals(List.of("s>a>b>e"), forward);
+        assertEquals(forward, findPaths("edge", "backward").paths);
+
+        // a single variable is written into b, so the backward search is cheaper
+        Search auto = findPaths("edge", "auto");
+        assertEquals(SearchDirection.BACKWARD, auto.chosen);
+        assertEquals(forward, auto.paths);
+    }
+
+    @Test
+    public void testAutoPrefersForwardOnFanIn() {
+        db.executeTransactionally(SETUP_FAN_IN);
+        Search auto = findPaths("edge", "auto");
+        assertEquals(SearchDirection.FORWARD, auto.chosen);
+        assertEquals(List.of("s>a>b>e"), auto.paths);
+    }
+
+    @Test
+    public void testAutoFromEndNodeRunsForward() {
+        db.executeTransactionally(SETUP_FAN_OUT);
+        // a backward search from e would follow the relationships leaving e and find nothing, although it looks cheaper
+        Search auto = findPaths("node", "auto");
+        assertEquals(SearchDirection.FORWARD, auto.chosen);
+        assertEquals(List.of("s>a>b>e"), auto.paths);
+        assertEquals(findPaths("node", "forward").paths, auto.paths);
+    }
+
+    @Test
+    public void testAutoWithoutEndRunsForward() {
+        Search auto = findPaths("none", "auto");
+        assertEquals(SearchDirection.FORWARD, auto.chosen);
+        assertEquals(findPaths("none", "forward").paths, auto.paths);
+    }
+
+    @Test
+    public void testUnknownDirection() {
+        try {
+            findPaths("edge", "sideways");
+        } catch (QueryExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Unknown direction sideways"));
+            return;
+        }
+        throw new AssertionError("Expected the direction sideways to be rejected");
+    }
+
+    private static class Search {
+        private final List<String> paths;
+        private final Object chosen;
+
+        private Search(List<String> paths, Object chosen) {
+            this.paths = paths;
+            this.chosen = chosen;
+        }
+    }
+
+    // end: "node" to end the search at e, "edge" to end it at the relationship into e, "none" for no end
+    private Search findPaths(String end, String direction) {
+        return db.executeTransactionally(FIND_PATHS, Map.of("end", end, "config", Map.of("direction", direction)),
+                result -> {
+                    Map<String, Object> row = result.next();
+                    Map<String, Object> profile = (Map<String, Object>) row.get("profile");
+                    Map<String, Object> choice = (Map<String, Object>) profile.get("direction");
+                    return new Search(names((List<Path>) row.get("paths")),
+                            (choice == null) ? null : choice.get("chosen"));
+                });
+    }
+}
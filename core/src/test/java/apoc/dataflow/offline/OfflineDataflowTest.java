@@ -0,0 +1,213 @@
+package apoc.dataflow.offline;
+
+import apoc.ApocSettings;
+import apoc.cfgPath.ROSPath;
+import apoc.dataflow.ROSFindPath;
+import apoc.dataflow.SearchBudget;
+import apoc.export.arrow.ExportArrow;
+import apoc.meta.Meta;
+import apoc.util.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static apoc.dataflow.DataflowTestUtil.CFG_CONFIG;
+import static apoc.dataflow.DataflowTestUtil.SETUP_PROGRAM;
+import static apoc.dataflow.DataflowTestUtil.names;
+import static org.junit.Assert.assertEquals;
+
+public class OfflineDataflowTest {
+
+    private static final File directory = new File("target/offline dataflow");
+    static { //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+    }
+
+    private static final String FULL_SEQUENCE = "varWrite,parWrite,varWrite,retWrite,varWrite";
+
+    // q is only written in f2, so its value cannot be read into z in f1
+    private static final String SETUP_UNDEFINED_READ = "MATCH (q:cVariable {name:'q'}), (f1:cfgBlock {name:'f1'}) " +
+            "CREATE (q)-[:varWrite]->(z:cVariable {name:'z'}), (q)-[:varWriteSource]->(f1), " +
+            "(z)-[:varWriteDestination]->(f1)";
+
+    // a function copying cs into cy through the chains cs>t1>t2>t3>cy and cs>b1>b2>cy; the shorter chain reads b2
+    //      in k2 although it is only written in k3, so it fails the CFG check
+    private static final String SETUP_CHAINS = "CREATE (k1:cfgBlock {name:'k1'}), (k2:cfgBlock {name:'k2'}), (k3:cfgBlock {name:'k3'}), (k4:cfgBlock {name:'k4'})\n" +
+            "CREATE (k1)-[:nextCFGBlock]->(k2), (k2)-[:nextCFGBlock]->(k3), (k3)-[:nextCFGBlock]->(k4)\n" +
+            "CREATE (cs:cVariable {name:'cs'}), (t1:cVariable {name:'t1'}), (t2:cVariable {name:'t2'}), (t3:cVariable {name:'t3'}), " +
+            "(b1:cVariable {name:'b1'}), (b2:cVariable {name:'b2'}), (cy:cVariable {name:'cy'})\n" +
+            "CREATE (cs)-[:varWrite]->(t1), (cs)-[:varWriteSource]->(k1), (t1)-[:varWriteDestination]->(k1)\n" +
+            "CREATE (t1)-[:varWrite]->(t2), (t1)-[:varWriteSource]->(k2), (t2)-[:varWriteDestination]->(k2)\n" +
+            "CREATE (t2)-[:varWrite]->(t3), (t2)-[:varWriteSource]->(k3), (t3)-[:varWriteDestination]->(k3)\n" +
+            "CREATE (t3)-[:varWrite]->(cy), (t3)-[:varWriteSource]->(k4), (cy)-[:varWriteDestination]->(k4)\n" +
+            "CREATE (cs)-[:varWrite]->(b1), (b1)-[:varWriteDestination]->(k1)\n" +
+            "CREATE (b1)-[:varWrite]->(b2), (b1)-[:varWriteSource]->(k3), (b2)-[:varWriteDestination]->(k3)\n" +
+            "CREATE (b2)-[:varWrite]->(cy), (b2)-[:varWriteSource]->(k2)";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule()
+            .withSetting(GraphDatabaseSettings.load_csv_file_url_root, directory.toPath().toAbsolutePath())
+            .withSetting(ApocSettings.apoc_export_file_enabled, true);
+
+    private CsrGraph graph;
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, ROSPath.class, ROSFindPath.class, ExportArrow.class, Meta.class);
+        db.executeTransactionally(SETUP_PROGRAM);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (graph != null) {
+            graph.close();
+        }
+    }
+
+    @Test
+    public void testRosFindPathsWithCfgCheck() throws Exception {
+        OfflineDataflow dataflow = export();
+        Map<String, Object> config = config(FULL_SEQUENCE, true);
+
+        assertEquals(List.of("s>x>p>q>r>y"), online("s", config));
+        assertEquals(online("s", config), offline(dataflow, "s", config));
+        config.put("shortest", true);
+        assertEquals(online("s", config), offline(dataflow, "s", config));
+    }
+
+    @Test
+    public void testRosFindPathsRejectsUndefinedRead() throws Exception {
+        db.executeTransactionally(SETUP_UNDEFINED_READ);
+        OfflineDataflow dataflow = export();
+
+        // the CFG check drops p>q>z, which is found without it
+        Map<String, Object> config = config("varWrite,varWrite", true);
+        assertEquals(List.of(), online("p", config));
+        assertEquals(online("p", config), offline(dataflow, "p", config));
+
+        config.put("cfg", false);
+        assertEquals(List.of("p>q>z"), online("p", config));
+        assertEquals(online("p", config), offline(dataflow, "p", config));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRosFindPathsRejectsUnknownAttribute() throws Exception {
+        OfflineDataflow dataflow = export();
+        Map<String, Object> config = config(FULL_SEQUENCE, true);
+        config.put("config", List.of(Map.of("name", "parWrite", "startLabel", "cVariable", "endLabel", "cVariable",
+                "attribute", "cfgSpawn", "length", "1")));
+        offline(dataflow, "s", config);
+    }
+
+    @Test
+    public void testRosAllShortestWithChains() throws Exception {
+        db.executeTransactionally(SETUP_CHAINS);
+        OfflineDataflow chained = export();
+        OfflineDataflow unchained = new OfflineDataflow(graph, false);
+        assertEquals(2, chained.getChains().chainCount());
+        assertEquals(7, chained.getChains().relCount());
+        assertEquals(0, unchained.getChains().chainCount());
+
+        for (boolean cfgCheck : List.of(false, true)) {
+            for (Map<String, Object> config : List.of(Map.<String, Object>of(), Map.<String, Object>of("maxDepth", 3))) {
+                // into cy, into t2 in the middle of a chain, and along the program of the other tests
+                for (List<String> query : List.of(List.of("cs", "cy"), List.of("cs", "t2"), List.of("s", "y"))) {
+                    List<String> expected = online(query.get(0), query.get(1), cfgCheck, config);
+                    String message = query + " cfgCheck:" + cfgCheck + " " + config;
+                    assertEquals(message, expected, offline(chained, query.get(0), query.get(1), cfgCheck, config));
+                    assertEquals(message, expected,
+                            offline(unchained, query.get(0), query.get(1), cfgCheck, config));
+                }
+            }
+        }
+
+        assertEquals(List.of("cs>b1>b2>cy"), offline(chained, "cs", "cy", false, Map.of()));
+        assertEquals(List.of("cs>t1>t2>t3>cy"), offline(chained, "cs", "cy", true, Map.of()));
+        assertEquals(List.of("cs>t1>t2"), offline(chained, "cs", "t2", true, Map.of()));
+        // the valid chain does not fit in maxDepth
+        assertEquals(List.of(), offline(chained, "cs", "cy", true, Map.of("maxDepth", 3)));
+        // taking a chain is a single expansion
+        assertEquals(List.of("cs>b1>b2>cy"), offline(chained, "cs", "cy", false, Map.of("maxExpansions", 2)));
+        assertEquals(List.of(), offline(unchained, "cs", "cy", false, Map.of("maxExpansions", 2)));
+    }
+
+    // helper function: export the database and load it for the offline searches
+    private OfflineDataflow export() throws Exception {
+        db.executeTransactionally("CALL apoc.export.arrow.all('program.arrow') YIELD file RETURN file",
+                Map.of(), result -> result.next().get("file"));
+        graph = CsrGraph.load(new File(directory, "program.arrow").getAbsolutePath());
+        return new OfflineDataflow(graph);
+    }
+
+    private Map<String, Object> config(String relSeq, boolean cfg) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("relSeq", relSeq);
+        config.put("cfg", cfg);
+        config.put("config", db.executeTransactionally("RETURN " + CFG_CONFIG + " AS config", Map.of(),
+                result -> result.next().get("config")));
+        return config;
+    }
+
+    private List<String> online(String start, Map<String, Object> config) {
+        return db.executeTransactionally("MATCH (start:cVariable {name:$start}) " +
+                        "RETURN apoc.cfgPath.rosFindPaths(start, $config) AS paths",
+                Map.of("start", start, "config", config),
+                result -> names((List<Path>) result.next().get("paths")));
+    }
+
+    private List<String> online(String start, String end, boolean cfgCheck, Map<String, Object> config) {
+        return db.executeTransactionally("MATCH (start:cVariable {name:$start}), (end:cVariable {name:$end}) " +
+                        "RETURN apoc.dataflow.rosAllShortest(start, end, null, null, $cfgCheck, $config) AS paths",
+                Map.of("start", start, "end", end, "cfgCheck", cfgCheck, "config", config),
+                result -> names((List<Path>) result.next().get("paths")));
+    }
+
+    private List<String> offline(OfflineDataflow dataflow, String start, String end, boolean cfgCheck,
+                                 Map<String, Object> config) {
+        try (Transaction tx = db.beginTx()) {
+            long startId = tx.findNode(Label.label("cVariable"), "name", start).getId();
+            long endId = tx.findNode(Label.label("cVariable"), "name", end).getId();
+            return offlineNames(tx, dataflow.rosAllShortest(graph.node(startId), graph.node(endId), cfgCheck,
+                    new SearchBudget(config, null)));
+        }
+    }
+
+    // the offline paths, named like the paths returned by the database
+    private List<String> offline(OfflineDataflow dataflow, String start, Map<String, Object> config) {
+        try (Transaction tx = db.beginTx()) {
+            long startId = tx.findNode(Label.label("cVariable"), "name", start).getId();
+            return offlineNames(tx, dataflow.rosFindPaths(graph.node(startId), config, new SearchBudget(config, null)));
+        }
+    }
+
+    private List<String> offlineNames(Transaction tx, List<int[]> paths) {
+        List<String> names = new ArrayList<>();
+        for (int[] rels : paths) {
+            StringBuilder builder = new StringBuilder();
+            for (int rel : rels) {
+                Relationship relationship = tx.getRelationshipById(graph.relId(rel));
+                if (builder.length() == 0) {
+                    builder.append(relationship.getStartNode().getProperty("name"));
+                }
+                builder.append('>').append(relationship.getEndNode().getProperty("name"));
+            }
+            names.add(builder.toString());
+        }
+        names.sort(null);
+        return names;
+    }
+}
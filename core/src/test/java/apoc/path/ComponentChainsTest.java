@@ -0,0 +1,181 @@
+package apoc.path;
+
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ComponentChainsTest {
+
+    // component m calls a and c and returns to b; the dataflow between them loops back through a
+    private static final String SETUP_COMPONENTS = "CREATE (m:component {name:'m'}), (a:component {name:'a'}), (b:component {name:'b'}), (c:component {name:'c'})\n" +
+            "CREATE (m)-[:compCall]->(a), (m)-[:compReturn]->(b), (m)-[:compCall]->(c)\n" +
+            "CREATE (a)-[:dataflowNCFG]->(b), (a)-[:dataflowNCFG]->(c), (b)-[:dataflowNCFG]->(a), (c)-[:dataflowNCFG]->(m)\n" +
+            "CREATE (a)-[:dataflowOTF]->(b), (b)-[:dataflowOTF]->(a)";
+
+    private static final String PHASE2 = "MATCH (m:component {name:'m'}) RETURN apoc.path.phase2(m, $cfg) AS paths";
+    private static final String PHASE2_BOUNDED = "MATCH (m:component {name:'m'}) " +
+            "CALL apoc.path.phase2Bounded(m, false, $config) YIELD paths, truncated, profile RETURN paths, truncated, profile";
+    private static final String PHASE2_STREAM = "MATCH (m:component {name:'m'}) " +
+            "CALL apoc.path.phase2.stream(m, $cfg, $config) YIELD path RETURN path";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, GmDataflowPath.class);
+        db.executeTransactionally(SETUP_COMPONENTS);
+    }
+
+    @Test
+    public void testSameChainsAsCopyingSearch() {
+        for (boolean cfg : List.of(false, true)) {
+            List<String> expected = reference(cfg);
+            assertTrue(expected.size() > 3);
+            assertEquals(expected, phase2(cfg));
+            assertEquals(expected, stream(cfg, Map.of()));
+        }
+    }
+
+    @Test
+    public void testMaxHops() {
+        List<String> expected = reference(false).stream()
+                .filter(chain -> chain.split(",").length <= 3)
+                .collect(Collectors.toList());
+        assertEquals(expected, stream(false, Map.of("maxHops", 3)));
+        assertEquals(reference(false), stream(false, Map.of("maxHops", -1)));
+    }
+
+    @Test
+    public void testLimit() {
+        List<String> expected = reference(false);
+        assertEquals(expected.subList(0, 4), stream(false, Map.of("limit", 4)));
+        assertEquals(expected, stream(false, Map.of("limit", expected.size() + 1)));
+    }
+
+    @Test
+    public void testBounded() {
+        List<String> all = reference(false);
+        Map<String, Object> row = bounded(Map.of());
+        assertEquals(all, row.get("paths"));
+        assertFalse((boolean) row.get("truncated"));
+
+        List<String> shallow = all.stream()
+                .filter(chain -> chain.split(",").length <= 3)
+                .collect(Collectors.toList());
+        row = bounded(Map.of("maxDepth", 3));
+        assertEquals(shallow, row.get("paths"));
+        assertTruncated(row, "maxDepth");
+
+        row = bounded(Map.of("maxResults", 2));
+        assertEquals(all.subList(0, 2), row.get("paths"));
+        assertTruncated(row, "maxResults");
+
+        // a chain is returned by the expansion that takes it from the queue
+        row = bounded(Map.of("maxExpansions", 2));
+        assertEquals(all.subList(0, 2), row.get("paths"));
+        assertTruncated(row, "maxExpansions");
+        assertEquals(2L, ((Map<String, Object>) row.get("profile")).get("expansions"));
+
+        row = bounded(Map.of("timeoutMs", 0));
+        assertEquals(List.of(), row.get("paths"));
+        assertTruncated(row, "timeoutMs");
+    }
+
+    private static void assertTruncated(Map<String, Object> row, String reason) {
+        assertTrue((boolean) row.get("truncated"));
+        assertEquals(reason, ((Map<String, Object>) row.get("profile")).get("reason"));
+    }
+
+    // the row of phase2Bounded, with its paths as chains
+    private Map<String, Object> bounded(Map<String, Object> config) {
+        return db.executeTransactionally(PHASE2_BOUNDED, Map.of("config", config), result -> {
+            Map<String, Object> row = new HashMap<>(result.next());
+            row.put("paths", ((List<Path>) row.get("paths")).stream()
+                    .map(ComponentChainsTest::chain).collect(Collectors.toList()));
+            return row;
+        });
+    }
+
+    private List<String> phase2(boolean cfg) {
+        return db.executeTransactionally(PHASE2, Map.of("cfg", cfg),
+                result -> ((List<Path>) result.next().get("paths")).stream()
+                        .map(ComponentChainsTest::chain).collect(Collectors.toList()));
+    }
+
+    private List<String> stream(boolean cfg, Map<String, Object> config) {
+        return db.executeTransactionally(PHASE2_STREAM, Map.of("cfg", cfg, "config", config),
+                result -> result.<Path>columnAs("path").stream()
+                        .map(ComponentChainsTest::chain).collect(Collectors.toList()));
+    }
+
+    // the chains of the search phase2 ran before ComponentChains, which copies the chain at every step
+    private List<String> reference(boolean cfg) {
+        try (Transaction tx = db.beginTx()) {
+            Node start = tx.findNode(Label.label("component"), "name", "m");
+            RelationshipType dataflow = RelationshipType.withName(cfg ? "dataflowOTF" : "dataflowNCFG");
+            RelationshipType[] componentTypes = {RelationshipType.withName("compCall"),
+                    RelationshipType.withName("compReturn")};
+
+            List<String> chains = new ArrayList<>();
+            Queue<List<Relationship>> queue = new LinkedList<>();
+            for (Relationship rel : start.getRelationships(Direction.OUTGOING, componentTypes)) {
+                queue.add(List.of(rel));
+            }
+            while (!queue.isEmpty()) {
+                List<Relationship> curSubPath = queue.poll();
+                boolean isResult = (curSubPath.size() % 2 == 1);
+                if (isResult) {
+                    chains.add(chain(curSubPath));
+                }
+                Node curNode = curSubPath.get(curSubPath.size() - 1).getEndNode();
+                Iterable<Relationship> nextRels = isResult ? curNode.getRelationships(Direction.OUTGOING, dataflow) :
+                        start.getRelationships(Direction.OUTGOING, componentTypes);
+                for (Relationship nextRel : nextRels) {
+                    if (!curSubPath.contains(nextRel)) {
+                        List<Relationship> newSubPath = new ArrayList<>(curSubPath);
+                        newSubPath.add(nextRel);
+                        queue.add(newSubPath);
+                    }
+                }
+            }
+            return chains;
+        }
+    }
+
+    private static String chain(Path path) {
+        List<Relationship> rels = new ArrayList<>();
+        path.relationships().forEach(rels::add);
+        return chain(rels);
+    }
+
+    // e.g. "m-compCall->a,a-dataflowNCFG->b,m-compReturn->b"
+    private static String chain(List<Relationship> rels) {
+        return rels.stream()
+                .map(rel -> rel.getStartNode().getProperty("name") + "-" + rel.getType().name() + "->" +
+                        rel.getEndNode().getProperty("name"))
+                .collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,173 @@
+package apoc.path;
+
+import apoc.dataflow.CostModel;
+import apoc.dataflow.SearchBudget;
+import apoc.util.TestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DbmsRule;
+import org.neo4j.test.rule.ImpermanentDbmsRule;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static apoc.dataflow.DataflowTestUtil.SETUP_PROGRAM;
+import static apoc.dataflow.DataflowTestUtil.names;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataflowTraversalTest {
+
+    // three ways from s to t of two and three relationships, the one through a is expensive and x is rejected
+    private static final String SETUP_ROUTES = "CREATE (s:cVariable {name:'s'}), (a:cVariable {name:'a'}), (b:cVariable {name:'b'}), " +
+            "(c:cVariable {name:'c'}), (d:cVariable {name:'d'}), (x:cVariable {name:'x', rejected:true}), (t:cVariable {name:'t'})\n" +
+            "CREATE (s)-[:parWrite]->(a)-[:varWrite]->(t), (s)-[:varWrite]->(b)-[:varWrite]->(t)\n" +
+            "CREATE (s)-[:varWrite]->(c)-[:varWrite]->(d)-[:varWrite]->(t), (s)-[:varWrite]->(x)-[:varWrite]->(t)";
+
+    @Rule
+    public DbmsRule db = new ImpermanentDbmsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        TestUtil.registerProcedure(db, DataflowPath.class, BackwardDataflowPath.class);
+    }
+
+    @Test
+    public void testModes() {
+        db.executeTransactionally(SETUP_ROUTES);
+        try (Transaction tx = db.beginTx()) {
+            assertEquals(1, run(tx, DataflowTraversal.Mode.FIRST, null).size());
+            assertTrue(List.of("s>a>t", "s>b>t").containsAll(run(tx, DataflowTraversal.Mode.FIRST, null)));
+            assertEquals(List.of("s>a>t", "s>b>t"), run(tx, DataflowTraversal.Mode.SHORTEST, null));
+            assertEquals(List.of("s>a>t", "s>b>t", "s>c>d>t"), run(tx, DataflowTraversal.Mode.ALL, null));
+        }
+    }
+
+    @Test
+    public void testBudget() {
+        db.executeTransactionally(SETUP_ROUTES);
+        try (Transaction tx = db.beginTx()) {
+            SearchBudget depth = new SearchBudget(Map.of("maxDepth", 2), null);
+            assertEquals(List.of("s>a>t", "s>b>t"), run(tx, DataflowTraversal.Mode.ALL, depth));
+            assertTrue(depth.isTruncated());
+
+            SearchBudget results = new SearchBudget(Map.of("maxResults", 1), null);
+            assertEquals(1, run(tx, DataflowTraversal.Mode.ALL, results).size());
+            assertTrue(results.isTruncated());
+        }
+    }
+
+    @Test
+    public void testBestFirst() {
+        db.executeTransactionally(SETUP_ROUTES);
+        try (Transaction tx = db.beginTx()) {
+            CostModel cost = CostModel.from(Map.of("order", "cost", "weights", Map.of("parWrite", 5)));
+            List<List<Relationship>> results = new DataflowTraversal<>(new Routes(), cost,
+                    SearchBudget.unbounded(null)).run(start(tx), new HashSet<>(), new ArrayList<>());
+            // in order of cost rather than length
+            List<String> ordered = new ArrayList<>();
+            for (List<Relationship> result : results) {
+                ordered.add(name(result));
+            }
+            assertEquals(List.of("s>b>t", "s>c>d>t", "s>a>t"), ordered);
+        }
+    }
+
+    @Test
+    public void testForwardAndBackwardSearches() {
+        db.executeTransactionally(SETUP_PROGRAM);
+        String match = "MATCH (s:cVariable {name:'s'}), (y:cVariable {name:'y'}) ";
+        for (String function : List.of("allDataflowPaths", "allBackwardDataflowPaths")) {
+            for (boolean cfgCheck : List.of(true, false)) {
+                List<String> paths = db.executeTransactionally(match + "RETURN apoc.path." + function +
+                                "(s, y, null, null, $cfgCheck) AS paths", Map.of("cfgCheck", cfgCheck),
+                        result -> names((List<Path>) result.next().get("paths")));
+                assertEquals(function, List.of("s>x>p>q>r>y"), paths);
+            }
+        }
+        for (String function : List.of("dataflowPath", "backwardDataflowPath")) {
+            List<String> paths = db.executeTransactionally(match + "RETURN apoc.path." + function +
+                            "(s, y, null, null, true) AS path", Map.of(),
+                    result -> names(List.of((Path) result.next().get("path"))));
+            assertEquals(function, List.of("s>x>p>q>r>y"), paths);
+        }
+    }
+
+    private List<String> run(Transaction tx, DataflowTraversal.Mode mode, SearchBudget budget) {
+        List<List<Relationship>> results = new DataflowTraversal<>(new Routes(), mode, true, budget)
+                .run(start(tx), new HashSet<>(), new ArrayList<>());
+        List<String> names = new ArrayList<>();
+        for (List<Relationship> result : results) {
+            names.add(name(result));
+        }
+        names.sort(null);
+        return names;
+    }
+
+    // the relationships leaving s, each as a candidate path
+    private static Queue<List<Relationship>> start(Transaction tx) {
+        Node s = tx.findNode(Label.label("cVariable"), "name", "s");
+        Queue<List<Relationship>> queue = new LinkedList<>();
+        for (Relationship rel : s.getRelationships(Direction.OUTGOING)) {
+            queue.add(List.of(rel));
+        }
+        return queue;
+    }
+
+    private static String name(List<Relationship> path) {
+        StringBuilder builder = new StringBuilder((String) path.get(0).getStartNode().getProperty("name"));
+        for (Relationship rel : path) {
+            builder.append('>').append(rel.getEndNode().getProperty("name"));
+        }
+        return builder.toString();
+    }
+
+    // forward search to t over paths kept as relationship lists, rejecting paths through a node marked rejected
+    private static class Routes implements DataflowTraversal.Strategy<List<Relationship>> {
+
+        @Override
+        public boolean isValid(List<Relationship> path) {
+            return !getLastRel(path).getEndNode().hasProperty("rejected");
+        }
+
+        @Override
+        public List<Relationship> complete(List<Relationship> path) {
+            return getLastRel(path).getEndNode().getProperty("name").equals("t") ? path : null;
+        }
+
+        @Override
+        public void expand(List<Relationship> path, Predicate<Relationship> admissible,
+                           Consumer<List<Relationship>> queue) {
+            for (Relationship rel : getLastRel(path).getEndNode().getRelationships(Direction.OUTGOING)) {
+                if (admissible.test(rel)) {
+                    List<Relationship> next = new ArrayList<>(path);
+                    next.add(rel);
+                    queue.accept(next);
+                }
+            }
+        }
+
+        @Override
+        public Relationship getLastRel(List<Relationship> path) {
+            return path.get(path.size() - 1);
+        }
+
+        @Override
+        public int getPathSize(List<Relationship> path) {
+            return path.size();
+        }
+    }
+}
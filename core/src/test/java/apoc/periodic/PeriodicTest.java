@@ -1,30 +1,44 @@
 package apoc.periodic;
 
+import apoc.Pools;
 import apoc.util.MapUtil;
+import apoc.util.RetryPolicy;
 import apoc.util.TestUtil;
+import apoc.util.Utils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.neo4j.common.DependencyResolver;
 import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.graphdb.QueryStatistics;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.TransactionTerminatedException;
 import org.neo4j.graphdb.TransientTransactionFailureException;
 import org.neo4j.graphdb.schema.ConstraintDefinition;
 import org.neo4j.graphdb.schema.IndexDefinition;
 import org.neo4j.graphdb.schema.Schema;
 import org.neo4j.internal.helpers.collection.Iterators;
 import org.neo4j.kernel.api.KernelTransactionHandle;
+import org.neo4j.kernel.api.exceptions.Status;
 import org.neo4j.kernel.impl.api.KernelTransactions;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.NullLog;
 import org.neo4j.test.rule.DbmsRule;
 import org.neo4j.test.rule.ImpermanentDbmsRule;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
@@ -38,16 +52,21 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.neo4j.driver.internal.util.Iterables.count;
+import static org.neo4j.test.assertion.Assert.assertEventually;
 
 public class PeriodicTest {
 
     public static final long RUNDOWN_COUNT = 1000;
     public static final int BATCH_SIZE = 399;
 
+    private static final String TERMINATED_ITERATE = "UNWIND range(1, 100) AS x RETURN x";
+    private static final String TERMINATED_ACTION = "CREATE (:Item {x: x})";
+
     @Rule
     public DbmsRule db = new ImpermanentDbmsRule();
 
@@ -438,7 +457,7 @@ public class PeriodicTest {
 
     @Test
     public void testIterateRetries() throws Exception {
-        testResult(db, "CALL apoc.periodic.iterate('return 1', 'CREATE (n {prop: 1/$_retry})', {retries:1})", result -> {
+        testResult(db, "CALL apoc.periodic.iterate('return 1', 'CREATE (n {prop: 1/$_retry})', {retries:1, retryOn:'all', backoff:{base:10, max:10}})", result -> {
             Map<String, Object> row = Iterators.single(result);
             assertEquals(1L, row.get("batches"));
             assertEquals(1L, row.get("total"));
@@ -446,6 +465,296 @@ public class PeriodicTest {
         });
     }
 
+    @Test
+    public void testIterateBoundsPendingBatches() throws Exception {
+        // 4 batches of 5 rows running at a time at most, and one batch at a time without parallel
+        int parallelAhead = maxRowsAhead(true, 4);
+        assertTrue(String.valueOf(parallelAhead), parallelAhead > 5 && parallelAhead <= 20);
+        assertEquals(5, maxRowsAhead(false, 4));
+    }
+
+    // helper function: the largest number of rows read from the data-driven statement but not processed yet, seen by
+    //      a running batch of 40 rows in batches of 5
+    private int maxRowsAhead(boolean parallel, int concurrency) {
+        AtomicInteger taken = new AtomicInteger();
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        Iterator<Map<String, Object>> rows = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return taken.get() < 40;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                return Map.of("i", taken.incrementAndGet());
+            }
+        };
+        BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer = (tx, params) -> {
+            maxAhead.accumulateAndGet(taken.get() - processed.get(), Math::max);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+            processed.addAndGet(((List<?>) params.get("_batch")).size());
+            return QueryStatistics.EMPTY;
+        };
+
+        Pools pools = db.getDependencyResolver().resolveDependency(Pools.class);
+        BatchAndTotalResult result = PeriodicUtils.iterateAndExecuteBatchedInSeparateThread(db, () -> {},
+                NullLog.getInstance(), pools, 5, parallel, true, 0, rows, consumer, concurrency, -1, "bounded")
+                .findFirst().orElseThrow();
+        assertEquals(8L, result.batches);
+        assertEquals(40L, result.total);
+        assertEquals(0L, result.failedBatches);
+        return maxAhead.get();
+    }
+
+    @Test
+    public void testIterateAutoBatchSize() throws Exception {
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(1, 5000) AS x RETURN x', 'CREATE (:Auto {x: x})', " +
+                "{batchSize:'auto', minBatchSize:10, maxBatchSize:2000, targetBatchMillis:1})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(5000L, row.get("total"));
+            assertEquals(0L, row.get("failedBatches"));
+            Map<String, Object> batchSizes = (Map<String, Object>) row.get("batchSizes");
+            assertEquals("auto", batchSizes.get("mode"));
+            assertEquals(1000L, batchSizes.get("initial"));
+            assertTrue((long) batchSizes.get("min") >= 10L);
+            assertTrue((long) batchSizes.get("max") <= 2000L);
+        });
+        testCall(db, "MATCH (n:Auto) RETURN count(n) AS count", row -> assertEquals(5000L, row.get("count")));
+    }
+
+    @Test
+    public void testIterateAutoBatchSizeAfterFailures() throws Exception {
+        // every batch fails, so each one halves the size down to minBatchSize; the errors are reported as they are
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(1, 2000) AS x RETURN x', 'CREATE (:Auto {x: 1/0})', " +
+                "{batchSize:'auto', minBatchSize:100, maxBatchSize:2000})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(2000L, row.get("total"));
+            assertEquals(row.get("batches"), row.get("failedBatches"));
+            assertEquals(Set.of("/ by zero"), ((Map<String, Object>) ((Map) row.get("operations")).get("errors")).keySet());
+            Map<String, Object> batchSizes = (Map<String, Object>) row.get("batchSizes");
+            assertEquals(1000L, batchSizes.get("initial"));
+            assertEquals(100L, batchSizes.get("min"));
+            assertEquals(List.of(Map.of("batch", 1L, "size", 500L), Map.of("batch", 2L, "size", 250L),
+                    Map.of("batch", 3L, "size", 125L), Map.of("batch", 4L, "size", 100L)), batchSizes.get("changes"));
+        });
+    }
+
+    @Test
+    public void testIterateFixedBatchSizeReported() throws Exception {
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(1, 100) AS x RETURN x', 'RETURN x', {batchSize:10})", result -> {
+            Map<String, Object> batchSizes = (Map<String, Object>) Iterators.single(result).get("batchSizes");
+            assertEquals("fixed", batchSizes.get("mode"));
+            assertEquals(10L, batchSizes.get("last"));
+        });
+    }
+
+    @Test
+    public void testIteratePartitionBy() throws Exception {
+        db.executeTransactionally("UNWIND range(0, 3) AS id CREATE (:Hub {id: id})");
+        testResult(db, "CALL apoc.periodic.iterate('MATCH (h:Hub) UNWIND range(1, 250) AS x RETURN h, x', " +
+                "'CREATE (h)-[:SPOKE]->(:Spoke {x: x})', {batchSize:50, parallel:true, partitionBy:'h', partitions:4})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(1000L, row.get("total"));
+            assertEquals(0L, row.get("failedBatches"));
+            assertEquals(0L, row.get("retries"));
+        });
+        testCall(db, "MATCH (:Hub)-[r:SPOKE]->() RETURN count(r) AS count", row -> assertEquals(1000L, row.get("count")));
+    }
+
+    @Test(expected = QueryExecutionException.class)
+    public void testIteratePartitionByUnknownColumn() throws Exception {
+        testCall(db, "CALL apoc.periodic.iterate('UNWIND range(1, 10) AS x RETURN x', 'RETURN x', {parallel:true, partitionBy:'y'})", row -> {});
+    }
+
+    @Test
+    public void testIterateCheckpointAndResume() throws Exception {
+        db.executeTransactionally("CREATE (:Flag {bad: 55})");
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(1, 100) AS x RETURN x', " +
+                "'MATCH (f:Flag) CREATE (:Item {x: x, y: 1 / (x - f.bad)})', {batchSize:10, checkpoint:{name:'items', every:1}})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(1L, row.get("failedBatches"));
+        });
+        testCall(db, "CALL apoc.periodic.list() YIELD name, done, progress WHERE name = 'items' RETURN done, progress", row -> {
+            assertEquals(false, row.get("done"));
+            Map<String, Object> progress = (Map<String, Object>) row.get("progress");
+            assertEquals(false, progress.get("running"));
+            assertEquals(50L, progress.get("rows"));
+            assertEquals(5L, progress.get("batches"));
+        });
+
+        db.executeTransactionally("MATCH (f:Flag) SET f.bad = 0");
+        testResult(db, "CALL apoc.periodic.resume('items')", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(50L, row.get("total"));
+            assertEquals(0L, row.get("failedBatches"));
+        });
+        testCall(db, "CALL apoc.periodic.list() YIELD name, done, progress WHERE name = 'items' RETURN done, progress", row -> {
+            assertEquals(true, row.get("done"));
+            assertEquals(100L, ((Map<String, Object>) row.get("progress")).get("rows"));
+        });
+    }
+
+    @Test
+    public void testTerminatedIterateResumes() throws Exception {
+        Checkpoint checkpoint = Checkpoint.start(db, TERMINATED_ITERATE, TERMINATED_ACTION,
+                Map.of("batchSize", 10, "checkpoint", Map.of("name", "terminated", "every", 1)));
+        BatchAndTotalResult result = terminatedIterate(checkpoint, null);
+        assertEquals(4L, result.batches);
+        assertEquals(30L, result.committedOperations);
+
+        testCall(db, "CALL apoc.periodic.list() YIELD name, done, progress WHERE name = 'terminated' RETURN done, progress", row -> {
+            assertEquals(false, row.get("done"));
+            assertEquals(30L, ((Map<String, Object>) row.get("progress")).get("rows"));
+        });
+        testResult(db, "CALL apoc.periodic.resume('terminated')", r -> assertEquals(70L, Iterators.single(r).get("total")));
+        testCall(db, "MATCH (i:Item) RETURN count(i) AS count, count(DISTINCT i.x) AS distinct", row -> {
+            assertEquals(100L, row.get("count"));
+            assertEquals(100L, row.get("distinct"));
+        });
+    }
+
+    @Test
+    public void testKilledIterateStoresProgress() throws Exception {
+        TestUtil.registerProcedure(db, Utils.class);
+        String progress = "CALL apoc.periodic.list() YIELD name, done, progress WHERE name = 'killed' RETURN done, progress";
+        Thread thread = new Thread(() -> {
+            try {
+                db.executeTransactionally("CALL apoc.periodic.iterate('" + TERMINATED_ITERATE + "', " +
+                        "'CALL apoc.util.sleep(10) " + TERMINATED_ACTION + "', {batchSize:10, checkpoint:{name:'killed', every:1}})");
+            } catch (QueryExecutionException | TransactionTerminatedException e) {
+                // expected, the query is killed below
+            }
+        });
+        thread.start();
+        String rows = "CALL apoc.periodic.list() YIELD name, progress WHERE name = 'killed' RETURN coalesce(max(progress.rows), 0) AS rows";
+        assertEventually(() -> db.executeTransactionally(rows, Map.of(), r -> (Long) Iterators.single(r).get("rows")),
+                count -> count >= 20, 10, TimeUnit.SECONDS);
+        // the data-driven statement runs in the transaction of the procedure, and shows as its query
+        assertTrue(PeriodicTestUtils.terminateQuery(TERMINATED_ITERATE, db));
+        thread.join();
+
+        // the rows of the batches committed before the kill are stored, and a resume picks up from there
+        long committed = db.executeTransactionally("MATCH (i:Item) RETURN count(i) AS count", Map.of(),
+                r -> (Long) Iterators.single(r).get("count"));
+        testCall(db, progress, row -> {
+            assertEquals(false, row.get("done"));
+            Map<String, Object> stored = (Map<String, Object>) row.get("progress");
+            assertEquals(false, stored.get("running"));
+            assertEquals(committed, stored.get("rows"));
+        });
+        assertTrue(committed < 100);
+        testResult(db, "CALL apoc.periodic.resume('killed')", r -> assertEquals(100L - committed, Iterators.single(r).get("total")));
+        testCall(db, "MATCH (i:Item) RETURN count(i) AS count, count(DISTINCT i.x) AS distinct", row -> {
+            assertEquals(100L, row.get("count"));
+            assertEquals(100L, row.get("distinct"));
+        });
+    }
+
+    @Test
+    public void testTerminatedIterateReportsSkippedBatches() throws Exception {
+        DeadLetterSink deadLetter = DeadLetterSink.fromConfig(Map.of("deadLetter", Map.of("label", "DeadLetter")), db);
+        BatchAndTotalResult result = terminatedIterate(null, deadLetter);
+        assertEquals(30L, result.committedOperations);
+        assertEquals(1L, result.failedBatches);
+        assertEquals(Map.of("skipped", 1L), result.batch.get("errors"));
+
+        testCall(db, "MATCH (d:DeadLetter) RETURN d.batch AS batch, d.rows AS rows, d.error AS error", row -> {
+            assertEquals(3L, row.get("batch"));
+            assertEquals("skipped", row.get("error"));
+            assertTrue((String) row.get("rows"), ((String) row.get("rows")).startsWith("[{\"x\":31},"));
+        });
+    }
+
+    // helper function: a run over 100 rows in batches of 10, terminated while the rows of the fourth batch are read,
+    //      so that batch is skipped when it runs; the iteration waits for it before it notices the termination
+    private BatchAndTotalResult terminatedIterate(Checkpoint checkpoint, DeadLetterSink deadLetter) {
+        AtomicBoolean terminated = new AtomicBoolean(false);
+        BiFunction<Transaction, Map<String, Object>, QueryStatistics> consumer = (tx, params) ->
+                tx.execute("UNWIND $_batch AS _batch WITH _batch.x AS x " + TERMINATED_ACTION, params).getQueryStatistics();
+        Iterator<Map<String, Object>> rows = new Iterator<>() {
+            private long x = 0;
+
+            private int reads = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (x == 40 && reads++ == 0) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(300));
+                }
+                // like the result of a killed statement, which can no longer be read once the iteration has seen
+                //      the termination
+                if (reads > 2) throw new TransactionTerminatedException(Status.Transaction.Terminated);
+                return x < 100;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (++x == 31) {
+                    terminated.set(true);
+                }
+                return Map.of("x", x);
+            }
+        };
+        Pools pools = db.getDependencyResolver().resolveDependency(Pools.class);
+        return PeriodicUtils.iterateAndExecuteBatchedInSeparateThread(db, () -> {
+                    if (terminated.get()) throw new TransactionTerminatedException(Status.Transaction.Terminated);
+                }, NullLog.getInstance(), pools, AdaptiveBatchSize.fixed(10), false, true, RetryPolicy.fixed(0), rows,
+                consumer, 1, -1, "terminated", null, 0, checkpoint, deadLetter).findFirst().orElseThrow();
+    }
+
+    @Test
+    public void testIterateCheckpointRestartedWithoutWatermark() throws Exception {
+        db.executeTransactionally("CREATE (:Flag {bad: 55})");
+        String query = "CALL apoc.periodic.iterate('UNWIND range(1, 100) AS x RETURN x', " +
+                "'MATCH (f:Flag) CREATE (:Item {x: x, y: 1 / (x - f.bad)})', {batchSize:10, checkpoint:{name:'keyed', every:1, key:'x'}})";
+        String progress = "CALL apoc.periodic.list() YIELD name, progress WHERE name = 'keyed' RETURN progress";
+        db.executeTransactionally(query);
+        testCall(db, progress, row -> assertEquals(50L, ((Map<String, Object>) row.get("progress")).get("watermark")));
+
+        // a new run with the same name fails in its first batch, the watermark of the earlier run is gone
+        db.executeTransactionally("MATCH (f:Flag) SET f.bad = 1");
+        db.executeTransactionally(query);
+        testCall(db, progress, row -> {
+            Map<String, Object> stored = (Map<String, Object>) row.get("progress");
+            assertEquals(0L, stored.get("rows"));
+            assertNull(stored.get("watermark"));
+        });
+    }
+
+    @Test(expected = QueryExecutionException.class)
+    public void testResumeUnknownCheckpoint() throws Exception {
+        testCall(db, "CALL apoc.periodic.resume('unknown')", row -> {});
+    }
+
+    @Test
+    public void testIterateRetriesOnlyTransientErrors() throws Exception {
+        testResult(db, "CALL apoc.periodic.iterate('return 1', 'CREATE (n {prop: 1/$_retry})', {retries:3})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(1L, row.get("failedBatches"));
+            assertEquals(0L, row.get("retries"));
+        });
+    }
+
+    @Test
+    public void testIterateDeadLetterLabel() throws Exception {
+        testResult(db, "CALL apoc.periodic.iterate('UNWIND range(-5, 5) AS x RETURN x', 'RETURN sum(1000/x)', " +
+                "{batchSize:3, deadLetter:{label:'DeadLetter'}})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(1L, row.get("failedBatches"));
+        });
+        testCall(db, "MATCH (d:DeadLetter) RETURN d.batch AS batch, d.rows AS rows, d.error AS error", row -> {
+            assertEquals(1L, row.get("batch"));
+            assertEquals("[{\"x\":-2},{\"x\":-1},{\"x\":0}]", row.get("rows"));
+            assertEquals("/ by zero", row.get("error"));
+        });
+    }
+
+    @Test(expected = QueryExecutionException.class)
+    public void testIterateInvalidBackoff() throws Exception {
+        testCall(db, "CALL apoc.periodic.iterate('return 1', 'RETURN 1', {retries:1, backoff:{base:100, max:10}})", row -> {});
+    }
+
     @Test
     public void testIterateFail() throws Exception {
         db.executeTransactionally("UNWIND range(1,100) AS x CREATE (:Person{name:'Person_'+x})");
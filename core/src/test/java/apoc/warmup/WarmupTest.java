@@ -7,7 +7,13 @@ import org.junit.Test;
 import org.neo4j.test.rule.DbmsRule;
 import org.neo4j.test.rule.ImpermanentDbmsRule;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Sascha Peukert
@@ -67,4 +73,27 @@ public class WarmupTest {
             assertEquals(6L, r.get("indexPages"));
         });
     }
+
+    @Test
+    public void testWarmupDataflow() throws Exception {
+        db.executeTransactionally("UNWIND range(1, 200) AS i " +
+                "CREATE (:cVariable {LINE_NUMBER:i})-[:varWrite]->(:cVariable {LINE_NUMBER:i + 1})");
+        Map<String, Map<String, Object>> rows = new HashMap<>();
+        TestUtil.testResult(db, "CALL apoc.warmup.dataflow({types:['varWrite']})",
+                result -> result.forEachRemaining(row -> rows.put((String) row.get("name"), row)));
+
+        assertEquals(Set.of("cVariable", "cReturn", "varWrite"), rows.keySet());
+        Map<String, Object> nodes = rows.get("cVariable");
+        assertEquals("label", nodes.get("kind"));
+        assertEquals(400L, nodes.get("records"));
+        // a cursor keeps its page pinned while it reads the records on it, so there are far fewer pins than records
+        assertTrue((long) nodes.get("pins") > 0L);
+        assertTrue((long) nodes.get("pins") < 400L);
+        assertTrue((long) nodes.get("pageFaults") <= (long) nodes.get("pins"));
+        assertFalse(nodes.containsKey("pages"));
+
+        assertEquals("type", rows.get("varWrite").get("kind"));
+        assertEquals(200L, rows.get("varWrite").get("records"));
+        assertEquals(0L, rows.get("cReturn").get("records"));
+    }
 }
@@ -0,0 +1,54 @@
+package apoc.dataflow;
+
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DataflowTestUtil {
+
+    // main calls foo between m2 and m3, foo branches from f1 to f3 around f2:
+    //      s -varWrite-> x -parWrite-> p -varWrite-> q -retWrite-> r -varWrite-> y
+    public static final String SETUP_PROGRAM = "CREATE (m1:cfgBlock {name:'m1'}), (m2:cfgBlock {name:'m2'}), (m3:cfgBlock {name:'m3'}), (m4:cfgBlock {name:'m4'})\n" +
+            "CREATE (f1:cfgBlock {name:'f1'}), (f2:cfgBlock {name:'f2'}), (f3:cfgBlock {name:'f3'})\n" +
+            "CREATE (m1)-[:nextCFGBlock]->(m2), (m2)-[:nextCFGBlock]->(m3), (m3)-[:nextCFGBlock]->(m4)\n" +
+            "CREATE (m2)-[:nextCFGBlock {cfgInvoke:'1'}]->(f1), (f3)-[:nextCFGBlock {cfgReturn:'1'}]->(m3)\n" +
+            "CREATE (f1)-[:nextCFGBlock]->(f2), (f2)-[:nextCFGBlock]->(f3), (f1)-[:nextCFGBlock]->(f3)\n" +
+            "CREATE (s:cVariable {name:'s', LINE_NUMBER:1}), (x:cVariable {name:'x', LINE_NUMBER:2}), (p:cVariable {name:'p', LINE_NUMBER:10})\n" +
+            "CREATE (q:cVariable {name:'q', LINE_NUMBER:11}), (r:cVariable {name:'r', LINE_NUMBER:3}), (y:cVariable {name:'y', LINE_NUMBER:4})\n" +
+            "CREATE (s)-[:varWrite]->(x), (s)-[:varWriteSource]->(m1), (x)-[:varWriteDestination]->(m1)\n" +
+            "CREATE (x)-[:parWrite]->(p), (x)-[:parWriteSource]->(m2), (p)-[:parWriteDestination]->(f1)\n" +
+            "CREATE (p)-[:varWrite]->(q), (p)-[:varWriteSource]->(f2), (q)-[:varWriteDestination]->(f2)\n" +
+            "CREATE (q)-[:retWrite]->(r), (q)-[:retWriteSource]->(f3), (r)-[:retWriteDestination]->(m3)\n" +
+            "CREATE (r)-[:varWrite]->(y), (r)-[:varWriteSource]->(m4), (y)-[:varWriteDestination]->(m4)";
+
+    // component a publishes to topic t1, component b subscribes to t1 and publishes to t2, component c subscribes to t2;
+    //      b4 and c3 are the ends of the flows:
+    //      a1 -varWrite-> a2 -pubVar-> t1 -pubTarget-> b1 -varWrite-> b2 -pubVar-> t2 -pubTarget-> c1 -varWrite-> c2
+    //      b1 -varWrite-> b3 -varInfFunc-> b4, c2 -varInfFunc-> c3
+    public static final String SETUP_ROS = "CREATE (a1:cVariable {name:'a1'}), (a2:cVariable {name:'a2'}), (t1:rosTopic {name:'t1'})\n" +
+            "CREATE (b1:cVariable {name:'b1'}), (b2:cVariable {name:'b2'}), (b3:cVariable {name:'b3'}), (b4:cVariable {name:'b4'}), (t2:rosTopic {name:'t2'})\n" +
+            "CREATE (c1:cVariable {name:'c1'}), (c2:cVariable {name:'c2'}), (c3:cVariable {name:'c3'})\n" +
+            "CREATE (a1)-[:varWrite]->(a2), (a2)-[:pubVar]->(t1), (t1)-[:pubTarget]->(b1)\n" +
+            "CREATE (b1)-[:varWrite]->(b2), (b2)-[:pubVar]->(t2), (b1)-[:varWrite]->(b3), (b3)-[:varInfFunc]->(b4)\n" +
+            "CREATE (t2)-[:pubTarget]->(c1), (c1)-[:varWrite]->(c2), (c2)-[:varInfFunc]->(c3)";
+
+    // CFG settings of apoc.cfgPath.rosFindPaths for the calls and returns of SETUP_PROGRAM
+    public static final String CFG_CONFIG = "[{name:'parWrite', startLabel:'cVariable', endLabel:'cVariable', attribute:'cfgInvoke', length:'1'}, " +
+            "{name:'retWrite', startLabel:'cVariable', endLabel:'cVariable', attribute:'cfgReturn', length:'1'}]";
+
+    // the names of the nodes of each path, e.g. "s>x>p", sorted so that results can be compared regardless of order
+    public static List<String> names(List<Path> paths) {
+        List<String> names = new ArrayList<>();
+        for (Path path : paths) {
+            StringBuilder builder = new StringBuilder(String.valueOf(path.startNode().getProperty("name", "?")));
+            for (Relationship rel : path.relationships()) {
+                builder.append('>').append(rel.getEndNode().getProperty("name", "?"));
+            }
+            names.add(builder.toString());
+        }
+        names.sort(null);
+        return names;
+    }
+}